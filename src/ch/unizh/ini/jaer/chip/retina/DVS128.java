@@ -38,6 +38,7 @@ import net.sf.jaer.chip.AEChip;
 import net.sf.jaer.chip.Chip;
 import net.sf.jaer.chip.RetinaExtractor;
 import net.sf.jaer.event.BasicEvent;
+import net.sf.jaer.event.ColumnarEventPacket;
 import net.sf.jaer.event.EventPacket;
 import net.sf.jaer.event.OutputEventIterator;
 import net.sf.jaer.event.PolarityEvent;
@@ -524,6 +525,44 @@ public class DVS128 extends AETemporalConstastRetina implements Serializable, Ob
 
             }
         }
+
+        /**
+         * Extracts directly to the columns of a ColumnarEventPacket with the
+         * same decoding as
+         * {@link #extractPacket(net.sf.jaer.aemonitor.AEPacketRaw, net.sf.jaer.event.EventPacket)}.
+         *
+         * @param in the raw events, can be null
+         * @param out the columnar packet, which is cleared first
+         */
+        @Override
+        synchronized public void extractPacket(AEPacketRaw in, ColumnarEventPacket out) {
+            out.clear();
+            if (in == null) {
+                return;
+            }
+            int n = in.getNumEvents();
+            out.systemModificationTimeNs = in.systemModificationTimeNs;
+
+            int skipBy = 1;
+            if (isSubSamplingEnabled()) {
+                while ((n / skipBy) > getSubsampleThresholdEventCount()) {
+                    skipBy++;
+                }
+            }
+            int sxm = sizeX - 1;
+            int[] a = in.getAddresses();
+            int[] timestamps = in.getTimestamps();
+            out.allocate(n / skipBy + 1);
+            for (int i = 0; i < n; i += skipBy) {
+                int addr = a[i];
+                if ((addr & (CypressFX2DVS128HardwareInterface.SYNC_EVENT_BITMASK | BasicEvent.SPECIAL_EVENT_BIT_MASK)) != 0) {
+                    int k = out.appendEvent(timestamps[i], addr, (short) -1, (short) -1, (byte) 1);
+                    out.setSpecial(k, true);
+                } else {
+                    out.appendEvent(timestamps[i], addr, (short) (sxm - ((short) ((addr & XMASK) >>> XSHIFT))), (short) ((addr & YMASK) >>> YSHIFT), (byte) ((1 - addr) & 1));
+                }
+            }
+        }
     }
 
     /**
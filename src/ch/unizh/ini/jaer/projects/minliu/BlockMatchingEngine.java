@@ -0,0 +1,196 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ch.unizh.ini.jaer.projects.minliu;
+
+import java.util.Arrays;
+
+/**
+ * Block matching distance for PatchMatchFlow computed over flat, row padded
+ * copies of the time slices.
+ * <p>
+ * Each scale of each slice is one byte[] with x-major layout x*stride+y, so
+ * that a block row (the inner loop over y in PatchMatchFlow.sadDistance) is
+ * contiguous and the JIT can unroll and vectorize it. The stride is padded to
+ * a multiple of {@link #ROW_ALIGNMENT}. The pyramid of scales is updated
+ * incrementally by PatchMatchFlow with {@link #set} for every accumulated
+ * event.
+ * <p>
+ * When a slice is completed, {@link #sliceCompleted(int)} builds integral
+ * images of its nonzero pixels. The valid pixel counts of the reference and
+ * past blocks then cost four lookups each, so that blocks with too few valid
+ * pixels are rejected before touching their pixels, and the inner loop only
+ * sums absolute differences and counts pixels that are nonzero in both
+ * blocks, without branches.
+ * <p>
+ * {@link #distance} returns exactly the value of PatchMatchFlow.sadDistance,
+ * except that it stops early, returning 1, as soon as the partial sum proves
+ * that the distance is larger than a given bound, e.g. the best distance
+ * found so far in the search. Such a candidate can never be selected by the
+ * search. The completed slices are only read, so distance() may be called
+ * concurrently.
+ */
+final class BlockMatchingEngine {
+
+    /** Row stride alignment in bytes */
+    static final int ROW_ALIGNMENT = 16;
+
+    private final int numSlices, numScales, sizeX, sizeY;
+    private final int[] nx, ny, stride;
+    /** slices[slice][scale][x*stride+y] */
+    private final byte[][][] slices;
+    /** integral images of nonzero pixels, occupancy[slice][scale][x*(ny+1)+y] counts pixels <x,<y */
+    private final int[][][] occupancy;
+
+    // matching parameters, set by configure
+    private int radius, blockArea, minValidPixNum;
+    private float weightDistance, sadNormalizer;
+
+    /**
+     * Allocates the slices.
+     *
+     * @param numSlices number of time slices
+     * @param numScales number of scales, 0 being full resolution
+     * @param sizeX the subsampled chip size, i.e. subSizeX of PatchMatchFlow
+     * @param sizeY
+     */
+    BlockMatchingEngine(int numSlices, int numScales, int sizeX, int sizeY) {
+        this.numSlices = numSlices;
+        this.numScales = numScales;
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        nx = new int[numScales];
+        ny = new int[numScales];
+        stride = new int[numScales];
+        slices = new byte[numSlices][numScales][];
+        occupancy = new int[numSlices][numScales][];
+        for (int s = 0; s < numScales; s++) {
+            nx[s] = (sizeX >> s) + 1; // same size as the jagged slices
+            ny[s] = (sizeY >> s) + 1;
+            stride[s] = ((ny[s] + ROW_ALIGNMENT - 1) / ROW_ALIGNMENT) * ROW_ALIGNMENT;
+            for (int n = 0; n < numSlices; n++) {
+                slices[n][s] = new byte[nx[s] * stride[s]];
+                occupancy[n][s] = new int[(nx[s] + 1) * (ny[s] + 1)];
+            }
+        }
+    }
+
+    /**
+     * @return true if this engine has the given dimensions
+     */
+    boolean hasSize(int numSlices, int numScales, int sizeX, int sizeY) {
+        return this.numSlices == numSlices && this.numScales == numScales && this.sizeX == sizeX && this.sizeY == sizeY;
+    }
+
+    /**
+     * Sets the matching parameters, which are the same as those of
+     * PatchMatchFlow.
+     */
+    void configure(int blockDimension, float validPixOccupancy, float weightDistance, int sliceMaxValue, boolean rectifyPolarities) {
+        radius = blockDimension / 2;
+        final int blockDim = (2 * radius) + 1;
+        blockArea = blockDim * blockDim;
+        minValidPixNum = (int) (validPixOccupancy * blockArea);
+        this.weightDistance = weightDistance;
+        sadNormalizer = 1f / (blockArea * (rectifyPolarities ? 2 : 1) * sliceMaxValue);
+    }
+
+    /** Sets the value of a pixel of the slice being filled */
+    void set(int slice, int scale, int x, int y, byte value) {
+        slices[slice][scale][(x * stride[scale]) + y] = value;
+    }
+
+    /** Clears all scales of a slice */
+    void clear(int slice) {
+        for (int s = 0; s < numScales; s++) {
+            Arrays.fill(slices[slice][s], (byte) 0);
+            Arrays.fill(occupancy[slice][s], 0);
+        }
+    }
+
+    /**
+     * Builds the integral images of nonzero pixels of a slice that will not
+     * be modified anymore until it is cleared.
+     */
+    void sliceCompleted(int slice) {
+        for (int s = 0; s < numScales; s++) {
+            final byte[] b = slices[slice][s];
+            final int[] occ = occupancy[slice][s];
+            final int w = ny[s] + 1, st = stride[s];
+            for (int x = 0; x < nx[s]; x++) {
+                int rowSum = 0;
+                final int row = x * st, o = (x + 1) * w;
+                for (int y = 0; y < ny[s]; y++) {
+                    final int v = b[row + y];
+                    rowSum += (v | -v) >>> 31; // 1 if nonzero
+                    occ[o + y + 1] = occ[o + y + 1 - w] + rowSum;
+                }
+            }
+        }
+    }
+
+    /** @return the number of nonzero pixels in the block x0..x1, y0..y1 inclusive */
+    private int validPixels(int[] occ, int s, int x0, int y0, int x1, int y1) {
+        final int w = ny[s] + 1;
+        return (occ[((x1 + 1) * w) + y1 + 1] - occ[(x0 * w) + y1 + 1]) - occ[((x1 + 1) * w) + y0] + occ[(x0 * w) + y0];
+    }
+
+    /**
+     * Computes the block distance between the reference block centered on
+     * x,y and the past block offset by dx,dy, as PatchMatchFlow.sadDistance.
+     *
+     * @param xfull coordinate x in full resolution
+     * @param yfull coordinate y in full resolution
+     * @param dx the offset in pixels in the subsampled space of the past slice
+     * @param dy
+     * @param refSlice the reference slice index
+     * @param pastSlice the past slice index
+     * @param subsampleBy the scale
+     * @param bound the matching stops early and returns 1 once the distance is
+     * known to be larger than this bound and the bound is smaller than 1. Use
+     * Float.MAX_VALUE to compute the exact distance.
+     * @return the distance, 1 for rejected or out of bounds blocks
+     */
+    float distance(final int xfull, final int yfull, final int dx, final int dy,
+            final int refSlice, final int pastSlice, final int subsampleBy, final float bound) {
+        final int s = subsampleBy;
+        final int x = xfull >> s, y = yfull >> s, r = radius;
+        final int w = sizeX >> s, h = sizeY >> s;
+        final int adx = dx > 0 ? dx : -dx, ady = dy > 0 ? dy : -dy;
+        if (x - r - adx < 0 || x + r + adx >= w
+                || y - r - ady < 0 || y + r + ady >= h) {
+            return 1;
+        }
+        final int validPixNumCurSlice = validPixels(occupancy[refSlice][s], s, x - r, y - r, x + r, y + r);
+        final int validPixNumPrevSlice = validPixels(occupancy[pastSlice][s], s, x - r + dx, y - r + dy, x + r + dx, y + r + dy);
+        if (validPixNumCurSlice < minValidPixNum || validPixNumPrevSlice < minValidPixNum) {
+            return 1;
+        }
+        // stop as soon as the sum of absolute differences alone makes the distance larger than the bound
+        long limit = Long.MAX_VALUE;
+        if (bound < 1 && weightDistance > 0) {
+            limit = ((long) Math.floor((bound * (1 + 1e-5)) / (sadNormalizer * weightDistance)) + 1) << (s << 1);
+        }
+        final byte[] cur = slices[refSlice][s], prev = slices[pastSlice][s];
+        final int st = stride[s], blockDim = (2 * r) + 1;
+        int sumDist = 0, nonZeroMatchCount = 0;
+        for (int xx = x - r; xx <= (x + r); xx++) {
+            final int c0 = (xx * st) + y - r, p0 = ((xx + dx) * st) + y + dy - r;
+            for (int k = 0; k < blockDim; k++) {
+                final int c = cur[c0 + k], p = prev[p0 + k];
+                sumDist += Math.abs(c - p);
+                nonZeroMatchCount += ((c | -c) & (p | -p)) >>> 31; // 1 if both are nonzero
+            }
+            if (sumDist >= limit) {
+                return 1;
+            }
+        }
+        if (nonZeroMatchCount < minValidPixNum) {
+            return 1;
+        }
+        sumDist = sumDist >> (s << 1);
+        return sadNormalizer * ((sumDist * weightDistance) + (Math.abs(validPixNumCurSlice - validPixNumPrevSlice) * (1 - weightDistance)));
+    }
+}
@@ -33,6 +33,8 @@ import java.util.Iterator;
 import java.util.StringTokenizer;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import net.sf.jaer.Description;
 import net.sf.jaer.DevelopmentStatus;
 import net.sf.jaer.chip.AEChip;
@@ -93,6 +95,21 @@ public class PatchMatchFlow extends AbstractMotionFlow implements Observer, Fram
     private int[] sliceStartTimeUs; // holds the time interval between reference slice and this slice
     private int[] sliceEndTimeUs; // holds the time interval between reference slice and this slice
     private byte[][][] currentSlice;
+    /**
+     * flat copy of the slices that computes the block distances, see
+     * BlockMatchingEngine
+     */
+    private BlockMatchingEngine blockMatchingEngine = null;
+    private boolean useBlockMatchingEngine = getBoolean("useBlockMatchingEngine", true);
+    private boolean parallelBlockMatching = getBoolean("parallelBlockMatching", false);
+    private boolean blockMatchingParityCheck = false;
+    private long parityChecks = 0, parityMismatches = 0, parityEngineNs = 0, parityLegacyNs = 0;
+    // events waiting for parallel block matching, in order of arrival
+    private BlockMatchingJob[] blockMatchingJobs = new BlockMatchingJob[0];
+    private int numBlockMatchingJobs = 0;
+    private ForkJoinPool blockMatchingPool = null;
+    private static final int BLOCK_MATCHING_TASK_SIZE = 16; // events matched by each parallel task
+    private static final int MAX_BLOCK_MATCHING_JOBS = 8192; // match at least this often
     private SADResult lastGoodSadResult = new SADResult(0, 0, 0, 0); // used for consistency check
     private int blockDimension = getInt("blockDimension", 23);
 //    private float cost = getFloat("cost", 0.001f);
@@ -242,6 +259,9 @@ public class PatchMatchFlow extends AbstractMotionFlow implements Observer, Fram
         setPropertyTooltip(patchTT, "useSubsampling", "<html>Enables using both full and subsampled block matching; <p>when using adaptiveSliceDuration, enables adaptive slice duration using feedback controlusing difference between full and subsampled resolution slice matching");
         setPropertyTooltip(patchTT, "adaptiveSliceDurationMinVectorsToControl", "<html>Min flow vectors computed in packet to control slice duration, increase to reject control during idle periods");
         setPropertyTooltip(patchTT, "processingTimeLimitMs", "<html>time limit for processing packet in ms to process OF events (events still accumulate). <br> Set to 0 to disable. <p>Alternative to the system EventPacket timelimiter, which cannot be used here because we still need to accumulate and render the events");
+        setPropertyTooltip(patchTT, "useBlockMatchingEngine", "<html>Computes block distances over flat copies of the slices, <br>skipping sparse blocks using integral images and stopping each match as soon as it cannot beat the best one. <p>Gives the same results as the original computation, only faster");
+        setPropertyTooltip(patchTT, "parallelBlockMatching", "<html>Matches the events of each slice interval in parallel on all cores, then outputs them in order. <p>Not used while outputSearchErrorInfo, blockMatchingParityCheck, measureAccuracy or outlier discarding are enabled, because these need events processed one by one");
+        setPropertyTooltip(patchTT, "blockMatchingParityCheck", "<html>Computes every match both with and without useBlockMatchingEngine and logs any difference; <br>use it on recorded data to check that both give the same flow. <p>Statistics are logged when it is turned off again");
         setPropertyTooltip(patchTT, "outputSearchErrorInfo", "enables displaying the search method error information");
         setPropertyTooltip(patchTT, "outlierMotionFilteringEnabled", "(Currently has no effect) discards first optical flow event that points in opposite direction as previous one (dot product is negative)");
         setPropertyTooltip(patchTT, "numSlices", "<html>Number of bitmaps to use.  <p>At least 3: 1 to collect on, and two more to match on. <br>If >3, then best match is found between last slice reference block and all previous slices.");
@@ -298,7 +318,11 @@ public class PatchMatchFlow extends AbstractMotionFlow implements Observer, Fram
 //        resultAngleHistogramCount = 0;
 //        resultAngleHistogramMax = Integer.MIN_VALUE;
         Arrays.fill(scaleResultCounts, 0);
-        int minDistScale = 0;
+        numBlockMatchingJobs = 0;
+        final long parityMismatchesAtStart = parityMismatches;
+        if (blockMatchingEngine != null) {
+            blockMatchingEngine.configure(blockDimension, validPixOccupancy, weightDistance, sliceMaxValue, rectifyPolarties);
+        }
         // following awkward block needed to deal with DVS/DAVIS and IMU/APS events
         // block STARTS
         Iterator i = null;
@@ -315,6 +339,7 @@ public class PatchMatchFlow extends AbstractMotionFlow implements Observer, Fram
             Object o = i.next();
             if (o == null) {
                 log.warning("null event passed in, returning input packet");
+                numBlockMatchingJobs = 0;
                 return in;
             }
             if ((o instanceof ApsDvsEvent) && ((ApsDvsEvent) o).isApsData()) {
@@ -354,31 +379,13 @@ public class PatchMatchFlow extends AbstractMotionFlow implements Observer, Fram
                     if (!accumulateEvent(ein)) { // maybe skip events here
                         break;
                     }
-                    SADResult sliceResult;
-                    minDistScale = 0;
-                    for (int scale : scalesToComputeArray) {
-                        if (scale >= numScales) {
-                            log.warning("scale " + scale + " is out of range of " + numScales + "; fix scalesToCompute for example by clearing it");
-                            break;
-                        }
-                        sliceResult = minSADDistance(ein.x, ein.y, slices[sliceIndex(1)], slices[sliceIndex(2)], scale); // from ref slice to past slice k+1, using scale 0,1,....
-//                        sliceSummedSADValues[sliceIndex(scale + 2)] += sliceResult.sadValue; // accumulate SAD for this past slice
-//                        sliceSummedSADCounts[sliceIndex(scale + 2)]++; // accumulate SAD count for this past slice
-                        // sliceSummedSADValues should end up filling 2 values for 4 slices 
-                        if ((result == null) || (sliceResult.sadValue < result.sadValue)) {
-                            result = sliceResult; // result holds the overall min sad result
-                            minDistScale = scale;
-                        }
-                        sadVals[scale] = sliceResult.sadValue; // TODO debug
-
-                    }
-                    scaleResultCounts[minDistScale]++;
                     float dt = (sliceDeltaTimeUs(2) * 1e-6f);
-                    if (result != null) {
-                        result.vx = result.dx / dt; // hack, convert to pix/second
-                        result.vy = result.dy / dt; // TODO clean up, make time for each slice, since could be different when const num events
+                    if (isBlockMatchingBatched()) {
+                        addBlockMatchingJob(ein, dt, sadVals); // matched later, see processBlockMatchingJobs
+                        continue;
                     }
-
+                    result = minSADDistanceOverScales(ein.x, ein.y, sliceIndex(1), sliceIndex(2), dt, sadVals, null);
+                    scaleResultCounts[result == null ? 0 : result.scale]++;
                     break;
 //                case JaccardDistance:
 //                    maybeRotateSlices();
@@ -391,38 +398,67 @@ public class PatchMatchFlow extends AbstractMotionFlow implements Observer, Fram
 //                    result.dy = result.dy / dtj;
 //                    break;
             }
-            if (result == null /*|| result.sadValue == Float.MAX_VALUE*/) {
-                continue; // maybe some property change caused this
-            }
-            // reject values that are unreasonable
-            if (isNotSufficientlyAccurate(result)) {
-                continue;
-            }
-            vx = result.vx;
-            vy = result.vy;
-            v = (float) Math.sqrt((vx * vx) + (vy * vy));
-            // TODO debug
-            StringBuilder sadValsString = new StringBuilder();
-            for (int k=0;k<sadVals.length-1;k++) {
-                sadValsString.append(String.format("%f,", sadVals[k]));
-            }
-            sadValsString.append(String.format("%f", sadVals[sadVals.length-1])); // very awkward to prevent trailing ,
-            if (sadValueLogger.isEnabled()) { // TODO debug
-                sadValueLogger.log(sadValsString.toString());
-            }
+            processSadResult(result, ein, sadVals);
+        }
+        processBlockMatchingJobs();
 
-            if (showSliceBitMap) {
-                // TODO danger, drawing outside AWT thread
-                drawMatching(result, ein, slices); // ein.x >> result.scale, ein.y >> result.scale, (int) result.dx >> result.scale, (int) result.dy >> result.scale, slices[sliceIndex(1)][result.scale], slices[sliceIndex(2)][result.scale], result.scale);
-            }
+        if (blockMatchingParityCheck && (parityMismatches > parityMismatchesAtStart)) {
+            log.warning(String.format("%d block matching results in this packet differ between the BlockMatchingEngine and the original computation; %s",
+                    parityMismatches - parityMismatchesAtStart, getBlockMatchingParityStatistics()));
+        }
+        if (rewindFlg) {
+            rewindFlg = false;
+            sliceLastTs = Integer.MAX_VALUE;
+
+        }
+        motionFlowStatistics.updatePacket(countIn, countOut);
+        adaptEventSkipping();
+
+        return isDisplayRawInput() ? in : dirPacket;
+    }
+
+    /**
+     * Outputs the flow event for the current event if its block matching
+     * result is good enough. The event fields of the superclass (e, x, y and
+     * ts) must hold the event.
+     *
+     * @param result the best match over all scales, or null if there is none
+     * @param ein the event
+     * @param sadVals the SAD values at each scale, for logging
+     */
+    private void processSadResult(SADResult result, PolarityEvent ein, float[] sadVals) {
+        if (result == null /*|| result.sadValue == Float.MAX_VALUE*/) {
+            return; // maybe some property change caused this
+        }
+        // reject values that are unreasonable
+        if (isNotSufficientlyAccurate(result)) {
+            return;
+        }
+        vx = result.vx;
+        vy = result.vy;
+        v = (float) Math.sqrt((vx * vx) + (vy * vy));
+        // TODO debug
+        StringBuilder sadValsString = new StringBuilder();
+        for (int k=0;k<sadVals.length-1;k++) {
+            sadValsString.append(String.format("%f,", sadVals[k]));
+        }
+        sadValsString.append(String.format("%f", sadVals[sadVals.length-1])); // very awkward to prevent trailing ,
+        if (sadValueLogger.isEnabled()) { // TODO debug
+            sadValueLogger.log(sadValsString.toString());
+        }
+
+        if (showSliceBitMap) {
+            // TODO danger, drawing outside AWT thread
+            drawMatching(result, ein, slices); // ein.x >> result.scale, ein.y >> result.scale, (int) result.dx >> result.scale, (int) result.dy >> result.scale, slices[sliceIndex(1)][result.scale], slices[sliceIndex(2)][result.scale], result.scale);
+        }
 
 //            if (filterOutInconsistentEvent(result)) {
 //                continue;
 //            }
-            if (resultHistogram != null) {
-                resultHistogram[result.xidx][result.yidx]++;
-                resultHistogramCount++;
-            }
+        if (resultHistogram != null) {
+            resultHistogram[result.xidx][result.yidx]++;
+            resultHistogramCount++;
+        }
 //            if (result.dx != 0 || result.dy != 0) {
 //                final int bin = (int) Math.round(ANGLE_HISTOGRAM_COUNT * (Math.atan2(result.dy, result.dx) + Math.PI) / (2 * Math.PI));
 //                int v = ++resultAngleHistogram[bin];
@@ -431,20 +467,184 @@ public class PatchMatchFlow extends AbstractMotionFlow implements Observer, Fram
 //                    resultAngleHistogramMax = v;
 //                }
 //            }
-            processGoodEvent();
-            lastGoodSadResult.set(result);
+        processGoodEvent();
+        lastGoodSadResult.set(result);
+    }
+
+    /**
+     * Finds the best block match over the scales to compute.
+     *
+     * @param x the event x
+     * @param y
+     * @param refSliceIdx the reference slice index, normally sliceIndex(1)
+     * @param pastSliceIdx the past slice index, normally sliceIndex(2)
+     * @param dt the time between the slices in seconds
+     * @param sadVals filled with the SAD value at each scale
+     * @param sumArray the search distance array to use, or null to use the
+     * shared one
+     * @return the best result, with its velocity set, or null
+     */
+    private SADResult minSADDistanceOverScales(int x, int y, int refSliceIdx, int pastSliceIdx, float dt, float[] sadVals, float[][] sumArray) {
+        SADResult result = null, sliceResult;
+        for (int scale : scalesToComputeArray) {
+            if (scale >= numScales) {
+                log.warning("scale " + scale + " is out of range of " + numScales + "; fix scalesToCompute for example by clearing it");
+                break;
+            }
+            if (blockMatchingParityCheck && blockMatchingEngine != null) {
+                sliceResult = minSADDistanceParityCheck(x, y, refSliceIdx, pastSliceIdx, scale);
+            } else {
+                sliceResult = minSADDistance(x, y, refSliceIdx, pastSliceIdx, scale, sumArray, useBlockMatchingEngine && blockMatchingEngine != null); // from ref slice to past slice k+1, using scale 0,1,....
+            }
+//                        sliceSummedSADValues[sliceIndex(scale + 2)] += sliceResult.sadValue; // accumulate SAD for this past slice
+//                        sliceSummedSADCounts[sliceIndex(scale + 2)]++; // accumulate SAD count for this past slice
+            // sliceSummedSADValues should end up filling 2 values for 4 slices 
+            if ((result == null) || (sliceResult.sadValue < result.sadValue)) {
+                result = sliceResult; // result holds the overall min sad result
+            }
+            sadVals[scale] = sliceResult.sadValue; // TODO debug
+        }
+        if (result != null) {
+            result.vx = result.dx / dt; // hack, convert to pix/second
+            result.vy = result.dy / dt; // TODO clean up, make time for each slice, since could be different when const num events
+        }
+        return result;
+    }
 
+    /**
+     * Matches with the BlockMatchingEngine and with the original sadDistance,
+     * counts differences and returns the result of the selected method.
+     */
+    private SADResult minSADDistanceParityCheck(int x, int y, int refSliceIdx, int pastSliceIdx, int scale) {
+        final long t0 = System.nanoTime();
+        final SADResult engineResult = minSADDistance(x, y, refSliceIdx, pastSliceIdx, scale, null, true);
+        final long t1 = System.nanoTime();
+        final SADResult legacyResult = minSADDistance(x, y, refSliceIdx, pastSliceIdx, scale, null, false);
+        parityEngineNs += t1 - t0;
+        parityLegacyNs += System.nanoTime() - t1;
+        parityChecks++;
+        if ((engineResult.dx != legacyResult.dx) || (engineResult.dy != legacyResult.dy)
+                || (Float.compare(engineResult.sadValue, legacyResult.sadValue) != 0)) {
+            if (parityMismatches++ < 10) {
+                log.warning("block matching differs at x=" + x + " y=" + y + ": BlockMatchingEngine " + engineResult + ", original " + legacyResult);
+            }
         }
+        return useBlockMatchingEngine ? engineResult : legacyResult;
+    }
 
-        if (rewindFlg) {
-            rewindFlg = false;
-            sliceLastTs = Integer.MAX_VALUE;
+    /**
+     * @return true if events are matched in parallel by
+     * processBlockMatchingJobs
+     */
+    private boolean isBlockMatchingBatched() {
+        return parallelBlockMatching && !outputSearchErrorInfo && !blockMatchingParityCheck
+                && !measureAccuracy && !discardOutliersForStatisticalMeasurementEnabled;
+    }
+
+    /**
+     * An event waiting to be matched, with the state that processSadResult
+     * needs
+     */
+    private static final class BlockMatchingJob {
 
+        PolarityEvent e;
+        int x, y, ts, type, refSliceIdx, pastSliceIdx;
+        float dt;
+        float[] sadVals;
+        SADResult result;
+    }
+
+    private void addBlockMatchingJob(PolarityEvent ein, float dt, float[] sadVals) {
+        if (numBlockMatchingJobs == blockMatchingJobs.length) {
+            blockMatchingJobs = Arrays.copyOf(blockMatchingJobs, Math.max(64, 2 * numBlockMatchingJobs));
         }
-        motionFlowStatistics.updatePacket(countIn, countOut);
-        adaptEventSkipping();
+        BlockMatchingJob job = blockMatchingJobs[numBlockMatchingJobs];
+        if (job == null) {
+            job = new BlockMatchingJob();
+            blockMatchingJobs[numBlockMatchingJobs] = job;
+        }
+        numBlockMatchingJobs++;
+        job.e = ein;
+        job.x = x;
+        job.y = y;
+        job.ts = ts;
+        job.type = type;
+        job.refSliceIdx = sliceIndex(1);
+        job.pastSliceIdx = sliceIndex(2);
+        job.dt = dt;
+        job.sadVals = sadVals;
+        if (numBlockMatchingJobs >= MAX_BLOCK_MATCHING_JOBS) {
+            processBlockMatchingJobs();
+        }
+    }
 
-        return isDisplayRawInput() ? in : dirPacket;
+    /**
+     * Matches the waiting events in parallel and then processes their results
+     * in order of arrival. Must be called before the slices that the events
+     * are matched on change, i.e. before the slices are rotated, and at the
+     * end of the packet.
+     */
+    private void processBlockMatchingJobs() {
+        if (numBlockMatchingJobs == 0) {
+            return;
+        }
+        if (blockMatchingPool == null) {
+            blockMatchingPool = new ForkJoinPool();
+        }
+        blockMatchingPool.invoke(new BlockMatchingTask(0, numBlockMatchingJobs));
+        final PolarityEvent e0 = e;
+        final int x0 = x, y0 = y, ts0 = ts, type0 = type;
+        final int n = numBlockMatchingJobs;
+        numBlockMatchingJobs = 0;
+        for (int k = 0; k < n; k++) {
+            final BlockMatchingJob job = blockMatchingJobs[k];
+            e = job.e;
+            x = job.x;
+            y = job.y;
+            ts = job.ts;
+            type = job.type;
+            scaleResultCounts[job.result == null ? 0 : job.result.scale]++;
+            processSadResult(job.result, job.e, job.sadVals);
+            job.e = null;
+            job.result = null;
+            job.sadVals = null;
+        }
+        e = e0;
+        x = x0;
+        y = y0;
+        ts = ts0;
+        type = type0;
+    }
+
+    /**
+     * Matches a range of the waiting events, splitting it among the threads of
+     * the pool
+     */
+    private final class BlockMatchingTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+
+        BlockMatchingTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if ((to - from) > BLOCK_MATCHING_TASK_SIZE) {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new BlockMatchingTask(from, mid), new BlockMatchingTask(mid, to));
+                return;
+            }
+            final int searchRange = (2 * searchDistance) + 1;
+            final float[][] sums = new float[searchRange][searchRange];
+            for (int k = from; k < to; k++) {
+                final BlockMatchingJob job = blockMatchingJobs[k];
+                job.result = minSADDistanceOverScales(job.e.x, job.e.y, job.refSliceIdx, job.pastSliceIdx, job.dt, job.sadVals, sums);
+            }
+        }
     }
 
     public void doDefaults() {
@@ -768,6 +968,12 @@ public class PatchMatchFlow extends AbstractMotionFlow implements Observer, Fram
         for (byte[][][] b : slices) {
             clearSlice(b);
         }
+        if (blockMatchingEngine != null) {
+            for (int n = 0; n < numSlices; n++) {
+                blockMatchingEngine.clear(n);
+            }
+        }
+        numBlockMatchingJobs = 0;
 
         currentSliceIdx = 0;  // start by filling slice 0
         currentSlice = slices[currentSliceIdx];
@@ -781,6 +987,15 @@ public class PatchMatchFlow extends AbstractMotionFlow implements Observer, Fram
         clearNonGreedyRegions();
     }
 
+    @Override
+    public synchronized void cleanup() {
+        super.cleanup();
+        if (blockMatchingPool != null) {
+            blockMatchingPool.shutdown();
+            blockMatchingPool = null;
+        }
+    }
+
     @Override
     public void update(Observable o, Object arg) {
         if (!isFilterEnabled()) {
@@ -865,6 +1080,7 @@ public class PatchMatchFlow extends AbstractMotionFlow implements Observer, Fram
      *
      */
     private void rotateSlices() {
+        processBlockMatchingJobs(); // match waiting events before their slices change
         if(e!=null) sliceEndTimeUs[currentSliceIdx]=e.timestamp;
         /*Thus if 0 is current index for current filling slice, then sliceIndex returns 1,2 for pointer =1,2.
         * Then if NUM_SLICES=3, after rotateSlices(),
@@ -872,6 +1088,9 @@ public class PatchMatchFlow extends AbstractMotionFlow implements Observer, Fram
          */
         sliceSummedSADValues[currentSliceIdx] = 0; // clear out current collecting slice which becomes the oldest slice after rotation
         sliceSummedSADCounts[currentSliceIdx] = 0; // clear out current collecting slice which becomes the oldest slice after rotation
+        if (blockMatchingEngine != null) {
+            blockMatchingEngine.sliceCompleted(currentSliceIdx); // it becomes the reference slice
+        }
         currentSliceIdx--;
         if (currentSliceIdx < 0) {
             currentSliceIdx = numSlices - 1;
@@ -879,6 +1098,9 @@ public class PatchMatchFlow extends AbstractMotionFlow implements Observer, Fram
         currentSlice = slices[currentSliceIdx];
         //sliceStartTimeUs[currentSliceIdx] = ts; // current event timestamp; set on first event to slice
         clearSlice(currentSlice);
+        if (blockMatchingEngine != null) {
+            blockMatchingEngine.clear(currentSliceIdx);
+        }
         clearAreaCounts();
         eventCounter = 0;
         sliceDeltaT = ts - sliceLastTs;
@@ -950,6 +1172,9 @@ public class PatchMatchFlow extends AbstractMotionFlow implements Observer, Fram
                 cv = -sliceMaxValue;
             }
             currentSlice[s][xx][yy] = (byte) cv;
+            if (blockMatchingEngine != null) {
+                blockMatchingEngine.set(currentSliceIdx, s, xx, yy, (byte) cv);
+            }
         }
         if (sliceMethod == SliceMethod.AreaEventNumber) {
             if (areaCounts == null) {
@@ -1026,21 +1251,28 @@ public class PatchMatchFlow extends AbstractMotionFlow implements Observer, Fram
      * @param curSlice the slice from which we get the reference block
      * @param subSampleBy the scale to compute this SAD on, 0 for full
      * resolution, 1 for 2x2 subsampled block bitmap, etc
+     * @param sumArray the array for the distances of the search, or null to
+     * use the shared one
+     * @param useEngine true to compute the distances with the
+     * BlockMatchingEngine, false to use sadDistance
      * @return SADResult that provides the shift and SAD value
      */
 //    private SADResult minHammingDistance(int x, int y, BitSet prevSlice, BitSet curSlice) {
-    private SADResult minSADDistance(int x, int y, byte[][][] curSlice, byte[][][] prevSlice, int subSampleBy) {
+    private SADResult minSADDistance(int x, int y, int curSliceIdx, int prevSliceIdx, int subSampleBy, float[][] sumArray, boolean useEngine) {
         SADResult result = new SADResult();
         float minSum = Float.MAX_VALUE, sum;
+        final byte[][][] curSlice = slices[curSliceIdx], prevSlice = slices[prevSliceIdx];
 
         float FSDx = 0, FSDy = 0, DSDx = 0, DSDy = 0;  // This is for testing the DS search accuracy.
         final int searchRange = (2 * searchDistance) + 1; // The maximum search distance in this subSampleBy slice
-        if ((sumArray == null) || (sumArray.length != searchRange)) {
-            sumArray = new float[searchRange][searchRange];
-        } else {
-            for (float[] row : sumArray) {
-                Arrays.fill(row, Float.MAX_VALUE);
+        if (sumArray == null) {
+            if ((this.sumArray == null) || (this.sumArray.length != searchRange)) {
+                this.sumArray = new float[searchRange][searchRange];
             }
+            sumArray = this.sumArray;
+        }
+        for (float[] row : sumArray) {
+            Arrays.fill(row, Float.MAX_VALUE);
         }
 
         if (outputSearchErrorInfo) {
@@ -1099,7 +1331,9 @@ public class PatchMatchFlow extends AbstractMotionFlow implements Observer, Fram
 
                         /* We just calculate the blocks that haven't been calculated before */
                         if (computedFlg[xidx][yidx] == false) {
-                            sumArray[xidx][yidx] = sadDistance(x, y, dx, dy, curSlice, prevSlice, subSampleBy);
+                            sumArray[xidx][yidx] = useEngine
+                                    ? blockMatchingEngine.distance(x, y, dx, dy, curSliceIdx, prevSliceIdx, subSampleBy, minSum)
+                                    : sadDistance(x, y, dx, dy, curSlice, prevSlice, subSampleBy);
                             computedFlg[xidx][yidx] = true;
                             if (outputSearchErrorInfo) {
                                 DSAverageNum++;
@@ -1144,7 +1378,9 @@ public class PatchMatchFlow extends AbstractMotionFlow implements Observer, Fram
 
                     /* We just calculate the blocks that haven't been calculated before */
                     if (computedFlg[xidx][yidx] == false) {
-                        sumArray[xidx][yidx] = sadDistance(x, y, dx, dy, curSlice, prevSlice, subSampleBy);
+                        sumArray[xidx][yidx] = useEngine
+                                ? blockMatchingEngine.distance(x, y, dx, dy, curSliceIdx, prevSliceIdx, subSampleBy, minSum)
+                                : sadDistance(x, y, dx, dy, curSlice, prevSlice, subSampleBy);
                         computedFlg[xidx][yidx] = true;
                         if (outputSearchErrorInfo) {
                             DSAverageNum++;
@@ -1177,7 +1413,9 @@ public class PatchMatchFlow extends AbstractMotionFlow implements Observer, Fram
             case FullSearch:
                 for (dx = -searchDistance; dx <= searchDistance; dx++) {
                     for (dy = -searchDistance; dy <= searchDistance; dy++) {
-                        sum = sadDistance(x, y, dx, dy, curSlice, prevSlice, subSampleBy);
+                        sum = useEngine
+                                ? blockMatchingEngine.distance(x, y, dx, dy, curSliceIdx, prevSliceIdx, subSampleBy, minSum)
+                                : sadDistance(x, y, dx, dy, curSlice, prevSlice, subSampleBy);
                         sumArray[dx + searchDistance][dy + searchDistance] = sum;
                         if (sum < minSum) {
                             minSum = sum;
@@ -1963,6 +2201,10 @@ public class PatchMatchFlow extends AbstractMotionFlow implements Observer, Fram
             }
 //            log.info("allocated slice memory");
         }
+        if ((slices != null) && ((blockMatchingEngine == null) || !blockMatchingEngine.hasSize(numSlices, numScales, subSizeX, subSizeY))) {
+            blockMatchingEngine = new BlockMatchingEngine(numSlices, numScales, subSizeX, subSizeY);
+            copySlicesToBlockMatchingEngine();
+        }
         if (lastTimesMap != null) {
             lastTimesMap = null; // save memory
         }
@@ -2165,6 +2407,27 @@ public class PatchMatchFlow extends AbstractMotionFlow implements Observer, Fram
         }
     }
 
+    /**
+     * Copies the slices to a new BlockMatchingEngine, which afterwards follows
+     * them incrementally
+     */
+    private void copySlicesToBlockMatchingEngine() {
+        for (int n = 0; n < numSlices; n++) {
+            for (int s = 0; s < numScales; s++) {
+                final byte[][] b = slices[n][s];
+                final int nx = Math.min(b.length, (subSizeX >> s) + 1), ny = Math.min(b[0].length, (subSizeY >> s) + 1);
+                for (int xx = 0; xx < nx; xx++) {
+                    for (int yy = 0; yy < ny; yy++) {
+                        blockMatchingEngine.set(n, s, xx, yy, b[xx][yy]);
+                    }
+                }
+            }
+            if (n != currentSliceIdx) {
+                blockMatchingEngine.sliceCompleted(n);
+            }
+        }
+    }
+
     private int dim = blockDimension + (2 * searchDistance);
 
     protected static final String G_SEARCH_AREA_R_REF_BLOCK_AREA_B_BEST_MATCH = "G: search area\nR: ref block area\nB: best match";
@@ -2600,4 +2863,76 @@ public class PatchMatchFlow extends AbstractMotionFlow implements Observer, Fram
         putFloat("nonGreedyFractionToBeServiced", nonGreedyFractionToBeServiced);
     }
 
+    /**
+     * @return the useBlockMatchingEngine
+     */
+    public boolean isUseBlockMatchingEngine() {
+        return useBlockMatchingEngine;
+    }
+
+    /**
+     * @param useBlockMatchingEngine true to compute block distances with the
+     * BlockMatchingEngine, false to use the original sadDistance
+     */
+    synchronized public void setUseBlockMatchingEngine(boolean useBlockMatchingEngine) {
+        boolean old = this.useBlockMatchingEngine;
+        this.useBlockMatchingEngine = useBlockMatchingEngine;
+        putBoolean("useBlockMatchingEngine", useBlockMatchingEngine);
+        getSupport().firePropertyChange("useBlockMatchingEngine", old, useBlockMatchingEngine);
+    }
+
+    /**
+     * @return the parallelBlockMatching
+     */
+    public boolean isParallelBlockMatching() {
+        return parallelBlockMatching;
+    }
+
+    /**
+     * @param parallelBlockMatching true to match the events of each slice
+     * interval in parallel
+     */
+    synchronized public void setParallelBlockMatching(boolean parallelBlockMatching) {
+        boolean old = this.parallelBlockMatching;
+        this.parallelBlockMatching = parallelBlockMatching;
+        putBoolean("parallelBlockMatching", parallelBlockMatching);
+        if (!parallelBlockMatching && blockMatchingPool != null) {
+            blockMatchingPool.shutdown();
+            blockMatchingPool = null;
+        }
+        getSupport().firePropertyChange("parallelBlockMatching", old, parallelBlockMatching);
+    }
+
+    /**
+     * @return the blockMatchingParityCheck
+     */
+    public boolean isBlockMatchingParityCheck() {
+        return blockMatchingParityCheck;
+    }
+
+    /**
+     * @param blockMatchingParityCheck true to compute every match with both
+     * methods and log differences. Statistics are logged when the check is
+     * turned off.
+     */
+    synchronized public void setBlockMatchingParityCheck(boolean blockMatchingParityCheck) {
+        boolean old = this.blockMatchingParityCheck;
+        this.blockMatchingParityCheck = blockMatchingParityCheck;
+        if (blockMatchingParityCheck && !old) {
+            parityChecks = 0;
+            parityMismatches = 0;
+            parityEngineNs = 0;
+            parityLegacyNs = 0;
+        } else if (!blockMatchingParityCheck && old) {
+            log.info(getBlockMatchingParityStatistics());
+        }
+        getSupport().firePropertyChange("blockMatchingParityCheck", old, blockMatchingParityCheck);
+    }
+
+    private String getBlockMatchingParityStatistics() {
+        return String.format("block matching parity check: %d of %d matches differ; %.2f us per match with BlockMatchingEngine, %.2f us with original sadDistance",
+                parityMismatches, parityChecks,
+                parityChecks > 0 ? parityEngineNs * 1e-3 / parityChecks : 0, parityChecks > 0 ? parityLegacyNs * 1e-3 / parityChecks : 0);
+    }
+
 }
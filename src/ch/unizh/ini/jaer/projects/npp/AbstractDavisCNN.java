@@ -55,7 +55,10 @@ public abstract class AbstractDavisCNN {
     protected String netname;
     /**
      * This PropertyChange is emitted when either APS or DVS net outputs. The
-     * new value is the network. The old value is null.
+     * new value is the network. The old value is null. A batch of DVS frames
+     * processed by DavisCNNPureJava.processInputBatch emits it only once, from
+     * the thread that processed the batch, which is the inference worker
+     * thread with asynchronous DVS frame processing.
      */
     public static final String EVENT_MADE_DECISION = "networkMadeDecision";
     protected String notes;
@@ -137,7 +140,8 @@ public abstract class AbstractDavisCNN {
 
     /**
      * Net fires event EVENT_MADE_DECISION when it makes a decision. New value
-     * is the net itself.
+     * is the net itself. Listeners may be called from the inference worker
+     * thread, see EVENT_MADE_DECISION.
      *
      * @return the support
      */
@@ -127,6 +127,10 @@ public abstract class AbstractDavisCNNProcessor extends EventFilter2D implements
     private int imageHeight = getInt("imageHeight", 64);
     private float imageMean = getFloat("imageMean", 0);
     private float imageScale = getFloat("imageScale", 1);
+    protected boolean asyncDvsFrameProcessing = getBoolean("asyncDvsFrameProcessing", false);
+    protected int dvsFrameBatchSize = getInt("dvsFrameBatchSize", 4);
+    protected int numInferenceThreads = getInt("numInferenceThreads", Runtime.getRuntime().availableProcessors());
+    private AsyncCNNInference asyncInference = null; // created for the first DVS frame if asyncDvsFrameProcessing is set
 
     public AbstractDavisCNNProcessor(AEChip chip) {
         super(chip);
@@ -153,6 +157,9 @@ public abstract class AbstractDavisCNNProcessor extends EventFilter2D implements
         setPropertyTooltip(anal, "processDVSTimeSlices", "sends DVS time slices to convnet");
         setPropertyTooltip(anal, "processAPSDVSTogetherInAPSNet", "sends APS frames and DVS time slices to single convnet");
         setPropertyTooltip(anal, "zeroPadding", "CNN uses zero padding; must be set properly according to CNN to run CNN");
+        setPropertyTooltip(anal, "asyncDvsFrameProcessing", "<html>(pure Java CNN only) processes DVS frames on a separate thread in batches of up to dvsFrameBatchSize frames, so that event processing does not wait for the CNN. <br>The oldest frames are dropped if the CNN cannot keep up");
+        setPropertyTooltip(anal, "dvsFrameBatchSize", "(pure Java CNN only) largest number of DVS frames that are processed together with asyncDvsFrameProcessing");
+        setPropertyTooltip(anal, "numInferenceThreads", "(pure Java CNN only) number of threads computing the convolutions of each layer");
         setPropertyTooltip(anal, "processingTimeLimitMs", "<html>time limit for processing packet in ms to process OF events (events still accumulate). <br> Set to 0 to disable. <p>Alternative to the system EventPacket timelimiter, which cannot be used here because we still need to accumulate and render the events");
         setPropertyTooltip(tf, "makeRGBFrames", "(TensorFlow only) Tells the CNN to make RGB input from grayscale DVS/APS frames; use it with a network configured for RGB input");
         setPropertyTooltip(tf, "inputLayerName", "(TensorFlow only) Input layer; parse it from loading the network and examining console output for layers for lines starting with ****");
@@ -350,9 +357,14 @@ public abstract class AbstractDavisCNNProcessor extends EventFilter2D implements
     protected void loadNetwork(File f) {
         try {
             if (f.exists() && f.isFile()) {
+                closeAsyncInference();
+                if (apsDvsNet instanceof DavisCNNPureJava) {
+                    ((DavisCNNPureJava) apsDvsNet).setNumThreads(1); // stops the threads of the old network
+                }
                 switch (getExtension(f)) {
                     case "xml": // from caffe2jaer tool
                         apsDvsNet = new DavisCNNPureJava(this);
+                        ((DavisCNNPureJava) apsDvsNet).setNumThreads(numInferenceThreads);
                         apsDvsNet.loadNetwork(f);
                         break;
                     case "pb": // tensorflow
@@ -415,6 +427,9 @@ public abstract class AbstractDavisCNNProcessor extends EventFilter2D implements
                     startTime = System.nanoTime();
                 }
                 if (processDVSTimeSlices) {
+                    if (submitDvsFrame((DvsFrame) evt.getNewValue(), null)) {
+                        break; // processed on the inference thread
+                    }
                     apsDvsNet.processDvsFrame((DvsFrame) evt.getNewValue()); // generates PropertyChange EVENT_MADE_DECISION
                     if (measurePerformance) {
                         long dt = System.nanoTime() - startTime;
@@ -426,6 +441,62 @@ public abstract class AbstractDavisCNNProcessor extends EventFilter2D implements
         }
     }
 
+    /**
+     * Queues a DVS frame for processing on the inference thread if
+     * asyncDvsFrameProcessing is set and the network is a DavisCNNPureJava.
+     * A frame of a DvsFramer ring that can be held (numFrameBuffers>1) is
+     * queued as it is and released after it was processed; any other frame is
+     * copied, so it may be reused right away.
+     *
+     * @param frame the DVS frame
+     * @param tag passed to asyncOutputAvailable with the output of this frame
+     * @return true if the frame was queued, false if it must be processed
+     * here
+     */
+    protected boolean submitDvsFrame(DvsFrame frame, Object tag) {
+        if (!asyncDvsFrameProcessing || !(apsDvsNet instanceof DavisCNNPureJava)) {
+            return false;
+        }
+        final DavisCNNPureJava net = (DavisCNNPureJava) apsDvsNet;
+        if ((asyncInference == null) || (asyncInference.getNet() != net)) {
+            closeAsyncInference();
+            asyncInference = new AsyncCNNInference(net, dvsFrameBatchSize, new AsyncCNNInference.Listener() {
+                @Override
+                public void outputAvailable(Object tag, float[] output) {
+                    asyncOutputAvailable(tag, output);
+                }
+            });
+        }
+        if (frame.hold()) {
+            return asyncInference.submit(frame, tag);
+        }
+        return asyncInference.submit(net.getInputVector(frame), tag);
+    }
+
+    /**
+     * Called on the inference thread with the output of each frame queued by
+     * submitDvsFrame. Override to use the output; the network has already
+     * fired EVENT_MADE_DECISION for the batch the frame was processed in.
+     *
+     * @param tag the tag the frame was submitted with
+     * @param output the output activations vector of the frame
+     */
+    protected void asyncOutputAvailable(Object tag, float[] output) {
+        final AsyncCNNInference a = asyncInference;
+        final AbstractDavisCNN net = apsDvsNet;
+        if (measurePerformance && (a != null) && (net != null)) {
+            performanceString = String.format("%s; %s", a.getPerformanceString(), net.getPerformanceString());
+        }
+    }
+
+    private void closeAsyncInference() {
+        if (asyncInference != null) {
+            log.info(asyncInference.toString());
+            asyncInference.close();
+            asyncInference = null;
+        }
+    }
+
     @Override
     public void annotate(GLAutoDrawable drawable) {
         GL2 gl = drawable.getGL().getGL2();
@@ -717,6 +788,7 @@ public abstract class AbstractDavisCNNProcessor extends EventFilter2D implements
     @Override
     public synchronized void cleanup() {
         super.cleanup();
+        closeAsyncInference();
         if (showActivations && apsDvsNet != null) {
             apsDvsNet.cleanup();
         }
@@ -842,4 +914,65 @@ public abstract class AbstractDavisCNNProcessor extends EventFilter2D implements
         putFloat("imageScale", imageScale);
     }
 
+    /**
+     * @return the asyncDvsFrameProcessing
+     */
+    public boolean isAsyncDvsFrameProcessing() {
+        return asyncDvsFrameProcessing;
+    }
+
+    /**
+     * When set, DVS frames are processed in batches on a worker thread, which
+     * then fires AbstractDavisCNN.EVENT_MADE_DECISION once per batch.
+     *
+     * @param asyncDvsFrameProcessing the asyncDvsFrameProcessing to set
+     */
+    public synchronized void setAsyncDvsFrameProcessing(boolean asyncDvsFrameProcessing) {
+        this.asyncDvsFrameProcessing = asyncDvsFrameProcessing;
+        putBoolean("asyncDvsFrameProcessing", asyncDvsFrameProcessing);
+        if (!asyncDvsFrameProcessing) {
+            closeAsyncInference();
+        }
+    }
+
+    /**
+     * @return the dvsFrameBatchSize
+     */
+    public int getDvsFrameBatchSize() {
+        return dvsFrameBatchSize;
+    }
+
+    /**
+     * @param dvsFrameBatchSize the dvsFrameBatchSize to set
+     */
+    public synchronized void setDvsFrameBatchSize(int dvsFrameBatchSize) {
+        if (dvsFrameBatchSize < 1) {
+            dvsFrameBatchSize = 1;
+        }
+        this.dvsFrameBatchSize = dvsFrameBatchSize;
+        putInt("dvsFrameBatchSize", dvsFrameBatchSize);
+        closeAsyncInference(); // made again with the new size for the next frame
+    }
+
+    /**
+     * @return the numInferenceThreads
+     */
+    public int getNumInferenceThreads() {
+        return numInferenceThreads;
+    }
+
+    /**
+     * @param numInferenceThreads the numInferenceThreads to set
+     */
+    public void setNumInferenceThreads(int numInferenceThreads) {
+        if (numInferenceThreads < 1) {
+            numInferenceThreads = 1;
+        }
+        this.numInferenceThreads = numInferenceThreads;
+        putInt("numInferenceThreads", numInferenceThreads);
+        if (apsDvsNet instanceof DavisCNNPureJava) {
+            ((DavisCNNPureJava) apsDvsNet).setNumThreads(numInferenceThreads);
+        }
+    }
+
 }
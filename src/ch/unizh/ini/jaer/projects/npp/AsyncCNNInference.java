@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2017 Tobi.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package ch.unizh.ini.jaer.projects.npp;
+
+import java.util.ArrayDeque;
+import java.util.logging.Logger;
+
+/**
+ * Runs a DavisCNNPureJava on its own thread, so that the event processing
+ * thread does not wait for the network.
+ * <p>
+ * Input vectors are queued with a tag, e.g. the ROI they came from. The worker
+ * thread takes up to batchSize queued inputs at once and processes them in one
+ * pass with DavisCNNPureJava.processInputBatch, then calls the listener with
+ * the output of each input. The queue holds at most two batches; when the
+ * network cannot keep up, the oldest inputs are dropped, so submitting never
+ * blocks and the outputs stay recent.
+ * <p>
+ * A DvsFrame held by its consumer (DvsFrame.hold()) can be queued instead of
+ * an input vector. It is converted to the input vector on the worker thread
+ * and released when it was processed or dropped, so the event processing
+ * thread fills the next frame of the DvsFramer ring meanwhile without copying
+ * the frame.
+ */
+final class AsyncCNNInference {
+
+    private static final Logger log = Logger.getLogger("AsyncCNNInference");
+
+    /** Receives the network outputs, on the worker thread */
+    interface Listener {
+
+        /**
+         * Called for each processed input, in the order of submission.
+         *
+         * @param tag the tag the input was submitted with
+         * @param output the output activations vector
+         */
+        void outputAvailable(Object tag, float[] output);
+    }
+
+    private final DavisCNNPureJava net;
+    private final int batchSize, capacity;
+    private final Listener listener;
+    private final ArrayDeque<Object> inputs = new ArrayDeque<Object>(); // float[] or held DvsFrame
+    private final ArrayDeque<Object> tags = new ArrayDeque<Object>();
+    private final Thread worker;
+    private volatile boolean closed = false;
+    private long submitted = 0, dropped = 0, batches = 0, processed = 0, processingNs = 0;
+    private float lastBatchMs = 0;
+    private int lastBatchSize = 0;
+
+    /**
+     * Starts the worker thread.
+     *
+     * @param net the network
+     * @param batchSize the largest number of inputs processed in one pass
+     * @param listener receives the outputs
+     */
+    AsyncCNNInference(DavisCNNPureJava net, int batchSize, Listener listener) {
+        this.net = net;
+        this.batchSize = Math.max(1, batchSize);
+        this.capacity = 2 * this.batchSize;
+        this.listener = listener;
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                processQueue();
+            }
+        }, "AsyncCNNInference");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Queues an input, dropping the oldest queued input if the queue is full.
+     *
+     * @param input the input vector, which must not be modified afterwards
+     * @param tag passed back to the listener with the output
+     * @return false if the inference was closed
+     */
+    synchronized boolean submit(float[] input, Object tag) {
+        return queue(input, tag);
+    }
+
+    /**
+     * Queues a held frame, dropping the oldest queued input if the queue is
+     * full. The frame is released after it is processed or dropped, or right
+     * away if the inference was closed.
+     *
+     * @param frame the frame, held by the caller
+     * @param tag passed back to the listener with the output
+     * @return false if the inference was closed
+     */
+    synchronized boolean submit(DvsFramer.DvsFrame frame, Object tag) {
+        if (!queue(frame, tag)) {
+            if (frame != null) {
+                frame.release();
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private boolean queue(Object input, Object tag) {
+        if (closed || (input == null)) {
+            return false;
+        }
+        if (inputs.size() >= capacity) {
+            release(inputs.removeFirst());
+            tags.removeFirst();
+            dropped++;
+        }
+        inputs.addLast(input);
+        tags.addLast(tag == null ? this : tag); // ArrayDeque does not take null
+        submitted++;
+        notifyAll();
+        return true;
+    }
+
+    private static void release(Object input) {
+        if (input instanceof DvsFramer.DvsFrame) {
+            ((DvsFramer.DvsFrame) input).release();
+        }
+    }
+
+    private void processQueue() {
+        float[] batch = null;
+        final Object[] batchInputs = new Object[batchSize];
+        final Object[] batchTags = new Object[batchSize];
+        while (!closed) {
+            int n;
+            synchronized (this) {
+                while (inputs.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // closed
+                    }
+                }
+                if (closed) {
+                    break;
+                }
+                n = Math.min(batchSize, inputs.size());
+                for (int i = 0; i < n; i++) {
+                    batchInputs[i] = inputs.removeFirst();
+                    batchTags[i] = tags.removeFirst();
+                }
+            }
+            try {
+                // held frames are converted here, outside of the lock, and released as soon as they are copied
+                int length = -1;
+                for (int i = 0; i < n; i++) {
+                    float[] input;
+                    if (batchInputs[i] instanceof DvsFramer.DvsFrame) {
+                        final DvsFramer.DvsFrame frame = (DvsFramer.DvsFrame) batchInputs[i];
+                        batchInputs[i] = null;
+                        try {
+                            input = net.getInputVector(frame);
+                        } finally {
+                            frame.release();
+                        }
+                    } else {
+                        input = (float[]) batchInputs[i];
+                    }
+                    if (length < 0) {
+                        length = input.length;
+                        if ((batch == null) || (batch.length != (n * length))) {
+                            batch = new float[n * length];
+                        }
+                    }
+                    System.arraycopy(input, 0, batch, i * length, length);
+                }
+                final long start = System.nanoTime();
+                final float[][] outputs = net.processInputBatch(batch, n);
+                final long dt = System.nanoTime() - start;
+                synchronized (this) {
+                    batches++;
+                    processed += n;
+                    processingNs += dt;
+                    lastBatchMs = 1e-6f * dt;
+                    lastBatchSize = n;
+                }
+                if (outputs != null) {
+                    for (int i = 0; i < n; i++) {
+                        listener.outputAvailable(batchTags[i] == this ? null : batchTags[i], outputs[i]);
+                    }
+                }
+            } catch (RuntimeException e) {
+                log.warning("dropped batch of " + n + " inputs: " + e.toString());
+            }
+            for (int i = 0; i < n; i++) {
+                release(batchInputs[i]); // frames not converted because of an exception
+                batchInputs[i] = null;
+                batchTags[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Stops the worker thread after the batch in progress and discards the
+     * queued inputs.
+     */
+    void close() {
+        synchronized (this) {
+            closed = true;
+            for (Object input : inputs) {
+                release(input);
+            }
+            inputs.clear();
+            tags.clear();
+            notifyAll();
+        }
+        if (Thread.currentThread() != worker) {
+            try {
+                worker.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** @return the network this inference runs */
+    DavisCNNPureJava getNet() {
+        return net;
+    }
+
+    /** @return the largest number of inputs processed in one pass */
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    /** @return a short summary of the processing time for the annotation */
+    synchronized String getPerformanceString() {
+        final float fps = lastBatchMs > 0 ? (1e3f * lastBatchSize) / lastBatchMs : 0;
+        return String.format("Batch of %d frames: %.1fms (%.1f FPS); %d dropped", lastBatchSize, lastBatchMs, fps, dropped);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("AsyncCNNInference: %d submitted, %d processed in %d batches of up to %d, %d dropped, %.2f ms per frame",
+                submitted, processed, batches, batchSize, dropped, processed > 0 ? (processingNs * 1e-6) / processed : 0);
+    }
+}
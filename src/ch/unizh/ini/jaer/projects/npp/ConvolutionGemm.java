@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2017 Tobi.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package ch.unizh.ini.jaer.projects.npp;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Computes the convolutions of a DavisCNNPureJava.ConvLayer as one matrix
+ * product, the usual im2col lowering.
+ * <p>
+ * The input patch under the kernel at every output pixel becomes one column of
+ * the column matrix B[K][N], with K=nInputMaps*kernelDim*kernelDim rows and
+ * N=outputMapLength*batchSize columns, so that a batch of frames is convolved
+ * in the same pass. The kernels are packed as the rows of A[nOutputMaps][K],
+ * and the output maps are C=A*B, i.e. for a single frame exactly the layout of
+ * the ConvLayer activations. The product is blocked over K and N so that a
+ * block of B stays in cache while all output maps of a thread use it, and the
+ * innermost loop runs over contiguous columns. Different output maps are
+ * computed by different threads.
+ * <p>
+ * All arrays use the layouts of DavisCNNPureJava: maps are stored one after
+ * the other, each by x and then y.
+ */
+final class ConvolutionGemm {
+
+    /** Rows of B in a cache block */
+    private static final int K_BLOCK = 64;
+    /** Columns of B in a cache block */
+    private static final int N_BLOCK = 512;
+    /** Multiply-adds below which the product is not split among threads */
+    private static final long MIN_PARALLEL_WORK = 1 << 16;
+
+    private ConvolutionGemm() {
+    }
+
+    /**
+     * Fills the columns of one frame of the column matrix.
+     *
+     * @param in the input activations
+     * @param inOffset the start of the frame in in
+     * @param nInputMaps number of input maps
+     * @param inputMapDim the width and height of the square input maps
+     * @param kernelDim the width and height of the kernels
+     * @param outputMapDim the width and height of the output maps
+     * @param zeroPadding true for the zero padding of ConvLayer, where the
+     * kernel is centered on each input pixel and pixels farther than
+     * kernelDim/2 from the left and bottom edges are treated as zero, as in
+     * ConvLayer.conv
+     * @param col the column matrix, K rows of colStride entries
+     * @param colStride the number of columns of col
+     * @param colOffset the first column of this frame
+     */
+    static void im2col(float[] in, int inOffset, int nInputMaps, int inputMapDim, int kernelDim, int outputMapDim,
+            boolean zeroPadding, float[] col, int colStride, int colOffset) {
+        final int inputMapLength = inputMapDim * inputMapDim, half = kernelDim / 2;
+        int row = 0;
+        for (int inputMap = 0; inputMap < nInputMaps; inputMap++) {
+            final int mapOffset = inOffset + (inputMap * inputMapLength);
+            for (int xx = 0; xx < kernelDim; xx++) {
+                for (int yy = 0; yy < kernelDim; yy++) {
+                    final int c0 = (row * colStride) + colOffset;
+                    if (!zeroPadding) {
+                        for (int xo = 0; xo < outputMapDim; xo++) {
+                            System.arraycopy(in, mapOffset + ((xo + xx) * inputMapDim) + yy, col, c0 + (xo * outputMapDim), outputMapDim);
+                        }
+                    } else {
+                        for (int xo = 0; xo < outputMapDim; xo++) {
+                            final int px = xo + xx; // coordinate in the padded input
+                            final int c = c0 + (xo * outputMapDim);
+                            if ((px < half) || (px > (inputMapDim - half))) {
+                                for (int yo = 0; yo < outputMapDim; yo++) {
+                                    col[c + yo] = 0;
+                                }
+                                continue;
+                            }
+                            final int i = mapOffset + ((px - half) * inputMapDim) - half;
+                            for (int yo = 0; yo < outputMapDim; yo++) {
+                                final int py = yo + yy;
+                                col[c + yo] = ((py < half) || (py > (inputMapDim - half))) ? 0 : in[i + py];
+                            }
+                        }
+                    }
+                    row++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes C=A*B, splitting the rows of C among threads.
+     *
+     * @param executor the threads, or null to compute on the caller's thread
+     * @param numThreads the number of parts to split the rows into
+     * @param a A[m][k]
+     * @param b B[k][n]
+     * @param c C[m][n], overwritten
+     * @param m
+     * @param k
+     * @param n
+     */
+    static void multiply(ExecutorService executor, int numThreads, final float[] a, final float[] b, final float[] c, int m, final int k, final int n) {
+        final int parts = Math.min(numThreads, m);
+        if ((executor == null) || (parts <= 1) || (((long) m * k * n) < MIN_PARALLEL_WORK)) {
+            multiply(a, b, c, 0, m, k, n);
+            return;
+        }
+        final ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>(parts);
+        for (int p = 0; p < parts; p++) {
+            final int from = (p * m) / parts, to = ((p + 1) * m) / parts;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    multiply(a, b, c, from, to, k, n);
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Void> f : executor.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while computing convolutions", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("could not compute convolutions", e.getCause());
+        }
+    }
+
+    /** Computes rows mFrom to mTo-1 of C=A*B */
+    private static void multiply(float[] a, float[] b, float[] c, int mFrom, int mTo, int k, int n) {
+        for (int i = mFrom * n; i < mTo * n; i++) {
+            c[i] = 0;
+        }
+        for (int k0 = 0; k0 < k; k0 += K_BLOCK) {
+            final int k1 = Math.min(k, k0 + K_BLOCK);
+            for (int n0 = 0; n0 < n; n0 += N_BLOCK) {
+                final int n1 = Math.min(n, n0 + N_BLOCK);
+                for (int row = mFrom; row < mTo; row++) {
+                    final int aRow = row * k, cRow = row * n;
+                    for (int kk = k0; kk < k1; kk++) {
+                        final float w = a[aRow + kk];
+                        final int bRow = kk * n;
+                        for (int j = n0; j < n1; j++) {
+                            c[cRow + j] += w * b[bRow + j];
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -26,6 +26,9 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.BoxLayout;
 import javax.swing.JFrame;
@@ -98,6 +101,9 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
     public OutputOrInnerProductFullyConnectedLayer outputLayer; // the final layer, not part of layers
     protected boolean normalizeKernelDisplayWeightsGlobally = true;
     protected boolean normalizeActivationDisplayGlobally = true;
+    protected boolean gemmEnabled = true; // compute convolutions as matrix products, see ConvolutionGemm
+    protected int numThreads = 1; // threads computing the output maps of each conv layer
+    private ExecutorService executor = null; // created on first use if numThreads>1
 
     public DavisCNNPureJava(AbstractDavisCNNProcessor processor) {
         super(processor);
@@ -109,7 +115,7 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
      * @param subsampler
      * @return the output activations vector
      */
-    public float[] processDvsFrame(DvsFrame subsampler) {
+    synchronized public float[] processDvsFrame(DvsFrame subsampler) {
         inputLayer.processDvsTimeslice(subsampler);
         setLastInputTypeProcessedWasApsFrame(false);
         return processLayers();
@@ -122,7 +128,7 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
      * @return the vector of output values
      * @see #getActivations
      */
-    public float[] processAPSFrame(AEFrameChipRenderer frame) {
+    synchronized public float[] processAPSFrame(AEFrameChipRenderer frame) {
         if (inputLayer == null) {
             return null;
         }
@@ -140,7 +146,7 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
      * @return the vector of output values
      * @see #getActivations
      */
-    public float[] processInputPatchFrame(AEFrameChipRenderer frame, int offX, int offY) {
+    synchronized public float[] processInputPatchFrame(AEFrameChipRenderer frame, int offX, int offY) {
         inputLayer.processInputFramePatch(frame, offX, offY);
         setLastInputTypeProcessedWasApsFrame(true);
         return processLayers();
@@ -161,13 +167,7 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
     private float[] processLayers() {
         operationCounter = 0;
         startProcessingTimeNs = System.nanoTime();
-        for (int i = 1; i < nLayers; i++) { // skip input layer, whose activations are computed by reading in frame and downsampling it
-            layers[i].compute(layers[i - 1]);
-        }
-        outputLayer.compute(layers[nLayers - 1]);
-        if (softMaxOutput) {
-            outputLayer.computeSoftMax();
-        }
+        computeLayers();
 
         if (isPrintActivations()) {
             printActivations();
@@ -180,6 +180,155 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
         getSupport().firePropertyChange(EVENT_MADE_DECISION, null, this);
         return outputLayer.activations;
     }
+
+    private void computeLayers() {
+        for (int i = 1; i < nLayers; i++) { // skip input layer, whose activations are computed by reading in frame and downsampling it
+            layers[i].compute(layers[i - 1]);
+        }
+        outputLayer.compute(layers[nLayers - 1]);
+        if (softMaxOutput) {
+            outputLayer.computeSoftMax();
+        }
+    }
+
+    /**
+     * Processes a batch of inputs in one pass through the network. With
+     * gemmEnabled, the convolutions of all frames of a conv layer are computed
+     * as a single matrix product that is split among numThreads threads;
+     * otherwise the frames are processed one after the other.
+     * <p>
+     * The layers are left with the activations of the last frame for display,
+     * and EVENT_MADE_DECISION is fired once for the batch, after the network
+     * is released, so listeners may take their own locks.
+     *
+     * @param inputs the input vectors, e.g. from getInputVector, one after
+     * the other
+     * @param batchSize the number of input vectors
+     * @return the output activations vector of each input, or null if no
+     * network is loaded
+     * <p>
+     * EVENT_MADE_DECISION is fired once for the whole batch, on the calling
+     * thread, and the output layer then holds the activations of the last
+     * input. With AsyncCNNInference this is the inference worker thread, so
+     * listeners must not assume they are called from the filter thread.
+     */
+    public float[][] processInputBatch(float[] inputs, int batchSize) {
+        final float[][] outputs = new float[batchSize][];
+        synchronized (this) {
+            if (inputLayer == null) {
+                return null;
+            }
+            final int inputLength = inputLayer.nUnits;
+            if (inputs.length != (batchSize * inputLength)) {
+                throw new IllegalArgumentException("inputs.length=" + inputs.length + " is not batchSize*inputLayer.nUnits=" + batchSize + "*" + inputLength);
+            }
+            operationCounter = 0;
+            startProcessingTimeNs = System.nanoTime();
+            if ((inputLayer.activations == null) || (inputLayer.activations.length != inputLength)) {
+                inputLayer.activations = new float[inputLength];
+            }
+            if (gemmEnabled) {
+                float[] a = inputs;
+                for (int i = 1; i < nLayers; i++) {
+                    a = layers[i].computeBatch(layers[i - 1], a, batchSize);
+                }
+                a = outputLayer.computeBatch(layers[nLayers - 1], a, batchSize);
+                final int nUnits = a.length / batchSize;
+                for (int f = 0; f < batchSize; f++) {
+                    outputs[f] = Arrays.copyOfRange(a, f * nUnits, (f + 1) * nUnits);
+                }
+                System.arraycopy(inputs, (batchSize - 1) * inputLength, inputLayer.activations, 0, inputLength);
+            } else {
+                for (int f = 0; f < batchSize; f++) {
+                    System.arraycopy(inputs, f * inputLength, inputLayer.activations, 0, inputLength);
+                    computeLayers();
+                    outputs[f] = outputLayer.activations.clone();
+                }
+            }
+            setLastInputTypeProcessedWasApsFrame(false);
+            if (isPrintActivations()) {
+                printActivations();
+            }
+            if (isPrintWeights()) {
+                printWeights();
+            }
+            processingTimeNs = System.nanoTime() - startProcessingTimeNs;
+            networkRanOnce = true;
+        }
+        getSupport().firePropertyChange(EVENT_MADE_DECISION, null, this);
+        return outputs;
+    }
+
+    /**
+     * Returns a copy of the input layer activations for a DVS frame, for
+     * processInputBatch. The frame may be reused once this returns. It does not
+     * wait for a batch being processed.
+     *
+     * @param frame the DVS frame
+     * @return the input vector, or null if no network is loaded
+     */
+    public float[] getInputVector(DvsFrame frame) {
+        if (inputLayer == null) {
+            return null;
+        }
+        return inputLayer.fillDvsTimeslice(frame, new float[inputLayer.nUnits]);
+    }
+
+    // null if the conv layers run on the caller's thread
+    private ExecutorService getExecutor() {
+        if (numThreads <= 1) {
+            return null;
+        }
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread t = new Thread(r, "DavisCNNPureJava.ConvolutionGemm");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * @return the number of threads computing the output maps of each conv
+     * layer
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @param numThreads the number of threads computing the output maps of
+     * each conv layer, 1 to compute on the caller's thread
+     */
+    synchronized public void setNumThreads(int numThreads) {
+        if (numThreads < 1) {
+            numThreads = 1;
+        }
+        if (numThreads != this.numThreads && executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * @return true if convolutions are computed as matrix products
+     */
+    public boolean isGemmEnabled() {
+        return gemmEnabled;
+    }
+
+    /**
+     * @param gemmEnabled true to compute convolutions as matrix products,
+     * false to use the direct convolution loops, e.g. to check the results
+     */
+    synchronized public void setGemmEnabled(boolean gemmEnabled) {
+        this.gemmEnabled = gemmEnabled;
+    }
     
   
     public void drawActivations() {
@@ -313,6 +462,46 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
          * @param input the input layer to processAPSFrame from
          */
         abstract public void compute(Layer input);
+
+        /**
+         * Computes the activations of a batch of frames; the layer activations
+         * are left with those of the last frame. This default computes the
+         * frames one by one with compute(Layer), using the activations of
+         * input for each frame.
+         *
+         * @param input the input layer, which determines the layout of in
+         * @param in the activations of input for each frame, one after the
+         * other
+         * @param batchSize the number of frames
+         * @return the activations of this layer for each frame, one after the
+         * other
+         */
+        public float[] computeBatch(Layer input, float[] in, int batchSize) {
+            final int inLength = in.length / batchSize;
+            if ((input.activations == null) || (input.activations.length != inLength)) {
+                input.activations = new float[inLength];
+            }
+            float[] out = null;
+            for (int f = 0; f < batchSize; f++) {
+                System.arraycopy(in, f * inLength, input.activations, 0, inLength);
+                compute(input);
+                final int length = activations.length;
+                if (out == null) {
+                    out = new float[batchSize * length];
+                }
+                System.arraycopy(activations, 0, out, f * length, length);
+            }
+            return out;
+        }
+
+        // keeps the last frame of batch activations for display
+        protected void setActivationsFromBatch(float[] batch, int batchSize) {
+            final int length = batch.length / batchSize;
+            if ((activations == null) || (activations.length != length)) {
+                activations = new float[length];
+            }
+            System.arraycopy(batch, batch.length - length, activations, 0, length);
+        }
     }
 
     /**
@@ -445,16 +634,20 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
             if (subsampler == null) {
                 return activations;
             }
+            return fillDvsTimeslice(subsampler, activations);
+        }
 
+        // writes the input activations of a DVS frame to dest
+        private float[] fillDvsTimeslice(DvsFrame subsampler, float[] dest) {
             for (int y = 0; y < height; y++) {
                 for (int x = 0; x < height; x++) {
                     // range is 0-1 in subsampler after normalization; just leave it there. Zero count pixels have value 127/255 in case subsampler does not rectify, and zero if it does.
                     float v = (subsampler.getValueAtPixel(x, y)); // already normalized before PropertyChangeEvent EVENT_NEW_FRAME_AVAILBLE
                     v = debugNet(v, x, y);
-                    activations[o(x, height - y - 1)] = v;
+                    dest[o(x, height - y - 1)] = v;
                 }
             }
-            return activations;
+            return dest;
         }
 
         private int o(int x, int y) {
@@ -720,6 +913,8 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
         private ImageDisplay[] activationDisplays = null;
         private ImageDisplay[][] kernelDisplays = null;
         private int warningCountMax = 10;
+        private float[] packedKernels; // kernels as rows of the matrix of ConvolutionGemm, nOutputMaps*nInputMaps*singleKernelLength
+        private float[] columns, products; // work arrays of the matrix product
 
         private ActivationFunction activationFunction = ActivationFunction.Undefined; // default is the sigmoid, the only choice in DeepLearnToolbox
 
@@ -813,10 +1008,49 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
                 log.warning("input.activations==null");
                 return;
             }
-            if ((inputLayer.activations.length % nInputMaps) != 0 && warningCountMax-- > 0) {
-                log.warning("input.activations.length=" + inputLayer.activations.length + " which is not divisible by nInputMaps=" + nInputMaps);
+            setupDimensions(inputLayer.activations.length);
+
+            if ((activations == null) || (activations.length != activationsLength)) {
+                activations = new float[activationsLength];
+            } else {
+                Arrays.fill(activations, 0);  // clear the output, since results from inputMaps will be accumulated
             }
-            inputMapLength = inputLayer.activations.length / nInputMaps; // for computing indexing to input
+
+            if (gemmEnabled) {
+                convolveGemm(inputLayer.activations, 1, activations);
+            } else {
+                for (int inputMap = 0; inputMap < nInputMaps; inputMap++) { // for each inputMap
+                    for (int outputMap = 0; outputMap < nOutputMaps; outputMap++) { // for each kernel/outputMap
+                        conv(inputLayer, outputMap, inputMap);
+                    }
+                }
+            }
+
+            applyBiasAndNonlinearity();
+        }
+
+        /**
+         * Computes the convolutions of a batch of frames as one matrix
+         * product.
+         */
+        @Override
+        public float[] computeBatch(Layer inputLayer, float[] in, int batchSize) {
+            setupDimensions(in.length / batchSize);
+            final float[] out = new float[activationsLength * batchSize];
+            convolveGemm(in, batchSize, out);
+            for (int f = 0; f < batchSize; f++) {
+                applyBiasAndNonlinearity(out, f * activationsLength);
+            }
+            setActivationsFromBatch(out, batchSize);
+            return out;
+        }
+
+        // computes the map dimensions from the length of one frame of input activations
+        private void setupDimensions(int inputLength) {
+            if ((inputLength % nInputMaps) != 0 && warningCountMax-- > 0) {
+                log.warning("input.activations.length=" + inputLength + " which is not divisible by nInputMaps=" + nInputMaps);
+            }
+            inputMapLength = inputLength / nInputMaps; // for computing indexing to input
             double sqrtInputMapLength = Math.sqrt(inputMapLength);
             if (Math.IEEEremainder(sqrtInputMapLength, 1) != 0 && warningCountMax-- > 0) {
                 log.warning("input map is not square; Math.rint(sqrtInputMapLength)=" + Math.rint(sqrtInputMapLength));
@@ -835,20 +1069,60 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
             if (nOutputMaps != biases.length && warningCountMax-- > 0) {
                 log.warning("nOutputMaps!=biases.length: " + nOutputMaps + "!=" + biases.length);
             }
+        }
 
-            if ((activations == null) || (activations.length != activationsLength)) {
-                activations = new float[activationsLength];
-            } else {
-                Arrays.fill(activations, 0);  // clear the output, since results from inputMaps will be accumulated
+        /**
+         * Convolves frames of input maps with the kernels by ConvolutionGemm.
+         * The sums are the same as those of conv, but accumulated in a
+         * different order, so they may differ in the last bits.
+         *
+         * @param in the input activations of each frame, one after the other
+         * @param batchSize the number of frames
+         * @param out the output maps of each frame, without bias, one after the
+         * other
+         */
+        private void convolveGemm(float[] in, int batchSize, float[] out) {
+            final int k = nInputMaps * singleKernelLength, n = outputMapLength * batchSize;
+            packKernels();
+            if ((columns == null) || (columns.length < (k * n))) {
+                columns = new float[k * n];
+            }
+            for (int f = 0; f < batchSize; f++) {
+                ConvolutionGemm.im2col(in, f * nInputMaps * inputMapLength, nInputMaps, inputMapDim, kernelDim, outputMapDim, zeroPadding, columns, n, f * outputMapLength);
+            }
+            if (batchSize == 1) {
+                ConvolutionGemm.multiply(getExecutor(), numThreads, packedKernels, columns, out, nOutputMaps, k, n);
+            } else { // the product holds each output map for all frames, reorder to frames of maps
+                if ((products == null) || (products.length < (nOutputMaps * n))) {
+                    products = new float[nOutputMaps * n];
+                }
+                ConvolutionGemm.multiply(getExecutor(), numThreads, packedKernels, columns, products, nOutputMaps, k, n);
+                for (int map = 0; map < nOutputMaps; map++) {
+                    for (int f = 0; f < batchSize; f++) {
+                        System.arraycopy(products, (map * n) + (f * outputMapLength), out, (f * activationsLength) + (map * outputMapLength), outputMapLength);
+                    }
+                }
             }
+            operationCounter += 2 * nOutputMaps * k * n;
+        }
 
-            for (int inputMap = 0; inputMap < nInputMaps; inputMap++) { // for each inputMap
-                for (int outputMap = 0; outputMap < nOutputMaps; outputMap++) { // for each kernel/outputMap
-                    conv(inputLayer, outputMap, inputMap);
+        // packs the kernels in the order of the columns of ConvolutionGemm.im2col, flipped as in convsingle and convsingle_zp
+        private void packKernels() {
+            final int k = nInputMaps * singleKernelLength;
+            if ((packedKernels == null) || (packedKernels.length != (nOutputMaps * k))) {
+                packedKernels = new float[nOutputMaps * k];
+            }
+            final boolean flip = !zeroPadding && !getNettype().equals("caffe_net");
+            int i = 0;
+            for (int outputMap = 0; outputMap < nOutputMaps; outputMap++) {
+                for (int inputMap = 0; inputMap < nInputMaps; inputMap++) {
+                    for (int xx = 0; xx < kernelDim; xx++) {
+                        for (int yy = 0; yy < kernelDim; yy++) {
+                            packedKernels[i++] = flip ? kernels[k(inputMap, outputMap, kernelDim - xx - 1, kernelDim - yy - 1)] : kernels[k(inputMap, outputMap, xx, yy)];
+                        }
+                    }
                 }
             }
-
-            applyBiasAndNonlinearity();
         }
 
         // convolves a given kernel over the inputMap and accumulates output to activations
@@ -941,10 +1215,14 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
             if (activations == null) {
                 return;
             }
+            applyBiasAndNonlinearity(activations, 0);
+        }
+
+        private void applyBiasAndNonlinearity(float[] activations, int offset) {
             for (int b = 0; b < biases.length; b++) {
                 for (int x = 0; x < outputMapDim; x++) {
                     for (int y = 0; y < outputMapDim; y++) {
-                        int idx = o(b, x, y);
+                        int idx = offset + o(b, x, y);
                         switch (activationFunction) {
                             case Sigmoid:
                                 activations[idx] = sigm(activations[idx] + biases[b]);
@@ -1109,7 +1387,29 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
                 log.warning("Input to SubsamplingLayer is not ConvLayer; it is actaully " + input.toString());
                 return;
             }
-            ConvLayer convLayer = (ConvLayer) input;
+            setupDimensions((ConvLayer) input);
+
+            if ((activations == null) || (activations.length != activationsLength)) {
+                activations = new float[activationsLength];
+            }
+            pool(input.activations, 0, activations, 0);
+        }
+
+        @Override
+        public float[] computeBatch(Layer input, float[] in, int batchSize) {
+            if (!(input instanceof ConvLayer)) {
+                throw new IllegalArgumentException("Input to SubsamplingLayer is not ConvLayer; it is actaully " + input.toString());
+            }
+            setupDimensions((ConvLayer) input);
+            final float[] out = new float[activationsLength * batchSize];
+            for (int f = 0; f < batchSize; f++) {
+                pool(in, f * nOutputMaps * inputMapLength, out, f * activationsLength);
+            }
+            setActivationsFromBatch(out, batchSize);
+            return out;
+        }
+
+        private void setupDimensions(ConvLayer convLayer) {
             nOutputMaps = convLayer.nOutputMaps;
             inputMapDim = convLayer.outputMapDim;
             inputMapLength = convLayer.outputMapLength;
@@ -1118,11 +1418,10 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
             averageOverMultiplier = 1f / averageOverNum;
             outputMapLength = inputMapLength / averageOverNum;
             activationsLength = outputMapLength * nOutputMaps;
+        }
 
-            if ((activations == null) || (activations.length != activationsLength)) {
-                activations = new float[activationsLength];
-            }
-
+        // pools one frame of the input maps in in, stored as the activations of the ConvLayer
+        private void pool(float[] in, int inOffset, float[] out, int outOffset) {
             for (int map = 0; map < nOutputMaps; map++) {
                 for (int xo = 0; xo < outputMapDim; xo++) { // output map index
                     for (int yo = 0; yo < outputMapDim; yo++) { // output map
@@ -1133,10 +1432,10 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
                             for (int yi = starty; yi < endy; yi++) {
                                 switch (poolingType) {
                                     case Average:
-                                        sumOrMax += convLayer.a(map, xi, yi); // add to sum to processAPSFrame average
+                                        sumOrMax += in[inOffset + (map * inputMapLength) + (xi * inputMapDim) + yi]; // add to sum to processAPSFrame average
                                         break;
                                     case Max:
-                                        float f = convLayer.a(map, xi, yi);
+                                        float f = in[inOffset + (map * inputMapLength) + (xi * inputMapDim) + yi];
                                         sumOrMax = f > sumOrMax ? f : sumOrMax;
                                         break;
                                     case Undefined:
@@ -1146,14 +1445,14 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
                             }
                         }
                         // debug
-                        int idx = o(map, xo, yo);
-                        if (idx >= activations.length) {
+                        int idx = outOffset + o(map, xo, yo);
+                        if (idx >= out.length) {
                             log.warning("overran this pooling layer's output activations");
                         }
                         if (poolingType == PoolingType.Average) {
-                            activations[o(map, xo, yo)] = sumOrMax * averageOverMultiplier;  //average
+                            out[idx] = sumOrMax * averageOverMultiplier;  //average
                         } else {
-                            activations[o(map, xo, yo)] = sumOrMax;
+                            out[idx] = sumOrMax;
                         }
                     }
                 }
@@ -1282,15 +1581,42 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
             } else {
                 Arrays.fill(activations, 0);
             }
+            compute(input.activations, 0, input.activations.length);
+        }
+
+        /**
+         * Computes the output of each frame, including the softmax of the
+         * output layer if softMaxOutput is set.
+         */
+        @Override
+        public float[] computeBatch(Layer input, float[] in, int batchSize) {
+            final int nUnits = biases.length, inputLength = in.length / batchSize;
+            final float[] out = new float[nUnits * batchSize];
+            if ((activations == null) || (activations.length != nUnits)) {
+                activations = new float[nUnits];
+            }
+            for (int f = 0; f < batchSize; f++) {
+                Arrays.fill(activations, 0);
+                compute(in, f * inputLength, inputLength);
+                if (softMaxOutput && (this == outputLayer)) { // not for inner product layers
+                    computeSoftMax();
+                }
+                System.arraycopy(activations, 0, out, f * nUnits, nUnits);
+            }
+            return out;
+        }
+
+        // computes the activations from the input activations in[offset] to in[offset+length-1]
+        private void compute(float[] in, int offset, int length) {
             try {
-                int aidx = 0;
+                int aidx = offset;
                 for (int unit = 0; unit < biases.length; unit++) {  // for each output unit
-                    for (int w = 0; w < input.activations.length; w++) { // simply MAC the weight times the input activation
-                        activations[unit] += input.activations[aidx] * weight(unit, biases.length, w);
+                    for (int w = 0; w < length; w++) { // simply MAC the weight times the input activation
+                        activations[unit] += in[aidx] * weight(unit, biases.length, w);
                         aidx++; // the input activations are stored in the feature maps of last layer, column, row, map order
                         operationCounter += 2;
                     }
-                    aidx = 0;
+                    aidx = offset;
                 }
             } catch (ArrayIndexOutOfBoundsException e) {
                 log.warning("ArrayIndexOutOfBoundsException while computing fully connected or output layer. Could you have an incorrect zeroPadding setting? " + e.toString());
@@ -1806,6 +2132,10 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
         for (Layer l : layers) {
             l.cleanupGraphics();
         }
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
     }
 
     @Override
@@ -115,18 +115,12 @@ public class DavisWhatWhereCNNProcessor extends AbstractDavisCNNProcessor {
                     startTime = System.nanoTime();
                 }
                 DvsFramerROIGenerator.ROI roi = (DvsFramerROIGenerator.ROI) evt.getNewValue();
+                if (submitDvsFrame(roi, roi)) {
+                    break; // the output is set on the ROI by asyncOutputAvailable
+                }
                 apsDvsNet.processDvsFrame(roi); // generates PropertyChange EVENT_MADE_DECISION
                 float[] activations = Arrays.copyOf(apsDvsNet.getOutputLayer().getActivations(), apsDvsNet.getOutputLayer().getNumUnits());
-                roi.setActivations(activations);
-                float[] rgba = Arrays.copyOf(activations, 4);
-                // alpha starts at 0, so fully transparent
-                if (apsDvsNet.getOutputLayer().getMaxActivatedUnit()!= 3) { // background
-                    rgba[3] = alpha; // set very tranparent and show decision as rgb
-                } else {
-                    Arrays.fill(rgba, 0); // don't show background at all
-                }
-
-                roi.setRgba(rgba); // for now just render 4-tuple as RGBA
+                setRoiOutput(roi, activations, apsDvsNet.getOutputLayer().getMaxActivatedUnit());
 
                 if (measurePerformance) {
                     long dt = System.nanoTime() - startTime;
@@ -142,6 +136,31 @@ public class DavisWhatWhereCNNProcessor extends AbstractDavisCNNProcessor {
 
     }
 
+    @Override
+    protected void asyncOutputAvailable(Object tag, float[] output) {
+        super.asyncOutputAvailable(tag, output);
+        int maxActivatedUnit = 0;
+        for (int i = 1; i < output.length; i++) {
+            if (output[i] > output[maxActivatedUnit]) {
+                maxActivatedUnit = i;
+            }
+        }
+        setRoiOutput((DvsFramerROIGenerator.ROI) tag, output, maxActivatedUnit);
+    }
+
+    private void setRoiOutput(DvsFramerROIGenerator.ROI roi, float[] activations, int maxActivatedUnit) {
+        roi.setActivations(activations);
+        float[] rgba = Arrays.copyOf(activations, 4);
+        // alpha starts at 0, so fully transparent
+        if (maxActivatedUnit != 3) { // background
+            rgba[3] = alpha; // set very tranparent and show decision as rgb
+        } else {
+            Arrays.fill(rgba, 0); // don't show background at all
+        }
+
+        roi.setRgba(rgba); // for now just render 4-tuple as RGBA
+    }
+
     /**
      * @return the alpha
      */
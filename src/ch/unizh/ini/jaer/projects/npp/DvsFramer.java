@@ -53,9 +53,11 @@ import net.sf.jaer.util.filter.LowpassFilter;
  * color scale for each event (with sign for ON and OFF events) and clipped to
  * 0-1 range.
  *
- * When DVS frame is accumulated to full exposure (dvsEventsPerFrame), the frame
- * is normalized, and a PropertyChangeEvent EVENT_NEW_FRAME_AVAILABLE is
- * generated and listeners should respond by processing the frame. The frame is
+ * When DVS frame is accumulated to full exposure (dvsEventsPerFrame), a
+ * PropertyChangeEvent EVENT_NEW_FRAME_AVAILABLE is generated and listeners
+ * should respond by processing the frame. The frame is normalized when its
+ * values are first read, so that a listener that hands the frame to another
+ * thread does not pay for the normalization on the event thread. The frame is
  * reset automatically the next time an new event is then added to it.
  *
  * @author tobi
@@ -320,6 +322,9 @@ abstract public class DvsFramer extends EventFilter2D  {
         private int mostOffCount = Integer.MAX_VALUE, mostOnCount = Integer.MIN_VALUE;
         private float sparsity = 1;  // computed when frame is normalized
         private boolean filled = false; // set true by accumulating dvsEventsPerFrame, cleared by clear()
+        private volatile boolean normalizationPending = false; // set when filled; the first reader of the pixmap normalizes it
+        private boolean holdable = false; // true if the framer does not refill this frame while it is held
+        private int holds = 0;
 
         @Override
         public String toString() {
@@ -340,16 +345,17 @@ abstract public class DvsFramer extends EventFilter2D  {
 
             cleared = true;
             filled = false;
+            normalizationPending = false;
         }
 
         /**
          * Adds event of polarity <code>p</code> to location <code>x,y</code> in
          * the DVS frame.
          *
-         * Calls normalizeFrame() and then fires the PropertyChangeEvent
-         * EVENT_NEW_FRAME_AVAILABLE when the frame is fully exposed by
-         * accumulating dvsEventsPerFrame. The next event added to the frame
-         * first clears if after it is filled.
+         * Fires the PropertyChangeEvent EVENT_NEW_FRAME_AVAILABLE when the
+         * frame is fully exposed by accumulating dvsEventsPerFrame; the frame
+         * is normalized by normalizeFrame() when it is first read. The next
+         * event added to the frame first clears if after it is filled.
          *
          * @param x x location in frame
          * @param y y location in frame
@@ -372,8 +378,15 @@ abstract public class DvsFramer extends EventFilter2D  {
                 warningsBadEvent++;
                 return;
             }
-            int sum = eventSum[k];
-            sum += rectifyPolarities ? 1 : (p == PolarityEvent.Polarity.On ? 1 : -1);
+            setPixel(k, eventSum[k] + (rectifyPolarities ? 1 : (p == PolarityEvent.Polarity.On ? 1 : -1)));
+            accumulatedEventCount++;
+            if (getAccumulatedEventCount() >= dvsEventsPerFrame) {
+                completeFrame();
+            }
+        }
+
+        // sets the event count of pixel k, clipped at full scale, and its pixmap value
+        private void setPixel(int k, int sum) {
             // clip count at full scale
             if (sum > dvsGrayScale) {
                 sum = dvsGrayScale;
@@ -403,26 +416,107 @@ abstract public class DvsFramer extends EventFilter2D  {
             // This pixmap value is OVERWRITEN later if the frame is normalized, but otherwise if normalizeFrame is not called, then
             // the pixmap value set here is the one that is returned (and typically used for rendering image) 
             pixmap[k] = pmv;
-            accumulatedEventCount++;
-            if (getAccumulatedEventCount() >= dvsEventsPerFrame) {
-                filled = true;
-                normalizeFrame();
-                lastDvsFrame = this;
-                if (showFrames) { // 
-                    final DvsFramer.DvsFrame toRender = this;
-                    Runnable doShowImage = new Runnable() {
-                        public void run() {
-                            if (showFrames && lastDvsFrame != null /*&& lastDvsFrame.isFilled()*/) {
-                                lastDvsFrame.draw();
-                            }
+        }
+
+        /**
+         * Sets the frame from the signed event counts of a window of events
+         * and completes it. Used by framers that slide a window over the
+         * events instead of accumulating each frame from scratch.
+         * <p>
+         * Only the net count of each pixel is clipped at dvsGrayScale, while
+         * addEvent clips after every event. Without rectifyPolarities the
+         * frame can therefore differ from adding the same events to a cleared
+         * frame wherever a pixel reaches dvsGrayScale and also gets events of
+         * the other polarity, e.g. with dvsGrayScale=2 the events ON, ON, ON,
+         * OFF give a count of 1 with addEvent but 2 here.
+         *
+         * @param counts the signed event count of each pixel
+         * @param eventCount the number of events in the window
+         */
+        protected void setFromCounts(int[] counts, int eventCount) {
+            Arrays.fill(eventSum, 0);
+            Arrays.fill(pixmap, rectifyPolarities ? 0 : GRAY_LEVEL);
+            mostOffCount = Integer.MAX_VALUE;
+            mostOnCount = Integer.MIN_VALUE;
+            for (int k = 0; k < counts.length; k++) {
+                if (counts[k] != 0) {
+                    setPixel(k, counts[k]);
+                }
+            }
+            accumulatedEventCount = eventCount;
+            completeFrame();
+        }
+
+        /**
+         * Marks the frame filled and fires EVENT_NEW_FRAME_AVAILABLE. The
+         * frame is normalized by the first reader of its values.
+         */
+        protected void completeFrame() {
+            filled = true;
+            normalizationPending = true;
+            lastDvsFrame = this;
+            if (showFrames) { // 
+                final DvsFramer.DvsFrame toRender = this;
+                Runnable doShowImage = new Runnable() {
+                    public void run() {
+                        if (showFrames && lastDvsFrame != null /*&& lastDvsFrame.isFilled()*/) {
+                            lastDvsFrame.draw();
                         }
-                    };
-                    SwingUtilities.invokeLater(doShowImage);
+                    }
+                };
+                SwingUtilities.invokeLater(doShowImage);
+            }
+            getSupport().firePropertyChange(EVENT_NEW_FRAME_AVAILABLE, null, this); // TODO check if duplicated event fired
+        }
+
+        // normalizes a filled frame on the first read of its values
+        private void normalizeIfPending() {
+            if (normalizationPending) {
+                synchronized (this) {
+                    if (normalizationPending) {
+                        normalizeFrame();
+                    }
                 }
-                getSupport().firePropertyChange(EVENT_NEW_FRAME_AVAILABLE, null, this); // TODO check if duplicated event fired
             }
         }
 
+        /**
+         * Holds the frame so that a framer with a ring of frames (see
+         * DvsFramerSingleFrame#setNumFrameBuffers) does not refill it until
+         * release() is called, e.g. while another thread processes it.
+         *
+         * @return true if the frame is held, false if the framer reuses it
+         * regardless, in which case it must be consumed or copied before the
+         * EVENT_NEW_FRAME_AVAILABLE listener returns
+         */
+        synchronized public boolean hold() {
+            if (!holdable) {
+                return false;
+            }
+            holds++;
+            return true;
+        }
+
+        /**
+         * Releases a frame held by hold()
+         */
+        synchronized public void release() {
+            if (holds > 0) {
+                holds--;
+            }
+        }
+
+        /**
+         * @return true if a consumer holds this frame
+         */
+        synchronized public boolean isHeld() {
+            return holds > 0;
+        }
+
+        void setHoldable(boolean holdable) {
+            this.holdable = holdable;
+        }
+
         /**
          * Returns the float value of the histogram clipped to 0-1 range and
          * scaled by dvsGrayScale, or normalized. To have these values
@@ -441,6 +535,7 @@ abstract public class DvsFramer extends EventFilter2D  {
          * @see #normalizeFrame()
          */
         public float getValueAtPixel(int x, int y) {
+            normalizeIfPending();
             return pixmap[getIndex(x, y)];
         }
 
@@ -513,6 +608,7 @@ abstract public class DvsFramer extends EventFilter2D  {
          * @return the pixmap
          */
         public float[] getImage() {
+            normalizeIfPending();
             return pixmap;
         }
 
@@ -599,6 +695,7 @@ abstract public class DvsFramer extends EventFilter2D  {
                 }
             }
             sparsity = (float) (n - nonZeroCount) / n;
+            normalizationPending = false;
         }
 
         /**
@@ -620,6 +717,7 @@ abstract public class DvsFramer extends EventFilter2D  {
                 activationsFrame.setVisible(true);
             }
             imageDisplay.setImageSize(width, height);
+            normalizeIfPending();
 //            for(int x=0;x<width;x++){
 //                for(int y=0;y<height;y++){
 //                    imageDisplay.setPixmapGray(x, y, lastDvsFrame.getValueAtPixel(x, y));
@@ -636,6 +734,7 @@ abstract public class DvsFramer extends EventFilter2D  {
          * @return the sparsity
          */
         public float getSparsity() {
+            normalizeIfPending();
             return sparsity;
         }
 
@@ -19,6 +19,7 @@
 package ch.unizh.ini.jaer.projects.npp;
 
 import eu.visualize.ini.convnet.DeepLearnCnnNetwork_HJ;
+import java.util.Arrays;
 import net.sf.jaer.Description;
 import net.sf.jaer.DevelopmentStatus;
 import net.sf.jaer.chip.AEChip;
@@ -36,6 +37,20 @@ import net.sf.jaer.event.PolarityEvent;
  * output of the subsampler is available as a float array that is scaled by the
  * color scale for each event (with sign for ON and OFF events) and clipped to
  * 0-1 range.
+ * <p>
+ * With numFrameBuffers larger than 1, the frames are filled in turn from a
+ * ring, so that a listener can hold a filled frame (DvsFrame.hold()) and
+ * process it on another thread while the next one is filled. Frames that are
+ * held are skipped when the ring wraps around.
+ * <p>
+ * With frameOverlap larger than 0 or frameDurationMs larger than 0, the
+ * frames are snapshots of a sliding window over the events, either the last
+ * dvsEventsPerFrame events or the events of the last frameDurationMs. The
+ * window keeps the per pixel event counts and only adds new events and
+ * subtracts the events leaving it, so an overlapping frame is not accumulated
+ * again from scratch. These frames clip only the net count of each pixel at
+ * dvsGrayScale, so with mixed polarities they can differ from frames
+ * accumulated event by event (see DvsFrame.setFromCounts).
  *
  * @author Tobi
  */
@@ -43,16 +58,33 @@ import net.sf.jaer.event.PolarityEvent;
 @DevelopmentStatus(DevelopmentStatus.Status.Experimental)
 public class DvsFramerSingleFrame extends DvsFramer {
 
-    protected DvsFrame dvsFrame = null;
+    protected DvsFrame dvsFrame = null; // the frame being filled, or the last completed one
+    private DvsFrame[] frames = null; // the ring of frames, dvsFrame is frames[frameIndex]
+    private int frameIndex = 0;
+    private int numFrameBuffers = getInt("numFrameBuffers", 1);
+    private float frameOverlap = getFloat("frameOverlap", 0);
+    private int frameDurationMs = getInt("frameDurationMs", 0);
+    private int framesOverwritten = 0; // frames that were refilled while held because all frames were held
+
+    // the sliding window of events, used if isSlidingWindow()
+    private int[] windowCounts = null; // signed event count of each pixel in the window
+    private int[] windowEvents = new int[0]; // circular buffer of pixel index<<1 | 1 for negative events
+    private int[] windowTimestamps = new int[0];
+    private int windowStart = 0, windowSize = 0;
+    private int eventsSinceFrame = 0, nextFrameTimestampUs = 0, lastWindowTimestampUs = 0;
+    private boolean nextFrameTimestampValid = false;
 
     public DvsFramerSingleFrame(AEChip chip) {
         super(chip);
         dvsFrame = new DvsFrame();
         dvsFrame.setWidth(getInt("width", 64));
         dvsFrame.setHeight(getInt("height", 64));
-        dvsFrame.allocateMemory();
+        allocateMemory();
         setPropertyTooltip("width", "width of output DVS frame in pixels");
         setPropertyTooltip("height", "height of output DVS frame in pixels");
+        setPropertyTooltip("numFrameBuffers", "<html>number of DVS frames that are filled in turn. <br>With more than 1, a consumer such as a CNN running on another thread can hold a filled frame while the next one is filled");
+        setPropertyTooltip("frameOverlap", "<html>fraction of the events (or of frameDurationMs) of each frame that are also in the next frame; 0 makes disjoint frames. <br>Overlapping frames are made from a sliding window of events without accumulating each frame from scratch");
+        setPropertyTooltip("frameDurationMs", "if >0, each frame holds the events of this duration in ms instead of dvsEventsPerFrame events");
     }
 
  
@@ -81,13 +113,140 @@ public class DvsFramerSingleFrame extends DvsFramer {
         if (srcHeight != dvsFrame.getHeight()) {
             y = (int) Math.floor(((float) e.y / srcHeight) * dvsFrame.getHeight());
         }
+        if (isSlidingWindow()) {
+            addToWindow(x, y, e.polarity, e.timestamp);
+            return;
+        }
+        if (dvsFrame.isFilled()) {
+            nextFrame();
+        }
         dvsFrame.addEvent(x, y, e.polarity);
 
     }
 
+    /**
+     * @return true if frames are snapshots of a sliding window of events
+     */
+    public boolean isSlidingWindow() {
+        return (frameOverlap > 0) || (frameDurationMs > 0);
+    }
+
+    // adds an event to the sliding window and completes a frame when the window has moved by one frame hop
+    private void addToWindow(int x, int y, PolarityEvent.Polarity p, int timestamp) {
+        final int k = dvsFrame.getIndex(x, y);
+        if ((k < 0) || (k >= windowCounts.length)) {
+            if (warningsBadEvent++ < 2) {
+                log.warning("ignoring event with index out of bounds for event x=" + x + "y=" + y);
+            }
+            return;
+        }
+        if ((windowSize > 0) && (timestamp < lastWindowTimestampUs)) {
+            resetWindow(); // nonmonotonic time, e.g. rewind
+        }
+        lastWindowTimestampUs = timestamp;
+        final int durationUs = frameDurationMs * 1000;
+        if (frameDurationMs > 0) {
+            while ((windowSize > 0) && ((timestamp - windowTimestamps[windowStart]) >= durationUs)) {
+                removeOldestEvent();
+            }
+        } else {
+            while (windowSize >= dvsEventsPerFrame) {
+                removeOldestEvent();
+            }
+        }
+        if (windowSize == windowEvents.length) {
+            growWindow();
+        }
+        final boolean negative = !rectifyPolarities && (p != PolarityEvent.Polarity.On);
+        final int i = (windowStart + windowSize) % windowEvents.length;
+        windowEvents[i] = (k << 1) | (negative ? 1 : 0);
+        windowTimestamps[i] = timestamp;
+        windowSize++;
+        windowCounts[k] += negative ? -1 : 1;
+        eventsSinceFrame++;
+
+        final boolean complete;
+        if (frameDurationMs > 0) {
+            final int hopUs = Math.max(1, (int) (durationUs * (1 - frameOverlap)));
+            if (!nextFrameTimestampValid) {
+                nextFrameTimestampUs = timestamp + durationUs; // first frame after a reset must hold a full duration
+                nextFrameTimestampValid = true;
+            }
+            complete = (timestamp - nextFrameTimestampUs) >= 0;
+            if (complete) {
+                nextFrameTimestampUs += hopUs;
+                if ((timestamp - nextFrameTimestampUs) >= 0) {
+                    nextFrameTimestampUs = timestamp + hopUs; // skip the frames of a gap in the events
+                }
+            }
+        } else {
+            final int hop = Math.max(1, Math.round(dvsEventsPerFrame * (1 - frameOverlap)));
+            complete = (windowSize >= dvsEventsPerFrame) && (eventsSinceFrame >= hop);
+        }
+        if (complete) {
+            eventsSinceFrame = 0;
+            nextFrame();
+            dvsFrame.setFromCounts(windowCounts, windowSize);
+            cleared = true; // lets initialize() measure the interval to the next frame
+        }
+    }
+
+    private void removeOldestEvent() {
+        final int e = windowEvents[windowStart];
+        windowCounts[e >>> 1] -= (e & 1) != 0 ? -1 : 1;
+        windowStart = (windowStart + 1) % windowEvents.length;
+        windowSize--;
+    }
+
+    private void growWindow() {
+        final int n = Math.max(1024, 2 * windowEvents.length);
+        final int[] events = new int[n], timestamps = new int[n];
+        for (int i = 0; i < windowSize; i++) {
+            final int j = (windowStart + i) % windowEvents.length;
+            events[i] = windowEvents[j];
+            timestamps[i] = windowTimestamps[j];
+        }
+        windowEvents = events;
+        windowTimestamps = timestamps;
+        windowStart = 0;
+    }
+
+    private void resetWindow() {
+        if ((windowCounts == null) || (windowCounts.length != dvsFrame.getNumPixels())) {
+            windowCounts = new int[Math.max(0, dvsFrame.getNumPixels())];
+        } else {
+            Arrays.fill(windowCounts, 0);
+        }
+        windowStart = 0;
+        windowSize = 0;
+        eventsSinceFrame = 0;
+        nextFrameTimestampValid = false;
+    }
+
+    // moves to the next frame of the ring that is not held by a consumer
+    private void nextFrame() {
+        if (frames.length == 1) {
+            return;
+        }
+        for (int i = 1; i <= frames.length; i++) {
+            final int j = (frameIndex + i) % frames.length;
+            if (!frames[j].isHeld()) {
+                frameIndex = j;
+                dvsFrame = frames[j];
+                return;
+            }
+        }
+        if (framesOverwritten++ == 0) {
+            log.warning("all " + frames.length + " DVS frames are held by consumers; refilling a held frame. Increase numFrameBuffers or release frames sooner.");
+        }
+        frameIndex = (frameIndex + 1) % frames.length;
+        dvsFrame = frames[frameIndex];
+    }
+
     @Override
     public void clear() {
         dvsFrame.clear();
+        resetWindow();
     }
 
     public int getWidth() {
@@ -135,7 +294,24 @@ public class DvsFramerSingleFrame extends DvsFramer {
         if (dvsFrame == null) {
             dvsFrame = new DvsFrame();
         }
-        return dvsFrame.allocateMemory();
+        final int n = Math.max(1, numFrameBuffers);
+        if ((frames == null) || (frames.length != n)) {
+            frames = new DvsFrame[n];
+            frames[0] = dvsFrame;
+            frameIndex = 0;
+            for (int i = 1; i < n; i++) {
+                frames[i] = new DvsFrame();
+            }
+        }
+        boolean allocated = true;
+        for (DvsFrame f : frames) {
+            f.setWidth(dvsFrame.getWidth());
+            f.setHeight(dvsFrame.getHeight());
+            f.setHoldable(n > 1);
+            allocated &= f.allocateMemory();
+        }
+        resetWindow();
+        return allocated;
     }
 
     synchronized public void normalizeFrame() {
@@ -182,9 +358,76 @@ public class DvsFramerSingleFrame extends DvsFramer {
         return dvsFrame.getIndex(x, y);
     }
 
+    /**
+     * @return the numFrameBuffers
+     */
+    public int getNumFrameBuffers() {
+        return numFrameBuffers;
+    }
+
+    /**
+     * @param numFrameBuffers the numFrameBuffers to set
+     */
+    synchronized public void setNumFrameBuffers(int numFrameBuffers) {
+        if (numFrameBuffers < 1) {
+            numFrameBuffers = 1;
+        }
+        this.numFrameBuffers = numFrameBuffers;
+        putInt("numFrameBuffers", numFrameBuffers);
+        allocateMemory();
+    }
+
+    /**
+     * @return the frameOverlap
+     */
+    public float getFrameOverlap() {
+        return frameOverlap;
+    }
+
+    /**
+     * @param frameOverlap the frameOverlap to set, clipped to 0-0.99
+     */
+    synchronized public void setFrameOverlap(float frameOverlap) {
+        if (frameOverlap < 0) {
+            frameOverlap = 0;
+        } else if (frameOverlap > 0.99f) {
+            frameOverlap = 0.99f;
+        }
+        this.frameOverlap = frameOverlap;
+        putFloat("frameOverlap", frameOverlap);
+        resetWindow();
+    }
+
+    /**
+     * @return the frameDurationMs
+     */
+    public int getFrameDurationMs() {
+        return frameDurationMs;
+    }
+
+    /**
+     * @param frameDurationMs the frameDurationMs to set, 0 to make frames of
+     * dvsEventsPerFrame events
+     */
+    synchronized public void setFrameDurationMs(int frameDurationMs) {
+        if (frameDurationMs < 0) {
+            frameDurationMs = 0;
+        }
+        this.frameDurationMs = frameDurationMs;
+        putInt("frameDurationMs", frameDurationMs);
+        resetWindow();
+    }
+
+    /**
+     * @return the number of frames that were refilled while held by a consumer
+     */
+    public int getFramesOverwritten() {
+        return framesOverwritten;
+    }
+
     @Override
     public String toString() {
-        return "DvsFramerSingleFrame{" + "dvsFrame=" + dvsFrame + '}';
+        return "DvsFramerSingleFrame{" + "dvsFrame=" + dvsFrame + ", numFrameBuffers=" + numFrameBuffers + ", frameOverlap=" + frameOverlap + ", frameDurationMs=" + frameDurationMs + ", framesOverwritten=" + framesOverwritten + '}';
     }
     
     
@@ -0,0 +1,208 @@
+package ch.unizh.ini.jaer.projects.rbodo.opticalflow;
+
+import java.util.Arrays;
+
+/**
+ * Fits a plane a*x+b*y+c*t+d=0 to the points of an event's neighborhood on
+ * the surface of active events without allocating on the heap, for
+ * LocalPlanesFlow. The least squares plane of the homogeneous system is the
+ * eigenvector of the 4x4 scatter matrix A'A (A = [x y t 1] rows) with the
+ * smallest eigenvalue. Instead of building A and decomposing A'A with Jama on
+ * every event, the 10 distinct entries of A'A are accumulated directly and the
+ * eigenvector is found with cyclic Jacobi rotations on fixed-size arrays.
+ * <p>
+ * Outlier rejection is iterative reweighting with weights 0 or 1 done in
+ * place: rejected points are removed from the point arrays and their terms are
+ * subtracted from the scatter matrix, so a refit after rejection costs only
+ * the 4x4 eigensolve.
+ */
+final class LocalPlaneEstimator {
+
+    private static final int MAX_SWEEPS = 16;
+
+    // the points of the neighborhood
+    double[] x, y, t;
+    int n = 0;
+    // upper triangle of the scatter matrix A'A
+    private double sxx, sxy, sxt, sx, syy, syt, sy, stt, st;
+    // plane parameters, a unit vector
+    private double a, b, c, d;
+    // work arrays of the eigensolver
+    private final double[] m = new double[16], v = new double[16];
+
+    LocalPlaneEstimator(int capacity) {
+        x = new double[capacity];
+        y = new double[capacity];
+        t = new double[capacity];
+    }
+
+    /** Removes all points */
+    void clear() {
+        n = 0;
+        sxx = sxy = sxt = sx = syy = syt = sy = stt = st = 0;
+    }
+
+    /**
+     * Adds a point, enlarging the arrays only if the neighborhood grew.
+     *
+     * @param px the x coordinate
+     * @param py the y coordinate
+     * @param pt the time
+     */
+    void add(double px, double py, double pt) {
+        if (n == x.length) {
+            x = Arrays.copyOf(x, 2 * n);
+            y = Arrays.copyOf(y, 2 * n);
+            t = Arrays.copyOf(t, 2 * n);
+        }
+        x[n] = px;
+        y[n] = py;
+        t[n] = pt;
+        n++;
+        accumulate(px, py, pt, 1);
+    }
+
+    private void accumulate(double px, double py, double pt, double w) {
+        sxx += w * px * px;
+        sxy += w * px * py;
+        sxt += w * px * pt;
+        sx += w * px;
+        syy += w * py * py;
+        syt += w * py * pt;
+        sy += w * py;
+        stt += w * pt * pt;
+        st += w * pt;
+    }
+
+    int size() {
+        return n;
+    }
+
+    /**
+     * Fits the plane to the current points.
+     *
+     * @return the Euclidean distance of the new plane parameters to the
+     * previous ones
+     */
+    double fit() {
+        m[0] = sxx;
+        m[1] = m[4] = sxy;
+        m[2] = m[8] = sxt;
+        m[3] = m[12] = sx;
+        m[5] = syy;
+        m[6] = m[9] = syt;
+        m[7] = m[13] = sy;
+        m[10] = stt;
+        m[11] = m[14] = st;
+        m[15] = n;
+        jacobi();
+        int k = 0;
+        for (int i = 1; i < 4; i++) {
+            if (m[5 * i] < m[5 * k]) {
+                k = i;
+            }
+        }
+        double na = v[k], nb = v[4 + k], nc = v[8 + k], nd = v[12 + k];
+        if (nc < 0) { // the sign is arbitrary, fix it so that successive fits are comparable
+            na = -na;
+            nb = -nb;
+            nc = -nc;
+            nd = -nd;
+        }
+        final double da = na - a, db = nb - b, dc = nc - c, dd = nd - d;
+        a = na;
+        b = nb;
+        c = nc;
+        d = nd;
+        return Math.sqrt((da * da) + (db * db) + (dc * dc) + (dd * dd));
+    }
+
+    /**
+     * Diagonalizes the symmetric matrix m in place with cyclic Jacobi
+     * rotations, accumulating the eigenvectors in the columns of v.
+     */
+    private void jacobi() {
+        for (int i = 0; i < 16; i++) {
+            v[i] = (i % 5) == 0 ? 1 : 0;
+        }
+        for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+            double off = 0, diag = 0;
+            for (int p = 0; p < 4; p++) {
+                diag += m[5 * p] * m[5 * p];
+                for (int q = p + 1; q < 4; q++) {
+                    off += m[(4 * p) + q] * m[(4 * p) + q];
+                }
+            }
+            if (off <= (1e-30 * diag)) {
+                return;
+            }
+            for (int p = 0; p < 3; p++) {
+                for (int q = p + 1; q < 4; q++) {
+                    final double apq = m[(4 * p) + q];
+                    if (apq == 0) {
+                        continue;
+                    }
+                    final double theta = (m[5 * q] - m[5 * p]) / (2 * apq);
+                    final double tan = (theta >= 0 ? 1 : -1) / (Math.abs(theta) + Math.sqrt((theta * theta) + 1));
+                    final double cos = 1 / Math.sqrt((tan * tan) + 1), sin = tan * cos;
+                    for (int k = 0; k < 4; k++) { // m = m*R
+                        final double mkp = m[(4 * k) + p], mkq = m[(4 * k) + q];
+                        m[(4 * k) + p] = (cos * mkp) - (sin * mkq);
+                        m[(4 * k) + q] = (sin * mkp) + (cos * mkq);
+                    }
+                    for (int k = 0; k < 4; k++) { // m = R'*m
+                        final double mpk = m[(4 * p) + k], mqk = m[(4 * q) + k];
+                        m[(4 * p) + k] = (cos * mpk) - (sin * mqk);
+                        m[(4 * q) + k] = (sin * mpk) + (cos * mqk);
+                    }
+                    for (int k = 0; k < 4; k++) { // v = v*R
+                        final double vkp = v[(4 * k) + p], vkq = v[(4 * k) + q];
+                        v[(4 * k) + p] = (cos * vkp) - (sin * vkq);
+                        v[(4 * k) + q] = (sin * vkp) + (cos * vkq);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the points that are farther from the plane than a threshold and
+     * subtracts them from the scatter matrix.
+     *
+     * @param threshold the largest allowed |a*x+b*y+c*t+d|
+     * @return the number of removed points
+     */
+    int rejectOutliers(double threshold) {
+        int kept = 0;
+        for (int i = 0; i < n; i++) {
+            if (Math.abs((a * x[i]) + (b * y[i]) + (c * t[i]) + d) > threshold) {
+                accumulate(x[i], y[i], t[i], -1);
+            } else {
+                x[kept] = x[i];
+                y[kept] = y[i];
+                t[kept] = t[i];
+                kept++;
+            }
+        }
+        final int removed = n - kept;
+        n = kept;
+        return removed;
+    }
+
+    /** @return a unit normal vector component of the plane */
+    double getA() {
+        return a;
+    }
+
+    double getB() {
+        return b;
+    }
+
+    double getC() {
+        return c;
+    }
+
+    double getD() {
+        return d;
+    }
+}
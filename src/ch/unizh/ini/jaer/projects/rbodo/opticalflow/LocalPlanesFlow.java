@@ -1,7 +1,5 @@
 package ch.unizh.ini.jaer.projects.rbodo.opticalflow;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.logging.Level;
@@ -14,7 +12,6 @@ import net.sf.jaer.event.BasicEvent;
 import net.sf.jaer.event.EventPacket;
 import net.sf.jaer.event.PolarityEvent;
 import static net.sf.jaer.eventprocessing.EventFilter.log;
-import net.sf.jaer.util.jama.Matrix;
 
 /**
  * Draws individual optical flow vectors and computes global motion, rotation
@@ -47,9 +44,9 @@ public class LocalPlanesFlow extends AbstractMotionFlow {
     // high velocity.
     private float th3 = getFloat("th3", 1e-3f);
 
-    private ArrayList<double[]> neighborhood;
+    // Points of the neighborhood and their plane fit, reused for every event.
+    private final LocalPlaneEstimator neighborhood = new LocalPlaneEstimator(64);
     private final float[] planeParameters;
-    private Matrix planeEstimate, planeEstimate_old, A;
 
     private float sx2, sy2, st2, sxy, sxt, syt, sxx, syy, stt;
     private int xx, yy;
@@ -72,7 +69,6 @@ public class LocalPlanesFlow extends AbstractMotionFlow {
     public LocalPlanesFlow(AEChip chip) {
         super(chip);
         planeParameters = new float[3];
-        planeEstimate = new Matrix(4, 1);
         try {
             planeEstimator = PlaneEstimator.valueOf(getString("planeEstimator", "RobustLP"));
         } catch (IllegalArgumentException ex) {
@@ -106,16 +102,17 @@ public class LocalPlanesFlow extends AbstractMotionFlow {
         syy = 0;
         stt = 0;
 
-        for (double[] n : neighborhood) {
-            sx2 += n[0] * n[0];
-            sy2 += n[1] * n[1];
-            st2 += n[2] * n[2];
-            sxy += n[0] * n[1];
-            sxt += n[0] * n[2];
-            syt += n[1] * n[2];
-            sxx += n[0];
-            syy += n[1];
-            stt += n[2];
+        final double[] nx = neighborhood.x, ny = neighborhood.y, nt = neighborhood.t;
+        for (int k = 0; k < neighborhood.size(); k++) {
+            sx2 += nx[k] * nx[k];
+            sy2 += ny[k] * ny[k];
+            st2 += nt[k] * nt[k];
+            sxy += nx[k] * ny[k];
+            sxt += nx[k] * nt[k];
+            syt += ny[k] * nt[k];
+            sxx += nx[k];
+            syy += ny[k];
+            stt += nt[k];
         }
     }
 
@@ -215,13 +212,12 @@ public class LocalPlanesFlow extends AbstractMotionFlow {
     }
 
     synchronized void initializeNeighborhood() {
-        neighborhood = new ArrayList<>();
+        neighborhood.clear();
         for (i = -searchDistance; i <= searchDistance; i++) {
             for (j = -searchDistance; j <= searchDistance; j++) {
                 t1 = lastTimesMap[x + i][y + j][type];
                 if (t1 != Integer.MIN_VALUE && ts - t1 < maxDtThreshold) {
-                    neighborhood.add(new double[]{x + i, y + j,
-                        (t1 - firstTs) * 1e-6f, 1});
+                    neighborhood.add(x + i, y + j, (t1 - firstTs) * 1e-6f);
                 }
             }
         }
@@ -291,9 +287,10 @@ public class LocalPlanesFlow extends AbstractMotionFlow {
              * (a b c d). As we deal with a homogeneous linear system of
              * equations, the least squares solution is the Eigenvector of
              * matrix A'A corresponding to the smallest Eigenvalue (smallest
-             * error). To speed up the process, we do many calculatios below "by
-             * hand" because the built-in jama-functions (times, minus, copy,
-             * getMatrix, etc) involve new matrix initializations. At first, the
+             * error). To speed up the process, the LocalPlaneEstimator
+             * accumulates A'A directly and solves the 4x4 eigenproblem without
+             * allocating any matrices, and removes outliers from A'A in place
+             * so that refitting costs only the eigensolve. At first, the
              * data matrix has as many rows as there are pixels in the
              * neighborhood. However, at initialization and during the iterative
              * improvement, we check if an event in the neighborhood is
@@ -315,48 +312,19 @@ public class LocalPlanesFlow extends AbstractMotionFlow {
             }
 
             // Initial fit
-            A = new Matrix(neighborhood.toArray(new double[neighborhood.size()][4]));
-            planeEstimate_old = A.transpose().times(A).eig().getV().getMatrix(0, 3, 0, 0);
+            neighborhood.fit();
 
             // Iterative improvement
-            planeEstimate.set(0, 0, planeEstimate_old.get(0, 0));
-            planeEstimate.set(1, 0, planeEstimate_old.get(1, 0));
-            planeEstimate.set(2, 0, planeEstimate_old.get(2, 0));
-            planeEstimate.set(3, 0, planeEstimate_old.get(3, 0));
             eps = 1e6f;
             while (eps > th1) {
-                change = false;
-                for (i = 0; i < neighborhood.size(); i++) // Discard events too far away from plane
-                {
-                    if (Math.abs(planeEstimate_old.get(0, 0) * neighborhood.get(i)[0]
-                            + planeEstimate_old.get(1, 0) * neighborhood.get(i)[1]
-                            + planeEstimate_old.get(2, 0) * neighborhood.get(i)[2]
-                            + planeEstimate_old.get(3, 0) * neighborhood.get(i)[3])
-                            > th2) {
-                        neighborhood.remove(i);
-                        i--;
-                        change = true;
-                    }
-                }
+                // Discard events too far away from plane
+                change = neighborhood.rejectOutliers(th2) > 0;
                 if (!change) {
                     eps = 0;
                 } else if (neighborhood.size() > 3) {
-                    // Calculate new plane fit with reduced neighborhood
-                    A = new Matrix(neighborhood.toArray(new double[neighborhood.size()][4]));
-                    planeEstimate = A.transpose().times(A).eig().getV().getMatrix(0, 3, 0, 0);
-                    // Update convergence parameter (Euklidean distance of plane)
-                    eps = (float) Math.sqrt((planeEstimate.get(0, 0) - planeEstimate_old.get(0, 0))
-                            * (planeEstimate.get(0, 0) - planeEstimate_old.get(0, 0))
-                            + (planeEstimate.get(1, 0) - planeEstimate_old.get(1, 0))
-                            * (planeEstimate.get(1, 0) - planeEstimate_old.get(1, 0))
-                            + (planeEstimate.get(2, 0) - planeEstimate_old.get(2, 0))
-                            * (planeEstimate.get(2, 0) - planeEstimate_old.get(2, 0))
-                            + (planeEstimate.get(3, 0) - planeEstimate_old.get(3, 0))
-                            * (planeEstimate.get(3, 0) - planeEstimate_old.get(3, 0)));
-                    planeEstimate_old.set(0, 0, planeEstimate.get(0, 0));
-                    planeEstimate_old.set(1, 0, planeEstimate.get(1, 0));
-                    planeEstimate_old.set(2, 0, planeEstimate.get(2, 0));
-                    planeEstimate_old.set(3, 0, planeEstimate.get(3, 0));
+                    // Calculate new plane fit with reduced neighborhood and
+                    // update convergence parameter (Euklidean distance of plane)
+                    eps = (float) neighborhood.fit();
                 } else {
                     vx = 0;
                     vy = 0;
@@ -364,9 +332,9 @@ public class LocalPlanesFlow extends AbstractMotionFlow {
                 }
             }
             if (robustLP) {
-                velFromPar((float) planeEstimate.get(0, 0),
-                        (float) planeEstimate.get(1, 0),
-                        (float) planeEstimate.get(2, 0), th3);
+                velFromPar((float) neighborhood.getA(),
+                        (float) neighborhood.getB(),
+                        (float) neighborhood.getC(), th3);
             } else {
                 // <editor-fold defaultstate="collapsed" desc="Comment">
                 /**
@@ -385,8 +353,8 @@ public class LocalPlanesFlow extends AbstractMotionFlow {
                  * (dx/dt,dy/dt) = (-a3/a1,-a3/a2).
                  */
                 // </editor-fold>
-                vx = Math.abs(planeEstimate.get(0, 0)) < th3 ? 0 : (float) (-planeEstimate.get(2, 0) / planeEstimate.get(0, 0));
-                vy = Math.abs(planeEstimate.get(1, 0)) < th3 ? 0 : (float) (-planeEstimate.get(2, 0) / planeEstimate.get(1, 0));
+                vx = Math.abs(neighborhood.getA()) < th3 ? 0 : (float) (-neighborhood.getC() / neighborhood.getA());
+                vy = Math.abs(neighborhood.getB()) < th3 ? 0 : (float) (-neighborhood.getC() / neighborhood.getB());
             }
         }
         v = (float) Math.sqrt(vx * vx + vy * vy);
@@ -408,18 +376,15 @@ public class LocalPlanesFlow extends AbstractMotionFlow {
                     + "%3$2.2f %4$2.2f]; v = [%5$2.2f %6$2.2f]; vIMU = [%7$2.2f %8$2.2f];",
                     new Object[]{neighb, a[1][0], a[0][1], a[0][0], vx, vy, vxGT, vyGT}));
         } else {
-            if (neighborhood == null) {
-                return;
-            }
             neighb = "[";
             for (i = 0; i < neighborhood.size(); i++) {
-                neighb += Arrays.toString(neighborhood.get(i)) + "; ";
+                neighb += "[" + neighborhood.x[i] + ", " + neighborhood.y[i] + ", " + neighborhood.t[i] + ", 1.0]; ";
             }
             neighb += "]";
             log.log(Level.INFO, String.format(Locale.ENGLISH, "T = %1$s; pe = [%2$2.2f "
                     + "%3$2.2f %4$2.2f %5$2.2f]; v = [%6$2.2f %7$2.2f]; vIMU = [%8$2.2f %9$2.2f];",
-                    new Object[]{neighb, planeEstimate.get(0, 0), planeEstimate.get(1, 0),
-                        planeEstimate.get(2, 0), planeEstimate.get(3, 0), vx, vy, vxGT, vyGT}));
+                    new Object[]{neighb, neighborhood.getA(), neighborhood.getB(),
+                        neighborhood.getC(), neighborhood.getD(), vx, vy, vxGT, vyGT}));
         }
     }
 
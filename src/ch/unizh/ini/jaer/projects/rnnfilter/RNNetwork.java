@@ -16,6 +16,12 @@ import org.jblas.FloatMatrix;
 /**
  * Implements an recurrent neural network framework
  * The framework currently supports GRU layer, LSTM layer and Dense layer
+ * <p>
+ * output(float[]) allocates new matrices for every layer and time step.
+ * step(float[]) computes the same time step into persistent per layer
+ * activation, state and scratch matrices, with the bias and the activation
+ * function applied in the same pass, and stepSequence computes a whole
+ * sequence of time bins in one call. Both give the same results as output.
  * @author jithendar
  */
 public class RNNetwork {
@@ -67,6 +73,132 @@ public class RNNetwork {
         }
         return this.layers[this.nLayers-1].output;
     }
+
+    /**
+     * Computes the output of the network for the next time step like
+     * output(float[]), but without allocating memory: the input is copied to a
+     * buffer of the InputLayer and every layer computes into its own persistent
+     * matrices.
+     * @param input - A one dimensional float array as the input frame
+     * @return - the activation of the last layer, which is overwritten by the next step
+     */
+    public FloatMatrix step(float[] input) {
+        ((InputLayer) this.layers[0]).setInput(input, 0, input.length);
+        return this.stepLayers();
+    }
+
+    /**
+     * Computes the output of the network for the next time step from event
+     * counts, e.g. the binned cochlea data, like step(float[])
+     * @param input - A one dimensional int array as the input frame
+     * @return - the activation of the last layer, which is overwritten by the next step
+     */
+    public FloatMatrix step(int[] input) {
+        ((InputLayer) this.layers[0]).setInput(input);
+        return this.stepLayers();
+    }
+
+    /**
+     * Computes the outputs of the network for a sequence of time steps in one
+     * call, like calling step(float[]) for every frame
+     * @param inputs - the input frames one after the other, nSteps frames of equal length
+     * @param nSteps - the number of time steps
+     * @param outputs - if not null, filled with the activations of the last layer at every time step, one after the other
+     * @return - the activation of the last layer after the last step, which is overwritten by the next step
+     */
+    public FloatMatrix stepSequence(float[] inputs, int nSteps, float[] outputs) {
+        if ((nSteps <= 0) || ((inputs.length % nSteps) != 0)) {
+            throw new IllegalArgumentException("input length " + inputs.length + " is not a multiple of nSteps=" + nSteps);
+        }
+        final InputLayer input = (InputLayer) this.layers[0];
+        final int inputDim = inputs.length / nSteps;
+        FloatMatrix out = this.layers[this.nLayers-1].output;
+        for (int t = 0; t < nSteps; t++) {
+            input.setInput(inputs, t * inputDim, inputDim);
+            out = this.stepLayers();
+            if (outputs != null) {
+                System.arraycopy(out.data, 0, outputs, t * out.length, out.length);
+            }
+        }
+        return out;
+    }
+
+    private FloatMatrix stepLayers() {
+        for(int i=1;i<this.nLayers;i++) {
+            this.layers[i].step(this.layers[i-1]);
+        }
+        return this.layers[this.nLayers-1].output;
+    }
+
+    /**
+     * @return m if it has the given length, otherwise a new column vector of this length
+     */
+    private static FloatMatrix buffer(FloatMatrix m, int length) {
+        return ((m != null) && (m.length == length)) ? m : new FloatMatrix(length);
+    }
+
+    private static float preActivation(float[] z, float[] add, float[] bias, int i) {
+        return add == null ? z[i] + bias[i] : (z[i] + add[i]) + bias[i];
+    }
+
+    /**
+     * Computes z = f((z + add) + bias) in place, in one pass over the
+     * activations for the element wise activation functions of this class.
+     * The float operations are those of the FloatMatrix implementations of the
+     * activation functions, in the same order, so the result is the same as
+     * that of adding add and bias and applying f.apply(FloatMatrix).
+     * @param z - a linear combination, e.g. W*x, replaced by the activations
+     * @param add - another linear combination added to z, e.g. U*h, or null
+     * @param bias - the biases
+     * @param f - the activation function
+     */
+    static void addBiasAndActivate(FloatMatrix z, FloatMatrix add, FloatMatrix bias, Activation f) {
+        final float[] d = z.data, a = add == null ? null : add.data, b = bias.data;
+        final int n = z.length;
+        if (f instanceof Sigmoid) {
+            for (int i = 0; i < n; i++) {
+                final float e = (float) Math.exp(-preActivation(d, a, b, i));
+                d[i] = 1f / (e + 1f);
+            }
+        } else if (f instanceof HardSigmoid) {
+            for (int i = 0; i < n; i++) {
+                d[i] = Math.max(Math.min((preActivation(d, a, b, i) * 0.2f) + 0.5f, 1f), 0f);
+            }
+        } else if (f instanceof Tanh) {
+            for (int i = 0; i < n; i++) {
+                d[i] = (float) Math.tanh(preActivation(d, a, b, i));
+            }
+        } else if (f instanceof Relu) {
+            for (int i = 0; i < n; i++) {
+                d[i] = Math.max(preActivation(d, a, b, i), 0f);
+            }
+        } else if (f instanceof Softsign) {
+            for (int i = 0; i < n; i++) {
+                final float v = preActivation(d, a, b, i);
+                d[i] = v / (Math.abs(v) + 1f);
+            }
+        } else if (f instanceof Softmax) {
+            float sum = 0;
+            for (int i = 0; i < n; i++) {
+                d[i] = (float) Math.exp(preActivation(d, a, b, i));
+                sum += d[i];
+            }
+            for (int i = 0; i < n; i++) {
+                d[i] /= sum;
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                d[i] = preActivation(d, a, b, i);
+            }
+            if (!(f instanceof Linear)) {
+                final FloatMatrix result = f.apply(z);
+                if (result != z) {
+                    z.copy(result);
+                }
+            }
+        }
+    }
+
     /**
      * Loads the network from an XML file, presently incomplete
      * @param f - the XML file holding the network
@@ -446,6 +578,16 @@ public class RNNetwork {
          * Internally updates the output variable of the InputLayer on the arrival of input
          */
         abstract public void computeFromInput(FloatMatrix input);
+
+        /**
+         * Computes the output activations like compute(Layer), but into
+         * persistent matrices of the layer, without allocating memory.
+         * Layers that do not implement it compute with compute(Layer).
+         * @param input - the previous layer
+         */
+        public void step(Layer input) {
+            this.compute(input);
+        }
         
         abstract public void resetLayer();
         
@@ -473,6 +615,33 @@ public class RNNetwork {
         public void computeFromInput(FloatMatrix input) {
                 this.output = input;
         }
+        /**
+         * Buffer that step copies the input frames to
+         */
+        private FloatMatrix inputBuffer;
+        /**
+         * Copies an input frame to the persistent input buffer, which becomes the output of the InputLayer
+         * @param input - the input frames
+         * @param offset - the start of the frame in input
+         * @param length - the length of the frame
+         */
+        public void setInput(float[] input, int offset, int length) {
+            this.inputBuffer = buffer(this.inputBuffer, length);
+            System.arraycopy(input, offset, this.inputBuffer.data, 0, length);
+            this.output = this.inputBuffer;
+        }
+        /**
+         * Copies an input frame of event counts to the persistent input buffer, which becomes the output of the InputLayer
+         * @param input - the input frame
+         */
+        public void setInput(int[] input) {
+            this.inputBuffer = buffer(this.inputBuffer, input.length);
+            final float[] d = this.inputBuffer.data;
+            for (int i = 0; i < input.length; i++) {
+                d[i] = input[i];
+            }
+            this.output = this.inputBuffer;
+        }
         /**
          * Initializes an input layer given the input dimension, sets layer index to 0 and creates a FloatMatrix of size inputDimension x 1
          * @param inputDimension
@@ -518,6 +687,13 @@ public class RNNetwork {
             temp.addi(biases);
             this.output = this.getActivationFunction().apply(temp);
         }
+
+        @Override
+        public void step(Layer input) {
+            this.output = buffer(this.output, this.weightMatrix.rows);
+            this.weightMatrix.mmuli(input.output, this.output);
+            addBiasAndActivate(this.output, null, this.biases, this.getActivationFunction());
+        }
         
         
         public void annotateHistogram (GL2 gl, int width, int height) {
@@ -687,6 +863,11 @@ public class RNNetwork {
          * initialized to be a tanh activation
          */
         Activation activationFunction = new Tanh();
+        /**
+         * Scratch matrices of step: the product of a U matrix and the hidden
+         * activation, resetGate.*output, and the candidate activation
+         */
+        private FloatMatrix recurrentTemp, resetHidden, candidate;
         /**
          * Computes the output of the GRU layer
          */
@@ -712,6 +893,35 @@ public class RNNetwork {
             outputTemp.muli(this.activationFunction.apply(candidateActivation));
             this.output = outputTemp.add(this.updateGate.mul(this.output));
         }
+
+        /**
+         * Computes the output of the GRU layer like compute(Layer), with the
+         * gates and the hidden activation updated in place
+         */
+        @Override
+        public void step(Layer input) {
+            final int n = this.hiddenU.rows;
+            this.output = buffer(this.output, n);
+            this.updateGate = buffer(this.updateGate, n);
+            this.resetGate = buffer(this.resetGate, n);
+            this.recurrentTemp = buffer(this.recurrentTemp, n);
+            this.resetHidden = buffer(this.resetHidden, n);
+            this.candidate = buffer(this.candidate, n);
+            this.updateW.mmuli(input.output, this.updateGate);
+            this.updateU.mmuli(this.output, this.recurrentTemp);
+            addBiasAndActivate(this.updateGate, this.recurrentTemp, this.updateBias, this.updateActivation);
+            this.resetW.mmuli(input.output, this.resetGate);
+            this.resetU.mmuli(this.output, this.recurrentTemp);
+            addBiasAndActivate(this.resetGate, this.recurrentTemp, this.resetBias, this.resetActivation);
+            this.resetGate.muli(this.output, this.resetHidden);
+            this.hiddenU.mmuli(this.resetHidden, this.candidate);
+            this.hiddenW.mmuli(input.output, this.recurrentTemp);
+            addBiasAndActivate(this.candidate, this.recurrentTemp, this.hiddenBias, this.activationFunction);
+            final float[] z = this.updateGate.data, c = this.candidate.data, h = this.output.data;
+            for (int i = 0; i < n; i++) {
+                h[i] = ((-z[i] + 1f) * c[i]) + (z[i] * h[i]);
+            }
+        }
         
         @Override
         public void resetLayer() {
@@ -1371,6 +1581,13 @@ public class RNNetwork {
             this.output = this.activationFunction.apply(tempOutput);
         }
 
+        @Override
+        public void step(Layer input) {
+            this.output = buffer(this.output, this.weightMatrix.rows);
+            this.weightMatrix.mmuli(input.output, this.output);
+            addBiasAndActivate(this.output, null, this.biases, this.activationFunction);
+        }
+
         /**
          * Initializes the dense layer given weightMatrix
          * @param weightMatrix1 - weightMatrix which multiplies the previous input layer
@@ -10,6 +10,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Random;
 import java.util.logging.Level;
 
 import javax.swing.ImageIcon;
@@ -41,6 +42,8 @@ import net.sf.jaer.eventprocessing.EventFilter2D;
 import net.sf.jaer.graphics.FrameAnnotater;
 import net.sf.jaer.graphics.MultilineAnnotationTextRenderer;
 import net.sf.jaer.util.SpikeSound;
+import net.sf.jaer.util.benchmark.Benchmark;
+import net.sf.jaer.util.benchmark.BenchmarkRunner;
 
 /**
  * Extracts binned spike features from CochleaAMS sensor and processes them
@@ -166,6 +169,10 @@ public class RNNfilter extends EventFilter2D implements FrameAnnotater, Property
      * RNN network for the filter
      */
     protected RNNetwork rnnetwork;
+    /**
+     * Thread of a running doBenchmarkNetwork, or null
+     */
+    private Thread benchmarkThread = null;
     /**
      * Output of the network;
      */
@@ -223,6 +230,7 @@ public class RNNfilter extends EventFilter2D implements FrameAnnotater, Property
         dataLogger = new SaveToFile(chip);
         String recording = "0. Recording", xmlnetwork = "1. XML Network", function = "2. Filter function", parameters = "3. Parameter options", display = "4. Display";
         setPropertyTooltip("loadFromXML", "Load an XML file containing the network in an appropriate format");
+        setPropertyTooltip("benchmarkNetwork", "Logs the time and the memory allocated per time step of the loaded network, for RNNetwork.output and for the preallocated RNNetwork.step, and checks that both give the same outputs. Runs in the background on a copy of the network loaded from its XML file, so the network of the filter is not changed.");
         setPropertyTooltip("runRNN",
                 "If clickToProcess is set to true, the filter will process events when this button is kept pressed, also the network will be reset when you press the button. So press the button and hold it, speak and release the button when you want the filter to stop processing.");
         setPropertyTooltip("toggleBinning",
@@ -613,7 +621,7 @@ public class RNNfilter extends EventFilter2D implements FrameAnnotater, Property
         FloatMatrix tempOutput;
         tempOutput = FloatMatrix.zeros(this.getnChannels());
         for (int[] currentBinnedData : this.binnedDataList) {
-            tempOutput = this.rnnetwork.output(RNNfilter.intToFloat(currentBinnedData));
+            tempOutput = this.rnnetwork.step(currentBinnedData);
         }
         this.networkOutput = RNNfilter.DMToFloat(tempOutput);
         this.label = RNNfilter.indexOfMaxValue(this.networkOutput);
@@ -670,7 +678,7 @@ public class RNNfilter extends EventFilter2D implements FrameAnnotater, Property
      */
     public void processRNN(int timeStamp) {
         long now = System.nanoTime();
-        FloatMatrix tempOutput = this.rnnetwork.output(RNNfilter.intToFloat(this.binnedData));
+        FloatMatrix tempOutput = this.rnnetwork.step(this.binnedData);
         long dt = System.nanoTime() - now;
         // log.log(Level.INFO, String.format("%d nanoseconds for one frame computation", dt));
         this.networkOutput = RNNfilter.DMToFloat(tempOutput);
@@ -692,7 +700,7 @@ public class RNNfilter extends EventFilter2D implements FrameAnnotater, Property
         // if the present timeStamp is very far from the last time RNN was processed, that means an appropriate number
         // of zero bins have to be sent to the network
         while (timeStamp > (this.lastBinCompleteTime + this.getBinTimeLength())) {
-            tempOutput = this.rnnetwork.output(RNNfilter.intToFloat(this.binnedData));
+            tempOutput = this.rnnetwork.step(this.binnedData);
             this.networkOutput = RNNfilter.DMToFloat(tempOutput);
             this.rnnOutputList.add(this.networkOutput);
             this.label = RNNfilter.indexOfMaxValue(this.networkOutput);
@@ -1440,6 +1448,83 @@ public class RNNfilter extends EventFilter2D implements FrameAnnotater, Property
         this.loadFromXML();
     }
 
+    /**
+     * Measures the time and the memory allocated per time step of the loaded
+     * network, for the allocating RNNetwork.output and for RNNetwork.step, on
+     * random input bins, and checks that both give the same outputs. One event
+     * of the logged results is one time step. The benchmark runs on its own
+     * thread with a private copy of the network loaded again from its XML
+     * file, so the GUI stays responsive and the state of the live network is
+     * kept.
+     */
+    synchronized public void doBenchmarkNetwork() {
+        if ((this.rnnetwork == null) || !this.rnnetwork.initialized || (this.rnnetwork.getXmlFileName() == null)) {
+            log.warning("No network loaded, load one with LoadFromXML first");
+            return;
+        }
+        if ((this.benchmarkThread != null) && this.benchmarkThread.isAlive()) {
+            log.warning("Benchmark of the network is already running");
+            return;
+        }
+        final File xmlFile = new File(this.rnnetwork.getXmlFileName());
+        this.benchmarkThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final RNNetwork net = new RNNetwork();
+                    net.loadFromXML(xmlFile);
+                    benchmarkNetwork(net);
+                } catch (Exception e) {
+                    log.log(Level.WARNING, "Benchmark of the network failed: {0}", e.toString());
+                }
+            }
+        }, "RNNfilter.benchmarkNetwork");
+        this.benchmarkThread.setDaemon(true);
+        this.benchmarkThread.start();
+    }
+
+    // runs the benchmark of doBenchmarkNetwork on net, which must not be used by the filter
+    private static void benchmarkNetwork(final RNNetwork net) throws Exception {
+        final int nSteps = 100;
+        final float[] bins = new float[net.layers[0].output.length];
+        final Random random = new Random(0);
+        for (int i = 0; i < bins.length; i++) {
+            bins[i] = random.nextInt(10);
+        }
+        net.resetNetworkLayers();
+        final float[][] expected = new float[nSteps][];
+        for (int t = 0; t < nSteps; t++) {
+            expected[t] = RNNfilter.DMToFloat(net.output(bins));
+        }
+        net.resetNetworkLayers();
+        float maxDifference = 0;
+        for (int t = 0; t < nSteps; t++) {
+            final FloatMatrix stepOutput = net.step(bins);
+            for (int i = 0; i < stepOutput.length; i++) {
+                maxDifference = Math.max(maxDifference, Math.abs(stepOutput.get(i) - expected[t][i]));
+            }
+        }
+        log.log(Level.INFO, "Largest difference between the outputs of RNNetwork.output and RNNetwork.step over {0} time steps: {1}", new Object[]{nSteps, maxDifference});
+        final BenchmarkRunner runner = new BenchmarkRunner();
+        runner.setWarmupIterations(2);
+        runner.setMeasurementIterations(3);
+        runner.setIterationTimeMs(300);
+        log.info(runner.run(new Benchmark("RNNetwork.output") {
+            @Override
+            public int run() {
+                consume(Float.floatToIntBits(net.output(bins).get(0)));
+                return 1;
+            }
+        }).toString());
+        log.info(runner.run(new Benchmark("RNNetwork.step") {
+            @Override
+            public int run() {
+                consume(Float.floatToIntBits(net.step(bins).get(0)));
+                return 1;
+            }
+        }).toString());
+    }
+
     public void doPredCorrect() {
         this.predCounter += 1;
         this.predCorrectCounter += 1;
@@ -594,7 +594,7 @@ public class RNNfilterExpFeatures extends EventFilter2D implements FrameAnnotate
         FloatMatrix tempOutput;
         tempOutput = FloatMatrix.zeros(this.getnChannels());
         for (float[] currentBinnedData : this.binnedDataList) {
-            tempOutput = this.rnnetwork.output(currentBinnedData);
+            tempOutput = this.rnnetwork.step(currentBinnedData);
         }
         this.networkOutput = RNNfilterExpFeatures.DMToFloat(tempOutput);
         this.label = RNNfilterExpFeatures.indexOfMaxValue(this.networkOutput);
@@ -660,7 +660,7 @@ public class RNNfilterExpFeatures extends EventFilter2D implements FrameAnnotate
         for (int i = 0; i < this.binnedData.length; i++) {
             this.binnedData[i] /= this.binEventCount;
         }
-        FloatMatrix tempOutput = this.rnnetwork.output(this.binnedData);
+        FloatMatrix tempOutput = this.rnnetwork.step(this.binnedData);
         this.networkOutput = RNNfilterExpFeatures.DMToFloat(tempOutput);
         if (chip.getCanvas().getDisplayMethod() instanceof RollingCochleaGramDisplayMethod) {
             if (!addedDisplayMethodPropertyChangeListener) {
@@ -680,7 +680,7 @@ public class RNNfilterExpFeatures extends EventFilter2D implements FrameAnnotate
         // if the present timeStamp is very far from the last time RNN was processed, that means an appropriate number
         // of zero bins have to be sent to the network
         while (timeStamp > (this.lastBinCompleteTime + this.getBinTimeLength())) {
-            tempOutput = this.rnnetwork.output(this.binnedData);
+            tempOutput = this.rnnetwork.step(this.binnedData);
             this.networkOutput = RNNfilterExpFeatures.DMToFloat(tempOutput);
             this.rnnOutputList.add(this.networkOutput);
             this.label = RNNfilterExpFeatures.indexOfMaxValue(this.networkOutput);
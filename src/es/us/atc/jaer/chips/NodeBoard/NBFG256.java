@@ -564,7 +564,7 @@ public final class NBFG256 extends AETemporalConstastRetina {
             float[] pm = getPixmapArray();
             sizeX = chip.getSizeX();
             //log.info("pm : "+pm.length+", sizeX : "+sizeX);
-            if (!accumulateEnabled) {
+            if (startPacket(packet)) { // clear unless accumulating, or the display did not take the frame yet
                 resetFrame(.5f);
             }
             //String eventData = "NULL";
@@ -155,10 +155,14 @@ public class DavisColorRenderer extends AEFrameChipRenderer {
 		final boolean expandToFour = isDVSQuarterOfAPS && !isSeparateAPSByColor();
 		int idx1 = 0, idx2 = 0, idx3 = 0;
 
+		touchPixMapIndex(index);
 		if (expandToFour) {
 			idx1 = getPixMapIndex(e.x + 1, e.y);
 			idx2 = getPixMapIndex(e.x, e.y + 1);
 			idx3 = getPixMapIndex(e.x + 1, e.y + 1);
+			touchPixMapIndex(idx1);
+			touchPixMapIndex(idx2);
+			touchPixMapIndex(idx3);
 		}
 
 		// Change colors of DVS if SeparatyAPSByColor is selected: instead of Red/Green
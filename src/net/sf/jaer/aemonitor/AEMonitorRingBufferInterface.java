@@ -0,0 +1,41 @@
+/*
+ * AEMonitorRingBufferInterface.java
+ *
+ * AE monitor that can hand events to the consumer through a lock-free ring.
+ */
+package net.sf.jaer.aemonitor;
+
+/**
+ * An AE monitor that supports a lock-free acquisition mode. In this mode the
+ * capture thread writes the raw events into the segments of an
+ * {@link AEPacketRawRing} instead of the double buffer of an
+ * {@link AEPacketRawPool}, so that it is never blocked by the consumer, and
+ * events that don't fit because the consumer falls behind are dropped and
+ * counted.
+ * <p>
+ * The consumer either calls
+ * {@link #acquireAvailableEventsFromDriver()} as usual, which then copies all
+ * published segments into one packet, or takes the segments directly from
+ * {@link #getAEPacketRawRing()} with poll/release, but not both.
+ */
+public interface AEMonitorRingBufferInterface extends AEMonitorInterface {
+
+    /**
+     * @return true if events are acquired through the lock-free ring
+     */
+    public boolean isRingBufferAcquisitionEnabled();
+
+    /**
+     * Selects the acquisition mode. Switching discards the events collected
+     * so far.
+     *
+     * @param yes true to acquire through the lock-free ring, false to use the
+     * locked double buffer
+     */
+    public void setRingBufferAcquisitionEnabled(boolean yes);
+
+    /**
+     * @return the ring, or null if ring buffer acquisition is not enabled
+     */
+    public AEPacketRawRing getAEPacketRawRing();
+}
@@ -234,6 +234,29 @@ public class AEPacketRaw extends AEPacket {
         return dest;
     }
 
+    /**
+     * Copies the events of another packet into this packet, enlarging this
+     * packet if necessary. Used to hand packets between threads through
+     * recycled packets without allocating new ones.
+     *
+     * @param src the packet to copy from
+     */
+    public void copyFrom(AEPacketRaw src) {
+        final int n = src.getNumEvents();
+        ensureCapacity(n);
+        System.arraycopy(src.addresses, 0, addresses, 0, n);
+        System.arraycopy(src.timestamps, 0, timestamps, 0, n);
+        if ((src.eventtypes != null) && (eventtypes != null) && (src.eventtypes.length >= n) && (eventtypes.length >= n)) {
+            System.arraycopy(src.eventtypes, 0, eventtypes, 0, n);
+        }
+        if ((src.pixelDataArray != null) && (pixelDataArray != null) && (src.pixelDataArray.length >= n) && (pixelDataArray.length >= n)) {
+            System.arraycopy(src.pixelDataArray, 0, pixelDataArray, 0, n);
+        }
+        numEvents = n;
+        overrunOccuredFlag = src.overrunOccuredFlag;
+        systemModificationTimeNs = src.systemModificationTimeNs;
+    }
+
     @Override
 	public String toString() {
         if (getNumEvents() == 0) {
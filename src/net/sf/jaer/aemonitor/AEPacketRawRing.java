@@ -0,0 +1,213 @@
+package net.sf.jaer.aemonitor;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer/single-consumer ring of pre-allocated AEPacketRaw
+ * segments that hands raw events from a capture thread (e.g. a USB reader
+ * thread) to a consumer thread (e.g. AEViewer.run()). Unlike
+ * {@link AEPacketRawPool}, neither side ever waits for the other: the producer
+ * fills its own write segment and publishes it, and the consumer takes the
+ * published segments.
+ * <p>
+ * The producer publishes its write segment after a capture when the consumer
+ * has taken all earlier segments, so that latency stays low, or when the
+ * segment has no room for another capture, so that a slow consumer gets a few
+ * large segments rather than many small ones. If all segments are published
+ * and not yet taken, the producer keeps filling its write segment and then
+ * drops events; the dropped events are counted and the overrunOccuredFlag of
+ * the segment is set, instead of blocking the capture thread.
+ * <p>
+ * The producer methods must only be called by one thread and the consumer
+ * methods by one other thread.
+ */
+public class AEPacketRawRing {
+
+    private final AEPacketRaw[] segments;
+    private final int mask;
+    private final int segmentCapacity;
+    /** Number of segments taken by the consumer, written only by the consumer. */
+    private final AtomicLong head = new AtomicLong();
+    /** Number of segments published by the producer, written only by the producer. */
+    private final AtomicLong tail = new AtomicLong();
+    private long producerCachedHead = 0; // producer's last view of head, saves reading the volatile
+    private volatile long numDroppedEvents = 0, numPublishedEvents = 0, numOverruns = 0; // written only by the producer
+
+    /**
+     * Makes a new ring.
+     *
+     * @param numSegments the number of segments, rounded up to a power of two
+     * and at least 2. One segment is always owned by the producer.
+     * @param segmentCapacity the capacity of each segment in events
+     */
+    public AEPacketRawRing(int numSegments, int segmentCapacity) {
+        int n = 2;
+        while (n < numSegments) {
+            n <<= 1;
+        }
+        segments = new AEPacketRaw[n];
+        mask = n - 1;
+        this.segmentCapacity = segmentCapacity;
+        for (int i = 0; i < n; i++) {
+            segments[i] = new AEPacketRaw();
+            segments[i].ensureCapacity(segmentCapacity);
+        }
+    }
+
+    /**
+     * Producer: returns the segment that the producer writes to. Its events
+     * are not visible to the consumer until it is published.
+     *
+     * @return the write segment
+     */
+    public final AEPacketRaw writeSegment() {
+        return segments[(int) tail.get() & mask];
+    }
+
+    /**
+     * Producer: publishes the write segment if it holds events and either the
+     * consumer has taken all published segments or the segment has less than
+     * minRoom free capacity, and if a free segment is available to write to
+     * next.
+     *
+     * @param minRoom the capacity in events needed for the next capture
+     * @return true if the segment was published
+     */
+    public final boolean publish(int minRoom) {
+        final long t = tail.get();
+        final AEPacketRaw seg = segments[(int) t & mask];
+        final int n = seg.getNumEvents();
+        if (n == 0) {
+            return false;
+        }
+        if ((head.get() != t) && ((seg.getCapacity() - n) >= minRoom)) {
+            return false; // consumer is busy and there is still room, keep filling
+        }
+        if ((t + 1) - producerCachedHead >= segments.length) {
+            producerCachedHead = head.get();
+            if ((t + 1) - producerCachedHead >= segments.length) {
+                return false; // all other segments are waiting for the consumer
+            }
+        }
+        if (seg.overrunOccuredFlag) {
+            numOverruns++;
+        }
+        seg.systemModificationTimeNs = System.nanoTime();
+        numPublishedEvents += n;
+        final AEPacketRaw next = segments[(int) (t + 1) & mask];
+        next.setNumEvents(0);
+        next.overrunOccuredFlag = false;
+        next.lastCaptureIndex = 0;
+        next.lastCaptureLength = 0;
+        tail.lazySet(t + 1); // ordered store, the consumer sees the segment contents before the new tail
+        return true;
+    }
+
+    /**
+     * Producer: counts events that were dropped because the write segment was
+     * full.
+     *
+     * @param n the number of events
+     */
+    public final void addDroppedEvents(int n) {
+        numDroppedEvents += n;
+    }
+
+    /**
+     * Consumer: returns the oldest published segment without taking it. The
+     * consumer must call {@link #release()} when done with it.
+     *
+     * @return the segment, or null if none is published
+     */
+    public final AEPacketRaw poll() {
+        final long h = head.get();
+        if (h == tail.get()) {
+            return null;
+        }
+        return segments[(int) h & mask];
+    }
+
+    /**
+     * Consumer: releases the segment returned by {@link #poll()} so that the
+     * producer can write to it again.
+     */
+    public final void release() {
+        final long h = head.get();
+        if (h != tail.get()) {
+            head.lazySet(h + 1);
+        }
+    }
+
+    /**
+     * Consumer: copies the events of all published segments to a packet and
+     * releases the segments.
+     *
+     * @param dest the packet, which is cleared first and enlarged if needed.
+     * Its overrunOccuredFlag is set if any of the segments had an overrun.
+     * @return the number of events copied
+     */
+    public int drainTo(AEPacketRaw dest) {
+        int n = 0;
+        boolean overrun = false;
+        final long t = tail.get();
+        long h = head.get();
+        dest.setNumEvents(0);
+        for (; h < t; h++) {
+            final AEPacketRaw seg = segments[(int) h & mask];
+            final int m = seg.getNumEvents();
+            dest.ensureCapacity(n + m);
+            System.arraycopy(seg.addresses, 0, dest.addresses, n, m);
+            System.arraycopy(seg.timestamps, 0, dest.timestamps, n, m);
+            n += m;
+            overrun |= seg.overrunOccuredFlag;
+            dest.systemModificationTimeNs = seg.systemModificationTimeNs;
+            head.lazySet(h + 1); // free each segment as soon as it is copied
+        }
+        dest.setNumEvents(n);
+        dest.overrunOccuredFlag = overrun;
+        return n;
+    }
+
+    /**
+     * Consumer: discards all published segments.
+     */
+    public void clear() {
+        head.lazySet(tail.get());
+    }
+
+    /** @return the number of segments */
+    public int getNumSegments() {
+        return segments.length;
+    }
+
+    /** @return the capacity of each segment in events */
+    public int getSegmentCapacity() {
+        return segmentCapacity;
+    }
+
+    /** @return the number of published segments that the consumer has not taken yet */
+    public int getNumPending() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /** @return the total number of events dropped because the ring was full */
+    public long getNumDroppedEvents() {
+        return numDroppedEvents;
+    }
+
+    /** @return the total number of events published */
+    public long getNumPublishedEvents() {
+        return numPublishedEvents;
+    }
+
+    /** @return the number of published segments that had an overrun */
+    public long getNumOverruns() {
+        return numOverruns;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AEPacketRawRing with %d segments of %d events, %d pending, %d events published, %d dropped in %d overruns",
+                segments.length, segmentCapacity, getNumPending(), numPublishedEvents, numDroppedEvents, numOverruns);
+    }
+}
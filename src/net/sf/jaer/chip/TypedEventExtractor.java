@@ -13,6 +13,7 @@ import java.util.logging.Logger;
 
 import net.sf.jaer.aemonitor.AEPacketRaw;
 import net.sf.jaer.event.BasicEvent;
+import net.sf.jaer.event.ColumnarEventPacket;
 import net.sf.jaer.event.EventPacket;
 import net.sf.jaer.event.OutputEventIterator;
 import net.sf.jaer.event.TypedEvent;
@@ -227,6 +228,53 @@ abstract public class TypedEventExtractor<T extends BasicEvent> implements Event
         }
     }
 
+    /**
+     * Extracts the raw events directly into the primitive columns of a
+     * ColumnarEventPacket, without materializing any event objects. The same
+     * x, y and type decoding and subsampling as
+     * {@link #extractPacket(net.sf.jaer.aemonitor.AEPacketRaw, net.sf.jaer.event.EventPacket)}
+     * is used. For RetinaExtractor subclasses the type column is the polarity
+     * (0 for Off, 1 for On), so they need not override this method.
+     *
+     * @param in the raw events, can be null
+     * @param out the columnar packet, which is cleared first
+     */
+    synchronized public void extractPacket(AEPacketRaw in, ColumnarEventPacket out) {
+        out.clear();
+        if (in == null) {
+            return;
+        }
+        int n = in.getNumEvents();
+
+        int skipBy = 1, incEach = 0, j = 0;
+        if (subsamplingEnabled && (n % getSubsampleThresholdEventCount()) != 0) {
+            skipBy = n / getSubsampleThresholdEventCount();
+            incEach = getSubsampleThresholdEventCount() / (n % getSubsampleThresholdEventCount());
+        }
+        if (skipBy == 0) {
+            incEach = 0;
+            skipBy = 1;
+        }
+
+        int[] a = in.getAddresses();
+        int[] timestamps = in.getTimestamps();
+        boolean hasTypes = false;
+        if (chip != null) {
+            hasTypes = chip.getNumCellTypes() > 1;
+        }
+        out.allocate(n / skipBy + 1);
+        out.systemModificationTimeNs = in.systemModificationTimeNs;
+        for (int i = 0; i < n; i += skipBy) {
+            int addr = a[i];
+            out.appendEvent(timestamps[i], addr, getXFromAddress(addr), getYFromAddress(addr), hasTypes ? getTypeFromAddress(addr) : 0);
+            j++;
+            if (j == incEach) {
+                j = 0;
+                i++;
+            }
+        }
+    }
+
     /*    synchronized public void extractPacket(AEPacketRaw in, EventPacket out) {
      out.clear();
      if(in==null) return;
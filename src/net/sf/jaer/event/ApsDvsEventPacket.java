@@ -73,16 +73,24 @@ public class ApsDvsEventPacket<E extends ApsDvsEvent> extends EventPacket<E> {
 	 */
 	@Override
 	public Iterator<E> inputIterator() {
-		if (inputIterator == null || !(inputIterator instanceof ApsDvsEventPacket.InDvsItr)) {
-			inputIterator = new InDvsItr();
+		if (dvsIterator == null) {
+			dvsIterator = new InDvsItr();
 		}
 		else {
-			inputIterator.reset();
+			dvsIterator.reset();
 		}
+		inputIterator = dvsIterator;
 
 		return inputIterator;
 	}
 
+	/**
+	 * The iterators returned by {@link #inputIterator()} and {@link #fullIterator()}; they are kept separately so that
+	 * alternating between them, as filters that handle both DVS and APS events do, does not construct a new
+	 * iterator each time.
+	 */
+	private InItr dvsIterator = null, allIterator = null;
+
 	/**
 	 * This iterator iterates over all events, DVS and APS. Use this one if you want all data.
 	 * Returns after initializing the iterator over input events.
@@ -90,7 +98,15 @@ public class ApsDvsEventPacket<E extends ApsDvsEvent> extends EventPacket<E> {
 	 * @return an iterator that can iterate over all the events, DVS and APS.
 	 */
 	public Iterator<E> fullIterator() {
-		return super.inputIterator();
+		if (allIterator == null) {
+			allIterator = new InItr();
+		}
+		else {
+			allIterator.reset();
+		}
+		inputIterator = allIterator;
+
+		return inputIterator;
 	}
 
 	/**
@@ -0,0 +1,573 @@
+/*
+ * ColumnarEventPacket.java
+ *
+ * Structure-of-arrays variant of EventPacket.
+ */
+package net.sf.jaer.event;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.logging.Logger;
+
+import net.sf.jaer.aemonitor.AEConstants;
+import net.sf.jaer.eventprocessing.TimeLimiter;
+
+/**
+ * A packet of events stored as primitive columns rather than as an array of
+ * event objects. Each event k is described by <code>timestamps[k]</code>,
+ * <code>addresses[k]</code>, <code>xs[k]</code>, <code>ys[k]</code> and
+ * <code>types[k]</code> (which is the polarity for DVS events, 0 for Off and 1
+ * for On). The filteredOut and special flags are packed one bit per event into
+ * long words.
+ * <p>
+ * Compared with {@link EventPacket}, iterating over a ColumnarEventPacket only
+ * touches a few contiguous arrays, so filters that are ported to work on the
+ * columns (see
+ * {@link net.sf.jaer.eventprocessing.ColumnarEventFilter}) avoid the pointer
+ * chasing through scattered event objects that dominates the cost of simple
+ * per-pixel filters at high event rates.
+ * <p>
+ * The iteration contract is the same as for EventPacket: events that are
+ * filteredOut are skipped by the iterators, the count of skipped events is
+ * accumulated in {@link #getFilteredOutCount()}, and the iterators stop when
+ * the time limiter times out. Filters can iterate either by index using
+ * {@link #indexIterator()}, which does not touch any event object, or by
+ * using the {@link #iterator()} which hands out a single reused
+ * PolarityEvent whose fields are written back to the columns as the iteration
+ * advances.
+ * <p>
+ * Existing filters can be run on columnar packets by copying to and from an
+ * ordinary EventPacket with {@link #copyToEventPacket(EventPacket)} and
+ * {@link #copyFromEventPacket(EventPacket)}; FilterChain does this
+ * automatically for filters that do not implement ColumnarEventFilter.
+ *
+ * @see net.sf.jaer.chip.TypedEventExtractor#extractPacket(net.sf.jaer.aemonitor.AEPacketRaw,
+ * net.sf.jaer.event.ColumnarEventPacket)
+ */
+public class ColumnarEventPacket implements Iterable<PolarityEvent> {
+
+    static final Logger log = Logger.getLogger(ColumnarEventPacket.class.getName());
+    /**
+     * Default capacity in events for new ColumnarEventPackets
+     */
+    public static final int DEFAULT_INITIAL_CAPACITY = 4096;
+    /**
+     * The processing time limiter
+     */
+    public TimeLimiter timeLimitTimer = null;
+    private int capacity = 0;
+    /**
+     * the number of events the columns actually contain (0 to size-1)
+     */
+    public int size = 0;
+    /**
+     * The event timestamps, by convention in us
+     */
+    public int[] timestamps;
+    /**
+     * The raw addresses of the events
+     */
+    public int[] addresses;
+    /**
+     * The x addresses of the events
+     */
+    public short[] xs;
+    /**
+     * The y addresses of the events
+     */
+    public short[] ys;
+    /**
+     * The cell types of the events; for polarity events this is 0 for Off and
+     * 1 for On
+     */
+    public byte[] types;
+    /**
+     * One bit per event, set if the event is filtered out
+     */
+    private long[] filteredOutBits;
+    /**
+     * One bit per event, set if the event is special
+     */
+    private long[] specialBits;
+    /**
+     * Count of events with filteredOut bit set. This count is accumulated
+     * during iteration.
+     */
+    protected int filteredOutCount = 0;
+    /**
+     * The modification system timestamp of the packet in ns, from
+     * System.nanoTime().
+     *
+     * @see EventPacket#systemModificationTimeNs
+     */
+    public long systemModificationTimeNs = 0;
+
+    private IndexItr indexIterator = null;
+    private FlyweightItr flyweightIterator = null;
+
+    /**
+     * Constructs a new ColumnarEventPacket with DEFAULT_INITIAL_CAPACITY.
+     */
+    public ColumnarEventPacket() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs a new ColumnarEventPacket.
+     *
+     * @param capacity the initial capacity in events
+     */
+    public ColumnarEventPacket(int capacity) {
+        if (capacity < 64) {
+            capacity = 64;
+        }
+        timestamps = new int[capacity];
+        addresses = new int[capacity];
+        xs = new short[capacity];
+        ys = new short[capacity];
+        types = new byte[capacity];
+        filteredOutBits = new long[(capacity + 63) >>> 6];
+        specialBits = new long[(capacity + 63) >>> 6];
+        this.capacity = capacity;
+    }
+
+    /**
+     * Ensures packet has room for n events. Existing events are retained.
+     *
+     * @param n capacity in events
+     */
+    public void allocate(int n) {
+        if (n <= capacity) {
+            return;
+        }
+        log.info("enlarging capacity of " + this + " to " + n + " events");
+        timestamps = Arrays.copyOf(timestamps, n);
+        addresses = Arrays.copyOf(addresses, n);
+        xs = Arrays.copyOf(xs, n);
+        ys = Arrays.copyOf(ys, n);
+        types = Arrays.copyOf(types, n);
+        filteredOutBits = Arrays.copyOf(filteredOutBits, (n + 63) >>> 6);
+        specialBits = Arrays.copyOf(specialBits, (n + 63) >>> 6);
+        capacity = n;
+    }
+
+    /**
+     * Appends an event to the packet, enlarging the packet if necessary. The
+     * event is not filteredOut and not special.
+     *
+     * @param timestamp the timestamp in us
+     * @param address the raw address
+     * @param x the x address
+     * @param y the y address
+     * @param type the cell type (polarity)
+     * @return the index of the new event
+     */
+    final public int appendEvent(int timestamp, int address, short x, short y, byte type) {
+        if (size >= capacity) {
+            allocate(capacity * 2);
+        }
+        final int k = size++;
+        timestamps[k] = timestamp;
+        addresses[k] = address;
+        xs[k] = x;
+        ys[k] = y;
+        types[k] = type;
+        final long bit = ~(1L << k);
+        filteredOutBits[k >>> 6] &= bit;
+        specialBits[k >>> 6] &= bit;
+        return k;
+    }
+
+    /**
+     * Sets the size to zero. The column data are not cleared.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    final public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of events that the columns can hold without
+     * enlarging them
+     */
+    final public int getCapacity() {
+        return capacity;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param k the event index
+     * @return true if event k is filtered out
+     */
+    final public boolean isFilteredOut(int k) {
+        return (filteredOutBits[k >>> 6] & (1L << k)) != 0;
+    }
+
+    /**
+     * Sets or clears the filteredOut flag of event k
+     *
+     * @param k the event index
+     * @param yes true to filter out the event
+     */
+    final public void setFilteredOut(int k, boolean yes) {
+        if (yes) {
+            filteredOutBits[k >>> 6] |= (1L << k);
+        } else {
+            filteredOutBits[k >>> 6] &= ~(1L << k);
+        }
+    }
+
+    /**
+     * @param k the event index
+     * @return true if event k is a special event
+     * @see BasicEvent#isSpecial()
+     */
+    final public boolean isSpecial(int k) {
+        return (specialBits[k >>> 6] & (1L << k)) != 0;
+    }
+
+    /**
+     * Sets or clears the special flag of event k
+     *
+     * @param k the event index
+     * @param yes true to mark the event as special
+     */
+    final public void setSpecial(int k, boolean yes) {
+        if (yes) {
+            specialBits[k >>> 6] |= (1L << k);
+        } else {
+            specialBits[k >>> 6] &= ~(1L << k);
+        }
+    }
+
+    /**
+     * Returns the count of events with filteredOut set. As for EventPacket,
+     * this count is accumulated during iteration and is only valid after the
+     * iteration over the packet is finished.
+     *
+     * @return the filteredOutCount
+     * @see EventPacket#getFilteredOutCount()
+     */
+    public int getFilteredOutCount() {
+        return filteredOutCount;
+    }
+
+    /**
+     * Counts the events that are currently filtered out by scanning the bit
+     * mask, independent of any iteration.
+     *
+     * @return the number of filteredOut events among the first size events
+     */
+    public int countFilteredOut() {
+        final int nWords = size >>> 6;
+        int n = 0;
+        for (int w = 0; w < nWords; w++) {
+            n += Long.bitCount(filteredOutBits[w]);
+        }
+        final int rem = size & 63;
+        if (rem != 0) {
+            n += Long.bitCount(filteredOutBits[nWords] & ((1L << rem) - 1));
+        }
+        return n;
+    }
+
+    /**
+     * @return the size of the packet not counting the filteredOut events.
+     */
+    public int getSizeNotFilteredOut() {
+        return size - getFilteredOutCount();
+    }
+
+    /**
+     * @return first timestamp or 0 if there are no events.
+     */
+    public int getFirstTimestamp() {
+        return size == 0 ? 0 : timestamps[0];
+    }
+
+    /**
+     * @return last timestamp or 0 if there are no events.
+     */
+    public int getLastTimestamp() {
+        return size == 0 ? 0 : timestamps[size - 1];
+    }
+
+    /**
+     * @return 0 if there are less than 2 events, otherwise last timestamp
+     * minus first timestamp.
+     */
+    public int getDurationUs() {
+        if (size < 2) {
+            return 0;
+        }
+        return getLastTimestamp() - getFirstTimestamp();
+    }
+
+    /**
+     * @return event rate for this packet in Hz, or 0 if the duration is zero.
+     * @see EventPacket#getEventRateHz()
+     */
+    public float getEventRateHz() {
+        if (getDurationUs() == 0) {
+            return 0;
+        }
+        return getSizeNotFilteredOut() / ((float) getDurationUs() * AEConstants.TICK_DEFAULT_US * 1e-6f);
+    }
+
+    /**
+     * restart the time limiter with limit timeLimitMs
+     *
+     * @param timeLimitMs time in ms
+     */
+    public void restartTimeLimiter(final int timeLimitMs) {
+        if (timeLimitTimer == null) {
+            timeLimitTimer = new TimeLimiter();
+        }
+        timeLimitTimer.setTimeLimitMs(timeLimitMs);
+        timeLimitTimer.restart();
+    }
+
+    /**
+     * Sets the time limit enabled or not
+     *
+     * @param yes to enable time limit for iteration
+     */
+    final public void setTimeLimitEnabled(final boolean yes) {
+        if (timeLimitTimer == null) {
+            timeLimitTimer = new TimeLimiter();
+        }
+        timeLimitTimer.setEnabled(yes);
+    }
+
+    /**
+     * Returns true if timeLimitTimer is timed out and timeLimitEnabled
+     */
+    final public boolean isTimedOut() {
+        if (timeLimitTimer == null) {
+            return false;
+        }
+        return timeLimitTimer.isTimedOut();
+    }
+
+    /**
+     * Returns after resetting the iterator over the indices of events that
+     * are not filteredOut.
+     *
+     * @return the index iterator
+     */
+    public IndexIterator indexIterator() {
+        if (indexIterator == null) {
+            indexIterator = new IndexItr();
+        }
+        indexIterator.reset();
+        return indexIterator;
+    }
+
+    /**
+     * Returns after resetting an iterator that hands out a single reused
+     * PolarityEvent loaded with the fields of each event that is not
+     * filteredOut. Changes made to the event (including
+     * <code>setFilteredOut</code>) are written back to the columns when the
+     * iterator advances or finishes. Events obtained from this iterator must
+     * not be retained.
+     *
+     * @return the iterator
+     */
+    @Override
+    public Iterator<PolarityEvent> iterator() {
+        if (flyweightIterator == null) {
+            flyweightIterator = new FlyweightItr();
+        }
+        flyweightIterator.reset();
+        return flyweightIterator;
+    }
+
+    /**
+     * Iterates over the indices of events that are not filteredOut.
+     */
+    public interface IndexIterator {
+
+        /**
+         * @return true if there is another event that is not filteredOut and
+         * the time limiter has not timed out.
+         */
+        public boolean hasNext();
+
+        /**
+         * @return the index of the next event that is not filteredOut. Only
+         * valid after hasNext() returned true.
+         */
+        public int nextIndex();
+    }
+
+    /**
+     * Skips over filteredOut events a word of the bit mask at a time.
+     */
+    private class IndexItr implements IndexIterator {
+
+        int cursor = 0;
+        boolean usingTimeout = false;
+
+        void reset() {
+            cursor = 0;
+            usingTimeout = timeLimitTimer == null ? false : timeLimitTimer.isEnabled();
+            filteredOutCount = 0;
+        }
+
+        @Override
+        final public boolean hasNext() {
+            if (usingTimeout && timeLimitTimer.isTimedOut()) {
+                return false;
+            }
+            while (cursor < size) {
+                final long w = filteredOutBits[cursor >>> 6] >>> (cursor & 63);
+                if ((w & 1) == 0) {
+                    return true;
+                }
+                int run = Long.numberOfTrailingZeros(~w); // number of consecutive filtered out events starting at cursor
+                if (run > size - cursor) {
+                    run = size - cursor;
+                }
+                filteredOutCount += run;
+                cursor += run;
+            }
+            return false;
+        }
+
+        @Override
+        final public int nextIndex() {
+            return cursor++;
+        }
+
+        @Override
+        public String toString() {
+            return "IndexIterator cursor=" + cursor + " for packet with size=" + size + " and capacity=" + capacity;
+        }
+    }
+
+    /**
+     * Iterates using a single reused PolarityEvent.
+     */
+    private class FlyweightItr implements Iterator<PolarityEvent> {
+
+        final IndexItr indices = new IndexItr();
+        final PolarityEvent event = new PolarityEvent();
+        int lastIndex = -1;
+
+        void reset() {
+            indices.reset();
+            lastIndex = -1;
+        }
+
+        private void writeBack() {
+            if (lastIndex < 0) {
+                return;
+            }
+            final int k = lastIndex;
+            timestamps[k] = event.timestamp;
+            addresses[k] = event.address;
+            xs[k] = event.x;
+            ys[k] = event.y;
+            types[k] = (byte) event.getType();
+            setFilteredOut(k, event.isFilteredOut());
+            setSpecial(k, event.isSpecial());
+            lastIndex = -1;
+        }
+
+        @Override
+        public boolean hasNext() {
+            writeBack();
+            return indices.hasNext();
+        }
+
+        @Override
+        public PolarityEvent next() {
+            final int k = indices.nextIndex();
+            lastIndex = k;
+            event.timestamp = timestamps[k];
+            event.address = addresses[k];
+            event.x = xs[k];
+            event.y = ys[k];
+            event.type = types[k];
+            event.polarity = types[k] == 0 ? PolarityEvent.Polarity.Off : PolarityEvent.Polarity.On;
+            event.setFilteredOut(false);
+            event.setSpecial(isSpecial(k));
+            return event;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("use the filteredOut flag to remove events");
+        }
+    }
+
+    /**
+     * Copies the events into an ordinary EventPacket, including events that
+     * are filteredOut, so that existing filters can process them. The events
+     * in <code>out</code> are reused; no event objects are constructed unless
+     * <code>out</code> has to grow. TypedEvent types and PolarityEvent
+     * polarities are set from the types column.
+     *
+     * @param out the packet to write to; it is cleared first
+     * @return out
+     */
+    public <E extends BasicEvent> EventPacket<E> copyToEventPacket(EventPacket<E> out) {
+        out.allocate(size);
+        final OutputEventIterator<E> outItr = out.outputIterator();
+        out.systemModificationTimeNs = systemModificationTimeNs;
+        for (int k = 0; k < size; k++) {
+            final BasicEvent e = outItr.nextOutput();
+            e.timestamp = timestamps[k];
+            e.address = addresses[k];
+            e.x = xs[k];
+            e.y = ys[k];
+            e.setSpecial(isSpecial(k));
+            if (e instanceof TypedEvent) {
+                ((TypedEvent) e).type = types[k];
+                if (e instanceof PolarityEvent) {
+                    ((PolarityEvent) e).polarity = types[k] == 0 ? PolarityEvent.Polarity.Off : PolarityEvent.Polarity.On;
+                }
+            }
+            e.setFilteredOut(isFilteredOut(k));
+        }
+        return out;
+    }
+
+    /**
+     * Replaces the contents of this packet with the events of an ordinary
+     * EventPacket, including their filteredOut and special flags. This is used
+     * to bring the output of a filter that does not operate on columns back
+     * into a columnar packet.
+     *
+     * @param in the packet to copy from
+     */
+    public void copyFromEventPacket(EventPacket<?> in) {
+        clear();
+        final int n = in.getSize();
+        allocate(n);
+        systemModificationTimeNs = in.systemModificationTimeNs;
+        final BasicEvent[] data = in.getElementData();
+        for (int i = 0; i < n; i++) {
+            final BasicEvent e = data[i];
+            final byte type = e instanceof TypedEventInterface ? (byte) ((TypedEventInterface) e).getType() : 0;
+            final int k = appendEvent(e.timestamp, e.address, e.x, e.y, type);
+            if (e.isFilteredOut()) {
+                setFilteredOut(k, true);
+            }
+            if (e.isSpecial()) {
+                setSpecial(k, true);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnarEventPacket #" + hashCode() + " with size=" + size + " capacity=" + capacity + " filteredOutCount=" + filteredOutCount;
+    }
+}
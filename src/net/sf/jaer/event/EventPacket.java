@@ -658,6 +658,26 @@ public class EventPacket<E extends BasicEvent> implements /* EventPacketInterfac
         size = size + packet.size;
     }
 
+    /**
+     * Copies all events of another packet into this packet, including events
+     * that are filtered out, replacing the present contents. The event objects
+     * of this packet are reused, so in steady state no objects are allocated.
+     * Used to hand packets between threads, e.g. from processing to rendering.
+     *
+     * @param src the packet to copy from, with the same event class
+     */
+    public void copyFrom(final EventPacket<? extends E> src) {
+        final OutputEventIterator<E> outItr = outputIterator();
+        final int n = src.getSize();
+        for (int k = 0; k < n; k++) {
+            final E e = src.getEvent(k);
+            final E o = outItr.nextOutput();
+            o.copyFrom(e);
+            o.setFilteredOut(e.isFilteredOut());
+        }
+        systemModificationTimeNs = src.systemModificationTimeNs;
+    }
+
     // public static void main(String[] args){
     // EventPacket p=new EventPacket();
     // p.test();
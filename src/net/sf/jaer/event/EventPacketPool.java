@@ -0,0 +1,206 @@
+/*
+ * EventPacketPool.java
+ *
+ * Pool of reusable EventPackets.
+ */
+package net.sf.jaer.event;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.logging.Logger;
+
+/**
+ * A pool of EventPackets, keyed by packet class (e.g. EventPacket or
+ * ApsDvsEventPacket) and event class. Constructing an EventPacket fills it
+ * with events made by reflection, which is expensive and makes garbage when
+ * done per packet; packets obtained from the pool are instead constructed once
+ * and then recycled together with their event objects and capacity.
+ * <p>
+ * Packets are either released explicitly with {@link #release(EventPacket)}
+ * or obtained as temporary packets with
+ * {@link #obtainTemporary(EventPacket)}, which are all released by the next
+ * {@link #releaseTemporaries()}. The FilterChain that owns a pool calls
+ * releaseTemporaries at the start of each pass, so temporary packets
+ * (including one returned as the chain's output) stay valid until the next
+ * packet is filtered.
+ * <p>
+ * The methods are synchronized so that a pool can be shared, but normally it
+ * is only used by the thread that filters packets.
+ */
+public class EventPacketPool {
+
+    private static final Logger log = Logger.getLogger("EventPacketPool");
+
+    /**
+     * Key of packet class and event class
+     */
+    private static final class Key {
+
+        Class<?> packetClass, eventClass;
+
+        Key() {
+        }
+
+        Key(Class<?> packetClass, Class<?> eventClass) {
+            this.packetClass = packetClass;
+            this.eventClass = eventClass;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return (k.packetClass == packetClass) && (k.eventClass == eventClass);
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * packetClass.hashCode()) + eventClass.hashCode();
+        }
+    }
+
+    private final HashMap<Key, ArrayDeque<EventPacket<?>>> free = new HashMap<Key, ArrayDeque<EventPacket<?>>>();
+    private final ArrayList<EventPacket<?>> temporaries = new ArrayList<EventPacket<?>>();
+    private final Key lookupKey = new Key(); // reused for lookups so that obtaining does not allocate
+    private int initialCapacity = 4096; // same as the EventPacket default
+    private long numCreated = 0, numObtained = 0;
+
+    /**
+     * Obtains a cleared packet of the same packet class and event class as
+     * the template, constructing one only if none is free.
+     *
+     * @param template a packet of the desired type, e.g. the input packet
+     * @return the packet, which should be released when it is no longer used
+     */
+    @SuppressWarnings("unchecked") // packets are only queued under their own packet and event class
+    synchronized public <E extends BasicEvent> EventPacket<E> obtain(EventPacket<E> template) {
+        lookupKey.packetClass = template.getClass();
+        lookupKey.eventClass = template.getEventClass();
+        ArrayDeque<EventPacket<?>> q = free.get(lookupKey);
+        EventPacket<E> p = q == null ? null : (EventPacket<E>) q.pollLast(); // most recently used is most likely to be in cache
+        if (p == null) {
+            p = template.constructNewPacket();
+            p.allocate(initialCapacity);
+            numCreated++;
+            if (log.isLoggable(java.util.logging.Level.FINE)) {
+                log.fine("constructed " + p + ", " + numCreated + " packets constructed so far");
+            }
+        }
+        p.clear();
+        numObtained++;
+        return p;
+    }
+
+    /**
+     * Obtains a cleared EventPacket holding events of the given class.
+     *
+     * @param eventClass the event class
+     * @return the packet
+     * @see #obtain(net.sf.jaer.event.EventPacket)
+     */
+    @SuppressWarnings("unchecked")
+    synchronized public <E extends BasicEvent> EventPacket<E> obtain(Class<E> eventClass) {
+        lookupKey.packetClass = EventPacket.class;
+        lookupKey.eventClass = eventClass;
+        ArrayDeque<EventPacket<?>> q = free.get(lookupKey);
+        EventPacket<E> p = q == null ? null : (EventPacket<E>) q.pollLast();
+        if (p == null) {
+            p = new EventPacket<E>(eventClass);
+            p.allocate(initialCapacity);
+            numCreated++;
+        }
+        p.clear();
+        numObtained++;
+        return p;
+    }
+
+    /**
+     * Obtains a packet like {@link #obtain(EventPacket)} that is released
+     * automatically by the next {@link #releaseTemporaries()}.
+     *
+     * @param template a packet of the desired type
+     * @return the packet
+     */
+    synchronized public <E extends BasicEvent> EventPacket<E> obtainTemporary(EventPacket<E> template) {
+        EventPacket<E> p = obtain(template);
+        temporaries.add(p);
+        return p;
+    }
+
+    /**
+     * Returns a packet to the pool. The caller must not use it afterwards.
+     *
+     * @param p the packet, ignored if null
+     */
+    synchronized public void release(EventPacket<?> p) {
+        if (p == null) {
+            return;
+        }
+        lookupKey.packetClass = p.getClass();
+        lookupKey.eventClass = p.getEventClass();
+        ArrayDeque<EventPacket<?>> q = free.get(lookupKey);
+        if (q == null) {
+            q = new ArrayDeque<EventPacket<?>>();
+            free.put(new Key(p.getClass(), p.getEventClass()), q);
+        }
+        if (!q.contains(p)) { // guard against releasing twice, the queues are short
+            q.addLast(p);
+        }
+    }
+
+    /**
+     * Releases all packets obtained with {@link #obtainTemporary(EventPacket)}
+     * since the last call.
+     */
+    synchronized public void releaseTemporaries() {
+        for (int i = 0; i < temporaries.size(); i++) {
+            release(temporaries.get(i));
+        }
+        temporaries.clear();
+    }
+
+    /**
+     * Empties the pool, e.g. to free memory.
+     */
+    synchronized public void clear() {
+        free.clear();
+        temporaries.clear();
+    }
+
+    /**
+     * @return the number of packets constructed by the pool. In steady state
+     * this number stays constant.
+     */
+    public long getNumCreated() {
+        return numCreated;
+    }
+
+    /**
+     * @return the number of packets handed out by the pool
+     */
+    public long getNumObtained() {
+        return numObtained;
+    }
+
+    public int getInitialCapacity() {
+        return initialCapacity;
+    }
+
+    /**
+     * Sets the capacity in events that new packets are populated with, so
+     * that they don't need to grow while being filled.
+     *
+     * @param initialCapacity the capacity in events
+     */
+    public void setInitialCapacity(int initialCapacity) {
+        this.initialCapacity = initialCapacity;
+    }
+
+    @Override
+    public String toString() {
+        return "EventPacketPool with " + free.size() + " packet types, " + numCreated + " packets constructed, " + numObtained + " obtained";
+    }
+}
@@ -41,6 +41,8 @@ public interface AEDataFile {
     public static final String DATA_FILE_FORMAT_HEADER = "!AER-DAT";
     /** The most recent format version number string */
     public static final String DATA_FILE_VERSION_NUMBER = "2.0";
+    /** The version number string of compressed data files, see {@link AEFileChunkCodec} */
+    public static final String COMPRESSED_DATA_FILE_VERSION_NUMBER = "2.1";
     /** Format used for log file names */
     public static DateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH-mm-ssZ"); //e.g. Tmpdiff128-   2007-04-04T11-32-21-0700    -0 ants molting swarming.dat
     /** end of line (EOL) ending (the "windows type") used in data files */
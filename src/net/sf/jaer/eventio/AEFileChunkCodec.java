@@ -0,0 +1,335 @@
+/*
+ * AEFileChunkCodec.java
+ *
+ * Encodes and decodes the compressed event chunks of AER-DAT2.1 files.
+ */
+package net.sf.jaer.eventio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.logging.Logger;
+
+import net.sf.jaer.util.LZ4BlockCodec;
+
+/**
+ * Codec for the data of compressed AER-DAT files, version
+ * {@link AEDataFile#COMPRESSED_DATA_FILE_VERSION_NUMBER}. After the usual
+ * ASCII header the file consists of independent chunks of events, each with a
+ * fixed-size header followed by the payload:
+ * <pre>
+ * int   CHUNK_MAGIC
+ * int   number of events
+ * int   first timestamp
+ * int   last timestamp
+ * int   address mask, the OR of all addresses in the chunk
+ * int   payload length before compression
+ * int   payload length as stored
+ * int   flags, FLAG_LZ4 if the payload is LZ4 compressed
+ * </pre> all big endian. The uncompressed payload consists of the timestamp
+ * differences to the previous event as zigzag varints, followed by the
+ * addresses, each reduced to the bits set in the address mask and packed into
+ * as few bytes as these bits need. For event cameras these are the bits used
+ * for x, y, polarity and event type, so the chip geometry determines the
+ * packed size without the codec having to know the address layout. The packed
+ * address bytes are stored as byte planes (all low bytes, then all next
+ * bytes, ...) because each plane compresses better on its own.
+ * <p>
+ * All chunks except the last one hold the same number of events, so that
+ * {@link AEFileInputStream} can locate an event by its number, and the chunk
+ * headers alone give the time range of each chunk, so that a reader can seek
+ * by timestamp and decode only the chunk it needs.
+ * <p>
+ * An instance keeps scratch buffers and is not thread safe.
+ *
+ * @see AEFileOutputStream
+ * @see AEFileInputStream
+ */
+public class AEFileChunkCodec {
+
+    static final Logger log = Logger.getLogger("net.sf.jaer.eventio");
+    /**
+     * Marks the start of each chunk, "AEZC"
+     */
+    public static final int CHUNK_MAGIC = 0x41455A43;
+    /**
+     * Size of the chunk header in bytes
+     */
+    public static final int CHUNK_HEADER_SIZE = 32;
+    /**
+     * Number of events in each chunk written by {@link AEFileOutputStream}
+     */
+    public static final int DEFAULT_CHUNK_SIZE_EVENTS = 1 << 16;
+    /**
+     * Flag set if the payload is compressed with {@link LZ4BlockCodec}
+     */
+    public static final int FLAG_LZ4 = 1;
+
+    private final LZ4BlockCodec lz4 = new LZ4BlockCodec();
+    private byte[] raw = new byte[0], stored = new byte[0];
+    private final int[] runShift = new int[32], runMask = new int[32], runOut = new int[32];
+
+    /**
+     * Describes one chunk of a file, read from its header.
+     */
+    public static class ChunkInfo {
+
+        /**
+         * Byte offset of the chunk header in the file
+         */
+        public long fileOffset;
+        /**
+         * Number of the first event of the chunk in the file, starting with 0
+         */
+        public long firstEvent;
+        public int numEvents, firstTimestamp, lastTimestamp, addressMask, rawLength, storedLength, flags;
+
+        /**
+         * @return the byte offset of the next chunk
+         */
+        public long getEndOffset() {
+            return fileOffset + CHUNK_HEADER_SIZE + storedLength;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("chunk at %d with %d events from %d, timestamps %d to %d, %d bytes (%d uncompressed)",
+                    fileOffset, numEvents, firstEvent, firstTimestamp, lastTimestamp, storedLength, rawLength);
+        }
+    }
+
+    /**
+     * Encodes a chunk of events.
+     *
+     * @param addr the addresses
+     * @param ts the timestamps
+     * @param off the index of the first event
+     * @param n the number of events, at least 1
+     * @return a buffer holding the chunk header and payload from position 0
+     * to its limit. It is reused by the next call.
+     */
+    public ByteBuffer encode(int[] addr, int[] ts, int off, int n) {
+        int mask = 0;
+        for (int i = off; i < off + n; i++) {
+            mask |= addr[i];
+        }
+        final int nRuns = makeRuns(mask);
+        final int addrBytes = (Integer.bitCount(mask) + 7) >>> 3;
+        final int maxRaw = (n * 5) + (n * addrBytes);
+        if (raw.length < maxRaw) {
+            raw = new byte[maxRaw];
+        }
+        final byte[] r = raw;
+        int p = 0;
+        int prev = ts[off];
+        for (int i = off + 1; i < off + n; i++) {
+            final int t = ts[i];
+            int v = t - prev;
+            prev = t;
+            v = (v << 1) ^ (v >> 31); // zigzag so small backwards steps stay small
+            while ((v & ~0x7F) != 0) {
+                r[p++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            r[p++] = (byte) v;
+        }
+        for (int i = off; i < off + n; i++) {
+            final int a = addr[i];
+            int v = 0;
+            for (int k = 0; k < nRuns; k++) {
+                v |= ((a >>> runShift[k]) & runMask[k]) << runOut[k];
+            }
+            for (int b = 0, q = p + i - off; b < addrBytes; b++, q += n) {
+                r[q] = (byte) (v >>> (b << 3));
+            }
+        }
+        final int rawLength = p + (n * addrBytes);
+
+        final int maxStored = CHUNK_HEADER_SIZE + LZ4BlockCodec.maxCompressedLength(rawLength);
+        if (stored.length < maxStored) {
+            stored = new byte[maxStored];
+        }
+        int storedLength = lz4.compress(r, 0, rawLength, stored, CHUNK_HEADER_SIZE);
+        int flags = FLAG_LZ4;
+        if (storedLength >= rawLength) {
+            System.arraycopy(r, 0, stored, CHUNK_HEADER_SIZE, rawLength);
+            storedLength = rawLength;
+            flags = 0;
+        }
+        final ByteBuffer buf = ByteBuffer.wrap(stored, 0, CHUNK_HEADER_SIZE + storedLength);
+        buf.putInt(CHUNK_MAGIC).putInt(n).putInt(ts[off]).putInt(ts[(off + n) - 1]).putInt(mask).putInt(rawLength).putInt(storedLength).putInt(flags);
+        buf.position(0);
+        return buf;
+    }
+
+    /**
+     * Reads and decodes a chunk into the AER-DAT2.0 layout of int32 address,
+     * int32 timestamp per event, big endian.
+     *
+     * @param channel the file
+     * @param chunk the chunk, from {@link #scan}
+     * @param dest the buffer to reuse, or null
+     * @return dest if it is large enough, otherwise a new buffer, holding the
+     * events from position 0 to its limit
+     * @throws IOException if the chunk cannot be read or is corrupt
+     */
+    public ByteBuffer decode(FileChannel channel, ChunkInfo chunk, ByteBuffer dest) throws IOException {
+        final int n = chunk.numEvents;
+        if (stored.length < chunk.storedLength) {
+            stored = new byte[chunk.storedLength];
+        }
+        final ByteBuffer in = ByteBuffer.wrap(stored, 0, chunk.storedLength);
+        long pos = chunk.fileOffset + CHUNK_HEADER_SIZE;
+        while (in.hasRemaining()) {
+            final int nRead = channel.read(in, pos);
+            if (nRead < 0) {
+                throw new IOException("end of file inside " + chunk);
+            }
+            pos += nRead;
+        }
+        byte[] r;
+        if ((chunk.flags & FLAG_LZ4) != 0) {
+            if (raw.length < chunk.rawLength) {
+                raw = new byte[chunk.rawLength];
+            }
+            r = raw;
+            final int len = LZ4BlockCodec.decompress(stored, 0, chunk.storedLength, r, 0, chunk.rawLength);
+            if (len != chunk.rawLength) {
+                throw new IOException("decompressed " + len + " bytes but expected " + chunk.rawLength + " for " + chunk);
+            }
+        } else {
+            r = stored;
+        }
+
+        if (dest == null || dest.capacity() < n * 8 || !dest.hasArray()) {
+            dest = ByteBuffer.allocate(Math.max(n, DEFAULT_CHUNK_SIZE_EVENTS) * 8);
+        }
+        final byte[] d = dest.array();
+        final int dOff = dest.arrayOffset();
+        final int mask = chunk.addressMask;
+        final int nRuns = makeRuns(mask);
+        final int addrBytes = (Integer.bitCount(mask) + 7) >>> 3;
+        if (chunk.rawLength < n * addrBytes) {
+            throw new IOException("payload too short for " + chunk);
+        }
+        int p = 0;
+        final int tsEnd = chunk.rawLength - (n * addrBytes);
+        int t = chunk.firstTimestamp;
+        try {
+            for (int i = 0; i < n; i++) {
+                if (i > 0) {
+                    int v = 0, shift = 0, b;
+                    do {
+                        b = r[p++];
+                        v |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    t += (v >>> 1) ^ -(v & 1);
+                }
+                int packed = 0;
+                for (int b = 0, q = tsEnd + i; b < addrBytes; b++, q += n) {
+                    packed |= (r[q] & 0xFF) << (b << 3);
+                }
+                int a = 0;
+                for (int k = 0; k < nRuns; k++) {
+                    a |= ((packed >>> runOut[k]) & runMask[k]) << runShift[k];
+                }
+                final int o = dOff + (i << 3);
+                d[o] = (byte) (a >>> 24);
+                d[o + 1] = (byte) (a >>> 16);
+                d[o + 2] = (byte) (a >>> 8);
+                d[o + 3] = (byte) a;
+                d[o + 4] = (byte) (t >>> 24);
+                d[o + 5] = (byte) (t >>> 16);
+                d[o + 6] = (byte) (t >>> 8);
+                d[o + 7] = (byte) t;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("corrupt timestamps in " + chunk);
+        }
+        if (p != tsEnd || t != chunk.lastTimestamp) {
+            throw new IOException("corrupt timestamps in " + chunk);
+        }
+        dest.clear();
+        dest.limit(n * 8);
+        return dest;
+    }
+
+    /**
+     * Reads the headers of all chunks of a file, skipping the payloads. A
+     * truncated or corrupt chunk at the end, e.g. from a recording that was
+     * not closed, ends the scan with a warning.
+     *
+     * @param channel the file
+     * @param start the byte offset of the first chunk, i.e. the size of the
+     * ASCII header
+     * @return the chunks in file order
+     * @throws IOException if the file cannot be read
+     */
+    public static ArrayList<ChunkInfo> scan(FileChannel channel, long start) throws IOException {
+        final ArrayList<ChunkInfo> chunks = new ArrayList<ChunkInfo>();
+        final long size = channel.size();
+        final ByteBuffer h = ByteBuffer.allocate(CHUNK_HEADER_SIZE);
+        long pos = start, event = 0;
+        while (pos + CHUNK_HEADER_SIZE <= size) {
+            h.clear();
+            while (h.hasRemaining()) {
+                if (channel.read(h, pos + h.position()) < 0) {
+                    break;
+                }
+            }
+            h.flip();
+            final ChunkInfo c = new ChunkInfo();
+            c.fileOffset = pos;
+            c.firstEvent = event;
+            final int magic = h.getInt();
+            c.numEvents = h.getInt();
+            c.firstTimestamp = h.getInt();
+            c.lastTimestamp = h.getInt();
+            c.addressMask = h.getInt();
+            c.rawLength = h.getInt();
+            c.storedLength = h.getInt();
+            c.flags = h.getInt();
+            if (magic != CHUNK_MAGIC || c.numEvents <= 0 || c.rawLength < 0 || c.storedLength < 0) {
+                log.warning("no valid chunk header at byte " + pos + ", ignoring the remaining " + (size - pos) + " bytes");
+                break;
+            }
+            if (c.getEndOffset() > size) {
+                log.warning("truncated " + c + " at end of file, ignoring it");
+                break;
+            }
+            chunks.add(c);
+            event += c.numEvents;
+            pos = c.getEndOffset();
+        }
+        return chunks;
+    }
+
+    /**
+     * Splits the address mask into runs of contiguous set bits, so that
+     * packing takes one shift and mask per run rather than per bit.
+     *
+     * @return the number of runs
+     */
+    private int makeRuns(int mask) {
+        int n = 0, out = 0, bit = 0;
+        while (bit < 32) {
+            if (((mask >>> bit) & 1) == 0) {
+                bit++;
+                continue;
+            }
+            int len = 0;
+            while (bit + len < 32 && ((mask >>> (bit + len)) & 1) != 0) {
+                len++;
+            }
+            runShift[n] = bit;
+            runMask[n] = len == 32 ? -1 : (1 << len) - 1;
+            runOut[n] = out;
+            out += len;
+            bit += len;
+            n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * AEFileConverter.java
+ *
+ * Converts AER-DAT data files between the uncompressed and compressed formats.
+ */
+package net.sf.jaer.eventio;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import net.sf.jaer.aemonitor.AEPacketRaw;
+
+/**
+ * Converts AER-DAT1.x and AER-DAT2.0 files to the compressed AER-DAT2.1 format
+ * and back. The events are copied unchanged and the header lines of the input
+ * file are kept, so that e.g. the AEChip class is still found when the
+ * converted file is opened.
+ * <p>
+ * Usage: <code>java net.sf.jaer.eventio.AEFileConverter input.aedat
+ * output.aedat [-version=2.0|2.1]</code>. Without -version, uncompressed files
+ * are compressed and compressed files are uncompressed. The conversion rate
+ * printed at the end shows whether compression keeps up with the event rate of
+ * live recording.
+ *
+ * @see AEFileChunkCodec
+ */
+public class AEFileConverter {
+
+    static final Logger log = Logger.getLogger("net.sf.jaer.eventio");
+    private static final int BATCH_EVENTS = 1 << 16;
+
+    private final List<String> header = new ArrayList<String>();
+    private String version = "1.0"; // files without format line are AER-DAT1.0
+    private long headerOffset = 0;
+    private long numEvents = 0, outputBytes = 0, nanos = 0;
+
+    /**
+     * Converts a file.
+     *
+     * @param inFile the AER-DAT1.x, 2.0 or 2.1 file
+     * @param outFile the new file
+     * @param outVersion the version of the new file, e.g.
+     * {@link AEDataFile#DATA_FILE_VERSION_NUMBER} or
+     * {@link AEDataFile#COMPRESSED_DATA_FILE_VERSION_NUMBER}, or null to
+     * convert to the other one of these
+     * @throws IOException if the input is not a file of these formats or on
+     * read or write errors
+     */
+    public void convert(File inFile, File outFile, String outVersion) throws IOException {
+        final long startTime = System.nanoTime();
+        try (FileInputStream fis = new FileInputStream(inFile)) {
+            final FileChannel in = fis.getChannel();
+            readHeader(in);
+            final boolean compressed = AEDataFile.COMPRESSED_DATA_FILE_VERSION_NUMBER.equals(version);
+            final int major = (int) Math.floor(parseVersion(version));
+            if (major != 1 && major != 2) {
+                throw new IOException(inFile + " has format AER-DAT" + version + ", can only convert AER-DAT1.x and 2.x files");
+            }
+            if (outVersion == null) {
+                outVersion = compressed ? AEDataFile.DATA_FILE_VERSION_NUMBER : AEDataFile.COMPRESSED_DATA_FILE_VERSION_NUMBER;
+            }
+            final ArrayList<String> lines = new ArrayList<String>();
+            lines.add(" Converted from " + inFile.getName() + " with format " + AEDataFile.DATA_FILE_FORMAT_HEADER + version);
+            for (String s : header) {
+                if (s.startsWith(AEDataFile.DATA_FILE_FORMAT_HEADER) || s.startsWith(" This is a raw AE data file") || s.startsWith(" Data format is")) {
+                    continue; // written by AEFileOutputStream for the new format
+                }
+                lines.add(s);
+            }
+            final AEPacketRaw packet = new AEPacketRaw();
+            packet.ensureCapacity(BATCH_EVENTS);
+            numEvents = 0;
+            try (AEFileOutputStream out = new AEFileOutputStream(new FileOutputStream(outFile), null, outVersion, lines)) {
+                if (compressed) {
+                    final AEFileChunkCodec codec = new AEFileChunkCodec();
+                    ByteBuffer buf = null;
+                    for (AEFileChunkCodec.ChunkInfo c : AEFileChunkCodec.scan(in, headerOffset)) {
+                        buf = codec.decode(in, c, buf);
+                        copyEvents(buf, 8, packet, out);
+                    }
+                } else {
+                    final int eventSize = major == 1 ? 6 : 8;
+                    final ByteBuffer buf = ByteBuffer.allocate(BATCH_EVENTS * eventSize);
+                    long pos = headerOffset;
+                    while (true) {
+                        final int n = in.read(buf, pos);
+                        if (n < 0) {
+                            break;
+                        }
+                        pos += n;
+                        if (!buf.hasRemaining()) {
+                            buf.flip();
+                            copyEvents(buf, eventSize, packet, out);
+                            buf.clear();
+                        }
+                    }
+                    buf.flip();
+                    copyEvents(buf, eventSize, packet, out);
+                    if (buf.hasRemaining()) {
+                        log.warning("ignored " + buf.remaining() + " bytes of an incomplete event at the end of " + inFile);
+                    }
+                }
+            }
+        }
+        nanos = System.nanoTime() - startTime;
+        outputBytes = outFile.length();
+    }
+
+    private void copyEvents(ByteBuffer buf, int eventSize, AEPacketRaw packet, AEFileOutputStream out) throws IOException {
+        final int n = buf.remaining() / eventSize;
+        final int[] a = packet.addresses, t = packet.timestamps;
+        for (int i = 0; i < n; i++) {
+            a[i] = eventSize == 6 ? (buf.getShort() & 0xFFFF) : buf.getInt();
+            t[i] = buf.getInt();
+        }
+        packet.setNumEvents(n);
+        out.writePacket(packet);
+        numEvents += n;
+    }
+
+    /**
+     * Reads the '#' comment lines at the start of the file, ending with the
+     * end of header line or with the first line that is not a comment, in the
+     * same way as {@link AEFileInputStream}.
+     */
+    private void readHeader(FileChannel in) throws IOException {
+        header.clear();
+        final ByteBuffer b = ByteBuffer.allocate(1);
+        long pos = 0;
+        while (true) {
+            b.clear();
+            if (in.read(b, pos) < 1 || b.get(0) != AEDataFile.COMMENT_CHAR) {
+                break;
+            }
+            final StringBuilder sb = new StringBuilder();
+            long p = pos + 1;
+            while (true) {
+                b.clear();
+                if (in.read(b, p++) < 1) {
+                    throw new EOFException("end of file in header line " + sb);
+                }
+                final char c = (char) (b.get(0) & 0xFF);
+                if (c == '\n') {
+                    break;
+                }
+                if (c != '\r') {
+                    sb.append(c);
+                }
+            }
+            pos = p;
+            final String s = sb.toString();
+            if (s.equalsIgnoreCase(AEDataFile.END_OF_HEADER_STRING)) {
+                break;
+            }
+            if (s.startsWith(AEDataFile.DATA_FILE_FORMAT_HEADER)) {
+                version = s.substring(AEDataFile.DATA_FILE_FORMAT_HEADER.length()).trim();
+            }
+            header.add(s);
+        }
+        headerOffset = pos;
+    }
+
+    private static float parseVersion(String s) throws IOException {
+        try {
+            return Float.parseFloat(s);
+        } catch (NumberFormatException e) {
+            throw new IOException("cannot parse file format version " + s);
+        }
+    }
+
+    /** @return the number of events converted */
+    public long getNumEvents() {
+        return numEvents;
+    }
+
+    /** @return the size of the converted file in bytes */
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+    /** @return the conversion time in ns */
+    public long getNanos() {
+        return nanos;
+    }
+
+    public static void main(String[] args) {
+        String in = null, out = null, outVersion = null;
+        for (String a : args) {
+            if (a.startsWith("-version=")) {
+                outVersion = a.substring("-version=".length());
+            } else if (in == null) {
+                in = a;
+            } else {
+                out = a;
+            }
+        }
+        if (in == null || out == null) {
+            System.err.println("usage: java " + AEFileConverter.class.getName() + " input.aedat output.aedat [-version=2.0|2.1]");
+            System.exit(1);
+        }
+        final File inFile = new File(in), outFile = new File(out);
+        final AEFileConverter c = new AEFileConverter();
+        try {
+            c.convert(inFile, outFile, outVersion);
+        } catch (IOException e) {
+            System.err.println("conversion failed: " + e.toString());
+            System.exit(1);
+        }
+        final double s = c.getNanos() * 1e-9;
+        System.out.println(String.format("converted %d events from %s (%d bytes) to %s (%d bytes, %.2f bytes/event) in %.2f s = %.1f Meps",
+                c.getNumEvents(), inFile, inFile.length(), outFile, c.getOutputBytes(),
+                c.getNumEvents() > 0 ? (double) c.getOutputBytes() / c.getNumEvents() : 0, s, c.getNumEvents() * 1e-6 / s));
+    }
+}
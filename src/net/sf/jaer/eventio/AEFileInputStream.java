@@ -20,7 +20,6 @@ import java.io.InputStreamReader;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
@@ -171,9 +170,10 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
     private AEPacketRaw packet = new AEPacketRaw(MAX_BUFFER_SIZE_EVENTS);
     private EventRaw tmpEvent = new EventRaw();
     /**
-     * The memory-mapped byte buffer pointing to the file.
+     * The memory-mapped byte buffer pointing to the file, or for compressed
+     * files the buffer holding the decoded chunk.
      */
-    private MappedByteBuffer byteBuffer = null;
+    private ByteBuffer byteBuffer = null;
     /**
      * absolute position in file in events, points to next event number, 0 based
      * (1 means 2nd event)
@@ -203,6 +203,12 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
     private Jaer3BufferParser jaer3BufferParser = null; // if non-null, then we have a jaer 3 file
     private boolean jaer3EnableFlg = false; // jaer3 parse enable flag
 
+    // compressed AER-DAT2.1 files
+    private boolean compressedFlg = false;
+    private ArrayList<AEFileChunkCodec.ChunkInfo> compressedChunks = null;
+    private AEFileChunkCodec chunkCodec = null;
+    private long compressedNumEvents = 0;
+
     private static AEChip LAST_CHIP = null; // It's a static value, so it will always store the last AEFileInputStream's chip
     private static EventExtractor2D LAST_EVENT_EXTRACTOR = null; // This value saves the last chip's extractor, it's always associated with the last chip
 
@@ -210,22 +216,42 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
      * Creates a new instance of AEInputStream
      *
      * @param f the file to open
+     * @param chip the chip, which is needed for jAER 3.x files; may be null
+     * for AEDAT-1.x and 2.x files
      * @throws FileNotFoundException if file doesn't exist or can't be read
      */
     public AEFileInputStream(File f, AEChip chip) throws IOException {
+        this(f, chip, true);
+    }
+
+    /**
+     * Creates a new instance of AEInputStream
+     *
+     * @param f the file to open
+     * @param chip the chip, which is needed for jAER 3.x files; may be null
+     * for AEDAT-1.x and 2.x files
+     * @param timestampIndexEnabled false to not load or build the timestamp
+     * index, so that no index sidecar file is written next to f, e.g. for
+     * batch processing that reads the file once from start to end
+     * @throws FileNotFoundException if file doesn't exist or can't be read
+     */
+    public AEFileInputStream(File f, AEChip chip, boolean timestampIndexEnabled) throws IOException {
         super(new FileInputStream(f));
         this.chip = chip;
+        this.timestampIndexEnabled = timestampIndexEnabled;
 
         /* Here is the logic:
          * The chip and extractor will be updated unless the chip changed such as by the user.
          * It makes the chip and the extractor are alwayse associated with each other. 
          */
-        if (this.chip != LAST_CHIP) {
-            LAST_CHIP = this.chip;
-            LAST_EVENT_EXTRACTOR = this.chip.getEventExtractor();
-        }
+        if (this.chip != null) { // chip can be null for reading raw AEDAT-1.x/2.x files headless, e.g. in benchmarks
+            if (this.chip != LAST_CHIP) {
+                LAST_CHIP = this.chip;
+                LAST_EVENT_EXTRACTOR = this.chip.getEventExtractor();
+            }
 
-        this.chip.setEventExtractor(LAST_EVENT_EXTRACTOR); // Restore the extractor, because jaer3BufferParser might change it.
+            this.chip.setEventExtractor(LAST_EVENT_EXTRACTOR); // Restore the extractor, because jaer3BufferParser might change it.
+        }
         init(new FileInputStream(f));
 
         setFile(f);
@@ -488,8 +514,10 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
                 return readEventForwards(maxTimestamp);
             } catch (IOException eof) {
                 byteBuffer = null;
-                System.gc(); // all the byteBuffers have referred to mapped files and use up all memory, now free them
-                // since we're at end of file anyhow
+                if ((chunkPrefetcher == null) || !chunkPrefetcher.isUnmapEnabled()) {
+                    System.gc(); // all the byteBuffers have referred to mapped files and use up all memory, now free them
+                    // since we're at end of file anyhow
+                }
                 getSupport().firePropertyChange(AEInputStream.EVENT_EOF, null, position());
                 throw new EOFException("reached end of file");
             }
@@ -501,6 +529,200 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         }
     }
 
+    /**
+     * Maximum and initial number of events decoded per block by
+     * readEventsForwardsBulk
+     */
+    private static final int BULK_BLOCK_EVENTS = 4096, BULK_FIRST_BLOCK_EVENTS = 64;
+    private byte[] bulkBytes = null;
+    private boolean bulkDecodeEnabled = true;
+
+    /**
+     * Bulk decoder for jAER 1.x/2.x files. Copies a run of events from the
+     * mapped byteBuffer with one bulk get and decodes EVENT16 (int16 address)
+     * or EVENT32 (int32 address) events into the packet arrays, honoring the
+     * byte order of the buffer. (An IntBuffer view is not used because events
+     * start at the unaligned header offset, which makes the view much slower
+     * than the byte copy.)
+     * <p>
+     * The run stops before any event that needs the per-event path of
+     * readEventForwards: the end of the mapped chunk, the markOut position, a
+     * zero timestamp, a timestamp reset address, a timestamp later than
+     * maxTimestamp, or a timestamp earlier than the previous one (which covers
+     * big wraps and non-monotonic timestamps). The run also stops after an event
+     * whose timestamp equals maxTimestamp, as readPacketByTime does. The caller
+     * then reads the next event with readEventForwards, which handles these
+     * cases and their exceptions exactly as before.
+     *
+     * @param addr the address array to fill
+     * @param ts the timestamp array to fill
+     * @param etypes the event type array to fill, or null
+     * @param pixelData the pixel data array to fill, or null
+     * @param offset the index of the first event to fill
+     * @param maxEvents the maximum number of events to read
+     * @param maxTimestamp the latest timestamp to read
+     * @return the number of events read, which can be 0
+     */
+    private int readEventsForwardsBulk(int[] addr, int[] ts, EventType[] etypes, int[] pixelData, int offset, int maxEvents, int maxTimestamp) {
+        if (!bulkDecodeEnabled || jaer3EnableFlg || (byteBuffer == null) || (maxEvents <= 0)) {
+            return 0;
+        }
+        long toMarkOut = markOut - position;
+        if (toMarkOut < maxEvents) {
+            maxEvents = (int) Math.max(toMarkOut, 0);
+        }
+        int available = byteBuffer.remaining() / eventSizeBytes;
+        if (available < maxEvents) {
+            maxEvents = available;
+        }
+        if (maxEvents <= 0) {
+            return 0;
+        }
+        if (bulkBytes == null) {
+            bulkBytes = new byte[EVENT32_SIZE * BULK_BLOCK_EVENTS];
+        }
+        final boolean int32Address = addressType == Integer.TYPE;
+        final boolean bigEndian = byteBuffer.order() == ByteOrder.BIG_ENDIAN;
+        final int startBufferPosition = byteBuffer.position();
+        int prevTs = mostRecentTimestamp;
+        int count = 0;
+        int blockEvents = BULK_FIRST_BLOCK_EVENTS; // doubled each block so that short runs don't decode a lot of unused events
+        boolean stop = false;
+        while ((count < maxEvents) && !stop) {
+            final int n = Math.min(maxEvents - count, blockEvents);
+            blockEvents = Math.min(2 * blockEvents, BULK_BLOCK_EVENTS);
+            byteBuffer.position(startBufferPosition + (count * eventSizeBytes));
+            byteBuffer.get(bulkBytes, 0, eventSizeBytes * n);
+            for (int k = 0; k < n; k++) {
+                final int b = eventSizeBytes * k;
+                final int a = int32Address ? getInt(bulkBytes, b, bigEndian)
+                        : (bigEndian ? (((bulkBytes[b] & 0xff) << 8) | (bulkBytes[b + 1] & 0xff)) : (((bulkBytes[b + 1] & 0xff) << 8) | (bulkBytes[b] & 0xff)));
+                int t = getInt(bulkBytes, b + eventSizeBytes - 4, bigEndian);
+                if ((t == 0) || ((a & timestampResetBitmask) != 0)) {
+                    stop = true;
+                    break;
+                }
+                t -= timestampOffset;
+                if ((t > maxTimestamp) || (t < prevTs)) {
+                    stop = true;
+                    break;
+                }
+                final int i = offset + count;
+                addr[i] = a;
+                ts[i] = t;
+                if (etypes != null) {
+                    etypes[i] = EventType.PolarityEvent;
+                }
+                if (pixelData != null) {
+                    pixelData[i] = 0;
+                }
+                prevTs = t;
+                count++;
+                if (t == maxTimestamp) {
+                    stop = true;
+                    break;
+                }
+            }
+        }
+        byteBuffer.position(startBufferPosition + (count * eventSizeBytes));
+        position += count;
+        if (count > 0) {
+            mostRecentTimestamp = prevTs;
+        }
+        return count;
+    }
+
+    /**
+     * Decodes an int32 from 4 bytes in the given byte order
+     */
+    private static int getInt(byte[] buf, int i, boolean bigEndian) {
+        if (bigEndian) {
+            return (buf[i] << 24) | ((buf[i + 1] & 0xff) << 16) | ((buf[i + 2] & 0xff) << 8) | (buf[i + 3] & 0xff);
+        } else {
+            return (buf[i + 3] << 24) | ((buf[i + 2] & 0xff) << 16) | ((buf[i + 1] & 0xff) << 8) | (buf[i] & 0xff);
+        }
+    }
+
+    /**
+     * Fires AEInputStream.EVENT_POSITION if anyone listens to it, avoiding
+     * the construction of the event objects for every packet otherwise.
+     */
+    private void firePositionChange(long oldPosition) {
+        if (getSupport().hasListeners(AEInputStream.EVENT_POSITION)) {
+            getSupport().firePropertyChange(AEInputStream.EVENT_POSITION, oldPosition, position());
+        }
+    }
+
+    /**
+     * Returns whether readPacketByTime and readPacketByNumber copy runs of
+     * events in bulk from the mapped file.
+     *
+     * @return true if bulk decoding is enabled (default)
+     */
+    public boolean isBulkDecodeEnabled() {
+        return bulkDecodeEnabled;
+    }
+
+    /**
+     * Enables or disables bulk decoding, e.g. to compare against the
+     * per-event path.
+     *
+     * @param bulkDecodeEnabled true to enable (default)
+     */
+    public void setBulkDecodeEnabled(boolean bulkDecodeEnabled) {
+        this.bulkDecodeEnabled = bulkDecodeEnabled;
+    }
+
+    /**
+     * Returns whether the chunks of uncompressed files are mapped ahead of
+     * the reader on a background thread and unmapped when they are not needed
+     * anymore, see ChunkPrefetcher.
+     *
+     * @return true if prefetching is enabled (default)
+     */
+    public boolean isChunkPrefetchEnabled() {
+        return chunkPrefetchEnabled;
+    }
+
+    /**
+     * Enables or disables prefetching chunks, e.g. to compare against mapping
+     * each chunk when the reader reaches it. The current chunk is mapped again
+     * and the position is kept.
+     *
+     * @param chunkPrefetchEnabled true to enable (default)
+     */
+    synchronized public void setChunkPrefetchEnabled(boolean chunkPrefetchEnabled) {
+        if (chunkPrefetchEnabled == this.chunkPrefetchEnabled) {
+            return;
+        }
+        this.chunkPrefetchEnabled = chunkPrefetchEnabled;
+        if (compressedFlg || (fileChannel == null)) {
+            return;
+        }
+        final long pos = position;
+        final ChunkPrefetcher oldPrefetcher = chunkPrefetcher;
+        chunkPrefetcher = null;
+        try {
+            mapChunk(chunkNumber);
+        } catch (IOException e) {
+            log.warning("could not map chunk " + chunkNumber + " again: " + e.toString());
+            byteBuffer = null;
+        }
+        if (oldPrefetcher != null) {
+            oldPrefetcher.close(); // byteBuffer does not refer to its chunks anymore
+        }
+        position(pos);
+    }
+
+    /**
+     * @return the chunk prefetching statistics, or null if prefetching is not
+     * used
+     */
+    public String getChunkPrefetchStatistics() {
+        final ChunkPrefetcher p = chunkPrefetcher;
+        return p == null ? null : p.toString();
+    }
+
     /**
      * Reads the next event backwards and leaves the position and byte buffer
      * pointing to event one earlier than the one we just read. I.e., we back
@@ -604,6 +826,15 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         try {
             if (n > 0) {
                 for (int i = 0; i < n; i++) {
+                    int nb = readEventsForwardsBulk(addr, ts, null, null, i, n - i, Integer.MAX_VALUE);
+                    if (nb > 0) {
+                        count += nb;
+                        i += nb;
+                        currentStartTimestamp = ts[i - 1];
+                        if (i >= n) {
+                            break;
+                        }
+                    }
                     ev = readEventForwards();  // TODO since repeat is always true in existing code, then can never get null event right now TODO; fix this 
                     count++;
                     addr[i] = ev.address; // could get null pointer exception here if repeat was false
@@ -628,7 +859,7 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
             // log.info(e.getMessage());
         }
         packet.setNumEvents(count);
-        getSupport().firePropertyChange(AEInputStream.EVENT_POSITION, oldPosition, position());
+        firePositionChange(oldPosition);
         return packet;
         // return new AEPacketRaw(addr,ts);
     }
@@ -707,6 +938,13 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
             if (dt > 0) { // read forwards
                 if (!bigWrap) { // normal situation
                     do {
+                        int nb = readEventsForwardsBulk(addr, ts, etypes, pixelDataArray, i, addr.length - i, endTimestamp);
+                        if (nb > 0) {
+                            i += nb;
+                            if ((mostRecentTimestamp >= endTimestamp) || (i >= addr.length)) {
+                                break;
+                            }
+                        }
                         ae = readEventForwards(endTimestamp);
                         if (ae == null) {
                             break;
@@ -803,7 +1041,7 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         // if(i<1){
         // log.info(packet.toString());
         // }
-        getSupport().firePropertyChange(AEInputStream.EVENT_POSITION, oldPosition, position());
+        firePositionChange(oldPosition);
         // System.out.println("bigwrap="+bigWrap+" read "+packet.getNumEvents()+"
         // mostRecentTimestamp="+mostRecentTimestamp+" currentStartTimestamp="+currentStartTimestamp);
         return packet;
@@ -849,6 +1087,8 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
     public long size() {
         if (jaer3EnableFlg) {
             return jaer3BufferParser.size();
+        } else if (compressedFlg) {
+            return compressedNumEvents;
         } else {
             return (fileSize - headerOffset) / eventSizeBytes;
         }
@@ -896,6 +1136,222 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         return this.position;
     }
 
+    /**
+     * Positions the stream at the first event whose timestamp is at or after
+     * the given time. If the timestamp index is available, the nearest
+     * preceding index entry is found by binary search and the stream is
+     * scanned forward from there, so seeking costs O(log n) plus at most one
+     * index interval. While the index is still being built, the scan starts
+     * from the beginning of the file. The timestamp is the file timestamp
+     * (without the timestamp reset offset) unwrapped by adding 2^32 for each
+     * timestamp wrap, see {@link AEFileTimestampIndex}.
+     * <p>
+     * Fires {@link AEInputStream#EVENT_REPOSITIONED}.
+     *
+     * @param absoluteUs the unwrapped timestamp in us
+     * @return the new event position
+     * @throws IOException if there is a problem reading the file
+     */
+    @Override
+    synchronized public long seekToTimestamp(long absoluteUs) throws IOException {
+        if (jaer3EnableFlg) {
+            throw new IOException("seekToTimestamp is not supported for jAER 3.x files");
+        }
+        final long oldPosition = position();
+        final long n = size();
+        if (n == 0) {
+            return 0;
+        }
+        final AEFileTimestampIndex idx = timestampIndex;
+        long pos = 0;
+        long t;
+        if (idx != null && idx.getNumEntries() > 0) {
+            int e = idx.findEntry(absoluteUs);
+            pos = idx.getPosition(e);
+            t = idx.getTimestampUs(e);
+        } else {
+            log.info("timestamp index not yet available, scanning from start of file to seek to " + absoluteUs + " us");
+            t = peekTimestamp(0);
+        }
+        int prevTs = (int) t;
+        while (t < absoluteUs && pos < (n - 1)) {
+            pos++;
+            int ts = peekTimestamp(pos);
+            if (AEFileTimestampIndex.isWrap(ts, prevTs)) {
+                t += AEFileTimestampIndex.WRAP_PERIOD_US;
+            }
+            t += (long) ts - (int) t; // keep the wrap epoch of t and take the low 32 bits from ts
+            prevTs = ts;
+        }
+        position(pos);
+        mostRecentTimestamp = prevTs - timestampOffset;
+        currentStartTimestamp = mostRecentTimestamp;
+        getSupport().firePropertyChange(AEInputStream.EVENT_REPOSITIONED, oldPosition, pos);
+        return pos;
+    }
+
+    /**
+     * Converts a timestamp as returned by {@link #getMostRecentTimestamp()},
+     * i.e. without the timestamp reset offset and wrapped to int, to the
+     * unwrapped file timestamp that {@link #seekToTimestamp(long)} expects. The
+     * wrap epoch nearest the current position is taken.
+     *
+     * @param timestamp the timestamp in us
+     * @return the unwrapped file timestamp in us
+     */
+    synchronized public long toAbsoluteTimestamp(int timestamp) {
+        final int raw = timestamp + timestampOffset;
+        final AEFileTimestampIndex idx = timestampIndex;
+        if (idx == null) {
+            return raw;
+        }
+        return idx.unwrapTimestamp(position(), raw);
+    }
+
+    /**
+     * Returns the raw file timestamp of an event, leaving the stream positioned
+     * at that event.
+     *
+     * @param event the event number
+     * @return the timestamp as stored in the file
+     */
+    private int peekTimestamp(long event) {
+        position(event);
+        return byteBuffer.getInt(byteBuffer.position() + (eventSizeBytes - 4)); // timestamp is last int of each event
+    }
+
+    /**
+     * Returns the timestamp index of this file.
+     *
+     * @return the index, or null if it is not (yet) available, e.g. because it
+     * is still being built or the file is a jAER 3.x file
+     */
+    public AEFileTimestampIndex getTimestampIndex() {
+        return timestampIndex;
+    }
+
+    /**
+     * Returns the position as a fraction of the duration of the file, using the
+     * timestamp index. Falls back on {@link #getFractionalPosition()} if the
+     * index is not available.
+     *
+     * @return fractional position in time, 0 at start, 1 at end
+     */
+    synchronized public float getFractionalTimePosition() {
+        final AEFileTimestampIndex idx = timestampIndex;
+        if (idx == null || idx.getDurationUs() <= 0) {
+            return getFractionalPosition();
+        }
+        long t = idx.unwrapTimestamp(position(), mostRecentTimestamp + timestampOffset);
+        return (float) (t - idx.getFirstTimestampUs()) / idx.getDurationUs();
+    }
+
+    /**
+     * Loads the timestamp index sidecar of the file, or starts a background
+     * thread to build it if there is no valid sidecar.
+     */
+    private void startTimestampIndexBuilder() {
+        stopTimestampIndexBuilder();
+        timestampIndex = null;
+        if (!timestampIndexEnabled || file == null || jaer3EnableFlg || fileChannel == null) {
+            return;
+        }
+        if (compressedFlg) {
+            timestampIndex = makeCompressedTimestampIndex();
+            return;
+        }
+        timestampIndex = AEFileTimestampIndex.load(file, eventSizeBytes, headerOffset);
+        if (timestampIndex != null) {
+            return;
+        }
+        timestampIndexBuilder = new TimestampIndexBuilder(file);
+        timestampIndexBuilder.start();
+    }
+
+    private void stopTimestampIndexBuilder() {
+        TimestampIndexBuilder b = timestampIndexBuilder;
+        if (b != null) {
+            b.cancelled = true; // don't interrupt, that would close the shared fileChannel
+            try {
+                b.join(1000);
+            } catch (InterruptedException e) {
+            }
+            timestampIndexBuilder = null;
+        }
+    }
+
+    /**
+     * Makes the timestamp index of a compressed file from the first and last
+     * timestamps in the chunk headers, without decoding any chunk.
+     */
+    private AEFileTimestampIndex makeCompressedTimestampIndex() {
+        AEFileTimestampIndex idx = new AEFileTimestampIndex(eventSizeBytes, headerOffset,
+                AEFileTimestampIndex.DEFAULT_EVENTS_PER_ENTRY, AEFileTimestampIndex.DEFAULT_US_PER_ENTRY);
+        for (AEFileChunkCodec.ChunkInfo c : compressedChunks) {
+            idx.addEvent(c.firstEvent, c.firstTimestamp);
+            idx.addEvent((c.firstEvent + c.numEvents) - 1, c.lastTimestamp);
+        }
+        idx.finish();
+        idx.setDataFile(file);
+        return idx;
+    }
+
+    private volatile AEFileTimestampIndex timestampIndex = null;
+    private TimestampIndexBuilder timestampIndexBuilder = null;
+    private boolean timestampIndexEnabled = true;
+
+    /**
+     * Builds the timestamp index by mapping the file chunk by chunk and reading
+     * only the timestamps, then stores it in the sidecar file.
+     */
+    private class TimestampIndexBuilder extends Thread {
+
+        private final File dataFile;
+        volatile boolean cancelled = false;
+
+        TimestampIndexBuilder(File dataFile) {
+            super("TimestampIndexBuilder");
+            setDaemon(true);
+            setPriority(Thread.MIN_PRIORITY);
+            this.dataFile = dataFile;
+        }
+
+        @Override
+        public void run() {
+            long startTime = System.currentTimeMillis();
+            AEFileTimestampIndex idx = new AEFileTimestampIndex(eventSizeBytes, headerOffset,
+                    AEFileTimestampIndex.DEFAULT_EVENTS_PER_ENTRY, AEFileTimestampIndex.DEFAULT_US_PER_ENTRY);
+            final int tsOffset = eventSizeBytes - 4;
+            long event = 0;
+            try {
+                for (int chunk = 0; chunk < numChunks && !cancelled; chunk++) {
+                    ByteBuffer buf = mapChunkBuffer(chunk);
+                    final int limit = buf.limit() - eventSizeBytes;
+                    for (int b = 0; b <= limit; b += eventSizeBytes) {
+                        idx.addEvent(event++, buf.getInt(b + tsOffset));
+                    }
+                }
+            } catch (IOException e) {
+                if (!cancelled) {
+                    log.warning("could not build timestamp index for " + dataFile + ": " + e.toString());
+                }
+                return;
+            }
+            if (cancelled) {
+                return;
+            }
+            idx.finish();
+            log.info("built " + idx + " for " + event + " events in " + (System.currentTimeMillis() - startTime) + " ms");
+            try {
+                idx.save(dataFile);
+            } catch (IOException e) {
+                idx.setDataFile(dataFile);
+                log.warning("could not save timestamp index next to " + dataFile + ", using it only in memory: " + e.toString());
+            }
+            timestampIndex = idx;
+        }
+    }
+
     /**
      * Returns the position as a fraction of the total number of events
      *
@@ -1021,9 +1477,18 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
 
     @Override
     public void close() throws IOException {
-        super.close();
-        fileChannel.close();
-        fileChannel=null;
+        stopTimestampIndexBuilder();
+        synchronized (this) { // a reader must not use byteBuffer while its chunks are unmapped
+            if (chunkPrefetcher != null) {
+                byteBuffer = null; // its chunk is unmapped now
+                log.info(chunkPrefetcher.toString());
+                chunkPrefetcher.close();
+                chunkPrefetcher = null;
+            }
+            super.close();
+            fileChannel.close();
+            fileChannel=null;
+        }
         System.gc();
         System.runFinalization(); // try to free memory mapped file buffers so file can be deleted....
     }
@@ -1101,10 +1566,18 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         repeat = rep;
     }
 
+    /**
+     * @return true if this is a compressed AER-DAT2.1 file
+     * @see AEFileChunkCodec
+     */
+    public boolean isCompressed() {
+        return compressedFlg;
+    }
+
     /**
      * @return the byteBuffer
      */
-    public MappedByteBuffer getByteBuffer() {
+    public ByteBuffer getByteBuffer() {
         return byteBuffer;
     }
 
@@ -1286,6 +1759,8 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
 
     private int chunksMapped = 0;
     private final int GC_EVERY_THIS_MANY_CHUNKS = 8;
+    private ChunkPrefetcher chunkPrefetcher = null;
+    private boolean chunkPrefetchEnabled = true;
 
     /**
      * memory-maps a chunk of the input file.
@@ -1294,31 +1769,23 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
      */
     private void mapChunk(int chunkNumber) throws IOException {
         this.chunkNumber = chunkNumber;
-        long start = getChunkStartPosition(chunkNumber);
-        if (start >= fileSize) {
-            throw new EOFException("start of chunk=" + start + " but file has fileSize=" + fileSize);
-        }
-        long numBytesToMap = chunkSizeBytes;
-        if ((start + numBytesToMap) >= fileSize) {
-            numBytesToMap = fileSize - start;
-        }
-        if (!fileChannel.isOpen()) {
-            fileChannel = fileInputStream.getChannel();
-            if (!fileChannel.isOpen()) {
-                log.warning("fileChannel unexpectedly was closed");
-                throw new IOException("fileChannel unexpectedly was closed");
+        if (chunkPrefetchEnabled && !compressedFlg) { // decoded compressed chunks reuse one buffer and cannot be prefetched
+            if (chunkPrefetcher == null) {
+                chunkPrefetcher = new ChunkPrefetcher(new ChunkPrefetcher.Mapper() {
+                    @Override
+                    public ByteBuffer map(int chunk) throws IOException {
+                        return mapChunkBuffer(chunk);
+                    }
+                }, numChunks, !jaer3EnableFlg); // the jAER 3.0 parser may still refer to old chunks
             }
-            log.info("had to reopen fileChannel from fileInputStream");
-        }
-        byteBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, start, numBytesToMap);
-        if (byteBuffer == null) {
-            log.severe("got null byteBuffer from fileChannel.map(FileChannel.MapMode.READ_ONLY,start,numBytesToMap) with start=" + start
-                    + " numBytesToMap=" + numBytesToMap);
-
+            byteBuffer = chunkPrefetcher.get(chunkNumber);
+        } else {
+            byteBuffer = mapChunkBuffer(chunkNumber);
         }
         this.position = positionFromChunk(chunkNumber);
         // log.info("mapped chunk "+chunkNumber+" of "+(numBytesToMap>>10)+"kB");
-        if (++chunksMapped > GC_EVERY_THIS_MANY_CHUNKS) {
+        if (!compressedFlg && ((chunkPrefetcher == null) || !chunkPrefetcher.isUnmapEnabled())
+                && ++chunksMapped > GC_EVERY_THIS_MANY_CHUNKS) { // decoded compressed chunks reuse one buffer
             chunksMapped = 0;
             System.gc();
             // System.runFinalization(); // caused deadlock on rewind where AEViewer.viewLoop was wating for
@@ -1344,6 +1811,53 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         }
     }
 
+    /**
+     * Memory-maps a chunk of the input file without changing the state of the
+     * stream. Used by mapChunk and by the timestamp index builder. For
+     * compressed files the chunk is decoded into the buffer of the previous
+     * chunk, so this must only be called by mapChunk.
+     *
+     * @param chunkNumber the number of the chunk, starting with 0
+     * @return the read-only buffer of the chunk
+     */
+    private ByteBuffer mapChunkBuffer(int chunkNumber) throws IOException {
+        if (compressedFlg) {
+            if (chunkNumber < 0 || chunkNumber >= compressedChunks.size()) {
+                throw new EOFException("tried to decode chunk " + chunkNumber + " but file has " + compressedChunks.size() + " chunks");
+            }
+            if (fileChannel == null) {
+                throw new ClosedChannelException();
+            }
+            return chunkCodec.decode(fileChannel, compressedChunks.get(chunkNumber), byteBuffer);
+        }
+        long start = getChunkStartPosition(chunkNumber);
+        if (start >= fileSize) {
+            throw new EOFException("start of chunk=" + start + " but file has fileSize=" + fileSize);
+        }
+        long numBytesToMap = chunkSizeBytes;
+        if ((start + numBytesToMap) >= fileSize) {
+            numBytesToMap = fileSize - start;
+        }
+        if (fileChannel == null) {
+            throw new ClosedChannelException();
+        }
+        if (!fileChannel.isOpen()) {
+            fileChannel = fileInputStream.getChannel();
+            if (!fileChannel.isOpen()) {
+                log.warning("fileChannel unexpectedly was closed");
+                throw new IOException("fileChannel unexpectedly was closed");
+            }
+            log.info("had to reopen fileChannel from fileInputStream");
+        }
+        ByteBuffer buf = fileChannel.map(FileChannel.MapMode.READ_ONLY, start, numBytesToMap);
+        if (buf == null) {
+            log.severe("got null byteBuffer from fileChannel.map(FileChannel.MapMode.READ_ONLY,start,numBytesToMap) with start=" + start
+                    + " numBytesToMap=" + numBytesToMap);
+
+        }
+        return buf;
+    }
+
     /**
      * @return start of chunk in bytes
      * @param chunk the chunk number
@@ -1352,6 +1866,9 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         if (chunk <= 0) {
             return headerOffset;
         }
+        if (compressedFlg) {
+            return chunk < compressedChunks.size() ? compressedChunks.get((int) chunk).fileOffset : fileSize;
+        }
         return (chunk * chunkSizeBytes) + headerOffset;
 
     }
@@ -1426,6 +1943,12 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
                 eventSizeBytes = (Integer.SIZE / 8) + (Short.SIZE / 8);
                 jaer3EnableFlg = false;
                 log.info("File format AER-DAT-1.0");
+            } else if (Math.round(version * 10) == 21) { // #!AER-DAT-2.1, decoded to the 2.0 layout
+                addressType = Integer.TYPE;
+                eventSizeBytes = (Integer.SIZE / 8) + (Integer.SIZE / 8);
+                jaer3EnableFlg = false;
+                compressedFlg = true;
+                log.info("File format AER-DAT-2.1 (compressed)");
             } else if (Math.floor(version) == 2) { // #!AER-DAT-2.0
                 addressType = Integer.TYPE;
                 eventSizeBytes = (Integer.SIZE / 8) + (Integer.SIZE / 8);
@@ -1463,6 +1986,10 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
     void setupChunks() throws IOException {
         fileChannel = fileInputStream.getChannel();
         fileSize = fileChannel.size();
+        if (compressedFlg) {
+            setupCompressedChunks();
+            return;
+        }
         chunkSizeBytes = eventSizeBytes * CHUNK_SIZE_EVENTS;
         numChunks = (int) ((fileSize / chunkSizeBytes) + 1); // used to limit chunkNumber to prevent overflow of
         // position and for EOF
@@ -1470,6 +1997,29 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         mapChunk(0);
     }
 
+    /**
+     * Reads the chunk headers of a compressed file. All chunks except the last
+     * one have the same number of events, which becomes the chunk size, so
+     * that event positions map to chunks as for uncompressed files.
+     */
+    private void setupCompressedChunks() throws IOException {
+        chunkCodec = new AEFileChunkCodec();
+        compressedChunks = AEFileChunkCodec.scan(fileChannel, headerOffset);
+        numChunks = compressedChunks.size();
+        compressedNumEvents = 0;
+        CHUNK_SIZE_EVENTS = numChunks > 0 ? compressedChunks.get(0).numEvents : AEFileChunkCodec.DEFAULT_CHUNK_SIZE_EVENTS;
+        for (int i = 0; i < numChunks; i++) {
+            AEFileChunkCodec.ChunkInfo c = compressedChunks.get(i);
+            if (i < numChunks - 1 && c.numEvents != CHUNK_SIZE_EVENTS) {
+                throw new IOException(c + " has a different number of events than the first chunk, " + CHUNK_SIZE_EVENTS);
+            }
+            compressedNumEvents += c.numEvents;
+        }
+        chunkSizeBytes = eventSizeBytes * CHUNK_SIZE_EVENTS;
+        log.info("fileSize=" + fileSize + " compressed with " + compressedNumEvents + " events in numChunks=" + numChunks + " of " + CHUNK_SIZE_EVENTS + " events");
+        mapChunk(0);
+    }
+
     /**
      * assumes we are positioned at start of line and that we may either read a
      * comment char '#' or something else leaves us after the line at start of
@@ -1562,15 +2112,24 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
      * Sets the File reference but doesn't open the file
      */
     public void setFile(File f) {
+        boolean changed = (f != null) && !f.equals(this.file);
         this.file = f;
-        absoluteStartingTimeMs = getAbsoluteStartingTimeMsFromFile(getFile());
+        absoluteStartingTimeMs = getAbsoluteStartingTimeMsFromHeader();
+        if (absoluteStartingTimeMs == 0) {
+            absoluteStartingTimeMs = getAbsoluteStartingTimeMsFromFile(getFile());
+        }
+        if (changed) {
+            startTimestampIndexBuilder();
+        }
     }
 
     /**
-     * When the file is opened, the filename is parsed to try to extract the
-     * date and time the file was created from the filename.
+     * When the file is opened, the DataStartTime or Creation time header lines
+     * written by AEFileOutputStream are parsed for the time logging was
+     * started, or if there are none, the filename is parsed to try to extract
+     * the date and time the file was created from the filename.
      *
-     * @return the time logging was started in ms since 1970
+     * @return the time logging was started in ms since 1970, or 0 if unknown
      */
     public long getAbsoluteStartingTimeMs() {
         return absoluteStartingTimeMs;
@@ -1580,6 +2139,35 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         this.absoluteStartingTimeMs = absoluteStartingTimeMs;
     }
 
+    /**
+     * Parses the header for the ms time that logging was started, which is
+     * more precise than the date in the file name.
+     *
+     * @return start of logging time in ms since 1970, or 0 if the header does
+     * not have it
+     */
+    private long getAbsoluteStartingTimeMsFromHeader() {
+        long creationTimeMs = 0;
+        for (String s : header) {
+            final int i = s.indexOf(HEADER_CURRENT_TIME_MILLIS);
+            if (i < 0) {
+                continue;
+            }
+            try {
+                final long t = Long.parseLong(s.substring(i + HEADER_CURRENT_TIME_MILLIS.length()).trim());
+                if (s.contains("DataStartTime")) {
+                    return t;
+                }
+                creationTimeMs = t;
+            } catch (NumberFormatException e) {
+                log.warning("could not parse time from header line \"" + s + "\": " + e.toString());
+            }
+        }
+        return creationTimeMs;
+    }
+
+    private static final String HEADER_CURRENT_TIME_MILLIS = "System.currentTimeMillis()";
+
     /**
      * Parses the filename to extract the file logging date from the name of the
      * file.
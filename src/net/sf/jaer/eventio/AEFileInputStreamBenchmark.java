@@ -0,0 +1,164 @@
+/*
+ * AEFileInputStreamBenchmark.java
+ *
+ * Measures the read throughput of AEFileInputStream.
+ */
+package net.sf.jaer.eventio;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+
+/**
+ * Measures events/s of AEFileInputStream.readPacketByNumber and
+ * readPacketByTime with the per-event path and with the bulk decode path, on
+ * a synthetic AER-DAT-1.0 (EVENT16) and AER-DAT-2.0 (EVENT32) file, and the
+ * histogram of the latency of reading one packet forwards and backwards with
+ * and without chunk prefetching, which shows the stalls at chunk boundaries.
+ * Files larger than the page cache show the stalls best. Run from
+ * the command line with
+ * <pre>
+ * java -cp dist/jAER.jar:jars/* net.sf.jaer.eventio.AEFileInputStreamBenchmark [numEvents] [dataFile]
+ * </pre> If dataFile is given it is benchmarked instead of the synthetic
+ * files.
+ */
+public class AEFileInputStreamBenchmark {
+
+    private static final int PACKET_EVENTS = 50000, PACKET_DT_US = 10000, REPEATS = 3;
+    /** Latency histogram bins are powers of 2 of us */
+    private static final int LATENCY_BINS = 24;
+
+    public static void main(String[] args) throws IOException {
+        Logger.getLogger("net.sf.jaer").setLevel(Level.WARNING);
+        int numEvents = args.length > 0 ? Integer.parseInt(args[0]) : 20000000;
+        AEChip chip = null; // not needed for AEDAT-1.x/2.x files, and constructing one needs OpenGL
+        if (args.length > 1) {
+            benchmark(new File(args[1]), chip);
+            return;
+        }
+        for (float version : new float[]{1, 2}) {
+            File f = File.createTempFile("AEFileInputStreamBenchmark", ".aedat");
+            f.deleteOnExit();
+            writeSyntheticFile(f, version, numEvents, 0);
+            benchmark(f, chip);
+            f.delete();
+            AEFileTimestampIndex.indexFileFor(f).delete();
+        }
+    }
+
+    /**
+     * Writes a file with monotonic timestamps and random addresses at about 1
+     * Meps.
+     *
+     * @param dataStartTimeMs the DataStartTime written to the header, or 0 for
+     * none
+     */
+    static void writeSyntheticFile(File f, float version, int numEvents, long dataStartTimeMs) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 20));
+        try {
+            writeHeaderLine(out, AEDataFile.DATA_FILE_FORMAT_HEADER + version);
+            writeHeaderLine(out, " synthetic data file written by AEFileInputStreamBenchmark");
+            if (dataStartTimeMs != 0) {
+                writeHeaderLine(out, " DataStartTime: System.currentTimeMillis() " + dataStartTimeMs);
+            }
+            writeHeaderLine(out, AEDataFile.END_OF_HEADER_STRING);
+            Random r = new Random(1);
+            int ts = 1;
+            for (int i = 0; i < numEvents; i++) {
+                ts += r.nextInt(3);
+                int addr = r.nextInt() & 0xfffe; // bit 0 set is treated as timestamp reset by some chips, avoid it
+                if (version < 2) {
+                    out.writeShort(addr);
+                } else {
+                    out.writeInt(addr);
+                }
+                out.writeInt(ts);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeHeaderLine(DataOutputStream out, String s) throws IOException {
+        out.writeByte(AEDataFile.COMMENT_CHAR);
+        out.writeBytes(s);
+        out.write(AEDataFile.EOL);
+    }
+
+    private static void benchmark(File f, AEChip chip) throws IOException {
+        AEFileInputStream in = new AEFileInputStream(f, chip);
+        try {
+            System.out.println(f.getName() + ": " + in.size() + " events");
+            for (boolean bulk : new boolean[]{false, true}) {
+                in.setBulkDecodeEnabled(bulk);
+                for (boolean byTime : new boolean[]{false, true}) {
+                    double best = 0;
+                    for (int r = 0; r < REPEATS; r++) {
+                        in.rewind();
+                        long n = 0, start = System.nanoTime();
+                        // stop a packet short of markOut, the default end of the file, so that reading does not wrap around
+                        while ((in.position() + PACKET_EVENTS) < in.getMarkOutPosition()) {
+                            AEPacketRaw p = byTime ? in.readPacketByTime(PACKET_DT_US) : in.readPacketByNumber(PACKET_EVENTS);
+                            n += p.getNumEvents();
+                        }
+                        double eps = n / ((System.nanoTime() - start) * 1e-9);
+                        best = Math.max(best, eps);
+                    }
+                    System.out.println(String.format("  %-20s %-9s %10.3g events/s", byTime ? "readPacketByTime" : "readPacketByNumber", bulk ? "bulk" : "per-event", best));
+                }
+            }
+            in.setBulkDecodeEnabled(true);
+            for (boolean prefetch : new boolean[]{false, true}) {
+                in.setChunkPrefetchEnabled(prefetch);
+                for (boolean forwards : new boolean[]{true, false}) {
+                    measureLatency(in, prefetch, forwards);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the whole file packet by packet and prints the histogram of the
+     * time to read a packet.
+     */
+    private static void measureLatency(AEFileInputStream in, boolean prefetch, boolean forwards) throws IOException {
+        final long[] histogram = new long[LATENCY_BINS];
+        long n = 0, maxNs = 0, sumNs = 0;
+        if (forwards) {
+            in.rewind();
+        } else {
+            in.position(in.getMarkOutPosition() - 1);
+        }
+        while (forwards ? ((in.position() + PACKET_EVENTS) < in.getMarkOutPosition()) : (in.position() > PACKET_EVENTS)) {
+            final long start = System.nanoTime();
+            in.readPacketByNumber(forwards ? PACKET_EVENTS : -PACKET_EVENTS);
+            final long dt = System.nanoTime() - start;
+            final int us = (int) Math.max(1, dt / 1000);
+            histogram[Math.min(LATENCY_BINS - 1, 31 - Integer.numberOfLeadingZeros(us))]++;
+            maxNs = Math.max(maxNs, dt);
+            sumNs += dt;
+            n++;
+        }
+        final StringBuilder sb = new StringBuilder(String.format("  packet read latency %-8s %-11s %d packets, mean %.3f ms, max %.3f ms:",
+                prefetch ? "prefetch" : "on demand", forwards ? "forwards" : "backwards", n, n > 0 ? sumNs * 1e-6 / n : 0, maxNs * 1e-6));
+        for (int i = 0; i < LATENCY_BINS; i++) {
+            if (histogram[i] > 0) {
+                sb.append(String.format(" <%dus:%d", 2 << i, histogram[i]));
+            }
+        }
+        System.out.println(sb);
+        if (prefetch) {
+            System.out.println("    " + in.getChunkPrefetchStatistics());
+        }
+    }
+}
@@ -54,6 +54,15 @@ public interface AEFileInputStreamInterface extends InputDataFileInterface {
      * @param yes true to check (default).
      */
     public void setNonMonotonicTimeExceptionsChecked(boolean yes); // TODO should be a general property of any AE input stream, not just files. e.g. network too.
-    
+
+    /** Positions the stream at the first event whose timestamp is at or after the given time.
+     * Implementations use a sparse timestamp index for O(log n) seeking when it is available.
+     *
+     * @param absoluteUs the unwrapped timestamp in us, i.e. the file timestamp plus 2^32 for each timestamp wrap before it
+     * @return the new event position
+     * @throws IOException if there is a problem reading the file
+     */
+    public long seekToTimestamp(long absoluteUs) throws IOException;
+
     
 }
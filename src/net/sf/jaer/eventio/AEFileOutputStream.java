@@ -14,8 +14,14 @@ import java.io.OutputStream;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.prefs.BackingStoreException;
@@ -27,6 +33,17 @@ import net.sf.jaer.chip.AEChip;
 /**
  * Streams out packets of events in binary. The only difference to AEOuputStream
  * is the addition of a file header in text format.
+ * <p>
+ * With data file version {@link AEDataFile#COMPRESSED_DATA_FILE_VERSION_NUMBER}
+ * the events are collected into chunks of
+ * {@link AEFileChunkCodec#DEFAULT_CHUNK_SIZE_EVENTS} events that are written
+ * compressed by {@link AEFileChunkCodec}.
+ * <p>
+ * After {@link #startAsyncWriter(int, OverflowPolicy)} writePacket only copies
+ * the events into a recycled direct buffer and a writer thread writes the full
+ * buffers with gathering writes to the file, so that slow disks don't stall
+ * the caller, e.g. the AEViewer view loop. {@link #close()} writes all queued
+ * buffers before it returns.
  *
  * @author tobi
  */
@@ -44,6 +61,35 @@ public class AEFileOutputStream extends AEOutputStream implements AEDataFile {
 
     private int eventCounter = 0;
     private String dataFileVersionNumber;
+
+    private AEFileChunkCodec chunkCodec = null; // only for compressed files
+    private int[] chunkAddresses, chunkTimestamps;
+    private int chunkNumEvents = 0;
+    private long compressedBytesWritten = 0;
+
+    /**
+     * What writePacket does in asynchronous mode when all buffers are queued
+     * for writing, i.e. when the disk does not keep up.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Wait for the writer thread to free a buffer, so that no events are
+         * lost
+         */
+        STALL,
+        /**
+         * Drop the rest of the packet and count it, so that the caller is
+         * never blocked
+         */
+        DROP
+    }
+    /**
+     * Default number of buffers for the asynchronous writer
+     */
+    public static final int DEFAULT_ASYNC_NUM_BUFFERS = 16;
+    private static final int ASYNC_BUFFER_EVENTS = 1 << 15;
+    private static final int LATENCY_SAMPLES = 1024;
+    private AsyncWriter asyncWriter = null;
  
     /**
      * Creates a new instance of AEOutputStream and writes the header. If there
@@ -58,12 +104,34 @@ public class AEFileOutputStream extends AEOutputStream implements AEDataFile {
      * @throws java.io.IOException thrown when write to file failed
      */
     public AEFileOutputStream(final OutputStream os, final AEChip chip, String dataFileVersionNum) throws IOException {
+        this(os, chip, dataFileVersionNum, null);
+    }
+
+    /**
+     * Creates a new instance of AEOutputStream and writes the header,
+     * including additional header lines, e.g. those of another file that is
+     * converted.
+     *
+     * @param os an output stream
+     * @param chip (optionally) provide the chip used and write out additional
+     * header info
+     * @param dataFileVersionNum the AEDAT file data format string, e.g. "2.0"
+     * or {@link AEDataFile#COMPRESSED_DATA_FILE_VERSION_NUMBER}
+     * @param additionalHeaderLines lines written without the leading '#'
+     * before the DataStartTime line, or null
+     * @throws java.io.IOException thrown when write to file failed
+     */
+    public AEFileOutputStream(final OutputStream os, final AEChip chip, String dataFileVersionNum, List<String> additionalHeaderLines) throws IOException {
         super(os);
         try {
-            dataFileVersionNumber = dataFileVersionNum;
+            dataFileVersionNumber = dataFileVersionNum != null ? dataFileVersionNum : AEDataFile.DATA_FILE_VERSION_NUMBER;
             writeHeaderLine(AEDataFile.DATA_FILE_FORMAT_HEADER + dataFileVersionNumber);
             writeHeaderLine(" This is a raw AE data file - do not edit");
-            writeHeaderLine(" Data format is int32 address, int32 timestamp (8 bytes total), repeated for each event");
+            if (isCompressed()) {
+                writeHeaderLine(" Data format is compressed chunks of int32 address, int32 timestamp events, see net.sf.jaer.eventio.AEFileChunkCodec");
+            } else {
+                writeHeaderLine(" Data format is int32 address, int32 timestamp (8 bytes total), repeated for each event");
+            }
             writeHeaderLine(" Timestamps tick: " + AEConstants.TICK_DEFAULT_US + " us");
             writeHeaderLine(" Creation date: " + new Date());
             writeHeaderLine(" Creation time: System.currentTimeMillis() " + System.currentTimeMillis());
@@ -77,16 +145,29 @@ public class AEFileOutputStream extends AEOutputStream implements AEDataFile {
             writeHeaderLine(" Hostname: " + computerName);
 
             // optionally write chip-specific info
-            if (chip.getHardwareInterface() != null) {
-                writeHeaderLine(" HardwareInterface: " + chip.getHardwareInterface().toString());
-            }
+            if (chip != null) {
+                if (chip.getHardwareInterface() != null) {
+                    writeHeaderLine(" HardwareInterface: " + chip.getHardwareInterface().toString());
+                }
 
-            chip.writeAdditionalAEFileOutputStreamHeader(this);
+                chip.writeAdditionalAEFileOutputStreamHeader(this);
+            }
+            if (additionalHeaderLines != null) {
+                for (String line : additionalHeaderLines) {
+                    writeHeaderLine(line);
+                }
+            }
             writeHeaderLine(" DataStartTime: System.currentTimeMillis() " + System.currentTimeMillis());
             writeHeaderLine(END_OF_HEADER_STRING);
 
             if (os instanceof FileOutputStream) {
                 channel = ((FileOutputStream) os).getChannel();
+            }
+            if (isCompressed()) {
+                chunkCodec = new AEFileChunkCodec();
+                chunkAddresses = new int[AEFileChunkCodec.DEFAULT_CHUNK_SIZE_EVENTS];
+                chunkTimestamps = new int[AEFileChunkCodec.DEFAULT_CHUNK_SIZE_EVENTS];
+            } else if (channel != null) {
                 AEOutputStream.log.info("using ByteBuffer with " + AEFileOutputStream.BUFFER_EVENTS + " events to buffer disk writes");
                 byteBuf = ByteBuffer.allocateDirect(AEFileOutputStream.BUFFER_EVENTS * AEFileOutputStream.SIZE_EVENT);
             }
@@ -97,6 +178,13 @@ public class AEFileOutputStream extends AEOutputStream implements AEDataFile {
         eventCounter = 0;
     }
 
+    /**
+     * @return true if the file is written in the compressed format
+     */
+    public boolean isCompressed() {
+        return AEDataFile.COMPRESSED_DATA_FILE_VERSION_NUMBER.equals(dataFileVersionNumber);
+    }
+
     /**
      * * Creates a new instance of AEOutputStream and writes the header.
      *
@@ -164,7 +252,7 @@ public class AEFileOutputStream extends AEOutputStream implements AEDataFile {
             return;
         }
         
-        if(!dataFileVersionNumber.equals("2.0") && !dataFileVersionNumber.equals("3.1")) {
+        if(!dataFileVersionNumber.equals("2.0") && !dataFileVersionNumber.equals("3.1") && !isCompressed()) {
             log.warning("The file version is not supported.");
             return;
         }
@@ -178,8 +266,11 @@ public class AEFileOutputStream extends AEOutputStream implements AEDataFile {
         final int[] ts = ae.getTimestamps();
 
         int startIdx = 0;
+        if (asyncWriter != null && asyncWriter.error != null) {
+            throw asyncWriter.error;
+        }
 
-        if (eventCounter == 0) {
+        if (eventCounter == 0 && !isCompressed()) { // compressed data starts with a chunk header
             // For first event written out, make sure that the data is not a comment char character,
             // or else the first data will be commented away as part of the file header.
             // The ByteBuffer is ByteOrder.BIG_ENDIAN (default) which means that MSB is first (lower index)
@@ -195,7 +286,10 @@ public class AEFileOutputStream extends AEOutputStream implements AEDataFile {
 
         // Check the data file version, if it's 2.0, then it just put addr and timestamp in sequence. 
         // If it's 3.1, then we should add packet header for every different event types.
-        if(dataFileVersionNumber.equals("2.0")) {
+        if (asyncWriter != null) { // 2.0 or compressed, the writer thread compresses
+            eventCounter += asyncWriter.put(addr, ts, startIdx, n);
+            wrotePacket = true;
+        } else if(dataFileVersionNumber.equals("2.0")) {
             for (int i = startIdx; i < n; i++) {
                 byteBuf.putInt(addr[i]);
                 byteBuf.putInt(ts[i]);
@@ -210,22 +304,379 @@ public class AEFileOutputStream extends AEOutputStream implements AEDataFile {
             }
 
             wrotePacket = true;            
+        } else if (isCompressed()) {
+            int i = startIdx;
+            while (i < n) {
+                final int m = Math.min(n - i, chunkAddresses.length - chunkNumEvents);
+                System.arraycopy(addr, i, chunkAddresses, chunkNumEvents, m);
+                System.arraycopy(ts, i, chunkTimestamps, chunkNumEvents, m);
+                chunkNumEvents += m;
+                i += m;
+                if (chunkNumEvents == chunkAddresses.length) {
+                    writeChunk();
+                }
+            }
+            eventCounter += n - startIdx;
+            wrotePacket = true;
+        }
+
+    }
+
+    /**
+     * Compresses and writes the collected events as one chunk.
+     */
+    private void writeChunk() throws IOException {
+        if (chunkNumEvents == 0) {
+            return;
+        }
+        final ByteBuffer buf = chunkCodec.encode(chunkAddresses, chunkTimestamps, 0, chunkNumEvents);
+        compressedBytesWritten += buf.remaining();
+        if (channel != null) {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        } else {
+            write(buf.array(), buf.arrayOffset(), buf.remaining());
+        }
+        chunkNumEvents = 0;
+    }
+
+    /**
+     * Returns whether {@link #startAsyncWriter} can be used. The writer thread
+     * writes the plain 2.0 format and the compressed format, but not the
+     * packet headers of AER-DAT 3.1.
+     *
+     * @return true if the stream was made from a FileOutputStream and the data
+     * file version is 2.0 or compressed
+     */
+    public boolean isAsyncWriterSupported() {
+        return (channel != null) && (dataFileVersionNumber.equals("2.0") || isCompressed());
+    }
+
+    /**
+     * Starts writing in a separate thread. Must be called before the first
+     * packet is written.
+     *
+     * @param numBuffers the number of buffers of 32k events, which bounds the
+     * amount of data that can wait for the disk
+     * @param policy what to do when all buffers wait for the disk
+     * @throws IOException if the stream was not made from a FileOutputStream,
+     * the data file version is not supported, or packets were already written
+     * @see #isAsyncWriterSupported()
+     */
+    public synchronized void startAsyncWriter(int numBuffers, OverflowPolicy policy) throws IOException {
+        if (asyncWriter != null) {
+            return;
+        }
+        if (channel == null) {
+            throw new IOException("asynchronous writing needs a FileOutputStream");
+        }
+        if (!isAsyncWriterSupported()) {
+            throw new IOException("asynchronous writing does not support data file version " + dataFileVersionNumber);
+        }
+        if (wrotePacket) {
+            throw new IOException("already wrote a packet, cannot start asynchronous writing");
+        }
+        asyncWriter = new AsyncWriter(Math.max(numBuffers, 2), policy);
+        asyncWriter.start();
+        log.info("started asynchronous writing with " + asyncWriter.numBuffers + " buffers of " + ASYNC_BUFFER_EVENTS + " events and policy " + policy);
+    }
+
+    /**
+     * @return true if a writer thread writes the data
+     */
+    public boolean isAsync() {
+        return asyncWriter != null;
+    }
+
+    /**
+     * @return the number of bytes waiting for the writer thread
+     */
+    public long getAsyncQueuedBytes() {
+        final AsyncWriter w = asyncWriter;
+        return w == null ? 0 : w.queuedBytes.get();
+    }
+
+    /**
+     * @return the largest number of bytes that waited for the writer thread
+     */
+    public long getAsyncMaxQueuedBytes() {
+        final AsyncWriter w = asyncWriter;
+        return w == null ? 0 : w.maxQueuedBytes;
+    }
+
+    /**
+     * @return the number of packets that were dropped entirely or in part
+     * with {@link OverflowPolicy#DROP}
+     */
+    public long getAsyncDroppedPackets() {
+        final AsyncWriter w = asyncWriter;
+        return w == null ? 0 : w.droppedPackets;
+    }
+
+    /**
+     * @return the number of events that were dropped with
+     * {@link OverflowPolicy#DROP}
+     */
+    public long getAsyncDroppedEvents() {
+        final AsyncWriter w = asyncWriter;
+        return w == null ? 0 : w.droppedEvents;
+    }
+
+    /**
+     * Returns a percentile of the time the writer thread took to write (and
+     * for compressed files to compress) each batch of queued buffers, over the
+     * last 1024 batches.
+     *
+     * @param percentile the percentile, e.g. 50 or 99
+     * @return the latency in ms, or 0 if nothing was written yet
+     */
+    public float getAsyncWriteLatencyPercentileMs(float percentile) {
+        final AsyncWriter w = asyncWriter;
+        return w == null ? 0 : w.latencyPercentileMs(percentile);
+    }
+
+    /**
+     * @return a one-line summary of the asynchronous writer state for status
+     * displays, or null if not in asynchronous mode
+     */
+    public String getAsyncStatus() {
+        final AsyncWriter w = asyncWriter;
+        if (w == null) {
+            return null;
+        }
+        return String.format("Logging %d events, %.1f MB written, %.2f MB queued (max %.2f MB), write latency p50/p95/p99 %.1f/%.1f/%.1f ms, %d packets dropped",
+                eventCounter, w.writtenBytes * 1e-6f, w.queuedBytes.get() * 1e-6f, w.maxQueuedBytes * 1e-6f,
+                w.latencyPercentileMs(50), w.latencyPercentileMs(95), w.latencyPercentileMs(99), w.droppedPackets);
+    }
+
+    /**
+     * Thread that writes the buffers filled by writePacket. Free and filled
+     * buffers are passed through two bounded queues; the buffer being filled
+     * is owned by the caller of writePacket.
+     */
+    private final class AsyncWriter extends Thread {
+
+        final int numBuffers;
+        final OverflowPolicy policy;
+        final ArrayBlockingQueue<ByteBuffer> free, filled;
+        ByteBuffer fill;
+        final AtomicLong queuedBytes = new AtomicLong();
+        volatile long maxQueuedBytes = 0, writtenBytes = 0, droppedPackets = 0, droppedEvents = 0;
+        volatile IOException error = null;
+        volatile boolean closing = false;
+        private final long[] latencyNs = new long[LATENCY_SAMPLES];
+        private int numLatencies = 0;
+
+        AsyncWriter(int numBuffers, OverflowPolicy policy) {
+            super("AEFileOutputStream.AsyncWriter");
+            setDaemon(true);
+            this.numBuffers = numBuffers;
+            this.policy = policy;
+            free = new ArrayBlockingQueue<ByteBuffer>(numBuffers);
+            filled = new ArrayBlockingQueue<ByteBuffer>(numBuffers);
+            fill = ByteBuffer.allocateDirect(ASYNC_BUFFER_EVENTS * SIZE_EVENT);
+            for (int i = 1; i < numBuffers; i++) {
+                free.add(ByteBuffer.allocateDirect(ASYNC_BUFFER_EVENTS * SIZE_EVENT));
+            }
+        }
+
+        /**
+         * Caller: copies events into the fill buffer, queueing it when it is
+         * full.
+         *
+         * @return the number of events that were not dropped
+         */
+        int put(int[] addr, int[] ts, int start, int n) {
+            for (int i = start; i < n; i++) {
+                if (fill.remaining() < SIZE_EVENT && !queueFill(policy == OverflowPolicy.STALL)) {
+                    droppedPackets++;
+                    droppedEvents += n - i;
+                    return i - start;
+                }
+                fill.putInt(addr[i]);
+                fill.putInt(ts[i]);
+            }
+            return n - start;
+        }
+
+        /**
+         * Caller: queues the fill buffer for writing and takes a free one.
+         *
+         * @param wait true to wait for a free buffer
+         * @return false if no buffer was free
+         */
+        boolean queueFill(boolean wait) {
+            ByteBuffer next = free.poll();
+            if (next == null && wait) {
+                boolean interrupted = false;
+                while (next == null) {
+                    try {
+                        next = free.take();
+                    } catch (InterruptedException e) {
+                        interrupted = true; // don't lose data because the view loop was interrupted
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (next == null) {
+                return false;
+            }
+            fill.flip();
+            final long q = queuedBytes.addAndGet(fill.remaining());
+            if (q > maxQueuedBytes) {
+                maxQueuedBytes = q;
+            }
+            filled.add(fill); // never full because there are only numBuffers buffers
+            fill = next;
+            return true;
+        }
+
+        /**
+         * Caller: queues the last events and waits until everything is
+         * written.
+         */
+        void finish() {
+            if (fill.position() > 0) {
+                queueFill(true);
+            }
+            closing = true;
+            boolean interrupted = false;
+            while (isAlive()) {
+                try {
+                    join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            final ArrayList<ByteBuffer> batch = new ArrayList<ByteBuffer>(numBuffers);
+            while (true) {
+                ByteBuffer b;
+                try {
+                    b = filled.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                if (b == null) {
+                    if (closing && filled.isEmpty()) {
+                        break;
+                    }
+                    continue;
+                }
+                batch.clear();
+                batch.add(b);
+                filled.drainTo(batch);
+                long n = 0;
+                for (ByteBuffer bb : batch) {
+                    n += bb.remaining();
+                }
+                if (error == null) {
+                    try {
+                        final long startNs = System.nanoTime();
+                        write(batch, n);
+                        addLatency(System.nanoTime() - startNs);
+                        writtenBytes += n;
+                    } catch (IOException e) {
+                        log.warning("asynchronous write failed, dropping the remaining data: " + e.toString());
+                        error = e;
+                    }
+                }
+                queuedBytes.addAndGet(-n);
+                for (ByteBuffer bb : batch) {
+                    bb.clear();
+                    free.add(bb);
+                }
+            }
+        }
+
+        private void write(ArrayList<ByteBuffer> batch, long n) throws IOException {
+            if (isCompressed()) {
+                for (ByteBuffer bb : batch) {
+                    while (bb.hasRemaining()) {
+                        chunkAddresses[chunkNumEvents] = bb.getInt();
+                        chunkTimestamps[chunkNumEvents] = bb.getInt();
+                        if (++chunkNumEvents == chunkAddresses.length) {
+                            writeChunk();
+                        }
+                    }
+                }
+            } else {
+                final ByteBuffer[] bufs = batch.toArray(new ByteBuffer[batch.size()]);
+                while (n > 0) {
+                    n -= channel.write(bufs);
+                }
+            }
         }
 
+        private void addLatency(long ns) {
+            synchronized (latencyNs) {
+                latencyNs[numLatencies++ % LATENCY_SAMPLES] = ns;
+            }
+        }
+
+        float latencyPercentileMs(float percentile) {
+            final long[] l;
+            synchronized (latencyNs) {
+                l = Arrays.copyOf(latencyNs, Math.min(numLatencies, LATENCY_SAMPLES));
+            }
+            if (l.length == 0) {
+                return 0;
+            }
+            Arrays.sort(l);
+            final int i = Math.min(l.length - 1, Math.max(0, (int) Math.ceil((percentile / 100) * l.length) - 1));
+            return l[i] * 1e-6f;
+        }
     }
 
+    /**
+     * Writes the remaining data, waiting for the writer thread in asynchronous
+     * mode, and closes the file.
+     *
+     * @throws IOException if the last write failed, or the writer thread had
+     * failed before
+     */
     @Override
     public void close() throws IOException {
+        IOException asyncError = null;
+        if (asyncWriter != null) {
+            asyncWriter.finish();
+            asyncError = asyncWriter.error;
+            AEOutputStream.log.info(getAsyncStatus());
+            asyncWriter = null;
+        }
         // Flush last buffer to file, to avoid loosing small amounts of data.
-        byteBuf.flip();
-        channel.write(byteBuf);
-        byteBuf.clear();
+        if (isCompressed()) {
+            writeChunk();
+        } else if (byteBuf != null) {
+            byteBuf.flip();
+            channel.write(byteBuf);
+            byteBuf.clear();
+        }
 
-        channel.close();
+        if (channel != null) {
+            channel.close();
+        }
         byteBuf = null;
 
         super.close();
 
-        AEOutputStream.log.info("wrote " + eventCounter + " events");
+        if (isCompressed()) {
+            AEOutputStream.log.info("wrote " + eventCounter + " events compressed to " + compressedBytesWritten + " bytes ("
+                    + (eventCounter > 0 ? String.format("%.2f", (float) compressedBytesWritten / eventCounter) : "0") + " bytes/event)");
+        } else {
+            AEOutputStream.log.info("wrote " + eventCounter + " events");
+        }
+        if (asyncError != null) {
+            throw asyncError;
+        }
     }
 }
@@ -0,0 +1,402 @@
+/*
+ * AEFileTimestampIndex.java
+ *
+ * Sparse timestamp index of an AEDAT file, persisted next to the data file.
+ */
+package net.sf.jaer.eventio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * A sparse index from timestamp to event position (and byte offset) of an
+ * AEDAT-1.x or AEDAT-2.x data file. It allows {@link AEFileInputStream} to seek
+ * to a timestamp in O(log n) time by binary search followed by a short forward
+ * scan, instead of reading all events from the current position.
+ * <p>
+ * Timestamps in the index are <i>unwrapped</i>: every time the int32
+ * timestamp wraps around from positive to negative (every 4295 s with 1 us
+ * ticks) the wrap epoch is incremented and 2^32 is added, so the keys are
+ * long values that keep increasing across wraps. An entry is added at the
+ * first event, then whenever either {@link #getEventsPerEntry()} events or
+ * {@link #getUsPerEntry()} us have passed since the last entry. Entries are
+ * only added at events whose timestamp is not earlier than all previous
+ * timestamps, so that the keys stay monotonic even if the file has
+ * non-monotonic timestamps.
+ * <p>
+ * The index is stored in a sidecar file with the data file name plus
+ * {@link #FILE_EXTENSION}. The sidecar records the size and modification time
+ * of the data file and is ignored if they no longer match.
+ *
+ * @see AEFileInputStream#seekToTimestamp(long)
+ */
+public class AEFileTimestampIndex {
+
+    static final Logger log = Logger.getLogger("net.sf.jaer.eventio");
+    /**
+     * Extension appended to the data file name for the sidecar index file
+     */
+    public static final String FILE_EXTENSION = ".tsidx";
+    /**
+     * Default maximum number of events between index entries
+     */
+    public static final int DEFAULT_EVENTS_PER_ENTRY = 1 << 15;
+    /**
+     * Default maximum time in us between index entries
+     */
+    public static final int DEFAULT_US_PER_ENTRY = 100000;
+    /**
+     * The 2^32 span of int32 timestamps that is added on each wrap
+     */
+    public static final long WRAP_PERIOD_US = 1L << 32;
+    private static final int MAGIC = 0x41455449; // "AETI"
+    private static final int VERSION = 1;
+
+    private final int eventsPerEntry, usPerEntry;
+    private final int eventSizeBytes;
+    private final long headerOffset;
+    private long dataFileSize, dataFileLastModified;
+
+    private long[] timestampsUs = new long[1024];
+    private long[] positions = new long[1024];
+    private int numEntries = 0;
+    private boolean complete = false;
+
+    // state used while building
+    private int wrapCount = 0;
+    private boolean haveLastRawTimestamp = false;
+    private int lastRawTimestamp = 0;
+    private long maxTimestampUs = Long.MIN_VALUE;
+    private long lastEntryPosition = 0, lastEntryTimestampUs = 0;
+    private long lastPosition = -1, lastTimestampUs = 0;
+
+    /**
+     * Constructs a new empty index to be filled with
+     * {@link #addEvent(long, int)}.
+     *
+     * @param eventSizeBytes the size of each event in the data file
+     * @param headerOffset the byte offset of the first event in the data file
+     * @param eventsPerEntry the maximum number of events between entries
+     * @param usPerEntry the maximum time in us between entries
+     */
+    public AEFileTimestampIndex(int eventSizeBytes, long headerOffset, int eventsPerEntry, int usPerEntry) {
+        this.eventSizeBytes = eventSizeBytes;
+        this.headerOffset = headerOffset;
+        this.eventsPerEntry = eventsPerEntry;
+        this.usPerEntry = usPerEntry;
+    }
+
+    /**
+     * Returns the sidecar file used for a data file.
+     *
+     * @param dataFile the AEDAT file
+     * @return the index file
+     */
+    public static File indexFileFor(File dataFile) {
+        return new File(dataFile.getPath() + FILE_EXTENSION);
+    }
+
+    /**
+     * Adds the next event of the file to the index while building it. Events
+     * must be added in file order.
+     *
+     * @param position the event number in the file, starting with 0
+     * @param rawTimestamp the int32 timestamp as stored in the file
+     */
+    public void addEvent(long position, int rawTimestamp) {
+        if (haveLastRawTimestamp && isWrap(rawTimestamp, lastRawTimestamp)) {
+            wrapCount++;
+        }
+        haveLastRawTimestamp = true;
+        lastRawTimestamp = rawTimestamp;
+        final long t = rawTimestamp + (wrapCount * WRAP_PERIOD_US);
+        lastPosition = position;
+        lastTimestampUs = t;
+        if (t < maxTimestampUs) {
+            return; // non-monotonic timestamp, wait until time catches up before adding an entry
+        }
+        maxTimestampUs = t;
+        if (numEntries == 0 || (position - lastEntryPosition) >= eventsPerEntry || (t - lastEntryTimestampUs) >= usPerEntry) {
+            addEntry(t, position);
+        }
+    }
+
+    /**
+     * Marks the index as completely built. The last event is always added as an
+     * entry so that the index covers the entire file.
+     */
+    public void finish() {
+        if (lastPosition >= 0 && (numEntries == 0 || positions[numEntries - 1] != lastPosition) && lastTimestampUs >= maxTimestampUs) {
+            addEntry(lastTimestampUs, lastPosition);
+        }
+        complete = true;
+    }
+
+    private void addEntry(long timestampUs, long position) {
+        if (numEntries == timestampsUs.length) {
+            timestampsUs = Arrays.copyOf(timestampsUs, numEntries * 2);
+            positions = Arrays.copyOf(positions, numEntries * 2);
+        }
+        timestampsUs[numEntries] = timestampUs;
+        positions[numEntries] = position;
+        numEntries++;
+        lastEntryPosition = position;
+        lastEntryTimestampUs = timestampUs;
+    }
+
+    /**
+     * Detects a wrap of the int32 timestamp from large positive to negative
+     * values, as opposed to a small backwards jump.
+     */
+    static boolean isWrap(int ts, int prevTs) {
+        return (prevTs > 0) && (ts <= 0) && (((long) prevTs - ts) > Integer.MAX_VALUE);
+    }
+
+    /**
+     * Finds the index entry at or before the timestamp using binary search.
+     *
+     * @param timestampUs the unwrapped timestamp in us
+     * @return the entry number, or 0 if the timestamp is before the first
+     * entry, or -1 if the index is empty
+     */
+    public int findEntry(long timestampUs) {
+        if (numEntries == 0) {
+            return -1;
+        }
+        int i = Arrays.binarySearch(timestampsUs, 0, numEntries, timestampUs);
+        if (i < 0) {
+            i = -i - 2; // insertion point minus one is the last entry before timestampUs
+        } else {
+            while (i > 0 && timestampsUs[i - 1] == timestampUs) {
+                i--; // first of equal timestamps
+            }
+        }
+        return i < 0 ? 0 : i;
+    }
+
+    /**
+     * Finds the entry with the largest event position not after the position.
+     *
+     * @param position the event number
+     * @return the entry number or -1 if the index is empty
+     */
+    public int findEntryForPosition(long position) {
+        if (numEntries == 0) {
+            return -1;
+        }
+        int i = Arrays.binarySearch(positions, 0, numEntries, position);
+        if (i < 0) {
+            i = -i - 2;
+        }
+        return i < 0 ? 0 : i;
+    }
+
+    /**
+     * Returns the unwrapped timestamp for an event position, given the raw
+     * timestamp of that event. The wrap epoch is taken from the nearest
+     * preceding entry.
+     *
+     * @param position the event number
+     * @param rawTimestamp the int32 timestamp of the event
+     * @return the unwrapped timestamp in us
+     */
+    public long unwrapTimestamp(long position, int rawTimestamp) {
+        final int e = findEntryForPosition(position);
+        if (e < 0) {
+            return rawTimestamp;
+        }
+        final long entryTs = timestampsUs[e];
+        return entryTs + (rawTimestamp - (int) entryTs); // int difference is correct across a single wrap
+    }
+
+    /**
+     * @param entry the entry number
+     * @return the unwrapped timestamp of the entry in us
+     */
+    public long getTimestampUs(int entry) {
+        return timestampsUs[entry];
+    }
+
+    /**
+     * @param entry the entry number
+     * @return the event number in the file of the entry
+     */
+    public long getPosition(int entry) {
+        return positions[entry];
+    }
+
+    /**
+     * @param entry the entry number
+     * @return the byte offset in the data file of the entry
+     */
+    public long getByteOffset(int entry) {
+        return headerOffset + (positions[entry] * eventSizeBytes);
+    }
+
+    public int getNumEntries() {
+        return numEntries;
+    }
+
+    /**
+     * @return the first unwrapped timestamp in us, or 0 if empty
+     */
+    public long getFirstTimestampUs() {
+        return numEntries == 0 ? 0 : timestampsUs[0];
+    }
+
+    /**
+     * @return the last indexed unwrapped timestamp in us, or 0 if empty
+     */
+    public long getLastTimestampUs() {
+        return numEntries == 0 ? 0 : timestampsUs[numEntries - 1];
+    }
+
+    /**
+     * @return the duration in us covered by the index, including wraps
+     */
+    public long getDurationUs() {
+        return getLastTimestampUs() - getFirstTimestampUs();
+    }
+
+    /**
+     * @param frac the fraction of the duration, 0 at start, 1 at end
+     * @return the unwrapped timestamp at this fraction of the duration
+     */
+    public long getTimestampUsAtFraction(float frac) {
+        return getFirstTimestampUs() + (long) (frac * getDurationUs());
+    }
+
+    /**
+     * @return the number of timestamp wraps seen so far
+     */
+    public int getWrapCount() {
+        return wrapCount;
+    }
+
+    /**
+     * @return true if the entire file has been indexed
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public int getEventsPerEntry() {
+        return eventsPerEntry;
+    }
+
+    public int getUsPerEntry() {
+        return usPerEntry;
+    }
+
+    /**
+     * Records the size and modification time of the data file, used to
+     * validate the sidecar when it is loaded.
+     *
+     * @param dataFile the data file
+     */
+    public void setDataFile(File dataFile) {
+        dataFileSize = dataFile.length();
+        dataFileLastModified = dataFile.lastModified();
+    }
+
+    /**
+     * Writes the index to the sidecar file next to the data file.
+     *
+     * @param dataFile the data file
+     * @throws IOException if the sidecar cannot be written
+     */
+    public void save(File dataFile) throws IOException {
+        setDataFile(dataFile);
+        File f = indexFileFor(dataFile);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(dataFileSize);
+            out.writeLong(dataFileLastModified);
+            out.writeInt(eventSizeBytes);
+            out.writeLong(headerOffset);
+            out.writeInt(eventsPerEntry);
+            out.writeInt(usPerEntry);
+            out.writeInt(wrapCount);
+            out.writeInt(numEntries);
+            for (int i = 0; i < numEntries; i++) {
+                out.writeLong(timestampsUs[i]);
+                out.writeLong(positions[i]);
+            }
+        } finally {
+            out.close();
+        }
+        log.info("wrote " + this + " to " + f);
+    }
+
+    /**
+     * Loads the sidecar index for a data file if it exists and matches the
+     * data file.
+     *
+     * @param dataFile the data file
+     * @param eventSizeBytes the event size of the data file
+     * @param headerOffset the byte offset of the first event in the data file
+     * @return the index, or null if there is no valid index
+     */
+    public static AEFileTimestampIndex load(File dataFile, int eventSizeBytes, long headerOffset) {
+        File f = indexFileFor(dataFile);
+        if (!f.isFile()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.warning(f + " is not a timestamp index file of version " + VERSION + ", ignoring it");
+                return null;
+            }
+            long size = in.readLong(), modified = in.readLong();
+            int evSize = in.readInt();
+            long hdr = in.readLong();
+            if (size != dataFile.length() || modified != dataFile.lastModified() || evSize != eventSizeBytes || hdr != headerOffset) {
+                log.info(f + " does not match " + dataFile + ", it will be rebuilt");
+                return null;
+            }
+            AEFileTimestampIndex idx = new AEFileTimestampIndex(evSize, hdr, in.readInt(), in.readInt());
+            idx.wrapCount = in.readInt();
+            int n = in.readInt();
+            idx.timestampsUs = new long[Math.max(n, 1)];
+            idx.positions = new long[Math.max(n, 1)];
+            for (int i = 0; i < n; i++) {
+                idx.timestampsUs[i] = in.readLong();
+                idx.positions[i] = in.readLong();
+            }
+            idx.numEntries = n;
+            idx.dataFileSize = size;
+            idx.dataFileLastModified = modified;
+            idx.complete = true;
+            log.info("loaded " + idx + " from " + f);
+            return idx;
+        } catch (IOException e) {
+            log.warning("could not load timestamp index " + f + ": " + e.toString());
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AEFileTimestampIndex with " + numEntries + " entries, " + wrapCount + " timestamp wraps, covering "
+                + (getDurationUs() * 1e-6f) + " s" + (complete ? "" : " (incomplete)");
+    }
+}
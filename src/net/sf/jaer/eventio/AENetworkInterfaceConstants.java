@@ -42,6 +42,9 @@ public interface AENetworkInterfaceConstants {
     /** the maximum number deliverable over a socket per packet. The UDP buffers are sized according to this number. */
     static public int MAX_DATAGRAM_EVENTS=(DATAGRAM_BUFFER_SIZE_BYTES-Integer.SIZE/8)/EVENT_SIZE_BYTES;
 
+    /** the largest UDP payload in bytes that fits into an IPv4 datagram */
+    static public final int MAX_DATAGRAM_SIZE_BYTES=65507;
+
  
 
 }
@@ -0,0 +1,416 @@
+/*
+ * AEServerClient.java
+ *
+ * One client of the AEServerSocket event server.
+ */
+package net.sf.jaer.eventio;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.logging.Logger;
+
+import net.sf.jaer.chip.EventExtractor2D;
+
+/**
+ * A client connected to {@link AEServerSocket}. Each client has its own ring
+ * buffer of events, so that a slow client only loses its own events and never
+ * blocks the viewer or the other clients. What happens when the ring is full is
+ * set by the {@link OverflowPolicy}.
+ * <p>
+ * The client can restrict the events it receives like XYTypeFilter does, by
+ * sending ASCII command lines to the server, or the filter can be set with the
+ * setters here:
+ * <pre>
+ * roi startX endX startY endY   pass only events in this region (inclusive)
+ * types startType endType       pass only events of these cell types
+ * all                           remove the region and type filters
+ * policy dropoldest|decimate|disconnect
+ * </pre>
+ * The filter needs the event extractor of the chip to decode the raw
+ * addresses; without it the events are passed unfiltered.
+ * <p>
+ * The counters show the throughput of the client and how many of its events
+ * were filtered out or dropped.
+ */
+public class AEServerClient {
+
+    /** What to do with new events when the ring buffer of a client is full */
+    public enum OverflowPolicy {
+
+        /** Drop the oldest queued events to make room */
+        DROP_OLDEST,
+        /** Subsample the new packet so that it fits into the remaining room */
+        DECIMATE,
+        /** Disconnect the client */
+        DISCONNECT
+    }
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer.eventio");
+    final SocketChannel channel;
+    private final SocketAddress remoteAddress;
+    private final int capacity, mask;
+    private final int[] ringAddresses, ringTimestamps;
+    private long head = 0, tail = 0; // numbers of events written to and read from the ring, guarded by this
+    private int[] filteredAddresses = new int[0], filteredTimestamps = new int[0];
+    private final ByteBuffer outputBuffer;
+    private final int[] interleaved;
+    private final IntBuffer outputInts;
+    private final StringBuilder commandLine = new StringBuilder();
+    private final ByteBuffer commandBuffer = ByteBuffer.allocate(256);
+    private volatile OverflowPolicy overflowPolicy;
+    private volatile boolean overflowed = false;
+    private boolean timeZeroSet = false;
+    private int timeZero = 0;
+    private volatile boolean roiEnabled = false, typeEnabled = false;
+    private volatile int startX, endX, startY, endY, startType, endType;
+    private volatile long eventsOffered = 0, eventsFiltered = 0, eventsDropped = 0, eventsSent = 0, bytesSent = 0;
+    private final long connectTimeMs = System.currentTimeMillis();
+
+    /**
+     * Makes a client for an accepted connection.
+     *
+     * @param channel the connection
+     * @param queueEvents the capacity of the ring buffer, rounded up to a
+     * power of two
+     * @param outputBufferBytes the size of the buffer for writing to the
+     * socket
+     * @param overflowPolicy the initial policy
+     * @param swapBytes true to write little endian ints
+     */
+    AEServerClient(SocketChannel channel, int queueEvents, int outputBufferBytes, OverflowPolicy overflowPolicy, boolean swapBytes) {
+        this.channel = channel;
+        this.remoteAddress = channel.socket().getRemoteSocketAddress();
+        capacity = Integer.highestOneBit(Math.max(queueEvents, 1024) - 1) << 1;
+        mask = capacity - 1;
+        ringAddresses = new int[capacity];
+        ringTimestamps = new int[capacity];
+        final int outputEvents = Math.max(outputBufferBytes / AENetworkInterfaceConstants.EVENT_SIZE_BYTES, 64);
+        outputBuffer = ByteBuffer.allocateDirect(outputEvents * AENetworkInterfaceConstants.EVENT_SIZE_BYTES);
+        outputBuffer.order(swapBytes ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        outputInts = outputBuffer.asIntBuffer();
+        outputBuffer.limit(0); // nothing to write yet
+        interleaved = new int[2 * outputEvents];
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Queues the events that pass the filter of this client. Called by the
+     * thread that produces the packets.
+     *
+     * @param addresses raw addresses
+     * @param timestamps timestamps
+     * @param n the number of events
+     * @param extractor the extractor of the chip, used for the region and
+     * type filter, or null
+     * @return true if the server thread must be woken up, because the ring was
+     * empty before and the server must start writing to the client again, or
+     * because the client must be disconnected
+     */
+    synchronized boolean offer(int[] addresses, int[] timestamps, int n, EventExtractor2D<?> extractor) {
+        if (overflowed) {
+            return false;
+        }
+        eventsOffered += n;
+        int[] a = addresses, t = timestamps;
+        if ((roiEnabled || typeEnabled) && (extractor != null)) {
+            if (filteredAddresses.length < n) {
+                filteredAddresses = new int[n];
+                filteredTimestamps = new int[n];
+            }
+            int m = 0;
+            for (int i = 0; i < n; i++) {
+                if (passes(addresses[i], extractor)) {
+                    filteredAddresses[m] = addresses[i];
+                    filteredTimestamps[m++] = timestamps[i];
+                }
+            }
+            eventsFiltered += n - m;
+            a = filteredAddresses;
+            t = filteredTimestamps;
+            n = m;
+        }
+        if (n == 0) {
+            return false;
+        }
+        final boolean wasEmpty = head == tail;
+        final int free = capacity - (int) (head - tail);
+        int start = 0, step = 1;
+        if (n > free) {
+            switch (overflowPolicy) {
+                case DISCONNECT:
+                    overflowed = true;
+                    eventsDropped += n;
+                    return true;
+                case DECIMATE:
+                    if (free == 0) {
+                        eventsDropped += n;
+                        return false;
+                    }
+                    step = (n + free - 1) / free;
+                    break;
+                default: // DROP_OLDEST
+                    if (n > capacity) {
+                        start = n - capacity; // even the new packet doesn't fit, keep its newest events
+                    }
+                    final int make = (n - start) - free;
+                    if (make > 0) {
+                        tail += make;
+                    }
+                    eventsDropped += start + Math.max(make, 0);
+            }
+        }
+        if (step == 1) {
+            int p = (int) (head & mask);
+            int remaining = n - start, src = start;
+            while (remaining > 0) {
+                final int len = Math.min(remaining, capacity - p);
+                System.arraycopy(a, src, ringAddresses, p, len);
+                System.arraycopy(t, src, ringTimestamps, p, len);
+                src += len;
+                remaining -= len;
+                p = 0;
+            }
+            head += n - start;
+        } else {
+            int kept = 0;
+            for (int i = 0; i < n; i += step) {
+                final int p = (int) (head & mask);
+                ringAddresses[p] = a[i];
+                ringTimestamps[p] = t[i];
+                head++;
+                kept++;
+            }
+            eventsDropped += n - kept;
+        }
+        return wasEmpty;
+    }
+
+    private boolean passes(int address, EventExtractor2D<?> extractor) {
+        if (roiEnabled) {
+            final int x = extractor.getXFromAddress(address), y = extractor.getYFromAddress(address);
+            if ((x < startX) || (x > endX) || (y < startY) || (y > endY)) {
+                return false;
+            }
+        }
+        if (typeEnabled) {
+            final int type = extractor.getTypeFromAddress(address);
+            if ((type < startType) || (type > endType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if there are queued events or unwritten bytes
+     */
+    synchronized boolean hasPendingOutput() {
+        return outputBuffer.hasRemaining() || (head != tail);
+    }
+
+    /**
+     * Writes as much as the socket takes without blocking. Called by the
+     * server thread when the channel is writable.
+     *
+     * @throws IOException if the connection failed
+     */
+    void write() throws IOException {
+        while (true) {
+            if (!outputBuffer.hasRemaining() && !fillOutputBuffer()) {
+                return;
+            }
+            final int n = channel.write(outputBuffer);
+            bytesSent += n;
+            if (outputBuffer.hasRemaining()) {
+                return; // socket buffer is full, wait until writable again
+            }
+        }
+    }
+
+    /** Encodes queued events into the output buffer, returns false if there are none */
+    private boolean fillOutputBuffer() {
+        final int n;
+        synchronized (this) {
+            n = (int) Math.min(head - tail, interleaved.length / 2);
+            if (n == 0) {
+                return false;
+            }
+            if (!timeZeroSet) {
+                timeZero = ringTimestamps[(int) (tail & mask)]; // timestamps start at zero like AESocket.writePacket
+                timeZeroSet = true;
+            }
+            for (int i = 0, j = 0; i < n; i++, j += 2) {
+                final int p = (int) ((tail + i) & mask);
+                interleaved[j] = ringTimestamps[p] - timeZero;
+                interleaved[j + 1] = ringAddresses[p];
+            }
+            tail += n;
+        }
+        outputInts.clear();
+        outputInts.put(interleaved, 0, 2 * n);
+        outputBuffer.clear();
+        outputBuffer.limit(n * AENetworkInterfaceConstants.EVENT_SIZE_BYTES);
+        eventsSent += n;
+        return true;
+    }
+
+    /**
+     * Reads command lines sent by the client. Called by the server thread when
+     * the channel is readable.
+     *
+     * @return false if the client has closed the connection
+     * @throws IOException if the connection failed
+     */
+    boolean readCommands() throws IOException {
+        commandBuffer.clear();
+        final int n = channel.read(commandBuffer);
+        if (n < 0) {
+            return false;
+        }
+        commandBuffer.flip();
+        while (commandBuffer.hasRemaining()) {
+            final char c = (char) (commandBuffer.get() & 0xFF);
+            if ((c == '\n') || (c == '\r')) {
+                if (commandLine.length() > 0) {
+                    command(commandLine.toString().trim());
+                    commandLine.setLength(0);
+                }
+            } else if (commandLine.length() < 1024) {
+                commandLine.append(c);
+            }
+        }
+        return true;
+    }
+
+    private void command(String line) {
+        final String[] s = line.split("\\s+");
+        try {
+            if (s[0].equalsIgnoreCase("roi") && (s.length == 5)) {
+                setRegion(Integer.parseInt(s[1]), Integer.parseInt(s[2]), Integer.parseInt(s[3]), Integer.parseInt(s[4]));
+            } else if (s[0].equalsIgnoreCase("types") && (s.length == 3)) {
+                setTypes(Integer.parseInt(s[1]), Integer.parseInt(s[2]));
+            } else if (s[0].equalsIgnoreCase("all")) {
+                setFilterEnabled(false);
+            } else if (s[0].equalsIgnoreCase("policy") && (s.length == 2)) {
+                setOverflowPolicy(OverflowPolicy.valueOf(s[1].toUpperCase().replace("DROPOLDEST", "DROP_OLDEST")));
+            } else {
+                log.warning(this + ": unknown command \"" + line + "\"");
+                return;
+            }
+            log.info(this + ": " + line);
+        } catch (IllegalArgumentException e) { // also NumberFormatException
+            log.warning(this + ": bad command \"" + line + "\": " + e);
+        }
+    }
+
+    /**
+     * Passes only events in the region, including the borders.
+     */
+    public void setRegion(int startX, int endX, int startY, int endY) {
+        this.startX = startX;
+        this.endX = endX;
+        this.startY = startY;
+        this.endY = endY;
+        roiEnabled = true;
+    }
+
+    /**
+     * Passes only events of the cell types startType to endType.
+     */
+    public void setTypes(int startType, int endType) {
+        this.startType = startType;
+        this.endType = endType;
+        typeEnabled = true;
+    }
+
+    /**
+     * @param yes false to pass all events, true to apply both the region and
+     * the type filter
+     */
+    public void setFilterEnabled(boolean yes) {
+        roiEnabled = yes;
+        typeEnabled = yes;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /** @return true if the client overflowed with the DISCONNECT policy and will be closed */
+    boolean isOverflowed() {
+        return overflowed;
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warning("closing " + this + " caught " + e);
+        }
+    }
+
+    /** @return the address of the client */
+    public SocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    /** @return the capacity of the ring buffer in events */
+    public int getQueueCapacity() {
+        return capacity;
+    }
+
+    /** @return the number of events waiting in the ring buffer */
+    public synchronized int getQueuedEvents() {
+        return (int) (head - tail);
+    }
+
+    /** @return the number of events offered to this client */
+    public long getEventsOffered() {
+        return eventsOffered;
+    }
+
+    /** @return the number of events removed by the region and type filter */
+    public long getEventsFiltered() {
+        return eventsFiltered;
+    }
+
+    /** @return the number of events lost by overflow of the ring buffer */
+    public long getEventsDropped() {
+        return eventsDropped;
+    }
+
+    /** @return the number of events written to the socket */
+    public long getEventsSent() {
+        return eventsSent;
+    }
+
+    /** @return the number of bytes written to the socket */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /** @return the average rate of events written to the socket since the client connected in events/s */
+    public float getEventRateHz() {
+        final long ms = Math.max(1, System.currentTimeMillis() - connectTimeMs);
+        return (1000f * eventsSent) / ms;
+    }
+
+    /** @return a summary of the counters */
+    public String getStatistics() {
+        return String.format("%s: %d sent (%.3g ev/s), %d queued, %d filtered, %d dropped (%s)", remoteAddress, eventsSent, getEventRateHz(),
+                getQueuedEvents(), eventsFiltered, eventsDropped, overflowPolicy);
+    }
+
+    @Override
+    public String toString() {
+        return "AEServerClient " + remoteAddress;
+    }
+}
@@ -14,26 +14,47 @@ package net.sf.jaer.eventio;
 import java.beans.PropertyChangeSupport;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
 import java.util.prefs.Preferences;
 
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.EventExtractor2D;
+
 /**
- * Following is target functionality (right now this class only opens a single socket to most recent client connecting to it
-and events are only streamed to this one socket): This server socket allows a source host to listen for connections from other hosts and open AESockets to them to allow
-streaming AE data to them, so as a server, we stream events to the clients.
-These stream socket connections transmit data reliably.
-<p>
-Multile clients can recieve events from a single server through the use of java.nio channels and selectors.
-<p>
-The AESocket's are manufactured when a client connects to the AEViewer. The AESocket's are built with options that are
-set using the AEServerSocketOptionsDialog.
-This AEServerSocket is a Thread and it must be started after construction to allow incoming connections.
-<p>
- * AEServerSocket has PropertyChangeSupport; see the {@link #getSupport() } method for change event information.
+ * This server socket allows a source host to listen for connections from other
+ * hosts and to stream AE data to all of them, so as a server, we stream events
+ * to the clients. These stream socket connections transmit data reliably.
+ * <p>
+ * Multiple clients receive events from a single server through the use of
+ * java.nio channels and a selector. {@link #writePacket} only copies the events
+ * into the ring buffer of each {@link AEServerClient} and returns; this server
+ * thread writes to the clients whenever their sockets can take more data. A
+ * slow client therefore never throttles the viewer or the other clients, it
+ * only loses its own events as set by its
+ * {@link AEServerClient.OverflowPolicy}. Clients may send command lines to
+ * receive only a region or some cell types, see {@link AEServerClient}.
+ * <p>
+ * The stream format is the same as written by {@link AESocket#writePacket}:
+ * int32 timestamp, int32 address, with timestamps in us starting at zero for
+ * each client.
+ * <p>
+ * This AEServerSocket is a Thread and it must be started after construction to
+ * allow incoming connections.
+ * <p>
+ * AEServerSocket has PropertyChangeSupport; see the {@link #getSupport() }
+ * method for change event information.
+ *
  * @author tobi
+ * @see AEServerSocketLoadTest
  */
 public class AEServerSocket extends Thread {
 
@@ -43,26 +64,40 @@ public class AEServerSocket extends Thread {
     public static final int DEFAULT_BUFFERED_STREAM_SIZE_BYTES = 8192;
     public static final int DEFAULT_SEND_BUFFER_SIZE_BYTES = 8192;
     public static final int DEFAULT_RECIEVE_BUFFER_SIZE_BYTES = 8192;
-    private ServerSocket serverSocket;
-    private AESocket socket = null;
+    public static final int DEFAULT_CLIENT_QUEUE_EVENTS = 1 << 18;
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final CopyOnWriteArrayList<AEServerClient> clients = new CopyOnWriteArrayList<AEServerClient>();
+    private volatile EventExtractor2D<?> eventExtractor = null;
+    private volatile boolean closing = false;
     private int bufferedStreamSize = prefs.getInt("AEServerSocket.bufferedStreamSize", DEFAULT_BUFFERED_STREAM_SIZE_BYTES);
     private int sendBufferSize = prefs.getInt("AEServerSocket.sendBufferSize", DEFAULT_SEND_BUFFER_SIZE_BYTES);
     private int port = prefs.getInt("AEServerSocket.port", AENetworkInterfaceConstants.STREAM_PORT);
     private int receiveBufferSize = prefs.getInt("AEServerSocket.receiveBufferSize", DEFAULT_RECIEVE_BUFFER_SIZE_BYTES);
     private boolean flushPackets = prefs.getBoolean("AESocket.flushPackets", true);
     private boolean useBufferedStreams = prefs.getBoolean("AEServerSocket.useBufferedStreams", true);
-    private Thread T = null;
+    private int clientQueueEvents = prefs.getInt("AEServerSocket.clientQueueEvents", DEFAULT_CLIENT_QUEUE_EVENTS);
+    private AEServerClient.OverflowPolicy overflowPolicy = AEServerClient.OverflowPolicy.valueOf(prefs.get("AEServerSocket.overflowPolicy", AEServerClient.OverflowPolicy.DROP_OLDEST.name()));
+    private final boolean swapBytesEnabled = prefs.getBoolean("AESocket.swapBytesEnabled", false);
 
     /** Creates a new instance of AEServerSocket. This Thread must be started to serve connections.
-    @throws java.net.BindException when the socket is already bound (probably by another viewer)
+    @throws java.io.IOException when the server channel cannot be opened
      */
     public AEServerSocket() throws java.io.IOException {
-        T = this;
-        serverSocket = new ServerSocket();
-        serverSocket.setReceiveBufferSize(receiveBufferSize);
-        /*}catch(java.net.BindException be){
-        log.warning("server socket already bound to port (probably from another AEViewer)");
-         */
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.socket().setReceiveBufferSize(receiveBufferSize);
+        selector = Selector.open();
+        setName("AEServerSocket port=" + port);
+    }
+
+    /** Creates a new instance of AEServerSocket on a port, without changing the port stored in the preferences.
+    @param port the TCP port
+    @throws java.io.IOException when the server channel cannot be opened
+     */
+    public AEServerSocket(int port) throws java.io.IOException {
+        this();
+        this.port = port;
         setName("AEServerSocket port=" + port);
     }
 
@@ -70,64 +105,152 @@ public class AEServerSocket extends Thread {
         return "AEServerSocket on port=" + port;
     }
 
-    /** Accepts incoming connections and manufactures AESocket's for them. Currently only a single
-     * client is supported.
+    /** Accepts incoming connections and writes the queued events to the clients.
      */
     public void run() {
-        if (serverSocket == null) {
-            return; // port was already bound
+        try {
+            serverChannel.socket().bind(new InetSocketAddress(port)); // FIXME TODO, if we have a port here that is already in use, then we can't use the ServerSocket options dialog to change it!!
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            log.info("bound " + this);
+        } catch (IOException ioe) {
+            log.warning("couldn't bind AEServerSocket to port " + port + " : " + ioe + "; this run() will break. A new AEServerSocket should be contructed.");
+            return;
         }
-        while (!isInterrupted()) {
-            try {
-                if (!serverSocket.isBound()) {
-                    try {
-                        serverSocket.bind(new InetSocketAddress(port)); // FIXME TODO, if we have a port here that is already in use, then we can't use the ServerSocket options dialog to change it!!
-                        log.info("bound " + this);
-                    } catch (IOException ioe) {
-                        log.warning("couldn't bind AEServerSocket to port " + port + " : " + ioe+ "; this run() will break. A new AEServerSocket should be contructed.");
-                        break;
+        try {
+            while (!closing) {
+                for (AEServerClient c : clients) {
+                    if (c.isOverflowed()) {
+                        log.warning("disconnecting " + c + " because its queue of " + c.getQueueCapacity() + " events overflowed");
+                        removeClient(c);
+                        continue;
+                    }
+                    final SelectionKey key = c.channel.keyFor(selector);
+                    if ((key != null) && key.isValid()) {
+                        key.interestOps(SelectionKey.OP_READ | (c.hasPendingOutput() ? SelectionKey.OP_WRITE : 0));
                     }
                 }
-                Socket newSocket = serverSocket.accept(); // makes a new socket to the connecting client
-                if (socket != null) {
-                    log.info("closing existing stream TCP output socket " + socket + " to accept a new connection"); // TODO multiple clients should be possible
+                selector.select();
+                final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    final SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    final AEServerClient c = (AEServerClient) key.attachment();
                     try {
-                        socket.close();
-                    } catch (IOException ioe) {
-                        log.warning("while closing old socket caught " + ioe.getMessage());
+                        if (key.isReadable() && !c.readCommands()) {
+                            log.info(c + " closed the connection");
+                            removeClient(c);
+                            continue;
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            c.write();
+                        }
+                    } catch (IOException e) {
+                        log.info("closing " + c + " after " + e);
+                        removeClient(c);
                     }
                 }
-                newSocket.setSendBufferSize(sendBufferSize);
-                if (newSocket.getSendBufferSize() != getSendBufferSize()) {
-                    log.warning("accepted connection and asked for sendBufferSize=" + getSendBufferSize() + " but only got sendBufferSize=" + newSocket.getSendBufferSize());
-                }
-                AESocket aeSocket = new AESocket(newSocket);
-                aeSocket.setFlushPackets(isFlushPackets());
-                aeSocket.setUseBufferedStreams(isUseBufferedStreams());
-                AESocket oldSocket = aeSocket;
-                synchronized (this) {
-                    setSocket(aeSocket);
-                }
-                log.info("accepted incoming stream TCP socket request to send events on socket " + newSocket);
-                getSupport().firePropertyChange("clientconnected", oldSocket, aeSocket);
-            }catch(SocketException se){
-                log.info("socket closed gracefully? caught "+ se.toString());
-                break;
-            } catch (IOException e) {
-                if (!isInterrupted()) {
-                    log.warning(e.toString() + ": AEServerSocket on port " + port + " may already be bound by another viewer");
-                }
-                break;
             }
+        } catch (ClosedSelectorException e) {
+            log.info("selector closed");
+        } catch (IOException e) {
+            log.warning(e.toString() + ": AEServerSocket on port " + port + " stopped serving clients");
+        } finally {
+            for (AEServerClient c : clients) {
+                removeClient(c);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel ch = serverChannel.accept();
+        if (ch == null) {
+            return;
+        }
+        ch.configureBlocking(false);
+        ch.socket().setTcpNoDelay(true);
+        ch.socket().setSendBufferSize(sendBufferSize);
+        if (ch.socket().getSendBufferSize() < getSendBufferSize()) {
+            log.warning("accepted connection and asked for sendBufferSize=" + getSendBufferSize() + " but only got sendBufferSize=" + ch.socket().getSendBufferSize());
         }
+        final AEServerClient c = new AEServerClient(ch, clientQueueEvents, bufferedStreamSize, overflowPolicy, swapBytesEnabled);
+        ch.register(selector, SelectionKey.OP_READ, c);
+        clients.add(c);
+        log.info("accepted incoming stream TCP socket request to send events to " + c + ", now serving " + clients.size() + " clients");
+        getSupport().firePropertyChange("clientconnected", null, c);
     }
 
-    synchronized public AESocket getAESocket() {
-        return socket;
+    private void removeClient(AEServerClient c) {
+        if (clients.remove(c)) {
+            c.close();
+            log.info("removed " + c.getStatistics());
+            getSupport().firePropertyChange("clientdisconnected", c, null);
+        }
+    }
+
+    /**
+     * Queues the packet for all clients and returns without waiting for the
+     * network. Returns doing nothing if packet is null or empty or if there are
+     * no clients.
+     *
+     * @param packet the raw events
+     */
+    public void writePacket(AEPacketRaw packet) {
+        if ((packet == null) || clients.isEmpty()) {
+            return;
+        }
+        final int n = packet.getNumEvents();
+        if (n == 0) {
+            return;
+        }
+        final int[] a = packet.getAddresses(), t = packet.getTimestamps();
+        final EventExtractor2D<?> extractor = eventExtractor;
+        boolean wakeup = false;
+        for (AEServerClient c : clients) {
+            wakeup |= c.offer(a, t, n, extractor);
+        }
+        if (wakeup) {
+            selector.wakeup(); // let the server thread register interest in writing to the clients that were idle
+        }
     }
 
-    public void setSocket(AESocket socket) {
-        this.socket = socket;
+    /** @return true if at least one client is connected */
+    public boolean hasClients() {
+        return !clients.isEmpty();
+    }
+
+    /** @return the connected clients, e.g. to read their counters */
+    public List<AEServerClient> getClients() {
+        return new ArrayList<AEServerClient>(clients);
+    }
+
+    /** @return a summary of the counters of all clients, one line per client */
+    public String getStatistics() {
+        final StringBuilder sb = new StringBuilder();
+        for (AEServerClient c : clients) {
+            sb.append(c.getStatistics()).append('\n');
+        }
+        return sb.length() == 0 ? "no clients" : sb.toString();
+    }
+
+    /**
+     * Sets the extractor used to decode the raw addresses for the region and
+     * type filters of the clients.
+     *
+     * @param eventExtractor the extractor of the chip, or null
+     */
+    public void setEventExtractor(EventExtractor2D<?> eventExtractor) {
+        this.eventExtractor = eventExtractor;
+    }
+
+    public EventExtractor2D<?> getEventExtractor() {
+        return eventExtractor;
     }
 
     /** Tests class by constructing a socket and starting the thread */
@@ -141,6 +264,10 @@ public class AEServerSocket extends Thread {
         }
     }
 
+    /**
+     * Sets the size of the buffer that each client's events are encoded into
+     * before writing them to its socket.
+     */
     public void setBufferedStreamSize(int bufferedStreamSize) {
         this.bufferedStreamSize = bufferedStreamSize;
         prefs.putInt("AEServerSocket.bufferedStreamSize", bufferedStreamSize);
@@ -181,26 +308,61 @@ public class AEServerSocket extends Thread {
         return flushPackets;
     }
 
+    /**
+     * Has no effect on this server, which writes events as soon as the client
+     * sockets can take them; kept for the options dialog.
+     */
     public void setFlushPackets(boolean flushPackets) {
         this.flushPackets = flushPackets;
         prefs.putBoolean("AESocket.flushPackets", flushPackets);
     }
 
-    /** shuts down the server socket thread and closes the server socket */
+    /**
+     * @return the capacity of the ring buffer of each new client in events
+     */
+    public int getClientQueueEvents() {
+        return clientQueueEvents;
+    }
+
+    /**
+     * Sets the capacity of the ring buffer of clients that connect from now
+     * on.
+     *
+     * @param clientQueueEvents the capacity in events, rounded up to a power
+     * of two
+     */
+    public void setClientQueueEvents(int clientQueueEvents) {
+        this.clientQueueEvents = clientQueueEvents;
+        prefs.putInt("AEServerSocket.clientQueueEvents", clientQueueEvents);
+    }
+
+    public AEServerClient.OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Sets the overflow policy of clients that connect from now on; clients
+     * can change their own with a command.
+     *
+     * @param overflowPolicy the policy
+     */
+    public void setOverflowPolicy(AEServerClient.OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        prefs.put("AEServerSocket.overflowPolicy", overflowPolicy.name());
+    }
+
+    /** shuts down the server socket thread, closes the server socket and disconnects the clients */
     public void close() throws IOException {
         log.info("closing AEServerSocket thread");
-//        T.interrupt();
-//        try {
-//            T.join(50,0); // wait some ms for server thread to die
-//        } catch (InterruptedException ex) {
-//            log.info("interrupted during thread shutdown");
-//        }
-        serverSocket.close();
+        closing = true;
+        selector.wakeup();
         try {
-            T.join(1000);
+            join(1000);
         } catch (InterruptedException ex) {
             log.info("join after server socket close was interrupted");
         }
+        serverChannel.close();
+        selector.close();
         log.info("closed server socket");
     }
 
@@ -221,7 +383,8 @@ public class AEServerSocket extends Thread {
     /**
      * PropertyChange events are fired as follows:
      * <ul>
-     * <li> "clientconnected" - when a client has connected to us.
+     * <li> "clientconnected" - when a client has connected to us; the new value is the AEServerClient.
+     * <li> "clientdisconnected" - when a client was disconnected; the old value is the AEServerClient.
      * </ul>
 
      * @return the support.
@@ -0,0 +1,182 @@
+/*
+ * AEServerSocketLoadTest.java
+ *
+ * Streams events from an AEServerSocket to many local clients.
+ */
+package net.sf.jaer.eventio;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.util.benchmark.SyntheticEventGenerator;
+
+/**
+ * Load test of {@link AEServerSocket} with several local clients, some of which
+ * read slowly. It publishes synthetic DAVIS packets at a given rate, or as
+ * fast as possible with rate 0, for some seconds and then prints the publish
+ * rate and what every client received. With a working server the publish rate
+ * does not depend on the slow clients, the fast clients receive everything
+ * they can keep up with and the slow clients lose events according to their
+ * overflow policy.
+ * <p>
+ * Run from the command line with
+ * <pre>
+ * java -cp dist/jAER.jar:jars/* net.sf.jaer.eventio.AEServerSocketLoadTest [fastClients] [slowClients] [seconds] [policy] [rateMeps]
+ * </pre> where policy is dropoldest, decimate or disconnect and applies to the
+ * slow clients. The default is 3 fast and 2 slow clients for 5 s with
+ * dropoldest at 2 Meps.
+ */
+public class AEServerSocketLoadTest {
+
+    private static final int PORT = AENetworkInterfaceConstants.STREAM_PORT + 10;
+    private static final int PACKET_EVENTS = 10000, NUM_PACKETS = 32;
+    private static final int SLOW_CLIENT_BYTES_PER_READ = 8192, SLOW_CLIENT_SLEEP_MS = 5;
+
+    /** Reads and counts events from the server */
+    private static class Client extends Thread {
+
+        final boolean slow;
+        final String command;
+        volatile long events = 0, backwardsTimestamps = 0;
+        volatile boolean done = false;
+        private SocketChannel channel;
+
+        Client(int i, boolean slow, String command) {
+            super((slow ? "slow" : "fast") + " client " + i);
+            this.slow = slow;
+            this.command = command;
+            setDaemon(true);
+        }
+
+        void connect() throws IOException {
+            channel = SocketChannel.open(new InetSocketAddress("localhost", PORT));
+            if (command != null) {
+                channel.write(ByteBuffer.wrap((command + "\n").getBytes("US-ASCII")));
+            }
+        }
+
+        @Override
+        public void run() {
+            final ByteBuffer b = ByteBuffer.allocateDirect(slow ? SLOW_CLIENT_BYTES_PER_READ : 1 << 16);
+            int lastTs = Integer.MIN_VALUE;
+            try {
+                while (!done) {
+                    if (channel.read(b) < 0) {
+                        break;
+                    }
+                    b.flip();
+                    while (b.remaining() >= AENetworkInterfaceConstants.EVENT_SIZE_BYTES) {
+                        final int ts = b.getInt();
+                        b.getInt(); // address
+                        if (ts < lastTs) {
+                            backwardsTimestamps++;
+                        }
+                        lastTs = ts;
+                        events++;
+                    }
+                    b.compact();
+                    if (slow) {
+                        Thread.sleep(SLOW_CLIENT_SLEEP_MS);
+                    }
+                }
+            } catch (IOException e) {
+                // disconnected by the server
+            } catch (InterruptedException e) {
+                // done
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Logger.getLogger("net.sf.jaer").setLevel(Level.WARNING);
+        Logger.getLogger("AEServerSocket").setLevel(Level.WARNING);
+        final int numFast = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        final int numSlow = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        final int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        final String policy = args.length > 3 ? args[3] : "dropoldest";
+        final double rateMeps = args.length > 4 ? Double.parseDouble(args[4]) : 2;
+
+        final SyntheticEventGenerator g = new SyntheticEventGenerator(1);
+        g.setFrameRateHz(0);
+        g.setEventRateHz(1e6f);
+        final ArrayList<AEPacketRaw> packets = new ArrayList<AEPacketRaw>();
+        for (int i = 0; i < NUM_PACKETS; i++) {
+            final AEPacketRaw p = new AEPacketRaw();
+            g.fillDavisRawPacket(p, PACKET_EVENTS);
+            packets.add(p);
+        }
+        final int span = packets.get(NUM_PACKETS - 1).getLastTimestamp() - packets.get(0).getFirstTimestamp() + 1;
+
+        final AEServerSocket server = new AEServerSocket(PORT);
+        server.start();
+        final ArrayList<Client> clients = new ArrayList<Client>();
+        for (int i = 0; i < numFast + numSlow; i++) {
+            final boolean slow = i >= numFast;
+            final Client c = new Client(i, slow, slow ? "policy " + policy : null);
+            for (int retry = 0;; retry++) { // wait for the server to bind
+                try {
+                    c.connect();
+                    break;
+                } catch (IOException e) {
+                    if (retry > 50) {
+                        throw e;
+                    }
+                    Thread.sleep(100);
+                }
+            }
+            c.start();
+            clients.add(c);
+        }
+        while (server.getClients().size() < clients.size()) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200); // let the policy commands arrive
+
+        final AEPacketRaw out = new AEPacketRaw();
+        out.ensureCapacity(PACKET_EVENTS);
+        long published = 0;
+        int cycle = 0, k = 0;
+        final long start = System.nanoTime(), end = start + seconds * 1000000000L;
+        while (System.nanoTime() < end) {
+            if ((rateMeps > 0) && (published > (System.nanoTime() - start) * 1e-3 * rateMeps)) {
+                Thread.sleep(1);
+                continue;
+            }
+            final AEPacketRaw p = packets.get(k);
+            final int n = p.getNumEvents(), offset = cycle * span;
+            System.arraycopy(p.addresses, 0, out.addresses, 0, n);
+            for (int i = 0; i < n; i++) {
+                out.timestamps[i] = p.timestamps[i] + offset;
+            }
+            out.setNumEvents(n);
+            server.writePacket(out);
+            published += n;
+            if (++k == NUM_PACKETS) {
+                k = 0;
+                cycle++;
+            }
+        }
+        final double s = (System.nanoTime() - start) * 1e-9;
+        Thread.sleep(500); // let the fast clients drain their queues
+        System.out.println(String.format("published %d events in %.2f s = %.2f Meps to %d fast and %d slow (%s) clients", published, s, published * 1e-6 / s,
+                numFast, numSlow, policy));
+        System.out.print(server.getStatistics());
+        for (Client c : clients) {
+            c.done = true;
+            System.out.println(String.format("%s received %d events (%.1f%%) = %.2f Meps, %d backwards timestamps", c.getName(), c.events,
+                    (100.0 * c.events) / published, c.events * 1e-6 / s, c.backwardsTimestamps));
+        }
+        server.close();
+        System.exit(0);
+    }
+}
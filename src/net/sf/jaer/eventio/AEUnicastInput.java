@@ -58,6 +58,14 @@ import net.sf.jaer.eventio.Jaer3BufferParser.Jaer3EventExtractor;
  * <p>
  * The datagram socket is not connected to the receiver, i.e., connect() is not
  * called on the socket.
+ * <p>
+ * Lost and reordered datagrams are counted from the sequence numbers by a
+ * {@link DatagramSequenceTracker}. In batched streaming mode (the default, see
+ * {@link #setBatchedStreamingEnabled(boolean)}) datagrams in the plain jAER
+ * format of int32 address and timestamp are decoded by a bulk copy out of the
+ * direct receive buffer, and the socket gets a large receive buffer to absorb
+ * bursts at high event rates. The counters {@link #getStatistics()} show the
+ * throughput and loss.
  *
  * @see #setAddressFirstEnabled
  * @see #setSequenceNumberEnabled
@@ -105,6 +113,13 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
     private Jaer3BufferParser j3Parser;
     private int secGen2TimestampMSB = 0;
     private int secGen2TimestampLSB = 0;
+    private boolean batchedStreamingEnabled = prefs.getBoolean("AEUnicastInput.batchedStreamingEnabled", true);
+    /** Socket receive buffer size in batched streaming mode in bytes */
+    public static final int BATCH_SOCKET_BUFFER_BYTES = 1 << 22;
+    private final DatagramSequenceTracker sequenceTracker = new DatagramSequenceTracker();
+    private int[] interleaved = new int[0]; // address and timestamp pairs of the bulk copy from a datagram
+    private volatile long datagramsReceived = 0, bytesReceived = 0, eventsReceived = 0;
+    private long lastLossLogTime = 0;
 
     /**
      * Constructs an instance of AEUnicastInput and binds it to the default
@@ -119,7 +134,7 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
      */
     public AEUnicastInput(AEChip chip) { // TODO basic problem here is that if port is unavailable, then we cannot construct and set port
         this.chip = chip;
-        restoreEventExtractor = chip.getEventExtractor();
+        restoreEventExtractor = chip != null ? chip.getEventExtractor() : null; // chip may be null for plain jAER streams
     }
 
     /**
@@ -187,6 +202,7 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
                     break returnearly; // Set a threshold to avoid the big dealy caused by accumulating too many events in the packet.
                 }
             }
+            eventsReceived += packet.getNumEvents();
             return packet;
         } catch (InterruptedException e) {
             log.info("Interrupted exchange of buffers in AEUnicastInput: " + e.toString());
@@ -198,11 +214,14 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
         if (sequenceNumberEnabled) {
             datagramSequenceNumber = buffer.getInt(); // swab(buffer.getInt());
 //                log.info("recieved packet with sequence number "+packetSequenceNumber);
-            if (datagramSequenceNumber != datagramCounter) {
-                log.warning(String.format("Dropped %d packets. (Incoming packet sequence number (%d) doesn't match expected packetCounter (%d), resetting packetCounter)", datagramSequenceNumber - datagramCounter, datagramSequenceNumber, datagramCounter));
-                datagramCounter = datagramSequenceNumber;
+            if (sequenceTracker.update(datagramSequenceNumber) > 0) {
+                final long now = System.currentTimeMillis();
+                if (now - lastLossLogTime > 1000) { // don't flood the log at high datagram rates
+                    lastLossLogTime = now;
+                    log.warning(String.format("Dropped packets, incoming packet sequence number %d was expected to be %d; %s", datagramSequenceNumber, datagramCounter, sequenceTracker));
+                }
             }
-            datagramCounter++;
+            datagramCounter = datagramSequenceNumber + 1;
         }
     }
 
@@ -221,6 +240,8 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
 //            buffer.order(swapBytesEnabled ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
 
             client = channel.receive(buffer); // fill buffer with data from datagram, blocks here until packet received
+            datagramsReceived++;
+            bytesReceived += buffer.position();
             if (!printedHost) {
                 printedHost = true;
                 log.info("received first packet from " + client + " of length " + buffer.position() + " bytes"); // , connecting channel
@@ -595,8 +616,7 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
                     addresses = packet.getAddresses();
                     timestamps = packet.getTimestamps();
                     for (int i = 0; i < jaer3EventsNum; i++) {
-                        ByteBuffer tmpEventBuffer = ByteBuffer.allocate(16);
-                        tmpEventBuffer = j3Parser.getJaer2EventBuf();
+                        ByteBuffer tmpEventBuffer = j3Parser.getJaer2EventBuf();
                         int etypeValue = tmpEventBuffer.getInt();
                         eventRaw.eventtype = EventRaw.EventType.values()[etypeValue];
                         eventRaw.address = tmpEventBuffer.getInt();
@@ -614,6 +634,12 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
                 return;
             }
 
+            if (batchedStreamingEnabled && isBulkDecodable()) {
+                extractEventsBulk(buffer, addresses, timestamps, startingIndex, nEventsInPacket);
+                packet.setNumEvents(newPacketLength);
+                return;
+            }
+
             for (int i = 0; i < nEventsInPacket; i++) {
                 if (addressFirstEnabled) {
                     if (use4ByteAddrTs) {
@@ -690,6 +716,92 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
         }
     }
 
+    /**
+     * Returns true if the settings use the plain jAER format of big endian
+     * int32 address followed by int32 timestamp with 1 us tick.
+     */
+    private boolean isBulkDecodable() {
+        return addressFirstEnabled && use4ByteAddrTs && timestampsEnabled && !localTimestampsEnabled && !swapBytesEnabled && timestampMultiplier == 1;
+    }
+
+    /**
+     * Copies the events of a datagram in the plain jAER format with a single
+     * bulk get from the buffer, which starts after the sequence number. The
+     * timestamps are offset by timeZero like in the per-event path but with
+     * exact int arithmetic.
+     */
+    private void extractEventsBulk(ByteBuffer buffer, int[] addresses, int[] timestamps, int startingIndex, int nEvents) {
+        final int nInts = 2 * nEvents;
+        if (interleaved.length < nInts) {
+            interleaved = new int[nInts];
+        }
+        buffer.asIntBuffer().get(interleaved, 0, nInts);
+        if (!readTimeZeroAlready && nEvents > 0) {
+            readTimeZeroAlready = true;
+            timeZero = interleaved[1];
+        }
+        final int t0 = timeZero;
+        for (int i = 0, j = startingIndex; i < nInts; i += 2, j++) {
+            addresses[j] = interleaved[i];
+            timestamps[j] = interleaved[i + 1] - t0;
+        }
+    }
+
+    /**
+     * If set true (default), datagrams in the plain jAER format are decoded in
+     * batched streaming mode, see the class documentation. The socket receive
+     * buffer size takes effect on the next {@link #open()}.
+     *
+     * @param yes true to enable
+     */
+    public void setBatchedStreamingEnabled(boolean yes) {
+        batchedStreamingEnabled = yes;
+        prefs.putBoolean("AEUnicastInput.batchedStreamingEnabled", yes);
+    }
+
+    /**
+     * @see #setBatchedStreamingEnabled(boolean)
+     */
+    public boolean isBatchedStreamingEnabled() {
+        return batchedStreamingEnabled;
+    }
+
+    /** @return the number of datagrams received */
+    public long getDatagramsReceived() {
+        return datagramsReceived;
+    }
+
+    /** @return the number of bytes received */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /** @return the number of events returned by readPacket */
+    public long getEventsReceived() {
+        return eventsReceived;
+    }
+
+    /**
+     * @return the counts of lost and reordered datagrams, if sequence numbers
+     * are enabled
+     */
+    public DatagramSequenceTracker getSequenceTracker() {
+        return sequenceTracker;
+    }
+
+    /** @return a summary of the throughput and loss counters */
+    public String getStatistics() {
+        return String.format("%d events in %d datagrams (%d bytes); sequence: %s", eventsReceived, datagramsReceived, bytesReceived, sequenceTracker);
+    }
+
+    /** Zeros the throughput and loss counters. */
+    public void resetStatistics() {
+        datagramsReceived = 0;
+        bytesReceived = 0;
+        eventsReceived = 0;
+        sequenceTracker.reset();
+    }
+
     @Override
     public String toString() {
         return "AEUnicastInput at PORT=" + getPort();
@@ -732,7 +844,9 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
              * will result in the change of extractor again. 
              * So we should put the extractor restore after the datagrarSocket.close().
              */
-            chip.setEventExtractor(restoreEventExtractor);
+            if (chip != null) {
+                chip.setEventExtractor(restoreEventExtractor);
+            }
         } catch (Exception e) {
             log.warning("on closing caught " + e);
         }
@@ -749,6 +863,10 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
             channel = DatagramChannel.open();
             datagramSocket = channel.socket();
             datagramSocket.setReuseAddress(true);
+            if (batchedStreamingEnabled) {
+                datagramSocket.setReceiveBufferSize(BATCH_SOCKET_BUFFER_BYTES);
+                log.info("socket receive buffer size is " + datagramSocket.getReceiveBufferSize() + " bytes");
+            }
             // disable timeout so that receive just waits for data forever (until interrupted)
 //            datagramSocket.setSoTimeout(TIMEOUT_MS);
 //            if (datagramSocket.getSoTimeout() != TIMEOUT_MS) {
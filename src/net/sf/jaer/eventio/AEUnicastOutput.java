@@ -18,8 +18,11 @@ import java.net.SocketException;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Exchanger;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.prefs.Preferences;
 
@@ -38,6 +41,17 @@ import net.sf.jaer.util.ByteSwapper;
  * writePacket method blocks.
  * <p>
  * The datagram socket is not 'connect'ed to the receiver.
+ * <p>
+ * In batched streaming mode (the default, see
+ * {@link #setBatchedStreamingEnabled(boolean)}) packets in the plain jAER
+ * format of int32 address and timestamp are instead packed into datagrams of up
+ * to {@link #getBufferSize()} bytes, e.g. 1472 bytes for a 1500 byte MTU or
+ * 8972 for jumbo frames, by bulk copies into a pool of direct buffers. A sender
+ * thread with its own connected channel sends each datagram with a gathering
+ * write of the sequence number and the events, so that the events are not
+ * copied again. writePacket only blocks when all buffers of the pool are
+ * waiting to be sent. The counters {@link #getStatistics()} show the
+ * throughput.
  *
  * @author tobi
  */
@@ -68,6 +82,14 @@ public class AEUnicastOutput implements AEUnicastSettings {
     private boolean timestampsEnabled = prefs.getBoolean("AEUnicastOutput.timestampsEnabled", true);
     private boolean localTimestampsEnabled = prefs.getBoolean("AEUnicastOutput.localTimestampsEnabled", false);
     private boolean spinnakerProtocolEnabled = prefs.getBoolean("AEUnicastOutput.spinnakerProtocolEnabled", false);
+    private boolean batchedStreamingEnabled = prefs.getBoolean("AEUnicastOutput.batchedStreamingEnabled", true);
+    /** Number of datagram buffers of the batched sender */
+    public static final int BATCH_NUM_DATAGRAMS = 32;
+    /** Socket send buffer size of the batched sender in bytes */
+    public static final int BATCH_SOCKET_BUFFER_BYTES = 1 << 22;
+    private BatchSender batchSender = null;
+    private int[] interleaved = new int[0]; // address and timestamp pairs for the bulk copy to a datagram
+    private volatile long eventsSent = 0, datagramsSent = 0, bytesSent = 0, sendErrors = 0;
 
 //    /** Creates a new instance, binding any available local port (since we will be just sending from here)
 //     * and using the last host and port.
@@ -111,7 +133,12 @@ public class AEUnicastOutput implements AEUnicastSettings {
         consumerThread.setName("AEUnicastOutput");
         consumerThread.setPriority(Thread.NORM_PRIORITY + -1);
         consumerThread.start();
-        log.info("opened AEUnicastOutput on local port=" + socket.getLocalPort() + " with bufferSize=" + getBufferSize());
+        if (batchedStreamingEnabled) {
+            batchSender = new BatchSender(Math.min(bufferSize, AENetworkInterfaceConstants.MAX_DATAGRAM_SIZE_BYTES));
+            batchSender.start();
+        }
+        log.info("opened AEUnicastOutput on local port=" + socket.getLocalPort() + " with bufferSize=" + getBufferSize()
+                + (batchSender != null ? ", batched streaming with " + batchSender.eventsPerDatagram + " events per datagram" : ""));
     }
 
     /**
@@ -192,6 +219,10 @@ public class AEUnicastOutput implements AEUnicastSettings {
         int[] addr = ae.getAddresses();
         int[] ts = ae.getTimestamps();
 
+        if (batchSender != null && isBatchable()) {
+            writeBatched(addr, ts, nEvents);
+            return;
+        }
         try {
             if (isSpinnakerProtocolEnabled()) {
                 currentBuf.order(ByteOrder.LITTLE_ENDIAN);
@@ -277,6 +308,42 @@ public class AEUnicastOutput implements AEUnicastSettings {
         sendPacket();
     }
 
+    /**
+     * Returns true if the settings use the plain jAER format that the batched
+     * sender writes, i.e. int32 address followed by int32 timestamp.
+     */
+    private boolean isBatchable() {
+        return !spinnakerProtocolEnabled && addressFirstEnabled && use4ByteAddrTs && timestampsEnabled && !localTimestampsEnabled;
+    }
+
+    /**
+     * Splits the events into datagrams of the batched sender. Each datagram is
+     * filled by a single bulk copy of the interleaved addresses and timestamps.
+     */
+    private void writeBatched(int[] addr, int[] ts, int nEvents) throws IOException {
+        final BatchSender sender = batchSender;
+        final int perDatagram = sender.eventsPerDatagram;
+        if (interleaved.length < 2 * perDatagram) {
+            interleaved = new int[2 * perDatagram];
+        }
+        final ByteOrder order = swapBytesEnabled ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        final boolean scaleTimestamps = timestampMultiplierReciprocal != 1;
+        for (int i = 0; i < nEvents;) {
+            final int n = Math.min(perDatagram, nEvents - i);
+            for (int j = 0, end = i + n; i < end; i++, j += 2) {
+                interleaved[j] = addr[i];
+                interleaved[j + 1] = scaleTimestamps ? (int) (timestampMultiplierReciprocal * ts[i]) : ts[i];
+            }
+            final Datagram d = sender.obtain();
+            if (d == null) {
+                return; // closed meanwhile
+            }
+            d.fill(sequenceNumberEnabled, sequenceNumberEnabled ? nextSequenceNumber() : 0, interleaved, n, order);
+            sender.send(d);
+            eventsSent += n;
+        }
+    }
+
     synchronized private void allocateBuffers() {
         initialEmptyBuffer = ByteBuffer.allocateDirect(getBufferSize()); // the buffer to start capturing into
         initialFullBuffer = ByteBuffer.allocateDirect(getBufferSize());// the buffer to render/process first
@@ -317,13 +384,17 @@ public class AEUnicastOutput implements AEUnicastSettings {
     private void maybeWriteSequenceNumber(ByteBuffer buf) throws IOException {
         if (isSequenceNumberEnabled()) {
 //            log.info("sequence number="+packetSequenceNumber);
-            if (packetSequenceNumber < Integer.MAX_VALUE) {
-                packetSequenceNumber++;
-            } else {
-                packetSequenceNumber = 0;
-            }
-            buf.putInt(swab(packetSequenceNumber));
+            buf.putInt(swab(nextSequenceNumber()));
+        }
+    }
+
+    private int nextSequenceNumber() {
+        if (packetSequenceNumber < Integer.MAX_VALUE) {
+            packetSequenceNumber++;
+        } else {
+            packetSequenceNumber = 0;
         }
+        return packetSequenceNumber;
     }
 
     private void writeSequenceNumberByte(ByteBuffer buf) throws IOException {
@@ -342,6 +413,10 @@ public class AEUnicastOutput implements AEUnicastSettings {
 
     @Override
     public void close() {
+        if (batchSender != null) {
+            batchSender.finish();
+            batchSender = null;
+        }
         if (socket == null) {
             return;
         }
@@ -433,6 +508,202 @@ public class AEUnicastOutput implements AEUnicastSettings {
         return false;
     }
 
+    /**
+     * If set true (default), packets in the plain jAER format are sent in
+     * batched streaming mode, see the class documentation. Takes effect on the
+     * next {@link #open()}.
+     *
+     * @param yes true to enable
+     */
+    public void setBatchedStreamingEnabled(boolean yes) {
+        batchedStreamingEnabled = yes;
+        prefs.putBoolean("AEUnicastOutput.batchedStreamingEnabled", yes);
+    }
+
+    /**
+     * @see #setBatchedStreamingEnabled(boolean)
+     */
+    public boolean isBatchedStreamingEnabled() {
+        return batchedStreamingEnabled;
+    }
+
+    /** @return the number of events sent in batched streaming mode */
+    public long getEventsSent() {
+        return eventsSent;
+    }
+
+    /** @return the number of datagrams sent in batched streaming mode */
+    public long getDatagramsSent() {
+        return datagramsSent;
+    }
+
+    /** @return the number of bytes sent in batched streaming mode */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return the number of datagrams that could not be sent in batched
+     * streaming mode, e.g. because nobody was listening on the port
+     */
+    public long getSendErrors() {
+        return sendErrors;
+    }
+
+    /** @return a summary of the batched streaming counters */
+    public String getStatistics() {
+        return String.format("%d events in %d datagrams (%d bytes), %d send errors", eventsSent, datagramsSent, bytesSent, sendErrors);
+    }
+
+    /**
+     * Direct buffers for the sequence number and the events of one datagram,
+     * sent together by a gathering write.
+     */
+    private static final class Datagram {
+
+        final ByteBuffer header = ByteBuffer.allocateDirect(4);
+        final ByteBuffer payload;
+        IntBuffer ints;
+        final ByteBuffer[] parts;
+
+        Datagram(int payloadBytes) {
+            payload = ByteBuffer.allocateDirect(payloadBytes);
+            ints = payload.asIntBuffer();
+            parts = new ByteBuffer[]{header, payload};
+        }
+
+        void fill(boolean withSequenceNumber, int sequenceNumber, int[] values, int numEvents, ByteOrder order) {
+            if (payload.order() != order) {
+                payload.order(order);
+                ints = payload.asIntBuffer();
+            }
+            header.clear();
+            if (withSequenceNumber) {
+                header.order(order).putInt(sequenceNumber);
+            }
+            header.flip();
+            ints.clear();
+            ints.put(values, 0, 2 * numEvents);
+            payload.clear();
+            payload.limit(numEvents * AENetworkInterfaceConstants.EVENT_SIZE_BYTES);
+        }
+    }
+
+    /**
+     * Sends the datagrams of the batched streaming mode through its own
+     * channel, which is connected to the current host and port.
+     */
+    private final class BatchSender extends Thread {
+
+        final int eventsPerDatagram;
+        private final ArrayBlockingQueue<Datagram> free = new ArrayBlockingQueue<Datagram>(BATCH_NUM_DATAGRAMS);
+        private final ArrayBlockingQueue<Datagram> filled = new ArrayBlockingQueue<Datagram>(BATCH_NUM_DATAGRAMS + 1);
+        private final Datagram end = new Datagram(0);
+        private DatagramChannel batchChannel;
+        private String connectedHost = null;
+        private int connectedPort = -1;
+        private long lastErrorLogTime = 0;
+
+        BatchSender(int datagramBytes) throws IOException {
+            super("AEUnicastOutput.BatchSender");
+            eventsPerDatagram = Math.max(1, (datagramBytes - (Integer.SIZE / 8)) / AENetworkInterfaceConstants.EVENT_SIZE_BYTES);
+            for (int i = 0; i < BATCH_NUM_DATAGRAMS; i++) {
+                free.add(new Datagram(eventsPerDatagram * AENetworkInterfaceConstants.EVENT_SIZE_BYTES));
+            }
+            batchChannel = DatagramChannel.open();
+            batchChannel.socket().setTrafficClass(0x10 + 0x08); // low delay
+            batchChannel.socket().setSendBufferSize(BATCH_SOCKET_BUFFER_BYTES);
+            setPriority(Thread.NORM_PRIORITY + 1);
+            setDaemon(true);
+        }
+
+        /** Returns a free datagram, waiting if all are queued, or null if the sender has finished */
+        Datagram obtain() {
+            try {
+                while (isAlive()) {
+                    final Datagram d = free.poll(100, TimeUnit.MILLISECONDS);
+                    if (d != null) {
+                        return d;
+                    }
+                }
+            } catch (InterruptedException e) {
+                log.info("interrupted waiting for a free datagram");
+            }
+            return null;
+        }
+
+        void send(Datagram d) {
+            filled.add(d); // never full since there are only BATCH_NUM_DATAGRAMS
+        }
+
+        /** Sends the queued datagrams and then closes the channel */
+        void finish() {
+            filled.add(end);
+            try {
+                join(1000);
+            } catch (InterruptedException e) {
+                log.warning("interrupted waiting for the batch sender to finish");
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final Datagram d = filled.take();
+                    if (d == end) {
+                        break;
+                    }
+                    write(d);
+                    free.add(d);
+                }
+            } catch (InterruptedException e) {
+                log.info("BatchSender interrupted");
+            } finally {
+                try {
+                    batchChannel.close();
+                } catch (IOException e) {
+                    log.warning("closing batch channel caught " + e);
+                }
+            }
+        }
+
+        private void write(Datagram d) {
+            try {
+                ensureConnected();
+                final long n = batchChannel.write(d.parts);
+                datagramsSent++;
+                bytesSent += n;
+            } catch (IOException e) { // e.g. PortUnreachableException when the receiver is not running yet
+                sendErrors++;
+                final long now = System.currentTimeMillis();
+                if (now - lastErrorLogTime > 5000) {
+                    lastErrorLogTime = now;
+                    log.warning("sending to " + host + ":" + port + " caught " + e + " (" + sendErrors + " send errors so far)");
+                }
+            }
+        }
+
+        /** Connects the channel to the current host and port if they changed */
+        private void ensureConnected() throws IOException {
+            final String h = host;
+            final int p = port;
+            if (batchChannel.isConnected() && p == connectedPort && h.equals(connectedHost)) {
+                return;
+            }
+            if (batchChannel.isConnected()) {
+                batchChannel.disconnect();
+            }
+            final InetSocketAddress address = new InetSocketAddress(h, p);
+            if (address.isUnresolved()) {
+                throw new IOException("cannot resolve host " + h);
+            }
+            batchChannel.connect(address);
+            connectedHost = h;
+            connectedPort = p;
+        }
+    }
+
     class Consumer implements Runnable {
 
         private final Exchanger<ByteBuffer> exchanger;
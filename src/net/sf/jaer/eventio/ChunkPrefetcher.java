@@ -0,0 +1,300 @@
+/*
+ * ChunkPrefetcher.java
+ *
+ * Maps the chunks of a data file ahead of the reader.
+ */
+package net.sf.jaer.eventio;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Maps the chunks of an uncompressed data file for AEFileInputStream ahead of
+ * the reader, so that playback does not stall at chunk boundaries.
+ * <p>
+ * Each time the reader gets a chunk, the neighboring chunk in the direction
+ * of reading (which follows the reader, so backwards playback is prefetched as
+ * well) is mapped on a background thread and its pages are loaded with
+ * {@link MappedByteBuffer#load()}, which is the closest Java has to a
+ * sequential madvise hint. The current chunk and its two neighbors stay
+ * mapped; chunks that leave this window are unmapped right away on the
+ * background thread if the JVM allows it, instead of waiting for the garbage
+ * collector to finalize their buffers.
+ * <p>
+ * A chunk must not be accessed after it has left the window, since its memory
+ * is then unmapped. AEFileInputStream only uses the chunk it got last.
+ */
+final class ChunkPrefetcher {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer.eventio");
+
+    /** Maps one chunk of the file, called on the reader and on the prefetch thread */
+    interface Mapper {
+
+        ByteBuffer map(int chunk) throws IOException;
+    }
+
+    // deterministic unmapping: Unsafe.invokeCleaner on Java 9+, DirectBuffer.cleaner().clean() before
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER, CLEANER, CLEAN;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null, cleaner = null, clean = null;
+        try {
+            final Class<?> c = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = c.getMethod("invokeCleaner", ByteBuffer.class);
+            final Field f = c.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            unsafe = f.get(null);
+        } catch (Exception | LinkageError e) {
+            invokeCleaner = null;
+            try {
+                cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+                clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            } catch (Exception | LinkageError e2) {
+                cleaner = null;
+                clean = null;
+            }
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+        CLEANER = cleaner;
+        CLEAN = clean;
+    }
+
+    private final Mapper mapper;
+    private final int numChunks;
+    private final boolean unmapEnabled;
+    private final ExecutorService executor;
+    private final HashMap<Integer, ByteBuffer> mapped = new HashMap<Integer, ByteBuffer>();
+    private final HashMap<Integer, Future<ByteBuffer>> pending = new HashMap<Integer, Future<ByteBuffer>>();
+    private int currentChunk = -1, direction = 1;
+    private boolean closed = false;
+    private long requests = 0, hits = 0, waits = 0, misses = 0, waitNs = 0, maxWaitNs = 0;
+    private volatile long unmapped = 0;
+
+    /**
+     * Constructs a new prefetcher.
+     *
+     * @param mapper maps chunks
+     * @param numChunks the number of chunks of the file
+     * @param unmapEnabled true to unmap chunks that leave the window, false to
+     * leave them to the garbage collector
+     */
+    ChunkPrefetcher(Mapper mapper, int numChunks, boolean unmapEnabled) {
+        this.mapper = mapper;
+        this.numChunks = numChunks;
+        this.unmapEnabled = unmapEnabled && isUnmapSupported();
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread t = new Thread(r, "AEFileInputStream.ChunkPrefetcher");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * @return true if the JVM allows unmapping buffers without the garbage
+     * collector
+     */
+    static boolean isUnmapSupported() {
+        return (INVOKE_CLEANER != null) || (CLEAN != null);
+    }
+
+    /**
+     * Gets a chunk, which is ready if it was prefetched, prefetches its
+     * neighbor in the direction of reading and releases the chunks that left
+     * the window.
+     *
+     * @param chunk the chunk number
+     * @return the chunk's buffer, positioned at its start
+     * @throws IOException if the chunk cannot be mapped, e.g. EOFException past
+     * the end of the file
+     */
+    synchronized ByteBuffer get(int chunk) throws IOException {
+        if (closed) {
+            throw new IOException("ChunkPrefetcher is closed");
+        }
+        if ((currentChunk >= 0) && (chunk != currentChunk)) {
+            direction = chunk < currentChunk ? -1 : 1;
+        }
+        currentChunk = chunk;
+        requests++;
+        ByteBuffer buf = mapped.get(chunk);
+        if (buf != null) {
+            hits++;
+        } else {
+            final long start = System.nanoTime();
+            final Future<ByteBuffer> f = pending.remove(chunk);
+            if (f == null) {
+                misses++;
+                buf = mapper.map(chunk);
+            } else {
+                if (f.isDone()) {
+                    hits++;
+                } else {
+                    waits++;
+                }
+                buf = take(f);
+            }
+            final long dt = System.nanoTime() - start;
+            waitNs += dt;
+            maxWaitNs = Math.max(maxWaitNs, dt);
+            mapped.put(chunk, buf);
+        }
+        buf.rewind();
+        final int next = chunk + direction;
+        if ((next >= 0) && (next < numChunks) && !mapped.containsKey(next) && !pending.containsKey(next)) {
+            pending.put(next, executor.submit(new Callable<ByteBuffer>() {
+                @Override
+                public ByteBuffer call() throws IOException {
+                    final ByteBuffer b = mapper.map(next);
+                    if (b instanceof MappedByteBuffer) {
+                        ((MappedByteBuffer) b).load();
+                    }
+                    return b;
+                }
+            }));
+        }
+        release(chunk, next);
+        return buf;
+    }
+
+    /** Releases the chunks that are neither next to the current one nor being prefetched */
+    private void release(int chunk, int next) {
+        for (Iterator<Map.Entry<Integer, ByteBuffer>> i = mapped.entrySet().iterator(); i.hasNext();) {
+            final Map.Entry<Integer, ByteBuffer> e = i.next();
+            if (Math.abs(e.getKey() - chunk) > 1) {
+                i.remove();
+                unmapLater(e.getValue());
+            }
+        }
+        for (Iterator<Map.Entry<Integer, Future<ByteBuffer>>> i = pending.entrySet().iterator(); i.hasNext();) {
+            final Map.Entry<Integer, Future<ByteBuffer>> e = i.next();
+            if ((e.getKey() != next) && (Math.abs(e.getKey() - chunk) > 1)) {
+                i.remove();
+                unmapWhenMapped(e.getValue());
+            }
+        }
+    }
+
+    private static ByteBuffer take(Future<ByteBuffer> f) throws IOException {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /** Unmaps on the prefetch thread, so that the reader does not wait for munmap */
+    private void unmapLater(final ByteBuffer buf) {
+        if (!unmapEnabled) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                unmap(buf);
+            }
+        });
+    }
+
+    /** Unmaps a chunk that is still being prefetched once it is mapped, which the single prefetch thread guarantees */
+    private void unmapWhenMapped(final Future<ByteBuffer> f) {
+        if (!unmapEnabled) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    unmap(take(f));
+                } catch (IOException e) {
+                    // it was never mapped
+                }
+            }
+        });
+    }
+
+    private void unmap(ByteBuffer buf) {
+        if (!buf.isDirect()) {
+            return;
+        }
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buf);
+            } else {
+                final Object cleaner = CLEANER.invoke(buf);
+                if (cleaner != null) {
+                    CLEAN.invoke(cleaner);
+                }
+            }
+            unmapped++;
+        } catch (Exception e) {
+            log.warning("could not unmap chunk, leaving it to the garbage collector: " + e.toString());
+        }
+    }
+
+    /**
+     * Stops prefetching and unmaps all chunks. The buffer returned last must
+     * not be used anymore.
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Future<ByteBuffer> f : pending.values()) {
+            unmapWhenMapped(f);
+        }
+        for (ByteBuffer b : mapped.values()) {
+            unmapLater(b);
+        }
+        pending.clear();
+        mapped.clear();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** @return true if chunks are unmapped without the garbage collector */
+    boolean isUnmapEnabled() {
+        return unmapEnabled;
+    }
+
+    /** @return the number of chunk requests that waited for a mapping in progress or mapped synchronously */
+    synchronized long getStalls() {
+        return waits + misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("ChunkPrefetcher: %d chunk requests, %d ready, %d waited for prefetch, %d mapped synchronously, wait %.2f ms total, %.2f ms max, %d unmapped",
+                requests, hits, waits, misses, waitNs * 1e-6, maxWaitNs * 1e-6, unmapped);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * DatagramSequenceTracker.java
+ *
+ * Counts lost, reordered and duplicated datagrams from their sequence numbers.
+ */
+package net.sf.jaer.eventio;
+
+/**
+ * Counts lost, reordered and duplicated datagrams from the int32 sequence
+ * numbers that {@link AEUnicastOutput} writes as the first word of each
+ * datagram. The sender counts up to Integer.MAX_VALUE and then wraps to 0.
+ * <p>
+ * A datagram that arrives late, but within {@link #REORDER_WINDOW} datagrams
+ * of the newest one, is counted as reordered and is no longer counted as lost.
+ * A sequence number that jumps back by more than {@link #RESTART_DISTANCE}
+ * means that the sender was restarted; the tracker then starts over from it
+ * and counts a restart.
+ * <p>
+ * The tracker is not thread safe; it is updated by the receiving thread and
+ * the counters may be read from any thread.
+ */
+public class DatagramSequenceTracker {
+
+    /** Datagrams arriving up to this many sequence numbers late are recognized as reordered */
+    public static final int REORDER_WINDOW = 64;
+    /** A sequence number this far behind the newest one restarts the tracking */
+    public static final int RESTART_DISTANCE = 1024;
+    /** A jump ahead by more than this is also taken as a restart rather than as lost datagrams */
+    public static final int MAX_GAP = 1 << 20;
+
+    private boolean started = false;
+    private int highest = 0; // newest sequence number
+    private long window = 0; // bit i is set if highest-i was received
+    private volatile long received = 0, lost = 0, reordered = 0, duplicates = 0, restarts = 0;
+
+    /**
+     * Counts a received datagram.
+     *
+     * @param seq its sequence number
+     * @return the number of datagrams that were newly found to be missing,
+     * i.e. skipped by this one
+     */
+    public int update(int seq) {
+        received++;
+        if (!started) {
+            restart(seq);
+            return 0;
+        }
+        final int d = (seq - highest) & Integer.MAX_VALUE; // distance ahead modulo the 31 bit range of the sender
+        if (d == 0) {
+            duplicates++;
+            return 0;
+        }
+        if (d <= MAX_GAP) {
+            window = d >= REORDER_WINDOW ? 1 : ((window << d) | 1);
+            highest = seq;
+            lost += d - 1;
+            return d - 1;
+        }
+        final int behind = (Integer.MAX_VALUE - d) + 1;
+        if (behind < REORDER_WINDOW) {
+            final long bit = 1L << behind;
+            if ((window & bit) != 0) {
+                duplicates++;
+            } else {
+                window |= bit;
+                reordered++;
+                lost--;
+            }
+        } else if (behind > RESTART_DISTANCE) {
+            restarts++;
+            restart(seq);
+        } else {
+            reordered++; // too late to match with the gap it left, so it stays counted as lost
+        }
+        return 0;
+    }
+
+    private void restart(int seq) {
+        started = true;
+        highest = seq;
+        window = -1L; // older datagrams from before the (re)start must not reduce the lost count
+    }
+
+    /** Forgets the last sequence number and zeros the counters. */
+    public void reset() {
+        started = false;
+        received = 0;
+        lost = 0;
+        reordered = 0;
+        duplicates = 0;
+        restarts = 0;
+    }
+
+    /** @return the number of datagrams counted */
+    public long getReceived() {
+        return received;
+    }
+
+    /** @return the number of datagrams that never arrived */
+    public long getLost() {
+        return lost;
+    }
+
+    /** @return the number of datagrams that arrived after a later one */
+    public long getReordered() {
+        return reordered;
+    }
+
+    /** @return the number of datagrams that arrived twice */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /** @return the number of times the sender was found to have restarted its sequence */
+    public long getRestarts() {
+        return restarts;
+    }
+
+    /** @return the newest sequence number */
+    public int getLastSequenceNumber() {
+        return highest;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d datagrams, %d lost, %d reordered, %d duplicates, %d restarts", received, lost, reordered, duplicates, restarts);
+    }
+}
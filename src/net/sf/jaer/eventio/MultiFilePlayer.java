@@ -0,0 +1,593 @@
+/*
+ * MultiFilePlayer.java
+ *
+ * Plays many recordings in lock step on a common timeline.
+ */
+package net.sf.jaer.eventio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+
+/**
+ * Plays N recordings in lock step on a common timeline, e.g. the recordings of
+ * a rig of several cameras. Unlike synchronized playback by several AEViewers,
+ * which read their files by time on their own threads and drift apart when a
+ * file has non-monotonic timestamps, it does not need a viewer and keeps the
+ * sources aligned by construction:
+ * <ul>
+ * <li>The recordings are aligned by the absolute starting time of each file
+ * ({@link AEFileInputStream#getAbsoluteStartingTimeMs()}, from the header or
+ * else the file name). The common timeline starts at 0 us at the earliest
+ * start, and the timestamps of each file are unwrapped and shifted onto it.
+ * <li>Each file is read by number of events on its own worker thread into a
+ * small bounded queue of blocks, so reading and decoding run in parallel and
+ * a worker can never get ahead by more than the queue.
+ * <li>{@link #next()} returns a {@link Batch} of all events of all sources in
+ * the next batch duration of the common timeline, both as one packet per
+ * source and as a k-way merged packet in time order with the source of each
+ * event. The skew between the sources within a batch is therefore at most the
+ * batch duration, whatever the timestamps in the files do. Timestamps that go
+ * backwards within a file are clamped to the latest time of that file and
+ * counted, so that they do not break the order of the merge.
+ * </ul>
+ * Batches are produced as fast as the files can be read; callers that want
+ * real time pace themselves on {@link Batch#getEndUs()}. The batch can be given
+ * to {@link net.sf.jaer.eventprocessing.MultiSourceProcessor#filterPackets(MultiFilePlayer.Batch)}.
+ * <p>
+ * Run from the command line with
+ * <pre>
+ * java -cp dist/jAER.jar:jars/* net.sf.jaer.eventio.MultiFilePlayer [batchMs] file1 file2 ...
+ * </pre> to measure the playback rate, or without files to measure it with 8
+ * synthetic recordings that start 1 s apart.
+ */
+public class MultiFilePlayer {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer.eventio");
+    public static final int DEFAULT_BATCH_DURATION_US = 10000;
+    /** Events per block read by a worker */
+    private static final int BLOCK_EVENTS = 1 << 15;
+    /** Blocks a worker can read ahead of the merge */
+    private static final int QUEUE_BLOCKS = 8;
+    private static final int MAX_EMPTY_READS = 3;
+
+    /** A block of events read by a worker, with their times on the common timeline */
+    private static final class Block {
+
+        final int[] addresses;
+        final long[] times;
+        int numEvents = 0, next = 0;
+
+        Block(int capacity) {
+            addresses = new int[capacity];
+            times = new long[capacity];
+        }
+    }
+
+    /** Marks the end of a source */
+    private static final Block END = new Block(0);
+
+    /** Reads one recording on its own thread */
+    private final class Source extends Thread {
+
+        final File file;
+        final AEFileInputStream in;
+        final int index;
+        long offsetUs = 0;
+        final ArrayBlockingQueue<Block> full = new ArrayBlockingQueue<Block>(QUEUE_BLOCKS);
+        final ArrayBlockingQueue<Block> free = new ArrayBlockingQueue<Block>(QUEUE_BLOCKS + 2);
+        Block current = null;
+        boolean ended = false;
+        volatile boolean running = true;
+        volatile IOException error = null;
+        volatile long eventsRead = 0, clampedEvents = 0, queueWaitNs = 0;
+
+        Source(File file, AEChip chip, int index) throws IOException {
+            super("MultiFilePlayer.Source" + index);
+            setDaemon(true);
+            this.file = file;
+            this.index = index;
+            in = new AEFileInputStream(file, chip, false); // read sequentially, don't write index sidecars next to the recordings
+            in.setNonMonotonicTimeExceptionsChecked(false); // the worker orders the timestamps itself
+        }
+
+        @Override
+        public void run() {
+            long wraps = 0, lastTime = Long.MIN_VALUE, firstUs = 0;
+            int prevTs = 0, emptyReads = 0;
+            boolean first = true;
+            try {
+                while (running) {
+                    final long remaining = in.getMarkOutPosition() - in.position();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    Block b = free.poll();
+                    if (b == null) {
+                        b = new Block(BLOCK_EVENTS);
+                    }
+                    final AEPacketRaw p = in.readPacketByNumber((int) Math.min(BLOCK_EVENTS, remaining));
+                    final int n = p.getNumEvents();
+                    if (n == 0) {
+                        if (++emptyReads > MAX_EMPTY_READS) {
+                            log.warning(file + ": no events read at position " + in.position() + " of " + in.getMarkOutPosition() + ", ending playback of it");
+                            break;
+                        }
+                        free.offer(b);
+                        continue;
+                    }
+                    emptyReads = 0;
+                    final int[] a = p.getAddresses(), ts = p.getTimestamps();
+                    for (int i = 0; i < n; i++) {
+                        final int t = ts[i];
+                        if (first) {
+                            firstUs = t;
+                            first = false;
+                        } else if (AEFileTimestampIndex.isWrap(t, prevTs)) {
+                            wraps++;
+                        }
+                        prevTs = t;
+                        long time = (t + (wraps * AEFileTimestampIndex.WRAP_PERIOD_US)) - firstUs + offsetUs;
+                        if (time < lastTime) {
+                            time = lastTime;
+                            clampedEvents++;
+                        }
+                        lastTime = time;
+                        b.addresses[i] = a[i];
+                        b.times[i] = time;
+                    }
+                    b.numEvents = n;
+                    b.next = 0;
+                    eventsRead += n;
+                    put(b);
+                }
+            } catch (IOException e) {
+                error = e;
+                log.warning(file + ": " + e.toString());
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                put(END);
+            } catch (InterruptedException e) {
+            }
+        }
+
+        private void put(Block b) throws InterruptedException {
+            if (full.offer(b)) {
+                return;
+            }
+            final long start = System.nanoTime();
+            full.put(b); // the merge is behind, wait for it
+            queueWaitNs += System.nanoTime() - start;
+        }
+
+        /** @return the block with the next event to merge, waiting for the worker, or null at the end */
+        Block current() throws InterruptedException, IOException {
+            while (!ended && ((current == null) || (current.next >= current.numEvents))) {
+                if (current != null) {
+                    free.offer(current);
+                }
+                current = full.take();
+                if (current == END) {
+                    current = null;
+                    ended = true;
+                    if (error != null) {
+                        throw error;
+                    }
+                }
+            }
+            return current;
+        }
+    }
+
+    /**
+     * The events of all sources in one batch duration of the common timeline.
+     * The batch and its packets are reused by the next call to next().
+     */
+    public static final class Batch {
+
+        private long startUs, endUs;
+        private final AEPacketRaw[] packets;
+        private final AEPacketRaw merged = new AEPacketRaw(BLOCK_EVENTS);
+        private byte[] mergedSources = new byte[BLOCK_EVENTS];
+
+        private Batch(int numSources) {
+            packets = new AEPacketRaw[numSources];
+            for (int i = 0; i < numSources; i++) {
+                packets[i] = new AEPacketRaw(BLOCK_EVENTS);
+            }
+        }
+
+        /** @return the start of the batch on the common timeline in us, inclusive */
+        public long getStartUs() {
+            return startUs;
+        }
+
+        /** @return the end of the batch on the common timeline in us, exclusive */
+        public long getEndUs() {
+            return endUs;
+        }
+
+        public int getNumSources() {
+            return packets.length;
+        }
+
+        /**
+         * Returns the events of one source in this batch. The timestamps are
+         * on the common timeline, truncated to int like all jAER timestamps.
+         *
+         * @param source the source number, in the order of the files
+         * @return the packet
+         */
+        public AEPacketRaw getPacket(int source) {
+            return packets[source];
+        }
+
+        /**
+         * @return the events of all sources merged in time order, with
+         * timestamps on the common timeline
+         */
+        public AEPacketRaw getMergedPacket() {
+            return merged;
+        }
+
+        /**
+         * @return the source number of each event of the merged packet; only
+         * the first getMergedPacket().getNumEvents() entries are valid
+         */
+        public byte[] getMergedSources() {
+            return mergedSources;
+        }
+
+        /** @return the number of events of all sources */
+        public int getNumEvents() {
+            return merged.getNumEvents();
+        }
+    }
+
+    private final ArrayList<Source> sources = new ArrayList<Source>();
+    private final Batch batch;
+    private long[][] sourceTimes; // the common timeline times of the events of each source's packet of the batch
+    private final int[] heap, cursor;
+    private int batchDurationUs = DEFAULT_BATCH_DURATION_US;
+    private long nextStartUs = 0;
+    private boolean started = false, closed = false;
+    private long batches = 0, eventsMerged = 0, mergeWaitNs = 0;
+
+    /**
+     * Opens the recordings. Reading starts with the first call to next().
+     *
+     * @param files the recordings, at most 127
+     * @param chip the chip of the recordings, needed for jAER 3.x files; may
+     * be null for AEDAT-1.x and 2.x files
+     * @throws IOException if a file cannot be opened
+     */
+    public MultiFilePlayer(List<File> files, AEChip chip) throws IOException {
+        if (files.isEmpty() || (files.size() > Byte.MAX_VALUE)) {
+            throw new IllegalArgumentException("need 1 to " + Byte.MAX_VALUE + " files, got " + files.size());
+        }
+        try {
+            for (File f : files) {
+                sources.add(new Source(f, chip, sources.size()));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        long earliestMs = Long.MAX_VALUE; // of the recordings that have a starting time
+        for (Source s : sources) {
+            final long startMs = s.in.getAbsoluteStartingTimeMs();
+            if (startMs != 0) {
+                earliestMs = Math.min(earliestMs, startMs);
+            }
+        }
+        for (Source s : sources) {
+            final long startMs = s.in.getAbsoluteStartingTimeMs();
+            if (startMs == 0) {
+                log.warning(s.file + " has no absolute starting time in its header or name, aligning its start with the earliest recording");
+            } else {
+                s.offsetUs = (startMs - earliestMs) * 1000;
+            }
+        }
+        final int n = sources.size();
+        batch = new Batch(n);
+        sourceTimes = new long[n][BLOCK_EVENTS];
+        heap = new int[n];
+        cursor = new int[n];
+    }
+
+    /**
+     * Returns the next batch, waiting for the workers as necessary. Batch
+     * durations without any event are skipped.
+     *
+     * @return the batch, which is reused by the next call, or null at the end
+     * of all recordings
+     * @throws IOException if a recording cannot be read
+     * @throws InterruptedException if interrupted while waiting for a worker
+     */
+    public Batch next() throws IOException, InterruptedException {
+        if (closed) {
+            throw new IOException("MultiFilePlayer is closed");
+        }
+        if (!started) {
+            started = true;
+            for (Source s : sources) {
+                s.start();
+            }
+        }
+        final long start = System.nanoTime();
+        try {
+            while (true) {
+                final long endUs = nextStartUs + batchDurationUs;
+                int total = 0;
+                long earliestPendingUs = Long.MAX_VALUE;
+                for (Source s : sources) {
+                    total += fill(s, endUs);
+                    final Block b = s.current();
+                    if (b != null) {
+                        earliestPendingUs = Math.min(earliestPendingUs, b.times[b.next]);
+                    }
+                }
+                batch.startUs = nextStartUs;
+                batch.endUs = endUs;
+                nextStartUs = endUs;
+                if (total > 0) {
+                    merge(total);
+                    batches++;
+                    eventsMerged += total;
+                    return batch;
+                }
+                if (earliestPendingUs == Long.MAX_VALUE) {
+                    return null; // all sources ended
+                }
+                if (earliestPendingUs >= nextStartUs) { // skip the gap, keeping the batch grid
+                    nextStartUs += ((earliestPendingUs - nextStartUs) / batchDurationUs) * batchDurationUs;
+                }
+            }
+        } finally {
+            mergeWaitNs += System.nanoTime() - start;
+        }
+    }
+
+    /** Copies the events of a source before endUs into its packet of the batch */
+    private int fill(Source s, long endUs) throws IOException, InterruptedException {
+        final AEPacketRaw p = batch.packets[s.index];
+        int n = 0;
+        Block b;
+        while ((b = s.current()) != null) {
+            int i = b.next;
+            final int limit = b.numEvents;
+            while ((i < limit) && (b.times[i] < endUs)) {
+                i++;
+            }
+            final int m = i - b.next;
+            if (m > 0) {
+                p.ensureCapacity(n + m);
+                if (sourceTimes[s.index].length < (n + m)) {
+                    final long[] t = new long[2 * (n + m)];
+                    System.arraycopy(sourceTimes[s.index], 0, t, 0, n);
+                    sourceTimes[s.index] = t;
+                }
+                System.arraycopy(b.addresses, b.next, p.addresses, n, m);
+                System.arraycopy(b.times, b.next, sourceTimes[s.index], n, m);
+                final int[] ts = p.timestamps;
+                for (int k = n; k < (n + m); k++) {
+                    ts[k] = (int) sourceTimes[s.index][k];
+                }
+                n += m;
+                b.next = i;
+            }
+            if (i < limit) {
+                break; // the rest belongs to later batches
+            }
+        }
+        p.setNumEvents(n);
+        return n;
+    }
+
+    /** K-way merges the packets of the sources with a binary heap of sources ordered by their next event time */
+    private void merge(int total) {
+        final AEPacketRaw out = batch.merged;
+        out.ensureCapacity(total);
+        if (batch.mergedSources.length < total) {
+            batch.mergedSources = new byte[2 * total];
+        }
+        final byte[] src = batch.mergedSources;
+        int size = 0;
+        for (Source s : sources) {
+            cursor[s.index] = 0;
+            if (batch.packets[s.index].getNumEvents() > 0) {
+                heap[size++] = s.index;
+            }
+        }
+        for (int i = (size / 2) - 1; i >= 0; i--) {
+            siftDown(i, size);
+        }
+        int k = 0;
+        while (size > 0) {
+            final int s = heap[0];
+            final AEPacketRaw p = batch.packets[s];
+            final long[] times = sourceTimes[s];
+            final int n = p.getNumEvents();
+            // copy the run of events of this source that precede the next source's event
+            final long bound = size > 1 ? nextTimeOfChildren(size) : Long.MAX_VALUE;
+            int c = cursor[s];
+            do {
+                out.addresses[k] = p.addresses[c];
+                out.timestamps[k] = p.timestamps[c];
+                src[k++] = (byte) s;
+                c++;
+            } while ((c < n) && (times[c] <= bound));
+            cursor[s] = c;
+            if (c >= n) {
+                heap[0] = heap[--size];
+            }
+            if (size > 0) {
+                siftDown(0, size);
+            }
+        }
+        out.setNumEvents(k);
+    }
+
+    private long headTime(int heapIndex) {
+        final int s = heap[heapIndex];
+        return sourceTimes[s][cursor[s]];
+    }
+
+    private long nextTimeOfChildren(int size) {
+        long t = headTime(1);
+        if (size > 2) {
+            t = Math.min(t, headTime(2));
+        }
+        return t;
+    }
+
+    private void siftDown(int i, int size) {
+        final int s = heap[i];
+        final long t = sourceTimes[s][cursor[s]];
+        while (true) {
+            int child = (2 * i) + 1;
+            if (child >= size) {
+                break;
+            }
+            if (((child + 1) < size) && (headTime(child + 1) < headTime(child))) {
+                child++;
+            }
+            if (headTime(child) >= t) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = s;
+    }
+
+    /** Stops the workers and closes the recordings. */
+    public void close() {
+        closed = true;
+        for (Source s : sources) {
+            s.running = false;
+            s.interrupt();
+        }
+        for (Source s : sources) {
+            try {
+                s.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                s.in.close();
+            } catch (IOException e) {
+                log.warning("closing " + s.file + ": " + e.toString());
+            }
+        }
+    }
+
+    public int getNumSources() {
+        return sources.size();
+    }
+
+    /**
+     * @param source the source number
+     * @return the recording's input stream, e.g. for its header
+     */
+    public AEFileInputStream getInputStream(int source) {
+        return sources.get(source).in;
+    }
+
+    /**
+     * @param source the source number
+     * @return the offset of the start of the recording on the common timeline
+     * in us
+     */
+    public long getStartOffsetUs(int source) {
+        return sources.get(source).offsetUs;
+    }
+
+    public int getBatchDurationUs() {
+        return batchDurationUs;
+    }
+
+    /**
+     * Sets the duration of a batch, which bounds the skew between the sources
+     * within a batch.
+     *
+     * @param batchDurationUs the duration in us, at least 1
+     */
+    public void setBatchDurationUs(int batchDurationUs) {
+        this.batchDurationUs = batchDurationUs < 1 ? 1 : batchDurationUs;
+    }
+
+    /** @return the number of events merged into batches so far */
+    public long getEventsMerged() {
+        return eventsMerged;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(String.format("MultiFilePlayer: %d sources, %d batches of %d us, %d events merged, next() took %.1f ms total",
+                sources.size(), batches, batchDurationUs, eventsMerged, mergeWaitNs * 1e-6));
+        for (Source s : sources) {
+            sb.append(String.format("%n  %d: %s starts at %.3f s, %d events read, %d non-monotonic timestamps clamped, worker waited %.1f ms for the merge",
+                    s.index, s.file.getName(), s.offsetUs * 1e-6, s.eventsRead, s.clampedEvents, s.queueWaitNs * 1e-6));
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Logger.getLogger("net.sf.jaer").setLevel(Level.WARNING);
+        Logger.getLogger("net.sf.jaer.eventio").setLevel(Level.WARNING);
+        int batchMs = 10;
+        final ArrayList<File> files = new ArrayList<File>();
+        for (String a : args) {
+            if (files.isEmpty() && a.matches("\\d+")) {
+                batchMs = Integer.parseInt(a);
+            } else {
+                files.add(new File(a));
+            }
+        }
+        final boolean synthetic = files.isEmpty();
+        if (synthetic) {
+            for (int i = 0; i < 8; i++) {
+                final File f = File.createTempFile("MultiFilePlayer" + i + "-", ".aedat");
+                f.deleteOnExit();
+                AEFileInputStreamBenchmark.writeSyntheticFile(f, 2, 5000000, 1500000000000L + (1000L * i));
+                files.add(f);
+            }
+        }
+        final MultiFilePlayer player = new MultiFilePlayer(files, null);
+        player.setBatchDurationUs(batchMs * 1000);
+        final long start = System.nanoTime();
+        long lastEndUs = 0, maxEvents = 0, backwards = 0;
+        Batch b;
+        while ((b = player.next()) != null) {
+            final AEPacketRaw p = b.getMergedPacket();
+            for (int i = 1; i < p.getNumEvents(); i++) {
+                if (p.timestamps[i] < p.timestamps[i - 1]) {
+                    backwards++;
+                }
+            }
+            maxEvents = Math.max(maxEvents, b.getNumEvents());
+            lastEndUs = b.getEndUs();
+        }
+        final double s = (System.nanoTime() - start) * 1e-9;
+        System.out.println(player);
+        System.out.println(String.format("played %.1f s of %d recordings in %.2f s = %.1f x realtime, %.3g events/s, largest batch %d events, %d backwards timestamps in merged batches",
+                lastEndUs * 1e-6, player.getNumSources(), s, lastEndUs * 1e-6 / s, player.getEventsMerged() / s, maxEvents, backwards));
+        player.close();
+        if (synthetic) {
+            for (File f : files) {
+                f.delete();
+                AEFileTimestampIndex.indexFileFor(f).delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,469 @@
+/*
+ * AdaptivePacketScheduler.java
+ *
+ * Sizes the packets processed by the view loop to a latency budget.
+ */
+package net.sf.jaer.eventprocessing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.logging.Logger;
+
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.aemonitor.EventRaw.EventType;
+
+/**
+ * Sizes the packets that are processed by the AEViewer view loop so that
+ * events reach the end of the processing within a latency budget, instead of
+ * processing whatever packet arrives and letting the {@link TimeLimiter} of the
+ * FilterChain abort the iteration over the tail of packets that take too long.
+ * <p>
+ * Acquired raw packets are {@link #offer offered} to a backlog, and each loop
+ * iteration takes the {@link #next next} packet to process from it:
+ * <ul>
+ * <li>The cost of processing is modeled as a fixed time per packet plus a time
+ * per event, fitted to the measured processing times that the view loop
+ * reports by {@link #processed}.
+ * <li>A packet never holds more events than can be processed within the
+ * budget; at high event rates the backlog is split and the remainder is
+ * deferred to the next iterations.
+ * <li>At low event rates a small backlog is held and coalesced with the next
+ * acquisition as long as waiting one more loop iteration still meets the
+ * budget, which saves the per-packet cost.
+ * <li>Events are only dropped when dropping is enabled (live input that cannot
+ * be slowed down) and the backlog would take more than
+ * {@link #getMaxBacklogBudgets()} latency budgets to process. Dropped events are
+ * counted.
+ * </ul>
+ * The incoming event rate is taken from the hardware interface's estimate, if
+ * given, or measured from the offered packets.
+ * <p>
+ * The methods are synchronized, so that the GUI can clear the backlog or read
+ * the statistics while the view loop offers and takes packets.
+ */
+public class AdaptivePacketScheduler {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer.eventprocessing");
+    public static final float DEFAULT_LATENCY_BUDGET_MS = 30;
+    /** Weight of a new sample in the exponential averages of the cost and rate */
+    private static final double ALPHA = 0.1;
+    /** Packets are not split smaller than this */
+    private static final int MIN_PACKET_EVENTS = 256;
+    /** Hard limit of the backlog, to bound memory when the cost is not known yet */
+    private static final int MAX_BACKLOG_EVENTS = 1 << 24;
+    /** Number of arrival time blocks kept for the backlog */
+    private static final int NUM_BLOCKS = 256;
+    private static final long WARNING_INTERVAL_NS = 5000000000L;
+
+    private float latencyBudgetMs = DEFAULT_LATENCY_BUDGET_MS;
+    private float maxBacklogBudgets = 4;
+    private boolean coalescingEnabled = true;
+    private boolean droppingEnabled = true;
+
+    // the backlog of events [head,tail) and the absolute count of events consumed before head;
+    // event types and pixel data are kept for jAER 3.0 packets, as AEPacketRaw.copyFrom does
+    private int[] addresses = new int[0], timestamps = new int[0], pixelData = new int[0];
+    private EventType[] eventTypes = new EventType[0];
+    private int head = 0, tail = 0;
+    private long headCount = 0, deferredMark = 0;
+    // arrival times of blocks of backlog events, as absolute event counts at their ends
+    private final long[] blockEnd = new long[NUM_BLOCKS], blockArrivalNs = new long[NUM_BLOCKS];
+    private int blockHead = 0, numBlocks = 0;
+
+    // linear cost model t = overheadNs + nsPerEvent * n, fitted with exponential forgetting
+    private double meanN = 0, meanT = 0, meanNN = 0, meanNT = 0;
+    private double overheadNs = 0, nsPerEvent = 0;
+    private long costSamples = 0;
+
+    // input rate and loop interval
+    private double ratePerNs = 0, loopIntervalNs = 0;
+    private long lastOfferNs = 0;
+    private int estimatedEventRate = 0;
+
+    // accounting
+    private long eventsOffered = 0, eventsProcessed = 0, eventsDeferred = 0, eventsDropped = 0, packetsProcessed = 0, packetsHeld = 0;
+    private long lastWarningNs = 0;
+
+    /**
+     * Adds an acquired packet to the backlog.
+     *
+     * @param raw the packet, copied with its event types and pixel data
+     * @param arrivalNs the System.nanoTime() when it was acquired
+     * @param estimatedEventRate the event rate estimated by the hardware
+     * interface in events/s, or 0 to measure it from the offered packets
+     */
+    synchronized public void offer(AEPacketRaw raw, long arrivalNs, int estimatedEventRate) {
+        this.estimatedEventRate = estimatedEventRate;
+        final int n = raw == null ? 0 : raw.getNumEvents();
+        if (lastOfferNs != 0) {
+            final long dt = arrivalNs - lastOfferNs;
+            if (dt > 0) {
+                loopIntervalNs = average(loopIntervalNs, dt);
+                ratePerNs = average(ratePerNs, (double) n / dt);
+            }
+        }
+        lastOfferNs = arrivalNs;
+        if (n == 0) {
+            return;
+        }
+        eventsOffered += n;
+        makeRoom(n);
+        System.arraycopy(raw.getAddresses(), 0, addresses, tail, n);
+        System.arraycopy(raw.getTimestamps(), 0, timestamps, tail, n);
+        if ((raw.eventtypes != null) && (raw.eventtypes.length >= n)) {
+            System.arraycopy(raw.eventtypes, 0, eventTypes, tail, n);
+        } else {
+            Arrays.fill(eventTypes, tail, tail + n, null);
+        }
+        if ((raw.pixelDataArray != null) && (raw.pixelDataArray.length >= n)) {
+            System.arraycopy(raw.pixelDataArray, 0, pixelData, tail, n);
+        } else {
+            Arrays.fill(pixelData, tail, tail + n, 0);
+        }
+        tail += n;
+        final long end = headCount + (tail - head);
+        if (numBlocks == NUM_BLOCKS) { // merge into the newest block, which keeps the older arrival time
+            blockEnd[(blockHead + numBlocks - 1) % NUM_BLOCKS] = end;
+        } else {
+            final int b = (blockHead + numBlocks++) % NUM_BLOCKS;
+            blockEnd[b] = end;
+            blockArrivalNs[b] = arrivalNs;
+        }
+        dropExcess(arrivalNs);
+    }
+
+    private void makeRoom(int n) {
+        if (tail + n <= addresses.length) {
+            return;
+        }
+        final int backlog = tail - head;
+        if (backlog + n > addresses.length) {
+            final int capacity = Math.max(2 * addresses.length, backlog + n);
+            final int[] a = new int[capacity], t = new int[capacity], d = new int[capacity];
+            final EventType[] e = new EventType[capacity];
+            System.arraycopy(addresses, head, a, 0, backlog);
+            System.arraycopy(timestamps, head, t, 0, backlog);
+            System.arraycopy(eventTypes, head, e, 0, backlog);
+            System.arraycopy(pixelData, head, d, 0, backlog);
+            addresses = a;
+            timestamps = t;
+            eventTypes = e;
+            pixelData = d;
+        } else {
+            System.arraycopy(addresses, head, addresses, 0, backlog);
+            System.arraycopy(timestamps, head, timestamps, 0, backlog);
+            System.arraycopy(eventTypes, head, eventTypes, 0, backlog);
+            System.arraycopy(pixelData, head, pixelData, 0, backlog);
+        }
+        head = 0;
+        tail = backlog;
+    }
+
+    private void dropExcess(long now) {
+        final int backlog = tail - head;
+        long max = MAX_BACKLOG_EVENTS;
+        if (droppingEnabled && nsPerEvent > 0) {
+            max = Math.min(max, (long) (maxBacklogBudgets * getMaxPacketEvents()));
+        }
+        if (backlog <= max) {
+            return;
+        }
+        final int drop = (int) (backlog - max);
+        consume(drop);
+        eventsDropped += drop;
+        if (now - lastWarningNs > WARNING_INTERVAL_NS) {
+            lastWarningNs = now;
+            log.warning("processing cannot keep up, dropped the oldest " + drop + " events of the backlog; " + this);
+        }
+    }
+
+    private void consume(int n) {
+        head += n;
+        headCount += n;
+        while ((numBlocks > 0) && (blockEnd[blockHead] <= headCount)) {
+            blockHead = (blockHead + 1) % NUM_BLOCKS;
+            numBlocks--;
+        }
+        if (head == tail) {
+            head = 0;
+            tail = 0;
+        }
+    }
+
+    /**
+     * Takes the next packet to process from the backlog. The packet is empty
+     * if the backlog is empty or is held to be coalesced with later events.
+     *
+     * @param out the packet to fill
+     * @return out
+     */
+    synchronized public AEPacketRaw next(AEPacketRaw out) {
+        final int backlog = tail - head;
+        if (backlog == 0) {
+            out.setNumEvents(0);
+            return out;
+        }
+        final long now = System.nanoTime();
+        final double maxEvents = getMaxPacketEvents();
+        if (coalescingEnabled && (costSamples > 0) && (backlog < maxEvents)) {
+            final double waited = now - blockArrivalNs[blockHead];
+            final double more = getRatePerNs() * loopIntervalNs;
+            if ((waited + loopIntervalNs + overheadNs + (nsPerEvent * (backlog + more))) < (latencyBudgetMs * 1e6)) {
+                packetsHeld++;
+                out.setNumEvents(0);
+                return out;
+            }
+        }
+        final int n = (int) Math.min(backlog, maxEvents);
+        out.ensureCapacity(n);
+        System.arraycopy(addresses, head, out.getAddresses(), 0, n);
+        System.arraycopy(timestamps, head, out.getTimestamps(), 0, n);
+        if ((out.eventtypes != null) && (out.eventtypes.length >= n)) {
+            System.arraycopy(eventTypes, head, out.eventtypes, 0, n);
+        }
+        if ((out.pixelDataArray != null) && (out.pixelDataArray.length >= n)) {
+            System.arraycopy(pixelData, head, out.pixelDataArray, 0, n);
+        }
+        out.setNumEvents(n);
+        out.systemModificationTimeNs = blockArrivalNs[blockHead];
+        consume(n);
+        final long end = headCount + (tail - head);
+        if (end > Math.max(headCount, deferredMark)) { // count each event only the first time it is deferred
+            eventsDeferred += end - Math.max(headCount, deferredMark);
+            deferredMark = end;
+        }
+        eventsProcessed += n;
+        packetsProcessed++;
+        return out;
+    }
+
+    /**
+     * Reports the time it took to process a packet returned by next(), which
+     * updates the cost model.
+     *
+     * @param n the number of events of the packet
+     * @param durationNs the processing time in ns
+     */
+    synchronized public void processed(int n, long durationNs) {
+        if (n <= 0) {
+            return;
+        }
+        if (costSamples++ == 0) {
+            meanN = n;
+            meanT = durationNs;
+            meanNN = (double) n * n;
+            meanNT = (double) n * durationNs;
+        } else {
+            meanN = average(meanN, n);
+            meanT = average(meanT, durationNs);
+            meanNN = average(meanNN, (double) n * n);
+            meanNT = average(meanNT, (double) n * durationNs);
+        }
+        final double var = meanNN - (meanN * meanN);
+        double b = 0, a = 0;
+        if (var > (0.01 * meanN * meanN)) { // enough spread of the packet sizes to fit both terms
+            b = (meanNT - (meanN * meanT)) / var;
+            a = meanT - (b * meanN);
+        }
+        if ((b <= 0) || (a < 0)) { // attribute all of the cost to the events, which is conservative
+            b = meanT / meanN;
+            a = 0;
+        }
+        nsPerEvent = b;
+        overheadNs = a;
+    }
+
+    /**
+     * Uses the per-filter costs measured by the EventProcessingPerformanceMeter's
+     * of a chain to describe where the time goes.
+     *
+     * @param chain the chain, with performance measurement enabled
+     * @return the filters and their average cost in ns per event, most
+     * expensive first, or an empty string if nothing was measured
+     */
+    public static String describeFilterCosts(FilterChain chain) {
+        final StringBuilder sb = new StringBuilder();
+        final ArrayList<EventFilter2D> filters = new ArrayList<EventFilter2D>();
+        for (EventFilter2D f : chain) {
+            if (f.isFilterEnabled() && (f.perf != null) && (f.perf.getTotalEvents() > 0)) {
+                filters.add(f);
+            }
+        }
+        Collections.sort(filters, new Comparator<EventFilter2D>() {
+            @Override
+            public int compare(EventFilter2D f1, EventFilter2D f2) {
+                return Double.compare(nsPerEvent(f2), nsPerEvent(f1));
+            }
+        });
+        for (EventFilter2D f : filters) {
+            sb.append(String.format("%s %.1f ns/event; ", f.getClass().getSimpleName(), nsPerEvent(f)));
+        }
+        return sb.toString();
+    }
+
+    private static double nsPerEvent(EventFilter2D f) {
+        return (double) f.perf.getTotalDurationNs() / f.perf.getTotalEvents();
+    }
+
+    private static double average(double avg, double sample) {
+        return avg + (ALPHA * (sample - avg));
+    }
+
+    private double getRatePerNs() {
+        return estimatedEventRate > 0 ? estimatedEventRate * 1e-9 : ratePerNs;
+    }
+
+    /**
+     * @return the largest packet in events that can be processed within the
+     * latency budget, or Integer.MAX_VALUE as long as the cost is not known
+     */
+    synchronized public double getMaxPacketEvents() {
+        if (nsPerEvent <= 0) {
+            return Integer.MAX_VALUE;
+        }
+        return Math.max(MIN_PACKET_EVENTS, ((latencyBudgetMs * 1e6) - overheadNs) / nsPerEvent);
+    }
+
+    /**
+     * Returns the packet duration that meets the latency budget at the current
+     * rate in steady state: an event waits up to the duration D for its packet
+     * to be complete and then for the processing of the packet, so
+     * D + overhead + cost*rate*D = budget.
+     *
+     * @return the packet duration in us
+     */
+    synchronized public float getTargetPacketDurationUs() {
+        final double d = ((latencyBudgetMs * 1e6) - overheadNs) / (1 + (nsPerEvent * getRatePerNs()));
+        return (float) Math.max(0, d * 1e-3);
+    }
+
+    /**
+     * @return the fraction of time needed to process the incoming events; above
+     * 1 the backlog grows
+     */
+    synchronized public float getUtilization() {
+        return (float) (nsPerEvent * getRatePerNs());
+    }
+
+    /**
+     * Returns whether more input should be read. Sources that can wait, like
+     * file playback, should only be read when this is true, so that the backlog
+     * does not grow when processing is slower than reading.
+     *
+     * @return true if the backlog is smaller than the largest packet
+     */
+    synchronized public boolean isInputNeeded() {
+        return (tail - head) < getMaxPacketEvents();
+    }
+
+    /**
+     * Discards the backlog, e.g. on rewind or when the input changes. The
+     * discarded events are not counted as dropped.
+     */
+    synchronized public void clear() {
+        consume(tail - head);
+        deferredMark = headCount;
+        lastOfferNs = 0;
+    }
+
+    /** Zeros the event accounting. The cost model is kept. */
+    synchronized public void resetStatistics() {
+        eventsOffered = 0;
+        eventsProcessed = 0;
+        eventsDeferred = 0;
+        eventsDropped = 0;
+        packetsProcessed = 0;
+        packetsHeld = 0;
+    }
+
+    /** @return the number of events in the backlog */
+    synchronized public int getBacklogEvents() {
+        return tail - head;
+    }
+
+    synchronized public long getEventsOffered() {
+        return eventsOffered;
+    }
+
+    synchronized public long getEventsProcessed() {
+        return eventsProcessed;
+    }
+
+    /** @return the number of events that were processed in a later packet than the one they arrived with */
+    synchronized public long getEventsDeferred() {
+        return eventsDeferred;
+    }
+
+    synchronized public long getEventsDropped() {
+        return eventsDropped;
+    }
+
+    synchronized public double getNsPerEvent() {
+        return nsPerEvent;
+    }
+
+    synchronized public double getOverheadNs() {
+        return overheadNs;
+    }
+
+    synchronized public float getLatencyBudgetMs() {
+        return latencyBudgetMs;
+    }
+
+    /**
+     * Sets the time from the arrival of an event to the end of the processing
+     * of its packet that the packet sizing aims for.
+     *
+     * @param latencyBudgetMs the budget in ms
+     */
+    synchronized public void setLatencyBudgetMs(float latencyBudgetMs) {
+        this.latencyBudgetMs = latencyBudgetMs < 1 ? 1 : latencyBudgetMs;
+    }
+
+    synchronized public float getMaxBacklogBudgets() {
+        return maxBacklogBudgets;
+    }
+
+    /**
+     * @param maxBacklogBudgets the backlog, in latency budgets of processing
+     * time, beyond which events are dropped when dropping is enabled
+     */
+    synchronized public void setMaxBacklogBudgets(float maxBacklogBudgets) {
+        this.maxBacklogBudgets = maxBacklogBudgets < 1 ? 1 : maxBacklogBudgets;
+    }
+
+    synchronized public boolean isCoalescingEnabled() {
+        return coalescingEnabled;
+    }
+
+    synchronized public void setCoalescingEnabled(boolean coalescingEnabled) {
+        this.coalescingEnabled = coalescingEnabled;
+    }
+
+    synchronized public boolean isDroppingEnabled() {
+        return droppingEnabled;
+    }
+
+    /**
+     * Sets whether the oldest events are dropped when the backlog grows too
+     * large. Should be enabled for live input and disabled for input that can
+     * wait, which should then only be read when {@link #isInputNeeded()}.
+     *
+     * @param droppingEnabled true to drop
+     */
+    synchronized public void setDroppingEnabled(boolean droppingEnabled) {
+        this.droppingEnabled = droppingEnabled;
+    }
+
+    @Override
+    synchronized public String toString() {
+        return String.format(
+                "AdaptivePacketScheduler: budget %.1f ms, cost %.0f ns/packet + %.1f ns/event, rate %.3g eps, utilization %.2f, max packet %.0f events, target duration %.1f ms; "
+                + "%d events offered, %d processed in %d packets, %d deferred, %d dropped, %d in backlog, %d packets held for coalescing",
+                latencyBudgetMs, overheadNs, nsPerEvent, getRatePerNs() * 1e9, getUtilization(), Math.min(getMaxPacketEvents(), 1e9),
+                getTargetPacketDurationUs() * 1e-3f, eventsOffered, eventsProcessed, packetsProcessed, eventsDeferred, eventsDropped, getBacklogEvents(),
+                packetsHeld);
+    }
+}
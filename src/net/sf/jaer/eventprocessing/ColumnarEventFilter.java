@@ -0,0 +1,31 @@
+/*
+ * ColumnarEventFilter.java
+ *
+ * Filters that can process ColumnarEventPacket directly.
+ */
+package net.sf.jaer.eventprocessing;
+
+import net.sf.jaer.event.ColumnarEventPacket;
+
+/**
+ * Implemented by EventFilter2D's that can process the primitive columns of a
+ * {@link ColumnarEventPacket} directly, without materializing event objects.
+ * <p>
+ * {@link FilterChain#filterPacket(net.sf.jaer.event.ColumnarEventPacket)}
+ * calls <code>filterColumns</code> for filters that implement this interface
+ * and falls back on copying the columns to an ordinary EventPacket and calling
+ * <code>filterPacket</code> for filters that do not. A filter implementing
+ * this interface must produce the same result from both methods.
+ */
+public interface ColumnarEventFilter {
+
+    /**
+     * Processes the columnar packet. Filters that only remove events should set
+     * the filteredOut bits of <code>in</code> and return <code>in</code>.
+     *
+     * @param in the input packet
+     * @return the output packet, which may be <code>in</code>
+     */
+    public ColumnarEventPacket filterColumns(ColumnarEventPacket in);
+
+}
@@ -18,6 +18,7 @@ import net.sf.jaer.chip.AEChip;
 import net.sf.jaer.event.ApsDvsEventPacket;
 import net.sf.jaer.event.BasicEvent;
 import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.event.EventPacketPool;
 
 /**
  * A filter that filters or otherwise processes a packet of events.
@@ -99,7 +100,14 @@ abstract public class EventFilter2D extends EventFilter implements PropertyChang
             out.systemModificationTimeNs = in.systemModificationTimeNs;
             out.clear();
         } else {
-            out = in.constructNewPacket();
+            EventPacketPool pool = getPacketPool();
+            if (pool != null) { // reuse a packet of this type instead of constructing it and its events again when upstream filters change the packet type
+                pool.release(out);
+                out = pool.obtain((EventPacket<?>) in);
+                out.systemModificationTimeNs = in.systemModificationTimeNs;
+            } else {
+                out = in.constructNewPacket();
+            }
         }
     }
 
@@ -116,7 +124,13 @@ abstract public class EventFilter2D extends EventFilter implements PropertyChang
      */
     protected void checkOutputPacketEventType(Class<? extends BasicEvent> outClass) {
         if ((out == null) || (out.getEventClass() == null) || (out.getEventClass() != outClass)) {
-            out = new EventPacket(outClass);
+            EventPacketPool pool = getPacketPool();
+            if (pool != null) {
+                pool.release(out);
+                out = pool.obtain(outClass);
+            } else {
+                out = new EventPacket(outClass);
+            }
             try {
                 out.setEventPrototype(outClass.newInstance());
             } catch (InstantiationException ex) {
@@ -128,6 +142,22 @@ abstract public class EventFilter2D extends EventFilter implements PropertyChang
         out.clear();
     }
 
+    /**
+     * Returns the packet pool of the chip's FilterChain, which is used for
+     * the <code>out</code> packet. Filters can obtain additional packets from
+     * it with {@link EventPacketPool#obtainTemporary(net.sf.jaer.event.EventPacket)};
+     * these stay valid until the next packet is filtered by the chain.
+     *
+     * @return the pool, or null if the chip has no FilterChain yet
+     * @see FilterChain#getPacketPool()
+     */
+    protected EventPacketPool getPacketPool() {
+        if ((chip == null) || (chip.getFilterChain() == null)) {
+            return null;
+        }
+        return chip.getFilterChain().getPacketPool();
+    }
+
     /**
      * Subclasses implement this method to define custom processing.
      *
@@ -12,10 +12,16 @@
 
 package net.sf.jaer.eventprocessing;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
 import net.sf.jaer.event.EventPacket;
 
 /**
- * Measures cost of event processing.
+ * Measures cost of event processing. Besides the processing time, the bytes
+ * allocated on the heap by the processing thread between start and stop are
+ * counted if the JVM supports it (the HotSpot ThreadMXBean extension), so that
+ * filters that make garbage for every packet can be found.
  
  * @author tobi
  */
@@ -30,8 +36,14 @@ public class EventProcessingPerformanceMeter {
     long durationNs=1;
     int nSamples=0;
     float thisNspe=0, nspeSum=0,nspeSq=0; // summary stats for ns per event
+    long totalEvents=0, totalDurationNs=0; // totals since last resetStatistics, for throughput over many packets
+    long startAllocatedBytes=-1, allocatedBytes=0, totalAllocatedBytes=0; // heap allocation by this thread, -1 if not supported
+    long parallelWorkNs=0, totalParallelWorkNs=0, totalParallelDurationNs=0; // time spent by parallel tile tasks, see TileParallelExecutor
     EventFilter filter;
     String filterClassName;
+    private static final ThreadMXBean threadBean=ManagementFactory.getThreadMXBean();
+    private static boolean allocationCountingSupported=(threadBean instanceof com.sun.management.ThreadMXBean)
+            && ((com.sun.management.ThreadMXBean)threadBean).isThreadAllocatedMemorySupported();
     
     /** Creates a new instance of EventProcessingPerformanceMeter */
     public EventProcessingPerformanceMeter(EventFilter f) {
@@ -42,21 +54,39 @@ public class EventProcessingPerformanceMeter {
     public void start(EventPacket packet){
         this.packet=packet;
         size=packet.getSize();
+        startAllocatedBytes=currentThreadAllocatedBytes();
         startTimeNs=System.nanoTime();
     }
     
     public void start(int nEvents){
         size=nEvents;
+        startAllocatedBytes=currentThreadAllocatedBytes();
         startTimeNs=System.nanoTime();
     }
     
+    private static long currentThreadAllocatedBytes(){
+        if(!allocationCountingSupported) return -1;
+        try{
+            return ((com.sun.management.ThreadMXBean)threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }catch(UnsupportedOperationException e){
+            allocationCountingSupported=false;
+            return -1;
+        }
+    }
+    
     public void stop(){
         endTimeNs=System.nanoTime();
+        long endAllocatedBytes=startAllocatedBytes<0? -1: currentThreadAllocatedBytes();
+        allocatedBytes=endAllocatedBytes<0? -1: endAllocatedBytes-startAllocatedBytes;
+        if(allocatedBytes>0) totalAllocatedBytes+=allocatedBytes;
         durationNs=endTimeNs-startTimeNs;
+        parallelWorkNs=0;
         thisNspe=size==0? 0: durationNs/size;
         nspeSum+=thisNspe;
         nspeSq+=thisNspe*thisNspe;
         nSamples++;
+        totalEvents+=size;
+        totalDurationNs+=durationNs;
     }
     
     public void stop(int nEvents){
@@ -64,6 +94,28 @@ public class EventProcessingPerformanceMeter {
         stop();
     }
     
+    /** Adds the time spent by the threads that filtered the last measured packet in parallel tiles, after stop().
+     * @param workNs the summed time of the tile tasks in ns, or 0 if the packet was filtered serially
+     */
+    public void addParallelWork(long workNs){
+        parallelWorkNs=workNs;
+        if(workNs>0){
+            totalParallelWorkNs+=workNs;
+            totalParallelDurationNs+=durationNs;
+        }
+    }
+    
+    /** @return the parallel speedup of the last packet, i.e. the summed time of its tile tasks over its processing time, or 0 if it was filtered serially */
+    public float parallelSpeedup(){
+        return parallelWorkNs<=0 || durationNs<=0? 0: (float)parallelWorkNs/durationNs;
+    }
+    
+    /** @return the parallel speedup over the packets filtered in parallel since the last resetStatistics, or 0 if there were none. 
+     * The serial time is estimated by the tile task times, which include the events in the tile halos, so this slightly overestimates the speedup. */
+    public float avgParallelSpeedup(){
+        return totalParallelDurationNs==0? 0: (float)totalParallelWorkNs/totalParallelDurationNs;
+    }
+    
     public float eps(){
         return size/(SPNS*durationNs);
     }
@@ -91,6 +143,41 @@ public class EventProcessingPerformanceMeter {
         thisNspe = 0;
         nspeSum = 0;
         nspeSq = 0; // summary stats for ns per event
+        totalEvents = 0;
+        totalDurationNs = 0;
+        totalAllocatedBytes = 0;
+        totalParallelWorkNs = 0;
+        totalParallelDurationNs = 0;
+    }
+    
+    /** @return the bytes allocated by the last measured packet, or -1 if allocation counting is not supported by the JVM */
+    public long getAllocatedBytes(){
+        return allocatedBytes;
+    }
+    
+    /** @return the bytes allocated since the last resetStatistics; zero for a filter that is allocation-free in steady state */
+    public long getTotalAllocatedBytes(){
+        return totalAllocatedBytes;
+    }
+    
+    /** @return the average bytes allocated per packet since the last resetStatistics */
+    public float avgAllocatedBytesPerPacket(){
+        return nSamples==0? 0: (float)totalAllocatedBytes/nSamples;
+    }
+    
+    /** @return the number of events processed since the last resetStatistics */
+    public long getTotalEvents(){
+        return totalEvents;
+    }
+    
+    /** @return the processing time in ns since the last resetStatistics */
+    public long getTotalDurationNs(){
+        return totalDurationNs;
+    }
+    
+    /** @return the overall throughput in events per second since the last resetStatistics */
+    public float totalEps(){
+        return totalDurationNs==0? 0: totalEvents/(SPNS*totalDurationNs);
     }
     
 //    public float meanEps(){
@@ -98,7 +185,7 @@ public class EventProcessingPerformanceMeter {
 //    }
     
     public String toString(){
-        String s=String.format("%s: %9d events, start %16d ns, duration %8.3f ms, %8.2g eps, %8.1f ns/event (Average %8.1f +/- %-6.1f ns/event, N=%d samples), ", 
+        String s=String.format("%s: %9d events, start %16d ns, duration %8.3f ms, %8.2g eps, %8.1f ns/event (Average %8.1f +/- %-6.1f ns/event, N=%d samples), %d bytes allocated (Average %.0f bytes/packet), ", 
                 filterClassName,
                 size,
                 startTimeNs,
@@ -107,8 +194,13 @@ public class EventProcessingPerformanceMeter {
                 NSPS*sPerEvent(),
                 NSPS*avgSPerEvent(),
                 NSPS*stdErrSecPerEvent(),
-                nSamples
+                nSamples,
+                allocatedBytes,
+                avgAllocatedBytesPerPacket()
                 );
+        if(totalParallelDurationNs>0){
+            s+=String.format("parallel speedup %.2f (Average %.2f), ", parallelSpeedup(), avgParallelSpeedup());
+        }
         return s;
     }
     
@@ -19,7 +19,9 @@ import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
 
 import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.event.ColumnarEventPacket;
 import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.event.EventPacketPool;
 import net.sf.jaer.util.ClassChooserDialog;
 
 /**
@@ -68,6 +70,7 @@ public class FilterChain extends LinkedList<EventFilter2D> {
 
     private PropertyChangeSupport support = new PropertyChangeSupport(this);
     private boolean measurePerformanceEnabled = false;
+    private boolean printPerformanceEnabled = true;
     volatile private boolean resetPerformanceMeasurementStatistics = false; // flag to reset everyone on this cycle
     static final Logger log = Logger.getLogger("FilterChain");
     AEChip chip;
@@ -82,9 +85,23 @@ public class FilterChain extends LinkedList<EventFilter2D> {
     private EventFilter enclosingFilter = null;
     private boolean timeLimitEnabled;
     private int timeLimitMs;
+    /** Set while packets are sized by an AdaptivePacketScheduler, which defers events instead of letting the time limiter skip them */
+    private volatile boolean timeLimitSuspended = false;
 
     private boolean timedOut = false;
 
+    /**
+     * Pool of packets shared by the filters of the chip, see
+     * {@link #getPacketPool()}
+     */
+    private final EventPacketPool packetPool = new EventPacketPool();
+
+    /**
+     * Filters TileLocalFilter's in parallel tiles if tileParallelEnabled
+     */
+    private boolean tileParallelEnabled = false;
+    private TileParallelExecutor tileParallelExecutor = null;
+
     /**
      * The updateIntervalMs is used by EventFilter2D's to ensure maximum update
      * intervals while iterating over packets of events. Subclasses of
@@ -134,6 +151,7 @@ public class FilterChain extends LinkedList<EventFilter2D> {
         timeLimitEnabled = chip.getPrefs().getBoolean("FilterChain.timeLimitEnabled", false);
         timeLimitMs = chip.getPrefs().getInt("FilterChain.timeLimitMs", 10);
         updateIntervalMs = chip.getPrefs().getFloat("FilterChain.updateIntervalMs", 10);
+        tileParallelEnabled = chip.getPrefs().getBoolean("FilterChain.tileParallelEnabled", false);
 
         setTimeLimitEnabled(timeLimitEnabled);
         setTimeLimitMs(timeLimitMs);
@@ -166,6 +184,9 @@ public class FilterChain extends LinkedList<EventFilter2D> {
         for (EventFilter f : this) {
             f.cleanup();
         }
+        if (tileParallelExecutor != null) {
+            tileParallelExecutor.shutdown();
+        }
     }
 
     /**
@@ -182,9 +203,12 @@ public class FilterChain extends LinkedList<EventFilter2D> {
         if (!filteringEnabled || size() == 0) {
             return in;
         }
+        if (this == chip.getFilterChain()) { // only the chip's own chain, enclosed chains run inside its pass
+            packetPool.releaseTemporaries();
+        }
         EventPacket out;
-        if (timeLimitEnabled) {
-            if (chip.getAeViewer().isPaused()) {
+        if (timeLimitEnabled && !timeLimitSuspended) {
+            if (chip.getAeViewer() != null && chip.getAeViewer().isPaused()) {
                 in.setTimeLimitEnabled(false);
             } else {
                 in.setTimeLimitEnabled(true);
@@ -212,17 +236,140 @@ public class FilterChain extends LinkedList<EventFilter2D> {
                 }
                 f.perf.start(in);
             }
-            out = f.filterPacket(in);
+            long parallelWorkNs = 0;
+            if (tileParallelEnabled && f instanceof TileLocalFilter) {
+                out = getTileParallelExecutor().filterPacket(f, in);
+                parallelWorkNs = tileParallelExecutor.getLastWorkNs();
+            } else {
+                out = f.filterPacket(in);
+            }
             timedOut = in.isTimedOut();
             if (measurePerformanceEnabled && f.perf != null) {
                 f.perf.stop();
-                System.out.println(f.perf);
+                f.perf.addParallelWork(parallelWorkNs);
+                if (printPerformanceEnabled) {
+                    System.out.println(f.perf);
+                }
             }
             in = out;
         }
         return in;
     }
 
+    /**
+     * Returns the pool of packets owned by this chain. The pool of the chip's
+     * FilterChain is used by {@link EventFilter2D} for output packets so that
+     * packets are not constructed, and their events are not constructed by
+     * reflection, when the type of packet passed along the chain changes.
+     * Temporary packets obtained from it with
+     * {@link EventPacketPool#obtainTemporary(net.sf.jaer.event.EventPacket)}
+     * are released at the start of the next
+     * {@link #filterPacket(net.sf.jaer.event.EventPacket)}.
+     *
+     * @return the pool
+     */
+    public EventPacketPool getPacketPool() {
+        return packetPool;
+    }
+
+    /**
+     * Returns the executor that filters TileLocalFilter's in parallel tiles
+     * when tileParallelEnabled; it can be used to set the number of threads
+     * and the tile size.
+     *
+     * @return the executor
+     */
+    synchronized public TileParallelExecutor getTileParallelExecutor() {
+        if (tileParallelExecutor == null) {
+            tileParallelExecutor = new TileParallelExecutor(chip);
+        }
+        return tileParallelExecutor;
+    }
+
+    /**
+     * @return true if TileLocalFilter's are filtered in parallel tiles
+     */
+    public boolean isTileParallelEnabled() {
+        return tileParallelEnabled;
+    }
+
+    /**
+     * Sets whether filters that implement {@link TileLocalFilter} filter
+     * packets in spatial tiles that are processed in parallel threads. Other
+     * filters always run serially. The result is the same as with serial
+     * filtering.
+     *
+     * @param tileParallelEnabled true to enable parallel filtering
+     * @see TileParallelExecutor
+     */
+    public void setTileParallelEnabled(boolean tileParallelEnabled) {
+        this.tileParallelEnabled = tileParallelEnabled;
+        chip.getPrefs().putBoolean("FilterChain.tileParallelEnabled", tileParallelEnabled);
+        if (!tileParallelEnabled && (tileParallelExecutor != null)) {
+            tileParallelExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Reused packet that columnar packets are copied to for filters that do
+     * not implement ColumnarEventFilter
+     */
+    private EventPacket<?> columnarAdapterPacket = null;
+
+    /**
+     * Applies all enabled filters in the chain to a columnar packet. Filters
+     * that implement {@link ColumnarEventFilter} operate directly on the
+     * columns. For other filters the columns are copied to a reused
+     * EventPacket holding the chip's event class, the filter is applied, and
+     * the result is copied back to the columns.
+     *
+     * @param in the input packet of events
+     * @return the resulting output.
+     * @see #filterPacket(net.sf.jaer.event.EventPacket)
+     */
+    synchronized public ColumnarEventPacket filterPacket(ColumnarEventPacket in) {
+        if (!filteringEnabled || size() == 0 || in == null) {
+            return in;
+        }
+        if (timeLimitEnabled && !timeLimitSuspended && (chip.getAeViewer() == null || !chip.getAeViewer().isPaused())) {
+            in.setTimeLimitEnabled(true);
+            in.restartTimeLimiter(timeLimitMs);
+        } else {
+            in.setTimeLimitEnabled(false);
+        }
+        for (EventFilter2D f : this) {
+            if (!f.isFilterEnabled()) {
+                continue;
+            }
+            if (measurePerformanceEnabled) {
+                if (f.perf == null) {
+                    f.perf = new EventProcessingPerformanceMeter(f);
+                }
+                f.perf.start(in.getSize());
+            }
+            if (f instanceof ColumnarEventFilter) {
+                in = ((ColumnarEventFilter) f).filterColumns(in);
+                timedOut = in.isTimedOut();
+            } else {
+                if (columnarAdapterPacket == null || columnarAdapterPacket.getEventClass() != chip.getEventClass()) {
+                    packetPool.release(columnarAdapterPacket);
+                    columnarAdapterPacket = packetPool.obtain(chip.getEventClass());
+                }
+                in.copyToEventPacket(columnarAdapterPacket);
+                columnarAdapterPacket.setTimeLimitEnabled(false);
+                EventPacket<?> out = f.filterPacket(columnarAdapterPacket);
+                in.copyFromEventPacket(out);
+            }
+            if (measurePerformanceEnabled && f.perf != null) {
+                f.perf.stop();
+                if (printPerformanceEnabled) {
+                    System.out.println(f.perf);
+                }
+            }
+        }
+        return in;
+    }
+
     /**
      * @param filterClass the class to search for
      * @return the first filter with class filterClass, or null if there is none
@@ -284,6 +431,21 @@ public class FilterChain extends LinkedList<EventFilter2D> {
         return timeLimitMs;
     }
 
+    public boolean isTimeLimitSuspended() {
+        return timeLimitSuspended;
+    }
+
+    /**
+     * Suspends the time limit without changing the timeLimitEnabled
+     * preference, e.g. while an {@link AdaptivePacketScheduler} sizes the
+     * packets so that they are processed within the latency budget.
+     *
+     * @param timeLimitSuspended true to process all events of packets
+     */
+    public void setTimeLimitSuspended(boolean timeLimitSuspended) {
+        this.timeLimitSuspended = timeLimitSuspended;
+    }
+
     /**
      * Set the time limit in ms for packet processing if time limiting is
      * enabled.
@@ -340,6 +502,22 @@ public class FilterChain extends LinkedList<EventFilter2D> {
         this.measurePerformanceEnabled = measurePerformanceEnabled;
     }
 
+    public boolean isPrintPerformanceEnabled() {
+        return printPerformanceEnabled;
+    }
+
+    /**
+     * Sets whether each filter's performance is printed to System.out after
+     * each packet when performance is measured. Batch processing turns this
+     * off and reads the accumulated statistics from each filter's
+     * EventProcessingPerformanceMeter instead.
+     *
+     * @param printPerformanceEnabled true to print (default)
+     */
+    public void setPrintPerformanceEnabled(boolean printPerformanceEnabled) {
+        this.printPerformanceEnabled = printPerformanceEnabled;
+    }
+
     /**
      * disables all filters individually, which will turn off each of them.
      *
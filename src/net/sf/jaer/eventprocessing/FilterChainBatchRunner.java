@@ -0,0 +1,368 @@
+/*
+ * FilterChainBatchRunner.java
+ *
+ * Runs a FilterChain over recorded data files from the command line.
+ */
+package net.sf.jaer.eventprocessing;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.prefs.Preferences;
+
+import ml.options.Options;
+import ml.options.Options.Multiplicity;
+import ml.options.Options.Separator;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.chip.EventExtractor2D;
+import net.sf.jaer.event.BasicEvent;
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.eventio.AEDataFile;
+import net.sf.jaer.eventio.AEFileInputStream;
+import net.sf.jaer.eventio.AEFileOutputStream;
+import net.sf.jaer.graphics.AEViewer;
+
+/**
+ * Runs the FilterChain of an AEChip over one or many recorded data files
+ * without AEViewer, as fast as the filters allow rather than at the display
+ * frame rate. Each file is read with AEFileInputStream, extracted with the
+ * chip's EventExtractor2D, filtered with FilterChain.filterPacket and the
+ * filtered events are written with AEFileOutputStream. Files are processed in
+ * parallel, each with its own chip and filter chain instance, and per-filter
+ * throughput from EventProcessingPerformanceMeter is printed for each file.
+ * <p>
+ * The filters and their settings are the ones stored in the Preferences for
+ * the chip class, optionally after importing a filter settings XML file saved
+ * from the FilterFrame. Note that importing the file overwrites the stored
+ * settings just like loading it in the FilterFrame does.
+ * <p>
+ * Chip classes still construct their ChipCanvas, so the JOGL libraries must be
+ * on the library path and on a machine without a display an X server such as
+ * Xvfb is needed.
+ */
+public class FilterChainBatchRunner {
+
+    static final Logger log = Logger.getLogger("FilterChainBatchRunner");
+    public static final int DEFAULT_PACKET_EVENTS = 100000;
+    public static final String OUTPUT_FILE_SUFFIX = "-filtered" + AEDataFile.DATA_FILE_EXTENSION;
+    public static final String USAGE = "java net.sf.jaer.eventprocessing.FilterChainBatchRunner [-aechip=aechipclassname (fully qualified class name, e.g. eu.seebetter.ini.chips.davis.DAVIS240C)] "
+            + "[-filtersettings=filterSettings.xml (settings saved from the FilterFrame, imported into the Preferences before starting)] "
+            + "[-outdir=folder (default is the folder of each input file)] "
+            + "[-threads=n (default is the number of processors)] "
+            + "[-packetevents=n (default " + DEFAULT_PACKET_EVENTS + ")] "
+            + "[-output=true|false (write filtered files, default true)] "
+            + "input.aedat|folder [input2.aedat|folder2 ...]\n"
+            + "Folders are scanned (not recursively) for files ending with " + AEDataFile.DATA_FILE_EXTENSION + " and the output files are named <input>" + OUTPUT_FILE_SUFFIX;
+    /**
+     * Chip and filter constructors are not written to be run concurrently
+     * (they share Preferences nodes and static state), so they are serialized
+     * on this lock.
+     */
+    private static final Object CONSTRUCTION_LOCK = new Object();
+
+    private final String chipClassName;
+    private final File outputFolder;
+    private final int packetEvents;
+    private final boolean writeOutput;
+
+    /**
+     * Makes a new runner.
+     *
+     * @param chipClassName the fully qualified AEChip class name
+     * @param outputFolder the folder to write filtered files to, or null to
+     * write them next to the input files
+     * @param packetEvents the number of events read per packet
+     * @param writeOutput true to write filtered files
+     */
+    public FilterChainBatchRunner(String chipClassName, File outputFolder, int packetEvents, boolean writeOutput) {
+        this.chipClassName = chipClassName;
+        this.outputFolder = outputFolder;
+        this.packetEvents = packetEvents;
+        this.writeOutput = writeOutput;
+    }
+
+    /**
+     * The result of processing one file.
+     */
+    public static class Result {
+
+        public File inputFile, outputFile;
+        public long eventsIn = 0, eventsOut = 0, packets = 0, durationNs = 0;
+        /**
+         * Filter class simple name to its performance meter, in chain order
+         */
+        public Map<String, EventProcessingPerformanceMeter> filterPerformance = new LinkedHashMap<String, EventProcessingPerformanceMeter>();
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format("%s: %d events in, %d events out, %d packets, %.3f s, %.3g events/s",
+                    inputFile.getName(), eventsIn, eventsOut, packets, durationNs * 1e-9, eventsIn / (durationNs * 1e-9)));
+            for (Map.Entry<String, EventProcessingPerformanceMeter> e : filterPerformance.entrySet()) {
+                EventProcessingPerformanceMeter m = e.getValue();
+                sb.append(String.format("%n    %-40s %12d events %10.3g events/s %8.1f ns/event %10.0f bytes/packet", e.getKey(), m.getTotalEvents(), m.totalEps(),
+                        m.getTotalEvents() == 0 ? 0 : (double) m.getTotalDurationNs() / m.getTotalEvents(), m.avgAllocatedBytesPerPacket()));
+                if (m.avgParallelSpeedup() > 0) {
+                    sb.append(String.format(" parallel speedup %.2f", m.avgParallelSpeedup()));
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Processes one file on the calling thread with a new chip and filter
+     * chain instance.
+     *
+     * @param inputFile the recorded data file
+     * @return the statistics
+     * @throws IOException on error reading or writing
+     */
+    public Result process(File inputFile) throws IOException {
+        Result result = new Result();
+        result.inputFile = inputFile;
+        AEChip chip = constructChip();
+        FilterChain filterChain = chip.getFilterChain();
+        filterChain.setTimeLimitSuspended(true); // transient, unlike setTimeLimitEnabled, which is stored in the preferences
+        filterChain.setMeasurePerformanceEnabled(true);
+        filterChain.setPrintPerformanceEnabled(false);
+        AEFileInputStream in;
+        synchronized (CONSTRUCTION_LOCK) { // the constructor sets static state of AEFileInputStream and may set the extractor of the chip
+            in = new AEFileInputStream(inputFile, chip, false); // read once from start to end, don't write index sidecars next to the inputs
+        }
+        EventExtractor2D<?> extractor = chip.getEventExtractor();
+        AEFileOutputStream out = null;
+        try {
+            in.setNonMonotonicTimeExceptionsChecked(false); // to avoid wrap and big wrap exceptions in long recordings
+            if (writeOutput) {
+                result.outputFile = outputFileFor(inputFile);
+                out = new AEFileOutputStream(new FileOutputStream(result.outputFile), chip, "2.0");
+            }
+            final long startNs = System.nanoTime(), end = in.getMarkOutPosition();
+            while (in.position() < end) { // read exactly up to the end so that the stream never rewinds or returns null events
+                AEPacketRaw raw = in.readPacketByNumber((int) Math.min(packetEvents, end - in.position()));
+                if (raw.getNumEvents() == 0) {
+                    break;
+                }
+                result.eventsIn += raw.getNumEvents();
+                result.packets++;
+                EventPacket<?> packet = extractor.extractPacket(raw);
+                packet = filterChain.filterPacket(packet);
+                if (packet == null) {
+                    continue;
+                }
+                result.eventsOut += packet.getSizeNotFilteredOut();
+                if (out != null) {
+                    out.writePacket(reconstructRawPacket(extractor, packet));
+                }
+            }
+            result.durationNs = System.nanoTime() - startNs;
+        } finally {
+            in.close();
+            if (out != null) {
+                out.close();
+            }
+            for (EventFilter2D f : filterChain) {
+                if (f.perf != null) {
+                    result.filterPerformance.put(f.getClass().getSimpleName(), f.perf);
+                }
+            }
+            synchronized (CONSTRUCTION_LOCK) {
+                filterChain.cleanup();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Processes files in parallel.
+     *
+     * @param files the files
+     * @param numThreads the number of files processed at once
+     * @return the number of files that failed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int process(List<File> files, int numThreads) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<Result>> futures = new ArrayList<Future<Result>>();
+        for (final File f : files) {
+            futures.add(executor.submit(new Callable<Result>() {
+                @Override
+                public Result call() throws Exception {
+                    return process(f);
+                }
+            }));
+        }
+        executor.shutdown();
+        int numFailed = 0;
+        long totalEvents = 0;
+        final long startNs = System.nanoTime();
+        for (int i = 0; i < files.size(); i++) {
+            try {
+                Result r = futures.get(i).get();
+                totalEvents += r.eventsIn;
+                System.out.println(r);
+            } catch (ExecutionException e) {
+                numFailed++;
+                System.err.println(files.get(i) + " failed: " + e.getCause());
+                e.getCause().printStackTrace();
+            }
+        }
+        double s = (System.nanoTime() - startNs) * 1e-9;
+        System.out.println(String.format("processed %d files (%d failed) with %d events in %.1f s, %.3g events/s on %d threads",
+                files.size(), numFailed, totalEvents, s, totalEvents / s, numThreads));
+        return numFailed;
+    }
+
+    private AEChip constructChip() throws IOException {
+        synchronized (CONSTRUCTION_LOCK) {
+            try {
+                Class<? extends AEChip> chipClass = Class.forName(chipClassName).asSubclass(AEChip.class);
+                Constructor<? extends AEChip> constructor = chipClass.getConstructor();
+                AEChip chip = constructor.newInstance((java.lang.Object[]) null);
+                for (EventFilter2D f : chip.getFilterChain()) {
+                    f.setPreferredEnabledState();
+                }
+                return chip;
+            } catch (Exception e) {
+                throw new IOException("could not construct AEChip " + chipClassName + ": " + e.toString(), e);
+            }
+        }
+    }
+
+    /**
+     * Reconstructs the raw events of a filtered packet, whose event type is
+     * only known at run time.
+     */
+    @SuppressWarnings("unchecked")
+    private static <E extends BasicEvent> AEPacketRaw reconstructRawPacket(EventExtractor2D<E> extractor, EventPacket<?> packet) {
+        return extractor.reconstructRawPacket((EventPacket<E>) packet);
+    }
+
+    private File outputFileFor(File inputFile) {
+        String name = inputFile.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        File folder = outputFolder != null ? outputFolder : inputFile.getAbsoluteFile().getParentFile();
+        return new File(folder, name + OUTPUT_FILE_SUFFIX);
+    }
+
+    /**
+     * @param paths files and folders
+     * @return the files, with folders replaced by the data files in them
+     */
+    static List<File> listInputFiles(List<String> paths) {
+        List<File> files = new ArrayList<File>();
+        for (String p : paths) {
+            File f = new File(p);
+            if (f.isDirectory()) {
+                File[] inFolder = f.listFiles(new FileFilter() {
+                    @Override
+                    public boolean accept(File pathname) {
+                        return pathname.isFile() && pathname.getName().endsWith(AEDataFile.DATA_FILE_EXTENSION)
+                                && !pathname.getName().endsWith(OUTPUT_FILE_SUFFIX);
+                    }
+                });
+                if (inFolder != null) {
+                    java.util.Arrays.sort(inFolder);
+                    for (File g : inFolder) {
+                        files.add(g);
+                    }
+                }
+            } else if (f.isFile()) {
+                files.add(f);
+            } else {
+                System.err.println("Warning: " + p + " does not exist, skipping it");
+            }
+        }
+        return files;
+    }
+
+    public static void main(String[] args) {
+        Options opt = new Options(args, 1, Integer.MAX_VALUE);
+        opt.getSet().addOption("aechip", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("filtersettings", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("outdir", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("threads", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("packetevents", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("output", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        if (!opt.check()) {
+            System.err.println(opt.getCheckErrors());
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+
+        String chipClassName = opt.getSet().isSet("aechip") ? opt.getSet().getOption("aechip").getResultValue(0)
+                : AEViewer.prefs.get("AEViewer.aeChipClassName", AEViewer.DEFAULT_CHIP_CLASS);
+        File outputFolder = null;
+        if (opt.getSet().isSet("outdir")) {
+            outputFolder = new File(opt.getSet().getOption("outdir").getResultValue(0));
+            if (!outputFolder.isDirectory() && !outputFolder.mkdirs()) {
+                System.err.println("Could not create output folder " + outputFolder);
+                System.exit(1);
+            }
+        }
+        int numThreads = Runtime.getRuntime().availableProcessors(), packetEvents = DEFAULT_PACKET_EVENTS;
+        try {
+            if (opt.getSet().isSet("threads")) {
+                numThreads = Math.max(1, Integer.parseInt(opt.getSet().getOption("threads").getResultValue(0)));
+            }
+            if (opt.getSet().isSet("packetevents")) {
+                packetEvents = Math.max(1, Integer.parseInt(opt.getSet().getOption("packetevents").getResultValue(0)));
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Bad number argument: " + e.toString());
+            System.exit(1);
+        }
+        boolean writeOutput = !opt.getSet().isSet("output") || Boolean.parseBoolean(opt.getSet().getOption("output").getResultValue(0));
+
+        if (opt.getSet().isSet("filtersettings")) {
+            File settings = new File(opt.getSet().getOption("filtersettings").getResultValue(0));
+            try {
+                InputStream is = new FileInputStream(settings);
+                try {
+                    Preferences.importPreferences(is);
+                } finally {
+                    is.close();
+                }
+                System.out.println("imported filter settings from " + settings);
+            } catch (Exception e) {
+                System.err.println("Could not import filter settings from " + settings + ": " + e.toString());
+                System.exit(1);
+            }
+        }
+
+        List<File> files = listInputFiles(opt.getSet().getData());
+        if (files.isEmpty()) {
+            System.err.println("no input files");
+            System.exit(1);
+        }
+        numThreads = Math.min(numThreads, files.size());
+        System.out.println("processing " + files.size() + " files with chip " + chipClassName + " on " + numThreads + " threads");
+        FilterChainBatchRunner runner = new FilterChainBatchRunner(chipClassName, outputFolder, packetEvents, writeOutput);
+        int numFailed = 0;
+        try {
+            numFailed = runner.process(files, numThreads);
+        } catch (InterruptedException e) {
+            System.err.println("interrupted");
+            System.exit(1);
+        }
+        System.exit(numFailed == 0 ? 0 : 2);
+    }
+}
@@ -212,6 +212,7 @@ public class FilterFrame<PanelType extends FilterPanel> extends javax.swing.JFra
         jSeparator3 = new javax.swing.JSeparator();
         limitTimeCheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
         setTimeLimitMenuItem = new javax.swing.JMenuItem();
+        tileParallelCheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
         jSeparator4 = new javax.swing.JSeparator();
         restoreFilterEnabledStateCheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
         helpMenu = new javax.swing.JMenu();
@@ -454,6 +455,16 @@ public class FilterFrame<PanelType extends FilterPanel> extends javax.swing.JFra
             }
         });
         modeMenu.add(setTimeLimitMenuItem);
+
+        tileParallelCheckBoxMenuItem.setSelected(filterChain.isTileParallelEnabled());
+        tileParallelCheckBoxMenuItem.setText("Filter tiles in parallel");
+        tileParallelCheckBoxMenuItem.setToolTipText("Filters that only use local neighborhoods (e.g. BackgroundActivityFilter) process spatial tiles of each packet in parallel threads");
+        tileParallelCheckBoxMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                tileParallelCheckBoxMenuItemActionPerformed(evt);
+            }
+        });
+        modeMenu.add(tileParallelCheckBoxMenuItem);
         modeMenu.add(jSeparator4);
 
         restoreFilterEnabledStateCheckBoxMenuItem.setText("Restore filter enabled state");
@@ -536,6 +547,10 @@ public class FilterFrame<PanelType extends FilterPanel> extends javax.swing.JFra
             filterChain.setTimeLimitEnabled(limitTimeCheckBoxMenuItem.isSelected());
 	}//GEN-LAST:event_limitTimeCheckBoxMenuItemActionPerformed
 
+	private void tileParallelCheckBoxMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_tileParallelCheckBoxMenuItemActionPerformed
+            filterChain.setTileParallelEnabled(tileParallelCheckBoxMenuItem.isSelected());
+	}//GEN-LAST:event_tileParallelCheckBoxMenuItemActionPerformed
+
 	private void customizeMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_customizeMenuItemActionPerformed
             filterChain.customize();
 	}//GEN-LAST:event_customizeMenuItemActionPerformed
@@ -971,6 +986,7 @@ public class FilterFrame<PanelType extends FilterPanel> extends javax.swing.JFra
     private javax.swing.JMenuItem saveAsMenuItem;
     private javax.swing.JScrollPane scrollPane;
     private javax.swing.JMenuItem setTimeLimitMenuItem;
+    private javax.swing.JCheckBoxMenuItem tileParallelCheckBoxMenuItem;
     private javax.swing.JToolBar toolBar1;
     private javax.swing.JTextField updateIntervalField;
     private javax.swing.JLabel updateIntervalLabel;
@@ -4,10 +4,10 @@
  */
 package net.sf.jaer.eventprocessing;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.LinkedList;
 import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.logging.Level;
@@ -17,6 +17,7 @@ import net.sf.jaer.chip.AEChip;
 import net.sf.jaer.event.BasicEvent;
 import net.sf.jaer.event.EventPacket;
 import net.sf.jaer.event.OutputEventIterator;
+import net.sf.jaer.eventio.MultiFilePlayer;
 
 /**
  * This is an extension of EventFilter2D that can deal with multiple streams of 
@@ -27,6 +28,10 @@ public abstract class MultiSourceProcessor extends EventFilter2D {
     
     ArrayList<Queue<BasicEvent>> buffers=new ArrayList();   // Stores events to ensure monotonicity between calls.
     
+    ArrayList<ArrayDeque<BasicEvent>> freeEvents=new ArrayList<ArrayDeque<BasicEvent>>();   // Recycled event objects for each source, so that buffering does not construct events by reflection.
+    
+    private EventPacket<?> mergedPacket=null; // the packet last written by mergePackets, holding buffered events
+    
     PriorityQueue<BasicEvent> pq;
     
     private int maxWaitTime=100000; // Maximum time to wait (in microseconds) for events from one source before continuing
@@ -56,7 +61,9 @@ public abstract class MultiSourceProcessor extends EventFilter2D {
         pq=new PriorityQueue(nInputs,new EventComp());
         
         for (int i=0; i<nInputs; i++)
-            buffers.add(new LinkedList());
+        {   buffers.add(new ArrayDeque<BasicEvent>());
+            freeEvents.add(new ArrayDeque<BasicEvent>());
+        }
         
         queueAlive=new boolean[buffers.size()];
         bufferStarts = new int[buffers.size()];
@@ -78,6 +85,31 @@ public abstract class MultiSourceProcessor extends EventFilter2D {
         return filterPacket(mergePackets(packets));
     }
     
+    private boolean warnedSourceMismatch=false;
+    
+    /** Filters a batch of recordings played by a MultiFilePlayer.  The batch is
+     * already merged in time order on a common timeline, so it is extracted in
+     * one go and the events get their source numbers directly instead of going 
+     * through the buffers of mergePackets.
+     * 
+     * @param batch the batch
+     * @return the filtered packet
+     */
+    public EventPacket<?> filterPackets(MultiFilePlayer.Batch batch)
+    {   EventPacket<?> in=chip.getEventExtractor().extractPacket(batch.getMergedPacket());
+        if (in.getSize()==batch.getNumEvents())
+        {   byte[] sources=batch.getMergedSources();
+            for (int k=0; k<in.getSize(); k++)
+                in.getEvent(k).source=sources[k];
+        }
+        else if (!warnedSourceMismatch)
+        {   warnedSourceMismatch=true;
+            log.warning("the extractor made "+in.getSize()+" events from "+batch.getNumEvents()+" raw events, cannot tell their sources");
+        }
+        lastEventTime=in.isEmpty()? lastEventTime: in.getLastTimestamp();
+        return filterPacket(in);
+    }
+    
     
 //    public void addDisplayWriter(DisplayWriter disp)
 //    {
@@ -199,15 +231,12 @@ public abstract class MultiSourceProcessor extends EventFilter2D {
                     
                     bufferPrevTimes[i] = ev.timestamp;
                     
-                    BasicEvent evo = ev.getClass().newInstance(); // This seems WRONG! Alternative would be adding a copy method to all events
+                    BasicEvent evo = freeEvents.get(i).pollLast(); // reuse an event that was output on an earlier call
+                    if (evo == null || evo.getClass() != ev.getClass())
+                        evo = ev.getClass().newInstance();
                     evo.copyFrom(ev);
                     evo.source = (byte) i;
                     
-                    LinkedList<BasicEvent> testBuf=(LinkedList)buffers.get(i);
-                    
-                    //if (!testBuf.isEmpty() && testBuf.getLast().timestamp>evo.timestamp)
-                    //     System.out.println("NonMonotonicTimeStamp!");
-                    
                     buffers.get(i).add(evo);
                 }
 
@@ -257,6 +286,7 @@ public abstract class MultiSourceProcessor extends EventFilter2D {
          */
         if (out==null)// Why does this happen?
             out=new EventPacket();
+        recycleOutputEvents();
         out.clear();
         OutputEventIterator<BasicEvent> outItr=out.outputIterator();
         
@@ -299,15 +329,40 @@ public abstract class MultiSourceProcessor extends EventFilter2D {
     }
     
     
+    /** The events in the output packet are the buffered events themselves, 
+     * so when the packet is reused they are returned to the free lists of their
+     * sources to be refilled by later calls. Their slots in the packet are 
+     * cleared, so that the packet never refers to an event that is refilled; 
+     * mergePackets only writes the packet with writeToNextOutput, which sets 
+     * the slots again.
+     */
+    private void recycleOutputEvents()
+    {   if (out!=mergedPacket)
+        {   mergedPacket=out; // out was replaced, its events are not ours
+            return;
+        }
+        for (int k=0; k<out.getSize(); k++)
+        {   BasicEvent ev=out.getEvent(k);
+            if (ev!=null && ev.source>=0 && ev.source<freeEvents.size())
+            {   freeEvents.get(ev.source).addLast(ev);
+                out.elementData[k]=null;
+            }
+        }
+    }
+    
     public void resynchronize()
     {
         lastEventTime=Integer.MIN_VALUE;
         for (int i=0;i<buffers.size();i++)
         {   
             bufferStarts[i] = Integer.MIN_VALUE;
+            freeEvents.get(i).addAll(buffers.get(i));
             buffers.get(i).clear();
             queueAlive[i]=false;
         }
+        for (BasicEvent ev:pq)
+            if (ev.source>=0 && ev.source<freeEvents.size())
+                freeEvents.get(ev.source).addLast(ev);
         pq.clear();
     }
 }
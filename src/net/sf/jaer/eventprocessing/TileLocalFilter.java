@@ -0,0 +1,64 @@
+/*
+ * TileLocalFilter.java
+ *
+ * Filters that can process spatial tiles of a packet in parallel.
+ */
+package net.sf.jaer.eventprocessing;
+
+import net.sf.jaer.event.BasicEvent;
+import net.sf.jaer.event.EventPacket;
+
+/**
+ * Implemented by an EventFilter2D whose processing of an event only depends on
+ * and only changes state near the event's address, and which filters in place
+ * by setting the filteredOut flag of the input events. When
+ * {@link FilterChain#setTileParallelEnabled(boolean)} is enabled, the
+ * FilterChain then uses {@link TileParallelExecutor} to split the packet into
+ * square tiles of the pixel array that are filtered concurrently, instead of
+ * calling {@link EventFilter2D#filterPacket(net.sf.jaer.event.EventPacket)}.
+ * <p>
+ * Each tile gets the events inside it plus the events of the neighboring
+ * tiles that are within the halo radius of its border, in packet (i.e.
+ * timestamp) order. An implementation must
+ * <ul>
+ * <li>only set the filteredOut flag of events inside the tile, and
+ * <li>only read and write state belonging to pixels inside the tile.
+ * </ul>
+ * The halo events let it update its state from events just outside the tile
+ * the same way as the serial filterPacket does, so the result is identical to
+ * filtering the packet serially. Filters that cannot satisfy this for their
+ * present settings return -1 from {@link #beginTileFiltering} and are then
+ * run serially.
+ */
+public interface TileLocalFilter {
+
+    /**
+     * Prepares to filter the packet in tiles, e.g. by allocating maps. Called
+     * with the filter's lock held, before any
+     * {@link #filterTile(BasicEvent[], int, int, int, int, int)}.
+     *
+     * @param in the packet to be filtered
+     * @param tileSize the tiles are this many pixels square, a power of two,
+     * and start at multiples of tileSize, so that blocks of subsampled pixels
+     * that are not larger than the tiles are never split by tile borders
+     * @return the halo radius in pixels, i.e. the largest distance at which
+     * an event can affect the state of another pixel, or -1 to filter this
+     * packet serially with filterPacket
+     */
+    int beginTileFiltering(EventPacket<?> in, int tileSize);
+
+    /**
+     * Filters the events of one tile. Called concurrently for different tiles
+     * from threads of a ForkJoinPool. The tile bounds of tiles at the border
+     * of the pixel array extend to infinity so that events with out of range
+     * addresses are owned by some tile.
+     *
+     * @param events the events of the tile and of its halo, in packet order
+     * @param numEvents the number of events in the array
+     * @param x0 the first x address of the tile
+     * @param y0 the first y address of the tile
+     * @param x1 the x address after the last one of the tile
+     * @param y1 the y address after the last one of the tile
+     */
+    void filterTile(BasicEvent[] events, int numEvents, int x0, int y0, int x1, int y1);
+}
@@ -0,0 +1,282 @@
+/*
+ * TileParallelExecutor.java
+ *
+ * Filters spatial tiles of a packet in parallel.
+ */
+package net.sf.jaer.eventprocessing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Logger;
+
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.event.BasicEvent;
+import net.sf.jaer.event.EventPacket;
+
+/**
+ * Runs a {@link TileLocalFilter} on a packet by splitting the pixel array into
+ * square tiles of 2^tileShift pixels and filtering the tiles concurrently on a
+ * ForkJoinPool. The packet is first partitioned serially by iterating over it
+ * with its input iterator, which assigns each event to the tile that contains
+ * it and to the neighboring tiles whose border is within the halo radius.
+ * Since the filter only sets the filteredOut flags of the events, the packet
+ * order of the events is preserved.
+ * <p>
+ * Packets smaller than minPacketSize, and packets for which the filter
+ * declines tiled filtering, are filtered serially by the filter's
+ * filterPacket. The time spent in the tile tasks is recorded so that
+ * {@link EventProcessingPerformanceMeter} can report the parallel speedup.
+ *
+ * @see FilterChain#setTileParallelEnabled(boolean)
+ */
+public class TileParallelExecutor {
+
+    private static final Logger log = Logger.getLogger("TileParallelExecutor");
+
+    private final AEChip chip;
+    private ForkJoinPool pool = null;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int tileShift = 5;
+    private int minPacketSize = 2048;
+
+    private int nx = 0, ny = 0;
+    private TileTask[] tiles = new TileTask[0];
+    private final ArrayList<TileTask> busyTiles = new ArrayList<TileTask>();
+    private final RootTask rootTask = new RootTask();
+    private long lastWorkNs = 0;
+
+    /**
+     * Makes a new executor for packets from this chip. The thread pool is
+     * started on first use.
+     *
+     * @param chip the chip, which sets the size of the pixel array
+     */
+    public TileParallelExecutor(AEChip chip) {
+        this.chip = chip;
+    }
+
+    /**
+     * Filters the packet with the filter, in parallel tiles if possible.
+     *
+     * @param filter an EventFilter2D that implements TileLocalFilter
+     * @param in the input packet
+     * @return the output packet, which is the input packet if it was filtered
+     * in tiles
+     */
+    synchronized public EventPacket<?> filterPacket(EventFilter2D filter, EventPacket<?> in) {
+        lastWorkNs = 0;
+        if (!(filter instanceof TileLocalFilter) || (in.getSize() < minPacketSize) || (parallelism < 2) || (chip.getNumCells() <= 0)) {
+            return filter.filterPacket(in);
+        }
+        synchronized (filter) { // as filterPacket, so that settings cannot change during the parallel pass
+            final TileLocalFilter f = (TileLocalFilter) filter;
+            final int halo = f.beginTileFiltering(in, 1 << tileShift);
+            if ((halo < 0) || ((halo * 2) > (1 << tileShift))) { // an event can only be in the halo of one tile in x and y
+                return filter.filterPacket(in);
+            }
+            partition(in, halo);
+            if (busyTiles.isEmpty()) {
+                return in;
+            }
+            if (pool == null) {
+                pool = new ForkJoinPool(parallelism);
+                log.info("started tile filtering pool with " + parallelism + " threads");
+            }
+            rootTask.filter = f;
+            rootTask.reinitialize();
+            pool.invoke(rootTask);
+            rootTask.filter = null;
+            for (int i = 0; i < busyTiles.size(); i++) {
+                final TileTask t = busyTiles.get(i);
+                lastWorkNs += t.durationNs;
+                t.clear();
+            }
+            busyTiles.clear();
+        }
+        return in;
+    }
+
+    /**
+     * Assigns the events to the tiles.
+     */
+    private void partition(EventPacket<?> in, int halo) {
+        final int size = 1 << tileShift;
+        final int sx = chip.getSizeX(), sy = chip.getSizeY();
+        final int tnx = Math.max(1, (sx + size - 1) >> tileShift), tny = Math.max(1, (sy + size - 1) >> tileShift);
+        if ((tnx != nx) || (tny != ny)) {
+            makeTiles(tnx, tny);
+        }
+        final Iterator<?> itr = in.inputIterator();
+        while (itr.hasNext()) {
+            final BasicEvent e = (BasicEvent) itr.next();
+            if (e == null) {
+                break; // as the filters do, packets with APS samples can hold no events
+            }
+            final int x = e.x, y = e.y;
+            int tx = x >> tileShift, ty = y >> tileShift;
+            final boolean inside = (x >= 0) && (y >= 0) && (tx < nx) && (ty < ny);
+            tx = tx < 0 ? 0 : (tx >= nx ? nx - 1 : tx);
+            ty = ty < 0 ? 0 : (ty >= ny ? ny - 1 : ty);
+            add(tx, ty, e);
+            if ((halo == 0) || !inside) {
+                continue;
+            }
+            final int lx = x & (size - 1), ly = y & (size - 1);
+            final int dx = ((lx < halo) && (tx > 0)) ? -1 : (((size - lx) <= halo) && (tx < (nx - 1)) ? 1 : 0);
+            final int dy = ((ly < halo) && (ty > 0)) ? -1 : (((size - ly) <= halo) && (ty < (ny - 1)) ? 1 : 0);
+            if (dx != 0) {
+                add(tx + dx, ty, e);
+            }
+            if (dy != 0) {
+                add(tx, ty + dy, e);
+                if (dx != 0) {
+                    add(tx + dx, ty + dy, e);
+                }
+            }
+        }
+    }
+
+    private void add(int tx, int ty, BasicEvent e) {
+        final TileTask t = tiles[(ty * nx) + tx];
+        if (t.numEvents == 0) {
+            busyTiles.add(t);
+        } else if (t.numEvents == t.events.length) {
+            t.events = Arrays.copyOf(t.events, t.numEvents * 2);
+        }
+        t.events[t.numEvents++] = e;
+    }
+
+    private void makeTiles(int tnx, int tny) {
+        nx = tnx;
+        ny = tny;
+        tiles = new TileTask[nx * ny];
+        final int size = 1 << tileShift;
+        for (int ty = 0; ty < ny; ty++) {
+            for (int tx = 0; tx < nx; tx++) {
+                // border tiles extend to infinity so that every event has an owner
+                tiles[(ty * nx) + tx] = new TileTask(tx == 0 ? Integer.MIN_VALUE : tx * size, ty == 0 ? Integer.MIN_VALUE : ty * size,
+                        tx == (nx - 1) ? Integer.MAX_VALUE : (tx + 1) * size, ty == (ny - 1) ? Integer.MAX_VALUE : (ty + 1) * size);
+            }
+        }
+    }
+
+    /**
+     * Filters the busy tiles.
+     */
+    private class RootTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        TileLocalFilter filter;
+
+        @Override
+        protected void compute() {
+            for (int i = 0; i < busyTiles.size(); i++) {
+                final TileTask t = busyTiles.get(i);
+                t.filter = filter;
+                t.reinitialize();
+            }
+            invokeAll(busyTiles);
+        }
+    }
+
+    /**
+     * The events of one tile.
+     */
+    private static class TileTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        final int x0, y0, x1, y1;
+        BasicEvent[] events = new BasicEvent[256];
+        int numEvents = 0;
+        TileLocalFilter filter;
+        long durationNs;
+
+        TileTask(int x0, int y0, int x1, int y1) {
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+        }
+
+        @Override
+        protected void compute() {
+            final long start = System.nanoTime();
+            filter.filterTile(events, numEvents, x0, y0, x1, y1);
+            durationNs = System.nanoTime() - start;
+        }
+
+        void clear() {
+            Arrays.fill(events, 0, numEvents, null); // don't hold on to events of old packets
+            numEvents = 0;
+            filter = null;
+        }
+    }
+
+    /**
+     * @return the summed time in ns spent by the tile tasks on the last
+     * packet, or 0 if it was filtered serially
+     */
+    public long getLastWorkNs() {
+        return lastWorkNs;
+    }
+
+    /**
+     * Stops the threads of the pool; they are restarted on the next packet.
+     */
+    synchronized public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads; with fewer than 2 all packets are filtered
+     * serially.
+     *
+     * @param parallelism the number of threads
+     */
+    synchronized public void setParallelism(int parallelism) {
+        if (parallelism != this.parallelism) {
+            shutdown();
+        }
+        this.parallelism = parallelism;
+    }
+
+    public int getTileShift() {
+        return tileShift;
+    }
+
+    /**
+     * Sets the size of the tiles.
+     *
+     * @param tileShift the tiles are 2^tileShift pixels square, 2-10
+     */
+    synchronized public void setTileShift(int tileShift) {
+        this.tileShift = Math.max(2, Math.min(10, tileShift));
+        nx = 0; // remake the tiles
+    }
+
+    public int getMinPacketSize() {
+        return minPacketSize;
+    }
+
+    /**
+     * Sets the packet size below which packets are filtered serially, since
+     * the parallel pass has a fixed overhead.
+     *
+     * @param minPacketSize the size in events
+     */
+    public void setMinPacketSize(int minPacketSize) {
+        this.minPacketSize = minPacketSize;
+    }
+}
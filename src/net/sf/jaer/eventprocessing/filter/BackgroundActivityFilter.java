@@ -3,7 +3,6 @@
  * Created on October 21, 2005, 12:33 PM */
 package net.sf.jaer.eventprocessing.filter;
 
-import java.util.Arrays;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -14,6 +13,7 @@ import net.sf.jaer.chip.Chip2D;
 import net.sf.jaer.event.BasicEvent;
 import net.sf.jaer.event.EventPacket;
 import net.sf.jaer.eventprocessing.EventFilter2D;
+import net.sf.jaer.eventprocessing.TileLocalFilter;
 
 /**
  * An filter that filters slow background activity by only passing
@@ -24,10 +24,10 @@ import net.sf.jaer.eventprocessing.EventFilter2D;
  */
 @Description("Filters out uncorrelated background activity noise")
 @DevelopmentStatus(DevelopmentStatus.Status.Stable)
-public class BackgroundActivityFilter extends EventFilter2D implements Observer {
+public class BackgroundActivityFilter extends EventFilter2D implements Observer, TileLocalFilter {
 
     final int MAX_DT = 100000, MIN_DT = 10;
-    final int DEFAULT_TIMESTAMP = Integer.MIN_VALUE;
+    final int DEFAULT_TIMESTAMP = TimestampMap2D.EMPTY;
 
     /**
      * the time in timestamp ticks (1us at present) that a spike needs to be
@@ -43,11 +43,10 @@ public class BackgroundActivityFilter extends EventFilter2D implements Observer
      * x and y are shifted right by one bit
      */
     private int subsampleBy = getInt("subsampleBy", 0);
+    private boolean compactTimestampsEnabled = getBoolean("compactTimestampsEnabled", false);
 
-    int[][] lastTimesMap;
+    TimestampMap2D lastTimesMap;
     private int ts = 0; // used to reset filter
-    private int sx;
-    private int sy;
 
     public BackgroundActivityFilter(AEChip chip) {
         super(chip);
@@ -56,6 +55,7 @@ public class BackgroundActivityFilter extends EventFilter2D implements Observer
         setPropertyTooltip("dt", "Events with less than this delta time in us to neighbors pass through");
         setPropertyTooltip("subsampleBy", "Past events are spatially subsampled (address right shifted) by this many bits");
         setPropertyTooltip("letFirstEventThrough", "After reset, let's first event through; if false, first event from each pixel is blocked");
+        setPropertyTooltip("compactTimestampsEnabled", "Stores past event times as 16 bit values with 4us resolution to halve the memory of the map; can speed up filtering of large sensors");
     }
 
     /**
@@ -68,9 +68,13 @@ public class BackgroundActivityFilter extends EventFilter2D implements Observer
      */
     @Override
     synchronized public EventPacket filterPacket(EventPacket in) {
-        if (lastTimesMap == null) {
+        if (lastTimesMap == null || lastTimesMap.getSubsampleBy() != subsampleBy || lastTimesMap.isCompact() != compactTimestampsEnabled) {
             allocateMaps(chip);
+            if (lastTimesMap == null) {
+                return in; // chip has no size yet
+            }
         }
+        final TimestampMap2D map = lastTimesMap;
 
         // for each event only keep it if it is within dt of the last time
         // an event happened in the direct neighborhood
@@ -83,39 +87,69 @@ public class BackgroundActivityFilter extends EventFilter2D implements Observer
                 continue;
             }
 
-            short x = (short) (e.x >>> subsampleBy), y = (short) (e.y >>> subsampleBy);
-            if ((x < 0) || (x > sx) || (y < 0) || (y > sy)) {
+            if (!map.contains(e.x, e.y)) {
                 continue;
             }
+            final int index = map.index(e.x, e.y);
 
             ts = e.timestamp;
-            int lastT = lastTimesMap[x][y];
-            int deltaT = (ts - lastT);
-            
-            if (!((deltaT < dt) && (lastT != DEFAULT_TIMESTAMP)) && !(letFirstEventThrough && lastT==DEFAULT_TIMESTAMP)) {
+            if (!passes(map.get(index), ts)) {
                 e.setFilteredOut(true);
             }
 
             // For each event write the event's timestamp into the
-            // lastTimesMap array at neighboring locations lastTimesMap[x][y]=ts;
+            // map at neighboring locations.
             // Don't write to ourselves, we need support from neighbor for
             // next event.
-            // Bounds checking here to avoid throwing expensive exceptions.
-            if (((x > 0) && (x < sx)) && ((y > 0) && (y < sy))) {
-                lastTimesMap[x - 1][y] = ts;
-                lastTimesMap[x + 1][y] = ts;
-                lastTimesMap[x][y - 1] = ts;
-                lastTimesMap[x][y + 1] = ts;
-                lastTimesMap[x - 1][y - 1] = ts;
-                lastTimesMap[x + 1][y + 1] = ts;
-                lastTimesMap[x - 1][y + 1] = ts;
-                lastTimesMap[x + 1][y - 1] = ts;
-            }
+            // The map has a guard border so that no bounds checking is needed here.
+            map.setNeighbors(index, ts);
         }
 
         return in;
     }
 
+    private boolean passes(int lastT, int ts) {
+        int deltaT = (ts - lastT);
+        return ((deltaT < dt) && (lastT != DEFAULT_TIMESTAMP)) || (letFirstEventThrough && lastT == DEFAULT_TIMESTAMP);
+    }
+
+    /**
+     * Prepares tiled filtering. Compact maps are filtered serially since
+     * writing them can rebase the whole map.
+     *
+     * @return the size of a map cell, since an event writes the neighboring
+     * cells
+     */
+    @Override
+    public int beginTileFiltering(EventPacket<?> in, int tileSize) {
+        if (lastTimesMap == null || lastTimesMap.getSubsampleBy() != subsampleBy || lastTimesMap.isCompact() != compactTimestampsEnabled) {
+            allocateMaps(chip);
+        }
+        if (lastTimesMap == null || compactTimestampsEnabled) {
+            return -1;
+        }
+        return 1 << subsampleBy;
+    }
+
+    /**
+     * Same as filterPacket for the events of a tile, but only writes the
+     * neighbor cells inside the tile.
+     */
+    @Override
+    public void filterTile(BasicEvent[] events, int numEvents, int x0, int y0, int x1, int y1) {
+        final TimestampMap2D map = lastTimesMap;
+        for (int i = 0; i < numEvents; i++) {
+            final BasicEvent e = events[i];
+            if (e.isSpecial() || !map.contains(e.x, e.y)) {
+                continue;
+            }
+            if ((e.x >= x0) && (e.x < x1) && (e.y >= y0) && (e.y < y1) && !passes(map.get(map.index(e.x, e.y)), e.timestamp)) {
+                e.setFilteredOut(true);
+            }
+            map.setNeighborsInside(e.x, e.y, e.timestamp, x0, y0, x1, y1);
+        }
+    }
+
     @Override
     public synchronized final void resetFilter() {
         initFilter();
@@ -131,16 +165,11 @@ public class BackgroundActivityFilter extends EventFilter2D implements Observer
     @Override
     public final void initFilter() {
         allocateMaps(chip);
-        sx = chip.getSizeX() - 1;
-        sy = chip.getSizeY() - 1;
     }
 
     private void allocateMaps(AEChip chip) {
         if ((chip != null) && (chip.getNumCells() > 0)) {
-            lastTimesMap = new int[chip.getSizeX()][chip.getSizeY()];
-            for (int[] arrayRow : lastTimesMap) {
-                Arrays.fill(arrayRow, DEFAULT_TIMESTAMP);
-            }
+            lastTimesMap = new TimestampMap2D(chip.getSizeX(), chip.getSizeY(), subsampleBy, 1, compactTimestampsEnabled, 2);
         }
     }
 
@@ -215,6 +244,25 @@ public class BackgroundActivityFilter extends EventFilter2D implements Observer
     }
     // </editor-fold>
 
+    /**
+     * @return the compactTimestampsEnabled
+     */
+    public boolean isCompactTimestampsEnabled() {
+        return compactTimestampsEnabled;
+    }
+
+    /**
+     * Sets whether the map of past event times uses 16 bit timestamps with
+     * 4us resolution, which halves its memory footprint.
+     *
+     * @param compactTimestampsEnabled the compactTimestampsEnabled to set
+     * @see TimestampMap2D
+     */
+    synchronized public void setCompactTimestampsEnabled(boolean compactTimestampsEnabled) {
+        this.compactTimestampsEnabled = compactTimestampsEnabled;
+        putBoolean("compactTimestampsEnabled", compactTimestampsEnabled);
+    }
+
     /**
      * @return the letFirstEventThrough
      */
@@ -2,7 +2,6 @@ package net.sf.jaer.eventprocessing.filter;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
-import java.util.Arrays;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -10,11 +9,14 @@ import net.sf.jaer.Description;
 import net.sf.jaer.DevelopmentStatus;
 import net.sf.jaer.chip.AEChip;
 import net.sf.jaer.event.BasicEvent;
+import net.sf.jaer.event.ColumnarEventPacket;
 import net.sf.jaer.event.EventPacket;
 import net.sf.jaer.eventio.AEFileInputStream;
 import net.sf.jaer.eventio.AEInputStream;
+import net.sf.jaer.eventprocessing.ColumnarEventFilter;
 import static net.sf.jaer.eventprocessing.EventFilter.log;
 import net.sf.jaer.eventprocessing.EventFilter2D;
+import net.sf.jaer.eventprocessing.TileLocalFilter;
 import net.sf.jaer.graphics.AEViewer;
 import net.sf.jaer.graphics.AbstractAEPlayer;
 
@@ -28,9 +30,9 @@ import net.sf.jaer.graphics.AbstractAEPlayer;
  */
 @Description("Applies a refractory period to pixels so that they events only pass if there is sufficient time since the last event from that pixel")
 @DevelopmentStatus(DevelopmentStatus.Status.Stable)
-public class RefractoryFilter extends EventFilter2D implements Observer, PropertyChangeListener {
+public class RefractoryFilter extends EventFilter2D implements Observer, PropertyChangeListener, ColumnarEventFilter, TileLocalFilter {
 
-    final int DEFAULT_TIMESTAMP = Integer.MIN_VALUE;
+    final int DEFAULT_TIMESTAMP = TimestampMap2D.EMPTY;
     /**
      * the time in timestamp ticks (1us at present) that a spike needs to be
      * supported by a prior event in the neighborhood by to pass through
@@ -44,7 +46,7 @@ public class RefractoryFilter extends EventFilter2D implements Observer, Propert
      */
     private int subsampleBy = getPrefs().getInt("RefractoryFilter.subsampleBy", 0);
     private boolean passShortISIsEnabled = prefs().getBoolean("RefractoryFilter.passShortISIsEnabled", false);
-    int[][] lastTimestamps;
+    TimestampMap2D lastTimestamps;
 
     private boolean addedViewerPropertyChangeListener = false; // TODO promote these to base EventFilter class
     private boolean addTimeStampsResetPropertyChangeListener = false;
@@ -60,7 +62,7 @@ public class RefractoryFilter extends EventFilter2D implements Observer, Propert
     }
 
     void allocateMaps(AEChip chip) {
-        lastTimestamps = new int[chip.getSizeX()][chip.getSizeY()];
+        lastTimestamps = new TimestampMap2D(Math.max(1, chip.getSizeX()), Math.max(1, chip.getSizeY()), subsampleBy, 1, false, 0);
     }
     int ts = 0; // used to reset filter
 
@@ -74,11 +76,11 @@ public class RefractoryFilter extends EventFilter2D implements Observer, Propert
      */
     synchronized public EventPacket filterPacket(EventPacket in) {
 //        checkOutputPacketEventType(in);
-        if (lastTimestamps == null) {
+        if (lastTimestamps == null || lastTimestamps.getSubsampleBy() != subsampleBy) {
             allocateMaps(chip);
         }
         maybeAddListeners(chip);
-        int sx = chip.getSizeX(), sy = chip.getSizeY();
+        final TimestampMap2D map = lastTimestamps;
         // for each event only write it to the out buffers if it is 
         // more than refractoryPeriodUs after the last time an event happened in neighborhood
 //        OutputEventIterator outItr = getOutputPacket().outputIterator();
@@ -89,12 +91,12 @@ public class RefractoryFilter extends EventFilter2D implements Observer, Propert
             if (i.isSpecial()) {
                 continue;
             }
-            if (i.x >= sx || i.x < 0 || i.y >= sy || i.y < 0) {
+            if (!map.contains(i.x, i.y)) {
                 continue;
             }
             ts = i.timestamp;
-            short x = (short) (i.x >>> subsampleBy), y = (short) (i.y >>> subsampleBy);
-            int lastt = lastTimestamps[x][y];
+            final int index = map.index(i.x, i.y);
+            int lastt = map.get(index);
             int deltat = (ts - lastt);
             boolean longISI = lastt == DEFAULT_TIMESTAMP || deltat > refractoryPeriodUs; // if refractoryPeriodUs==0, then all events with ISI==0 pass if passShortISIsEnabled
             if ((longISI && !passShortISIsEnabled) || (!longISI && passShortISIsEnabled)) {
@@ -104,7 +106,77 @@ public class RefractoryFilter extends EventFilter2D implements Observer, Propert
             } else {
                 i.setFilteredOut(true);
             }
-            lastTimestamps[x][y] = ts;
+            map.set(index, ts);
+        }
+        return in;
+    }
+
+    /**
+     * Prepares tiled filtering; each event only uses the map cell of its own
+     * pixel, so no halo is needed unless the subsampled cells are larger than
+     * the tiles.
+     */
+    @Override
+    synchronized public int beginTileFiltering(EventPacket<?> in, int tileSize) {
+        if (lastTimestamps == null || lastTimestamps.getSubsampleBy() != subsampleBy) {
+            allocateMaps(chip);
+        }
+        maybeAddListeners(chip);
+        return (1 << subsampleBy) > tileSize ? -1 : 0;
+    }
+
+    /**
+     * Same as filterPacket for the events of a tile.
+     */
+    @Override
+    public void filterTile(BasicEvent[] events, int numEvents, int x0, int y0, int x1, int y1) {
+        final TimestampMap2D map = lastTimestamps;
+        for (int k = 0; k < numEvents; k++) {
+            final BasicEvent i = events[k];
+            if (i.isSpecial() || !map.contains(i.x, i.y)) {
+                continue;
+            }
+            final int index = map.index(i.x, i.y);
+            int lastt = map.get(index);
+            boolean longISI = lastt == DEFAULT_TIMESTAMP || (i.timestamp - lastt) > refractoryPeriodUs;
+            i.setFilteredOut(longISI == passShortISIsEnabled);
+            map.set(index, i.timestamp);
+        }
+    }
+
+    /**
+     * Same as {@link #filterPacket(net.sf.jaer.event.EventPacket)} but
+     * operates directly on the columns of the packet.
+     *
+     * @param in input events
+     * @return in, with the filteredOut bits set
+     */
+    @Override
+    synchronized public ColumnarEventPacket filterColumns(ColumnarEventPacket in) {
+        if (lastTimestamps == null || lastTimestamps.getSubsampleBy() != subsampleBy) {
+            allocateMaps(chip);
+        }
+        maybeAddListeners(chip);
+        final TimestampMap2D map = lastTimestamps;
+        final int[] timestamps = in.timestamps;
+        final short[] xs = in.xs, ys = in.ys;
+        ColumnarEventPacket.IndexIterator itr = in.indexIterator();
+        while (itr.hasNext()) {
+            int k = itr.nextIndex();
+            if (in.isSpecial(k)) {
+                continue;
+            }
+            int ex = xs[k], ey = ys[k];
+            if (!map.contains(ex, ey)) {
+                continue;
+            }
+            ts = timestamps[k];
+            final int index = map.index(ex, ey);
+            int lastt = map.get(index);
+            int deltat = (ts - lastt);
+            boolean longISI = lastt == DEFAULT_TIMESTAMP || deltat > refractoryPeriodUs;
+            in.setFilteredOut(k, longISI == passShortISIsEnabled);
+            map.set(index, ts);
         }
         return in;
     }
@@ -137,8 +209,8 @@ public class RefractoryFilter extends EventFilter2D implements Observer, Propert
     }
 
     void resetLastTimestamps() {
-        for (int[] a:lastTimestamps ) {
-            Arrays.fill(a, DEFAULT_TIMESTAMP);
+        if (lastTimestamps != null) {
+            lastTimestamps.clear();
         }
     }
 
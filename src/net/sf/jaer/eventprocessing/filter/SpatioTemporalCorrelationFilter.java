@@ -33,7 +33,7 @@ import net.sf.jaer.graphics.FrameAnnotater;
 public class SpatioTemporalCorrelationFilter extends EventFilter2D implements Observer, FrameAnnotater {
 
     private final int MAX_DT = 100000, MIN_DT = 10;
-    private final int DEFAULT_TIMESTAMP = Integer.MIN_VALUE;
+    private final int DEFAULT_TIMESTAMP = TimestampMap2D.EMPTY;
 
     /**
      * the time in timestamp ticks (1us at present) that a spike needs to be
@@ -62,8 +62,9 @@ public class SpatioTemporalCorrelationFilter extends EventFilter2D implements Ob
      * x and y are shifted right by one bit
      */
     private int subsampleBy = getInt("subsampleBy", 0);
+    private boolean compactTimestampsEnabled = getBoolean("compactTimestampsEnabled", false);
 
-    int[][] lastTimesMap;
+    TimestampMap2D lastTimesMap;
     private int ts = 0; // used to reset filter
 
     public SpatioTemporalCorrelationFilter(AEChip chip) {
@@ -74,6 +75,7 @@ public class SpatioTemporalCorrelationFilter extends EventFilter2D implements Ob
         setPropertyTooltip(filt, "dt", "Events with less than this delta time in us to neighbors pass through");
         setPropertyTooltip(filt, "subsampleBy", "Past events are spatially subsampled (address right shifted) by this many bits");
         setPropertyTooltip(filt, "letFirstEventThrough", "After reset, let's first event through; if false, first event from each pixel is blocked");
+        setPropertyTooltip(filt, "compactTimestampsEnabled", "Stores past event times as 16 bit values with 4us resolution to halve the memory of the map; can speed up filtering of large sensors");
         setPropertyTooltip(filt, "numMustBeCorrelated", "At least this number of 9 (3x3) neighbors (including our own event location) must have had event within past dt");
         setPropertyTooltip(adap, "activityBinDimBits", "2^this is the size of rectangular blocks that histogram event activity for measuring entropy (structure) to evaluate effectiveness of filtering");
         setPropertyTooltip(adap, "adaptiveFilteringEnabled", "enables adaptive control of dt to achieve a target entropyReduction between two limits");
@@ -94,11 +96,13 @@ public class SpatioTemporalCorrelationFilter extends EventFilter2D implements Ob
     synchronized public EventPacket filterPacket(EventPacket in) {
         totalEventCount = 0;
         filteredOutEventCount = 0;
-        final int sx = chip.getSizeX() >> subsampleBy;
-        final int sy = chip.getSizeY() >> subsampleBy;
-        if (lastTimesMap == null || lastTimesMap.length != sx || lastTimesMap[0].length != sy) {
+        if (lastTimesMap == null || lastTimesMap.getSubsampleBy() != subsampleBy || lastTimesMap.isCompact() != compactTimestampsEnabled) {
             allocateMaps(chip);
+            if (lastTimesMap == null) {
+                return in; // chip has no size yet
+            }
         }
+        final TimestampMap2D map = lastTimesMap;
         resetActivityHistograms();
 
         // for each event only keep it if it is within dt of the last time
@@ -114,15 +118,16 @@ public class SpatioTemporalCorrelationFilter extends EventFilter2D implements Ob
             totalEventCount++;
             int ts = e.timestamp;
 
-            final int x = (e.x >> subsampleBy), y = (e.y >> subsampleBy);
-            if ((x < 0) || (x >= sx) || (y < 0) || (y >= sy)) {
+            if (!map.contains(e.x, e.y)) {
                 e.setFilteredOut(true);
                 continue;
             }
+            final int index = map.index(e.x, e.y);
+            final int x = (e.x >> subsampleBy), y = (e.y >> subsampleBy);
             int ax = x >> activityBinDimBits, ay = y >> activityBinDimBits;
             activityHistInput[ax][ay]++;
-            if (lastTimesMap[x][y] == DEFAULT_TIMESTAMP) {
-                lastTimesMap[x][y] = ts;
+            if (map.get(index) == DEFAULT_TIMESTAMP) {
+                map.set(index, ts);
                 if (letFirstEventThrough) {
                     activityHistFiltered[ax][ay]++;
                     continue;
@@ -131,26 +136,14 @@ public class SpatioTemporalCorrelationFilter extends EventFilter2D implements Ob
                     continue;
                 }
             }
-            int ncorrelated = 0;
-            for (int xx = x - 1; xx <= x + 1; xx++) {
-                for (int yy = y - 1; yy <= y + 1; yy++) {
-                    if ((xx < 0) || (xx >= sx) || (yy < 0) || (yy >= sy)) {
-                        continue;
-                    }
-                    final int lastT = lastTimesMap[xx][yy];
-                    final int deltaT = (ts - lastT);
-                    if (deltaT < dt && lastT != DEFAULT_TIMESTAMP) {
-                        ncorrelated++;
-                    }
-                }
-            }
+            final int ncorrelated = map.countNeighborsWithin(index, ts, dt); // the guard border of the map reads as empty outside the sensor
             if (ncorrelated < numMustBeCorrelated) {
                 e.setFilteredOut(true);
                 filteredOutEventCount++;
             } else {
                 activityHistFiltered[ax][ay]++;
             }
-            lastTimesMap[x][y] = ts;
+            map.set(index, ts);
         }
         if (totalEventCount > 0) { // don't adjust if there were no DVS events (i.e. only APS turned on)
             adaptFiltering();
@@ -177,10 +170,7 @@ public class SpatioTemporalCorrelationFilter extends EventFilter2D implements Ob
 
     private void allocateMaps(AEChip chip) {
         if ((chip != null) && (chip.getNumCells() > 0)) {
-            lastTimesMap = new int[chip.getSizeX() >> subsampleBy][chip.getSizeY() >> subsampleBy];
-            for (int[] arrayRow : lastTimesMap) {
-                Arrays.fill(arrayRow, DEFAULT_TIMESTAMP);
-            }
+            lastTimesMap = new TimestampMap2D(chip.getSizeX(), chip.getSizeY(), subsampleBy, 1, compactTimestampsEnabled, 2);
         }
         binDim = 1 << activityBinDimBits;
         nBinsX = chip.getSizeX() / binDim;
@@ -262,6 +252,25 @@ public class SpatioTemporalCorrelationFilter extends EventFilter2D implements Ob
     }
     // </editor-fold>
 
+    /**
+     * @return the compactTimestampsEnabled
+     */
+    public boolean isCompactTimestampsEnabled() {
+        return compactTimestampsEnabled;
+    }
+
+    /**
+     * Sets whether the map of past event times uses 16 bit timestamps with
+     * 4us resolution, which halves its memory footprint.
+     *
+     * @param compactTimestampsEnabled the compactTimestampsEnabled to set
+     * @see TimestampMap2D
+     */
+    synchronized public void setCompactTimestampsEnabled(boolean compactTimestampsEnabled) {
+        this.compactTimestampsEnabled = compactTimestampsEnabled;
+        putBoolean("compactTimestampsEnabled", compactTimestampsEnabled);
+    }
+
     /**
      * @return the letFirstEventThrough
      */
@@ -0,0 +1,351 @@
+/*
+ * TimestampMap2D.java
+ *
+ * Map of last event timestamps for the noise filters.
+ */
+package net.sf.jaer.eventprocessing.filter;
+
+import java.util.Arrays;
+
+/**
+ * A map of the last timestamp of each pixel, as used by
+ * BackgroundActivityFilter, SpatioTemporalCorrelationFilter, RefractoryFilter
+ * and others. The map is a single flat array in row-major order (x varies
+ * fastest) surrounded by a guard border of one cell, so that the 3x3
+ * neighborhood of any pixel in the map can be read and written without bounds
+ * checks, and the three cells of each neighborhood row are adjacent in memory.
+ * <p>
+ * Pixel addresses are first converted to an index with {@link #index(int, int)}
+ * or {@link #index(int, int, int)} after checking them with
+ * {@link #contains(int, int)}; the other methods take this index. Options are
+ * <ul>
+ * <li>subsampling: addresses are right shifted by subsampleBy bits, so one
+ * cell holds the last timestamp of a 2^subsampleBy square of pixels.
+ * <li>planes: e.g. 2 to keep ON and OFF events in separate maps.
+ * <li>compact timestamps: timestamps are stored as unsigned 16 bit ticks of
+ * 2^compactResolutionShift us relative to a base time, which halves the memory
+ * (and cache) footprint of the map. The base time is advanced when needed by
+ * rewriting the map; cells older than the range of 65533 ticks read as being
+ * just older than the base time. Read timestamps are rounded down to the tick
+ * resolution.
+ * </ul>
+ * Cells that have never been written, including the guard border unless
+ * written by {@link #setNeighbors(int, int)}, read as {@link #EMPTY}.
+ */
+public class TimestampMap2D {
+
+    /**
+     * The timestamp of cells that have not been written since the map was
+     * cleared
+     */
+    public static final int EMPTY = Integer.MIN_VALUE;
+
+    /**
+     * Width of the guard border in cells
+     */
+    private static final int BORDER = 1;
+
+    /**
+     * Compact values: 0 means empty, 1 means older than the base time, 2 and
+     * up are ticks after the base time
+     */
+    private static final int COMPACT_EMPTY = 0, COMPACT_OFFSET = 2, COMPACT_MAX = 0xffff,
+            COMPACT_MAX_TICKS = COMPACT_MAX - COMPACT_OFFSET, COMPACT_HALF_TICKS = COMPACT_MAX_TICKS / 2;
+
+    private final int sizeX, sizeY, subsampleBy, numPlanes, stride, planeSize;
+    private final int[] times;
+    private final char[] compactTimes;
+    private final int compactResolutionShift;
+    private int compactBase = 0;
+    private boolean compactBaseValid = false;
+
+    /**
+     * Makes a map of full 32 bit timestamps with a single plane and no
+     * subsampling.
+     *
+     * @param sizeX the width in pixels
+     * @param sizeY the height in pixels
+     */
+    public TimestampMap2D(int sizeX, int sizeY) {
+        this(sizeX, sizeY, 0, 1, false, 0);
+    }
+
+    /**
+     * Makes a new map, cleared to EMPTY.
+     *
+     * @param sensorSizeX the width in pixels
+     * @param sensorSizeY the height in pixels
+     * @param subsampleBy addresses are right shifted by this many bits
+     * @param numPlanes number of separate maps, e.g. 2 for polarities
+     * @param compact true to store 16 bit relative timestamps
+     * @param compactResolutionShift in compact mode, the tick of the stored
+     * timestamps is 2^compactResolutionShift timestamp units. Intervals up to
+     * 32766 ticks are always measured correctly.
+     */
+    public TimestampMap2D(int sensorSizeX, int sensorSizeY, int subsampleBy, int numPlanes, boolean compact, int compactResolutionShift) {
+        if ((sensorSizeX <= 0) || (sensorSizeY <= 0) || (subsampleBy < 0) || (numPlanes < 1) || (compactResolutionShift < 0)) {
+            throw new IllegalArgumentException("bad map size " + sensorSizeX + "x" + sensorSizeY + ", subsampleBy=" + subsampleBy + ", numPlanes="
+                    + numPlanes + ", compactResolutionShift=" + compactResolutionShift);
+        }
+        this.subsampleBy = subsampleBy;
+        this.sizeX = ((sensorSizeX - 1) >> subsampleBy) + 1;
+        this.sizeY = ((sensorSizeY - 1) >> subsampleBy) + 1;
+        this.numPlanes = numPlanes;
+        this.stride = this.sizeX + (2 * BORDER);
+        this.planeSize = stride * (this.sizeY + (2 * BORDER));
+        this.compactResolutionShift = compactResolutionShift;
+        if (compact) {
+            compactTimes = new char[planeSize * numPlanes];
+            times = null;
+        } else {
+            times = new int[planeSize * numPlanes];
+            compactTimes = null;
+        }
+        clear();
+    }
+
+    /**
+     * Sets all cells to EMPTY.
+     */
+    public final void clear() {
+        if (times != null) {
+            Arrays.fill(times, EMPTY);
+        } else {
+            Arrays.fill(compactTimes, (char) COMPACT_EMPTY);
+            compactBaseValid = false;
+        }
+    }
+
+    /**
+     * @param x pixel x address
+     * @param y pixel y address
+     * @return true if the pixel is inside the map
+     */
+    public final boolean contains(int x, int y) {
+        return (x >= 0) && (y >= 0) && ((x >> subsampleBy) < sizeX) && ((y >> subsampleBy) < sizeY);
+    }
+
+    /**
+     * @param x pixel x address, must be inside the map
+     * @param y pixel y address, must be inside the map
+     * @return the index of the cell in plane 0
+     * @see #contains(int, int)
+     */
+    public final int index(int x, int y) {
+        return ((((y >> subsampleBy) + BORDER) * stride) + (x >> subsampleBy) + BORDER);
+    }
+
+    /**
+     * @param x pixel x address, must be inside the map
+     * @param y pixel y address, must be inside the map
+     * @param plane the plane, e.g. the polarity
+     * @return the index of the cell
+     */
+    public final int index(int x, int y, int plane) {
+        return (plane * planeSize) + index(x, y);
+    }
+
+    /**
+     * @param index the cell index
+     * @return the last timestamp, or EMPTY
+     */
+    public final int get(int index) {
+        if (times != null) {
+            return times[index];
+        }
+        return decode(compactTimes[index]);
+    }
+
+    /**
+     * @param index the cell index
+     * @param timestamp the timestamp to write
+     */
+    public final void set(int index, int timestamp) {
+        if (times != null) {
+            times[index] = timestamp;
+        } else {
+            compactTimes[index] = encode(timestamp);
+        }
+    }
+
+    /**
+     * Writes the timestamp to the 8 neighbors of the cell but not to the cell
+     * itself.
+     *
+     * @param index the cell index
+     * @param timestamp the timestamp to write
+     */
+    public final void setNeighbors(int index, int timestamp) {
+        final int above = index - stride, below = index + stride;
+        if (times != null) {
+            final int[] t = times;
+            t[above - 1] = timestamp;
+            t[above] = timestamp;
+            t[above + 1] = timestamp;
+            t[index - 1] = timestamp;
+            t[index + 1] = timestamp;
+            t[below - 1] = timestamp;
+            t[below] = timestamp;
+            t[below + 1] = timestamp;
+        } else {
+            final char v = encode(timestamp);
+            final char[] t = compactTimes;
+            t[above - 1] = v;
+            t[above] = v;
+            t[above + 1] = v;
+            t[index - 1] = v;
+            t[index + 1] = v;
+            t[below - 1] = v;
+            t[below] = v;
+            t[below + 1] = v;
+        }
+    }
+
+    /**
+     * Like {@link #setNeighbors(int, int)}, but only writes the neighbors
+     * whose cells hold pixels of the region [x0,x1) x [y0,y1), so that
+     * disjoint regions of the map can be written concurrently. The region
+     * borders must be multiples of the subsampled cell size.
+     *
+     * @param x pixel x address, must be inside the map
+     * @param y pixel y address, must be inside the map
+     * @param timestamp the timestamp to write
+     * @param x0 the first x address of the region
+     * @param y0 the first y address of the region
+     * @param x1 the x address after the region
+     * @param y1 the y address after the region
+     */
+    public final void setNeighborsInside(int x, int y, int timestamp, int x0, int y0, int x1, int y1) {
+        final int cx = x >> subsampleBy, cy = y >> subsampleBy;
+        final int cx0 = x0 >> subsampleBy, cy0 = y0 >> subsampleBy, cx1 = x1 >> subsampleBy, cy1 = y1 >> subsampleBy;
+        final int index = index(x, y);
+        if ((cx > cx0) && ((cx + 1) < cx1) && (cy > cy0) && ((cy + 1) < cy1)) {
+            setNeighbors(index, timestamp); // usual case, not at the region border
+            return;
+        }
+        for (int dy = -1; dy <= 1; dy++) {
+            if (((cy + dy) < cy0) || ((cy + dy) >= cy1)) {
+                continue;
+            }
+            for (int dx = -1; dx <= 1; dx++) {
+                if (((dx == 0) && (dy == 0)) || ((cx + dx) < cx0) || ((cx + dx) >= cx1)) {
+                    continue;
+                }
+                set(index + (dy * stride) + dx, timestamp);
+            }
+        }
+    }
+
+    /**
+     * Counts the cells in the 3x3 neighborhood of the cell, including the cell
+     * itself, that are not EMPTY and whose timestamp is less than dt before
+     * timestamp.
+     *
+     * @param index the cell index
+     * @param timestamp the present time
+     * @param dt the correlation time
+     * @return the count, 0-9
+     */
+    public final int countNeighborsWithin(int index, int timestamp, int dt) {
+        int n = 0;
+        final int above = index - stride, below = index + stride;
+        if (times != null) {
+            final int[] t = times;
+            n += within(t[above - 1], timestamp, dt) + within(t[above], timestamp, dt) + within(t[above + 1], timestamp, dt);
+            n += within(t[index - 1], timestamp, dt) + within(t[index], timestamp, dt) + within(t[index + 1], timestamp, dt);
+            n += within(t[below - 1], timestamp, dt) + within(t[below], timestamp, dt) + within(t[below + 1], timestamp, dt);
+        } else {
+            // a stored value v is within dt if decode(v) > timestamp-dt, i.e. if v-COMPACT_OFFSET is larger than the tick of timestamp-dt
+            final int minTick = (((timestamp - dt) - compactBase) >> compactResolutionShift) + COMPACT_OFFSET;
+            final char[] t = compactTimes;
+            n += withinCompact(t[above - 1], minTick) + withinCompact(t[above], minTick) + withinCompact(t[above + 1], minTick);
+            n += withinCompact(t[index - 1], minTick) + withinCompact(t[index], minTick) + withinCompact(t[index + 1], minTick);
+            n += withinCompact(t[below - 1], minTick) + withinCompact(t[below], minTick) + withinCompact(t[below + 1], minTick);
+        }
+        return n;
+    }
+
+    private static int within(int lastT, int timestamp, int dt) {
+        return ((lastT != EMPTY) && ((timestamp - lastT) < dt)) ? 1 : 0;
+    }
+
+    private static int withinCompact(char v, int minTick) {
+        return ((v != COMPACT_EMPTY) && (v > minTick)) ? 1 : 0;
+    }
+
+    private int decode(char v) {
+        if (v == COMPACT_EMPTY) {
+            return EMPTY;
+        }
+        return compactBase + ((v - COMPACT_OFFSET) << compactResolutionShift); // v==1 gives a time just before the base
+    }
+
+    private char encode(int timestamp) {
+        if (!compactBaseValid) {
+            compactBase = timestamp - (COMPACT_HALF_TICKS << compactResolutionShift); // leave room for slightly earlier timestamps
+            compactBaseValid = true;
+        }
+        int tick = (timestamp - compactBase) >> compactResolutionShift;
+        if ((tick < 0) || (tick > COMPACT_MAX_TICKS)) {
+            rebase(tick - COMPACT_HALF_TICKS);
+            tick = COMPACT_HALF_TICKS;
+        }
+        return (char) (tick + COMPACT_OFFSET);
+    }
+
+    /**
+     * Moves the base time by the number of ticks, rewriting the stored values.
+     * Only happens about every 32766 ticks for monotonic timestamps.
+     */
+    private void rebase(int ticks) {
+        compactBase += ticks << compactResolutionShift;
+        final char[] t = compactTimes;
+        for (int i = 0; i < t.length; i++) {
+            final int v = t[i];
+            if (v < COMPACT_OFFSET) {
+                continue; // empty or already older than the base
+            }
+            final int nv = v - ticks;
+            t[i] = (char) (nv < COMPACT_OFFSET ? COMPACT_OFFSET - 1 : (nv > COMPACT_MAX ? COMPACT_MAX : nv));
+        }
+    }
+
+    /**
+     * @return the width of the map in cells, after subsampling
+     */
+    public int getSizeX() {
+        return sizeX;
+    }
+
+    /**
+     * @return the height of the map in cells, after subsampling
+     */
+    public int getSizeY() {
+        return sizeY;
+    }
+
+    public int getSubsampleBy() {
+        return subsampleBy;
+    }
+
+    public int getNumPlanes() {
+        return numPlanes;
+    }
+
+    public boolean isCompact() {
+        return compactTimes != null;
+    }
+
+    /**
+     * @return the size of the map array in bytes
+     */
+    public int getMemoryBytes() {
+        return times != null ? times.length * 4 : compactTimes.length * 2;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TimestampMap2D %dx%d cells, subsampleBy=%d, %d planes, %s, %d bytes", sizeX, sizeY, subsampleBy, numPlanes,
+                isCompact() ? ("16 bit timestamps with " + (1 << compactResolutionShift) + " us ticks") : "32 bit timestamps", getMemoryBytes());
+    }
+}
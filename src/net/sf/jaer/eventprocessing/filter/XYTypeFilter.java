@@ -38,6 +38,7 @@ import net.sf.jaer.event.BasicEvent;
 import net.sf.jaer.event.EventPacket;
 import net.sf.jaer.event.TypedEvent;
 import net.sf.jaer.eventprocessing.EventFilter2D;
+import net.sf.jaer.eventprocessing.TileLocalFilter;
 import net.sf.jaer.graphics.ChipCanvas;
 import net.sf.jaer.graphics.FrameAnnotater;
 
@@ -51,7 +52,7 @@ import net.sf.jaer.graphics.FrameAnnotater;
  */
 @Description("Filters a region defined by x, y, and event type ranges")
 @DevelopmentStatus(DevelopmentStatus.Status.Stable)
-public class XYTypeFilter extends EventFilter2D implements FrameAnnotater, Observer, MouseListener, MouseMotionListener {
+public class XYTypeFilter extends EventFilter2D implements FrameAnnotater, Observer, MouseListener, MouseMotionListener, TileLocalFilter {
 
     final private static float[] SELECT_COLOR = {.8f, 0, 0, .5f};
     private int startX = getPrefs().getInt("XYTypeFilter.startX", 0);
@@ -185,42 +186,79 @@ public class XYTypeFilter extends EventFilter2D implements FrameAnnotater, Obser
                     }
 
                 }
-            } else if (!invertEnabled) {
-                // if we pass all 'inside' tests then pass event, otherwise continue to next event
-                if (xEnabled && ((e.x < startX) || (e.x > endX))) {
-                    continue; // failed xtest, x outisde, goto next event
-                }
-                if (yEnabled && ((e.y < startY) || (e.y > endY))) {
-                    continue;
-                }
-                if (typeEnabled) {
-                    TypedEvent te = (TypedEvent) e;
-                    if ((te.type < startType) || (te.type > endType)) {
-                        continue;
-                    }
-                    pass(te);
-                } else {
-                    pass( e);
-                }
             } else {
-                // if we pass all outside tests then any test pass event
-                if (!(xEnabled && ((e.x < startX) || (e.x > endX)))
-                        && !(yEnabled && ((e.y < startY) || (e.y > endY)))) {
-                    continue; // failed xtest, x outisde, goto next event
+                passIfSelected(e);
+            }
+        }
+
+        return in;
+    }
+
+    /**
+     * Passes the event if it is selected by the x, y and type ranges, taking
+     * account of invertEnabled.
+     */
+    private void passIfSelected(BasicEvent e) {
+        if (!invertEnabled) {
+            // if we pass all 'inside' tests then pass event, otherwise continue to next event
+            if (xEnabled && ((e.x < startX) || (e.x > endX))) {
+                return; // failed xtest, x outisde, goto next event
+            }
+            if (yEnabled && ((e.y < startY) || (e.y > endY))) {
+                return;
+            }
+            if (typeEnabled) {
+                TypedEvent te = (TypedEvent) e;
+                if ((te.type < startType) || (te.type > endType)) {
+                    return;
                 }
-                if (typeEnabled) {
-                    TypedEvent te = (TypedEvent) e;
-                    if (!((te.type < startType) || (te.type > endType))) {
-                        continue;
-                    }
-                    pass(te);
-                } else {
-                    pass(e);
+                pass(te);
+            } else {
+                pass(e);
+            }
+        } else {
+            // if we pass all outside tests then any test pass event
+            if (!(xEnabled && ((e.x < startX) || (e.x > endX)))
+                    && !(yEnabled && ((e.y < startY) || (e.y > endY)))) {
+                return; // failed xtest, x outisde, goto next event
+            }
+            if (typeEnabled) {
+                TypedEvent te = (TypedEvent) e;
+                if (!((te.type < startType) || (te.type > endType))) {
+                    return;
                 }
+                pass(te);
+            } else {
+                pass(e);
             }
         }
+    }
 
-        return in;
+    /**
+     * Prepares tiled filtering; the filter has no state, so no halo is
+     * needed. Selecting and multiple selections are filtered serially.
+     */
+    @Override
+    public int beginTileFiltering(EventPacket<?> in, int tileSize) {
+        if (!(typeEnabled || xEnabled || yEnabled) || selecting || multiSelectionEnabled) {
+            return -1;
+        }
+        return 0;
+    }
+
+    /**
+     * Same as filterPacket for the events of a tile.
+     */
+    @Override
+    public void filterTile(BasicEvent[] events, int numEvents, int x0, int y0, int x1, int y1) {
+        for (int i = 0; i < numEvents; i++) {
+            final BasicEvent e = events[i];
+            if (e instanceof ApsDvsEvent && !((ApsDvsEvent) e).isDVSEvent()) {
+                continue;
+            }
+            block(e);
+            passIfSelected(e);
+        }
     }
 
 //    private void pass(OutputEventIterator outItr, BasicEvent e) {
@@ -6,7 +6,6 @@
 package net.sf.jaer.eventprocessing.tracking;
 
 import java.awt.Color;
-import java.awt.Point;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.geom.Point2D;
@@ -20,9 +19,9 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Random;
@@ -117,6 +116,7 @@ public class RectangularClusterTracker extends EventFilter2D
 																		// rendering of cluster velocities
 	private boolean logDataEnabled = false;
 	protected boolean showAllClusters = getBoolean("showAllClusters", false);
+	private boolean fastClusterFinderEnabled = getBoolean("fastClusterFinderEnabled", true);
 	protected boolean useNearestCluster = getBoolean("useNearestCluster", false); // use the nearest cluster to an
 																					// event, not the first containing
 																					// it
@@ -160,7 +160,7 @@ public class RectangularClusterTracker extends EventFilter2D
 	/**
 	 * The list of clusters (visible and invisible).
 	 */
-	volatile protected LinkedList<Cluster> clusters = new LinkedList<>();
+	volatile protected ArrayList<Cluster> clusters = new ArrayList<>();
 
 	/**
 	 * The list of visible clusters.
@@ -245,6 +245,8 @@ public class RectangularClusterTracker extends EventFilter2D
 		setPropertyTooltip(mov, "useVelocity", "uses measured cluster velocity to predict future position; vectors are scaled "
 			+ String.format("%.1f pix/pix/s", (VELOCITY_VECTOR_SCALING / AEConstants.TICK_DEFAULT_US) * 1e-6));
 		setPropertyTooltip(mov, "useNearestCluster", "event goes to nearest cluster, not to first (usually oldest) cluster containing it");
+		setPropertyTooltip(mov, "fastClusterFinderEnabled",
+			"finds the cluster for each event with a grid index of cluster regions instead of searching all clusters; speeds up tracking many clusters");
 		setPropertyTooltip(mov, "predictiveVelocityFactor", "how much cluster position leads position based on estimated velocity");
 		setPropertyTooltip(mov, "initializeVelocityToAverage",
 			"initializes cluster velocity to moving average of cluster velocities; otherwise initialized to zero");
@@ -665,7 +667,9 @@ public class RectangularClusterTracker extends EventFilter2D
 				fastClusterFinder.removeCluster(c2);
 
 				// clusters.add(new Cluster(c1, c2)); // No good for cluster-class overriding!
-				clusters.add(createCluster(c1, c2));
+				final Cluster merged = createCluster(c1, c2);
+				clusters.add(merged);
+				fastClusterFinder.add(merged, lastTimestamp);
 
 				// System.out.println("merged "+c1+" and "+c2);
 			}
@@ -784,6 +788,7 @@ public class RectangularClusterTracker extends EventFilter2D
 				visibleClusters.add(c);
 			}
 		}
+		fastClusterFinder.sync(t); // velocities and sizes have changed
 	}
 
 	@Override
@@ -829,6 +834,8 @@ public class RectangularClusterTracker extends EventFilter2D
 			c.getLastPacketLocation().setLocation(c.location);
 		}
 
+		fastClusterFinder.begin(in.getFirstTimestamp());
+		try {
 		// for each event, see which cluster it is closest to and add it to this cluster.
 		// if its too far from any cluster, make a new cluster if we have not jet
 		// reached maxNumClusters
@@ -849,6 +856,7 @@ public class RectangularClusterTracker extends EventFilter2D
 				else {
 					closest.addEvent(ev);
 				}
+				fastClusterFinder.update(closest, ev.timestamp);
 			}
 			else if (clusters.size() < maxNumClusters) { // start a new cluster
 				Cluster newCluster;
@@ -859,6 +867,7 @@ public class RectangularClusterTracker extends EventFilter2D
 					newCluster = createCluster(ev);
 				}
 				clusters.add(newCluster);
+				fastClusterFinder.add(newCluster, ev.timestamp);
 			}
 
 			updatedClusterList = maybeCallUpdateObservers(in, (lastTimestamp = ev.timestamp)); // callback to update()
@@ -867,6 +876,10 @@ public class RectangularClusterTracker extends EventFilter2D
 				logData(ev, (EventPacket<BasicEvent>) in);
 			}
 		}
+		}
+		finally {
+			fastClusterFinder.end();
+		}
 		// TODO update here again, relying on the fact that lastEventTimestamp was set by possible previous update
 		// according to
 		// schedule; we have have double update of velocityPPT using same dt otherwise
@@ -935,6 +948,9 @@ public class RectangularClusterTracker extends EventFilter2D
 	 *         is the distance between the given event and the returned cluster).
 	 */
 	protected Cluster getNearestCluster(BasicEvent event) { // TODO needs to account for the cluster angle
+		if (fastClusterFinder.isActive()) {
+			return fastClusterFinder.find(event, true);
+		}
 		float minDistance = Float.MAX_VALUE;
 		Cluster closest = null;
 		float currentDistance = 0;
@@ -973,6 +989,9 @@ public class RectangularClusterTracker extends EventFilter2D
 	 *         by aspect ratio. null is returned if no cluster is close enough.
 	 */
 	protected Cluster getFirstContainingCluster(BasicEvent event) {
+		if (fastClusterFinder.isActive()) {
+			return fastClusterFinder.find(event, false);
+		}
 		float minDistance = Float.MAX_VALUE;
 		Cluster closest = null;
 		float currentDistance = 0;
@@ -1029,7 +1048,7 @@ public class RectangularClusterTracker extends EventFilter2D
 				}
 				c.lastUpdateTime = t;
 			}
-			fastClusterFinder.update(c);
+			fastClusterFinder.update(c, t);
 		}
 	}
 
@@ -1207,6 +1226,13 @@ public class RectangularClusterTracker extends EventFilter2D
 		protected float instantaneousISI; // ticks/event
 		protected float distanceToLastEvent = Float.POSITIVE_INFINITY;
 		protected float xDistanceToLastEvent = Float.POSITIVE_INFINITY, yDistanceToLastEvent = Float.POSITIVE_INFINITY;
+		/**
+		 * State of this cluster in the FastClusterFinder: its position in the
+		 * cluster list, the cells it is registered in and the time window for
+		 * which this registration is valid
+		 */
+		private int gridOrder, gridX0 = -1, gridX1, gridY0, gridY1, gridValidFrom, gridValidUntil;
+		private boolean gridIndexed = false, gridOverflow = false;
 
 		// public float tauMsVelocity=50; // LP filter time constant for velocityPPT change
 		// private LowpassFilter velocityFilter=new LowpassFilter();
@@ -2783,7 +2809,7 @@ public class RectangularClusterTracker extends EventFilter2D
 	 * @return list of clusters
 	 */
 	@Override
-	public LinkedList<RectangularClusterTracker.Cluster> getClusters() {
+	public List<RectangularClusterTracker.Cluster> getClusters() {
 		return this.clusters;
 	}
 
@@ -2909,85 +2935,337 @@ public class RectangularClusterTracker extends EventFilter2D
 	}
 
 	/**
-	 * Speeds up finding the nearest cluster to an event.
+	 * Speeds up finding the cluster for an event with a uniform grid of cells
+	 * covering the chip. Each cluster is registered in all the cells overlapped
+	 * by the bounding box of the region in which it captures events, i.e. its
+	 * radius (times the surround if dynamicSizeEnabled) around its
+	 * velocity-predicted location, padded by a margin of one cell. The margin
+	 * keeps the registration valid while the predicted location moves by less
+	 * than a cell, which is checked with a time window kept for each cluster.
+	 * An event then only needs to be tested against the clusters registered in
+	 * its cell, so the cost of finding its cluster does not grow with the
+	 * number of clusters.
+	 * <p>
+	 * The registration of a cluster is refreshed when it gets an event or is
+	 * moved, and all registrations are checked against the cluster list at the
+	 * start of each packet and after each updateClusterList, so clusters added
+	 * or removed by subclasses are picked up. The grid is only used for lookups
+	 * during track(); otherwise the cluster list is searched.
 	 */
 	protected class FastClusterFinder {
 
-		/**
-		 * How much the map is subsampled in bits relative to the pixel array
-		 */
-		final int SUBSAMPLE_BY = 2;
-		private Cluster[][] grid = null;
-		private HashMap<Cluster, Point> map = new HashMap();
+		private int cellShift = 4, cellSize = 16;
 		int nx = 0, ny = 0;
+		private Cluster[][] cells = null;
+		private int[] cellCounts = null;
+		private final ArrayList<Cluster> overflow = new ArrayList<>(); // clusters with non-finite geometry, always tested
+		private int numIndexed = 0, nextOrder = 0;
+		private int minValidUntil = Integer.MAX_VALUE, maxValidFrom = Integer.MIN_VALUE;
+		private boolean active = false;
+		// result of the last lookup
+		private Cluster best;
+		private float bestDistance, bestDx, bestDy;
+		private int bestOrder;
 
 		void init() {
-			nx = chip.getSizeX() >> SUBSAMPLE_BY;
-			ny = chip.getSizeY() >> SUBSAMPLE_BY;
-			grid = new Cluster[nx+1][ny+1];
+			// cells of about the default cluster radius keep both the number of cells per cluster and clusters per cell small
+			final int r = (int) Math.max(1, defaultClusterRadius);
+			cellShift = Math.max(2, Math.min(6, 31 - Integer.numberOfLeadingZeros(r)));
+			cellSize = 1 << cellShift;
+			nx = Math.max(1, (chip.getSizeX() + cellSize - 1) >> cellShift);
+			ny = Math.max(1, (chip.getSizeY() + cellSize - 1) >> cellShift);
+			cells = new Cluster[nx * ny][];
+			cellCounts = new int[nx * ny];
+			clearIndex();
+		}
+
+		private void clearIndex() {
+			if (cellCounts != null) {
+				for (int i = 0; i < cells.length; i++) {
+					if (cellCounts[i] > 0) {
+						Arrays.fill(cells[i], 0, cellCounts[i], null);
+						cellCounts[i] = 0;
+					}
+				}
+			}
+			overflow.clear();
+			numIndexed = 0;
+			nextOrder = 0;
+			minValidUntil = Integer.MAX_VALUE;
+			maxValidFrom = Integer.MIN_VALUE;
+		}
+
+		/**
+		 * Synchronizes the grid with the cluster list and enables lookups with
+		 * it until {@link #end()}.
+		 *
+		 * @param t
+		 *            the present time
+		 */
+		protected void begin(int t) {
+			sync(t);
+			active = true;
+		}
+
+		/**
+		 * Disables lookups with the grid.
+		 */
+		protected void end() {
+			active = false;
+		}
+
+		/**
+		 * @return true if lookups use the grid
+		 */
+		protected boolean isActive() {
+			return active && fastClusterFinderEnabled;
 		}
 
 		/**
-		 * Finds the nearest cluster to an event. If the cluster has been cached
-		 * in the grid map it is returned, otherwise either nearest or first
-		 * cluster is returned depending on useNearestCluster flag.
+		 * Makes the grid hold exactly the clusters of the cluster list, in
+		 * list order, and refreshes all registrations for time t.
+		 *
+		 * @param t
+		 *            the present time
+		 */
+		protected void sync(int t) {
+			if (cells == null) {
+				init();
+			}
+			boolean consistent = (numIndexed == clusters.size()) && (nextOrder < (Integer.MAX_VALUE / 2));
+			int prevOrder = Integer.MIN_VALUE;
+			for (int i = 0; consistent && (i < clusters.size()); i++) {
+				final Cluster c = clusters.get(i);
+				consistent = c.gridIndexed && (c.gridOrder > prevOrder);
+				prevOrder = c.gridOrder;
+			}
+			if (!consistent) {
+				for (int i = 0; i < clusters.size(); i++) {
+					clusters.get(i).gridIndexed = false;
+				}
+				clearIndex();
+				for (int i = 0; i < clusters.size(); i++) {
+					add(clusters.get(i), t);
+				}
+			}
+			else {
+				minValidUntil = Integer.MAX_VALUE;
+				maxValidFrom = Integer.MIN_VALUE;
+				for (int i = 0; i < clusters.size(); i++) {
+					update(clusters.get(i), t);
+				}
+			}
+		}
+
+		/**
+		 * Adds a cluster that has just been appended to the cluster list.
+		 *
+		 * @param c
+		 *            the cluster
+		 * @param t
+		 *            the present time
+		 */
+		protected void add(Cluster c, int t) {
+			if (cells == null) {
+				init();
+			}
+			if (c.gridIndexed) {
+				return;
+			}
+			c.gridIndexed = true;
+			c.gridOverflow = false;
+			c.gridX0 = -1;
+			c.gridOrder = nextOrder++;
+			numIndexed++;
+			update(c, t);
+		}
+
+		/**
+		 * Finds the cluster for an event like getNearestCluster or
+		 * getFirstContainingCluster, depending on useNearestCluster.
 		 *
 		 * @param e
 		 *            the event
 		 * @return the nearest cluster or null
 		 */
 		protected Cluster findClusterNear(BasicEvent e) {
-			Cluster c = null;
-			c = grid[(e.x) >>> SUBSAMPLE_BY][(e.y) >>> SUBSAMPLE_BY];
-			if (c == null) {
-				if (useNearestCluster) {
-					c = getNearestCluster(e);
-				}
-				else {
-					c = getFirstContainingCluster(e); // find cluster that event falls within (or also within surround
-														// if scaling enabled)
+			if (useNearestCluster) {
+				return getNearestCluster(e);
+			}
+			return getFirstContainingCluster(e); // find cluster that event falls within (or also within surround if
+													// scaling enabled)
+		}
+
+		/**
+		 * Finds the cluster for an event using the grid.
+		 *
+		 * @param e
+		 *            the event
+		 * @param nearest
+		 *            true to find the nearest containing cluster, false for
+		 *            the first (oldest) one
+		 * @return the cluster or null
+		 */
+		protected Cluster find(BasicEvent e, boolean nearest) {
+			final int ts = e.timestamp;
+			if ((ts > minValidUntil) || (ts < maxValidFrom) || (numIndexed != clusters.size())) {
+				sync(ts);
+			}
+			int x = e.x >> cellShift, y = e.y >> cellShift;
+			x = x < 0 ? 0 : (x >= nx ? nx - 1 : x);
+			y = y < 0 ? 0 : (y >= ny ? ny - 1 : y);
+			final int cell = (y * nx) + x;
+			best = null;
+			bestDistance = Float.MAX_VALUE;
+			bestOrder = Integer.MAX_VALUE;
+			final Cluster[] cs = cells[cell];
+			for (int i = 0, n = cellCounts[cell]; i < n; i++) {
+				test(cs[i], e, nearest);
+			}
+			for (int i = 0; i < overflow.size(); i++) {
+				test(overflow.get(i), e, nearest);
+			}
+			if (best != null) {
+				best.distanceToLastEvent = bestDistance; // store data in cluster for later use in moving cluster
+				best.xDistanceToLastEvent = bestDx;
+				best.yDistanceToLastEvent = bestDy;
+			}
+			return best;
+		}
+
+		private void test(Cluster c, BasicEvent e, boolean nearest) {
+			float rX = c.radiusX;
+			float rY = c.radiusY;
+			if (dynamicSizeEnabled) {
+				rX *= surround;
+				rY *= surround;
+			}
+			float dx, dy;
+			if (((dx = c.distanceToX(e)) < rX) && ((dy = c.distanceToY(e)) < rY)) {
+				final float d = dx + dy;
+				// ties go to the cluster earlier in the list, as with the search of the list
+				if (nearest ? ((d < bestDistance) || ((d == bestDistance) && (c.gridOrder < bestOrder))) : (c.gridOrder < bestOrder)) {
+					best = c;
+					bestDistance = d;
+					bestDx = dx;
+					bestDy = dy;
+					bestOrder = c.gridOrder;
 				}
 			}
-			return c;
 		}
 
 		/**
-		 * updates the lookup table for this cluster.
+		 * Updates the registration of this cluster after it moved or changed
+		 * size.
 		 *
 		 * @param c
 		 *            the cluster to update
+		 * @param t
+		 *            the present time
 		 */
-		protected void update(Cluster c) {
-			removeCluster(c);
-			int x = (int) (c.location.x) >> SUBSAMPLE_BY;
-			if (x < 0) {
-				x = 0;
+		protected void update(Cluster c, int t) {
+			if (!c.gridIndexed) {
+				return;
 			}
-			else if (x >= nx) {
-				x = nx - 1;
+			float rX = c.radiusX;
+			float rY = c.radiusY;
+			if (dynamicSizeEnabled) {
+				rX *= surround;
+				rY *= surround;
+			}
+			// the capture region is a rotated rectangle, so its circumscribed circle bounds it at any angle
+			final float r = (float) Math.sqrt((rX * rX) + (rY * rY)) + cellSize;
+			final int dt = t - c.lastUpdateTime;
+			final float cx = c.location.x - (c.velocityPPT.x * dt), cy = c.location.y - (c.velocityPPT.y * dt);
+			final float vmax = Math.max(Math.abs(c.velocityPPT.x), Math.abs(c.velocityPPT.y));
+			if (Float.isNaN(r) || Float.isInfinite(r) || Float.isNaN(cx) || Float.isInfinite(cx) || Float.isNaN(cy) || Float.isInfinite(cy)
+				|| Float.isNaN(vmax) || Float.isInfinite(vmax)) {
+				if (!c.gridOverflow) {
+					removeCells(c);
+					overflow.add(c);
+					c.gridOverflow = true;
+				}
+				return;
 			}
-			int y = (int) (c.location.y) >> SUBSAMPLE_BY;
-			if (y < 0) {
-				y = 0;
+			if (c.gridOverflow) {
+				overflow.remove(c);
+				c.gridOverflow = false;
 			}
-			else if (y >= ny) {
-				y = ny - 1;
+			// the registration stays valid while the predicted location moves less than the margin of one cell
+			final long window = vmax > 0 ? (long) (cellSize / vmax) : Integer.MAX_VALUE;
+			c.gridValidFrom = (int) Math.max(Integer.MIN_VALUE, t - window);
+			c.gridValidUntil = (int) Math.min(Integer.MAX_VALUE, t + window);
+			if (c.gridValidUntil < minValidUntil) {
+				minValidUntil = c.gridValidUntil;
 			}
-			grid[x][y] = c;
-			map.put(c, new Point(x, y));
+			if (c.gridValidFrom > maxValidFrom) {
+				maxValidFrom = c.gridValidFrom;
+			}
+			final int x0 = clamp(((int) Math.floor(cx - r)) >> cellShift, nx), x1 = clamp(((int) Math.floor(cx + r)) >> cellShift, nx);
+			final int y0 = clamp(((int) Math.floor(cy - r)) >> cellShift, ny), y1 = clamp(((int) Math.floor(cy + r)) >> cellShift, ny);
+			if ((x0 == c.gridX0) && (x1 == c.gridX1) && (y0 == c.gridY0) && (y1 == c.gridY1)) {
+				return; // usual case, cluster did not move to other cells
+			}
+			removeCells(c);
+			c.gridX0 = x0;
+			c.gridX1 = x1;
+			c.gridY0 = y0;
+			c.gridY1 = y1;
+			for (int y = y0; y <= y1; y++) {
+				for (int x = x0; x <= x1; x++) {
+					final int cell = (y * nx) + x;
+					Cluster[] cs = cells[cell];
+					final int n = cellCounts[cell];
+					if (cs == null) {
+						cs = cells[cell] = new Cluster[4];
+					}
+					else if (n == cs.length) {
+						cs = cells[cell] = Arrays.copyOf(cs, n * 2);
+					}
+					cs[n] = c;
+					cellCounts[cell] = n + 1;
+				}
+			}
+		}
+
+		private int clamp(int i, int n) {
+			return i < 0 ? 0 : (i >= n ? n - 1 : i);
+		}
+
+		private void removeCells(Cluster c) {
+			if (c.gridX0 < 0) {
+				return;
+			}
+			for (int y = c.gridY0; y <= c.gridY1; y++) {
+				for (int x = c.gridX0; x <= c.gridX1; x++) {
+					final int cell = (y * nx) + x;
+					final Cluster[] cs = cells[cell];
+					final int n = cellCounts[cell];
+					for (int i = 0; i < n; i++) {
+						if (cs[i] == c) {
+							cs[i] = cs[n - 1]; // order in a cell does not matter, the cluster order decides
+							cs[n - 1] = null;
+							cellCounts[cell] = n - 1;
+							break;
+						}
+					}
+				}
+			}
+			c.gridX0 = -1;
 		}
 
 		/**
-		 * Clears the map
+		 * Clears the grid
 		 */
 		protected void reset() {
-			if (grid == null) {
+			if (cells == null) {
 				init();
 			}
 			else {
-				for (Cluster[] ca : grid) {
-					Arrays.fill(ca, null);
+				for (int i = 0; i < clusters.size(); i++) {
+					clusters.get(i).gridIndexed = false;
 				}
+				clearIndex();
 			}
 		}
 
@@ -2998,11 +3276,16 @@ public class RectangularClusterTracker extends EventFilter2D
 		 *            the cluster to be removed
 		 */
 		protected void removeCluster(Cluster c) {
-			if (map.containsKey(c)) {
-				Point p = map.get(c);
-				grid[p.x][p.y] = null;
-				map.remove(c);
+			if (!c.gridIndexed) {
+				return;
+			}
+			removeCells(c);
+			if (c.gridOverflow) {
+				overflow.remove(c);
+				c.gridOverflow = false;
 			}
+			c.gridIndexed = false;
+			numIndexed--;
 		}
 	}
 
@@ -3299,6 +3582,7 @@ public class RectangularClusterTracker extends EventFilter2D
 		for (Cluster c : clusters) {
 			c.setRadius(defaultClusterRadius);
 		}
+		fastClusterFinder.init(); // cell size follows the cluster size
 		putFloat("clusterSize", clusterSize);
 		getSupport().firePropertyChange("clusterSize", old, clusterSize);
 	}
@@ -3477,6 +3761,26 @@ public class RectangularClusterTracker extends EventFilter2D
 	}
 	// </editor-fold>
 
+	/**
+	 * @return the fastClusterFinderEnabled
+	 */
+	public boolean isFastClusterFinderEnabled() {
+		return fastClusterFinderEnabled;
+	}
+
+	/**
+	 * Sets whether the cluster for each event is found with the grid index of
+	 * the FastClusterFinder, rather than by searching the list of clusters.
+	 * Both give the same result.
+	 *
+	 * @param fastClusterFinderEnabled
+	 *            the fastClusterFinderEnabled to set
+	 */
+	public void setFastClusterFinderEnabled(boolean fastClusterFinderEnabled) {
+		this.fastClusterFinderEnabled = fastClusterFinderEnabled;
+		putBoolean("fastClusterFinderEnabled", fastClusterFinderEnabled);
+	}
+
 	// <editor-fold defaultstate="collapsed" desc="getter/setter for --UseNearestCluster--">
 	public boolean isUseNearestCluster() {
 		return useNearestCluster;
@@ -8,7 +8,10 @@ package net.sf.jaer.graphics;
 import java.awt.Color;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 import javax.swing.JButton;
@@ -51,6 +54,206 @@ public class AEChipRenderer extends Chip2DRenderer implements PropertyChangeList
 	 */
 	public static final String EVENT_COLOR_MODE_CHANGE = "colorMode";
 
+	/**
+	 * Starts rendering a packet. The rendered image is cleared for each packet
+	 * unless accumulation is enabled. With a decoupled display it is only
+	 * cleared after the display took the previous frame, so that a displayed
+	 * frame shows all packets rendered since the one before, independent of
+	 * the display frame rate. Renderers call this once for each packet from
+	 * their synchronized render method, and clear the image if it returns
+	 * true.
+	 *
+	 * @param packet
+	 *            the packet; its systemModificationTimeNs, if set, is taken as
+	 *            the time its events arrived
+	 * @return true if the image should be cleared before rendering the packet
+	 */
+	protected boolean startPacket(final EventPacket<?> packet) {
+		final long now = System.nanoTime();
+		long t = packet.systemModificationTimeNs;
+		if ((t == 0) || (t > now)) {
+			t = now;
+		}
+		boolean newFrame = true;
+		if (!displayDecoupled || frameTaken.getAndSet(false)) {
+			accumulationStartNs = t;
+			accumulatedPackets = 0;
+		} else {
+			newFrame = false;
+		}
+		accumulationEndNs = t;
+		accumulatedPackets++;
+		return newFrame && !accumulateEnabled;
+	}
+
+	/**
+	 * Takes the accumulated frame for a decoupled display: copies the rendered
+	 * image to the display buffers and lets the next packet start a new frame.
+	 * Called by the ChipCanvas before the display method draws. Synchronized
+	 * like render, but holds the lock only for the copy; the display methods
+	 * then draw the display buffers without the lock, so that rendering never
+	 * waits for the drawing and texture upload.
+	 *
+	 * @see #getDisplayPixmap()
+	 */
+	public synchronized void takeFrame() {
+		copyDisplayBuffers();
+		takeAccumulatedFrame();
+		displayBuffersTaken = true;
+	}
+
+	/**
+	 * Copies the rendered image to the display buffers that are drawn with a
+	 * decoupled display. Called by takeFrame with the lock held. Subclasses
+	 * that display further buffers copy them as well.
+	 */
+	protected void copyDisplayBuffers() {
+		displayPixmap = copyBuffer(pixmap, displayPixmap);
+	}
+
+	/**
+	 * Copies a buffer to a display buffer.
+	 *
+	 * @param src
+	 *            the buffer, may be null
+	 * @param dst
+	 *            the display buffer, reallocated if null or of another
+	 *            capacity
+	 * @return the display buffer, rewound, or null if src is null
+	 */
+	protected static FloatBuffer copyBuffer(final FloatBuffer src, FloatBuffer dst) {
+		if (src == null) {
+			return null;
+		}
+		if ((dst == null) || (dst.capacity() != src.capacity())) {
+			dst = FloatBuffer.allocate(src.capacity());
+		}
+		final FloatBuffer s = src.duplicate();
+		s.clear();
+		dst.clear();
+		dst.put(s);
+		dst.rewind();
+		return dst;
+	}
+
+	/**
+	 * Returns the pixmap that display methods should draw. With a decoupled
+	 * display this is the copy made by the last takeFrame, which may be read
+	 * without the lock of the renderer; otherwise it is getPixmap().
+	 *
+	 * @return the pixmap
+	 */
+	public FloatBuffer getDisplayPixmap() {
+		final FloatBuffer b = displayPixmap;
+		return (displayDecoupled && (b != null)) ? b : getPixmap();
+	}
+
+	// takes the accumulated packets of the frame for the statistics of frameDisplayed; called with the lock held
+	private void takeAccumulatedFrame() {
+		takenPackets = accumulatedPackets;
+		takenStartNs = accumulationStartNs;
+		takenEndNs = accumulationEndNs;
+		accumulatedPackets = 0;
+		frameTaken.set(true);
+	}
+
+	/**
+	 * Called by the ChipCanvas when the display method has drawn the rendered
+	 * image. Measures the latency from the arrival of the oldest and newest
+	 * packet of the frame to the display. With a decoupled display the frame
+	 * was taken before it was drawn by takeFrame; otherwise it is taken here,
+	 * so that the next packet starts a new one.
+	 */
+	public void frameDisplayed() {
+		final int n;
+		final long start, end;
+		synchronized (this) {
+			if (!displayBuffersTaken) {
+				takeAccumulatedFrame();
+			}
+			displayBuffersTaken = false;
+			n = takenPackets;
+			start = takenStartNs;
+			end = takenEndNs;
+		}
+		if (n == 0) {
+			return;
+		}
+		final long now = System.nanoTime();
+		synchronized (displayStatistics) {
+			final long[] d = displayStatistics;
+			if (d[STAT_FRAMES] == 0) {
+				d[STAT_FIRST_NS] = now;
+			}
+			d[STAT_FRAMES]++;
+			d[STAT_PACKETS] += n;
+			d[STAT_SUM_OLDEST_NS] += now - start;
+			d[STAT_MAX_OLDEST_NS] = Math.max(d[STAT_MAX_OLDEST_NS], now - start);
+			d[STAT_SUM_NEWEST_NS] += now - end;
+			d[STAT_LAST_NS] = now;
+		}
+	}
+
+	/**
+	 * Returns statistics of the displayed frames since the last reset: the
+	 * display frame rate, the number of packets accumulated per frame, and the
+	 * latency from the arrival of the oldest and newest packet of a frame to
+	 * its display. The latency is measured when the display method has drawn
+	 * the frame; the buffer swap adds up to one display refresh period.
+	 *
+	 * @return the statistics
+	 */
+	public String getDisplayStatistics() {
+		synchronized (displayStatistics) {
+			final long[] d = displayStatistics;
+			final long frames = d[STAT_FRAMES];
+			if (frames == 0) {
+				return "no frames displayed";
+			}
+			final double s = (d[STAT_LAST_NS] - d[STAT_FIRST_NS]) * 1e-9;
+			return String.format(
+				"%d frames displayed at %.1f Hz with %.2f packets/frame (display %s), latency from packet to display: oldest mean %.2f ms max %.2f ms, newest mean %.2f ms",
+				frames, s > 0 ? (frames - 1) / s : 0, (double) d[STAT_PACKETS] / frames, displayDecoupled ? "decoupled" : "coupled",
+				d[STAT_SUM_OLDEST_NS] * 1e-6 / frames, d[STAT_MAX_OLDEST_NS] * 1e-6, d[STAT_SUM_NEWEST_NS] * 1e-6 / frames);
+		}
+	}
+
+	/**
+	 * Zeros the display statistics
+	 *
+	 * @see #getDisplayStatistics()
+	 */
+	public void resetDisplayStatistics() {
+		synchronized (displayStatistics) {
+			Arrays.fill(displayStatistics, 0);
+		}
+	}
+
+	/**
+	 * @return true if frames accumulate until the display takes them
+	 * @see #setDisplayDecoupled(boolean)
+	 */
+	public boolean isDisplayDecoupled() {
+		return displayDecoupled;
+	}
+
+	/**
+	 * Sets whether the display runs on its own thread, e.g. a DisplayThread,
+	 * at its own rate. Then packets accumulate into the rendered image until
+	 * the display took it, instead of each packet replacing the image of the
+	 * one before, so that a display that is slower than the packets shows all
+	 * events and a display that is faster does not hold up rendering. The
+	 * display takes each frame with takeFrame, and the ChipRendererDisplayMethod
+	 * and ChipRendererDisplayMethodRGBA draw its copy; other display methods
+	 * read the rendered data as before.
+	 *
+	 * @param displayDecoupled
+	 *            true to accumulate until the display took the frame
+	 */
+	public void setDisplayDecoupled(final boolean displayDecoupled) {
+		this.displayDecoupled = displayDecoupled;
+	}
+
 	/**
 	 * @return the specialCount
 	 */
@@ -153,6 +356,31 @@ public class AEChipRenderer extends Chip2DRenderer implements PropertyChangeList
 	protected float[][] timeColors;
 	protected int specialCount = 0;
 
+	/**
+	 * Accumulation of packets into frames for a display that runs on its own
+	 * thread, see {@link #setDisplayDecoupled(boolean)}
+	 */
+	private volatile boolean displayDecoupled = false;
+	private final AtomicBoolean frameTaken = new AtomicBoolean(true);
+	private volatile long accumulationStartNs = 0, accumulationEndNs = 0;
+	private volatile int accumulatedPackets = 0;
+	/**
+	 * The frame taken by takeFrame or frameDisplayed, guarded by this
+	 */
+	private int takenPackets = 0;
+	private long takenStartNs = 0, takenEndNs = 0;
+	private boolean displayBuffersTaken = false;
+	/**
+	 * Copy of the pixmap drawn by a decoupled display, see takeFrame
+	 */
+	private volatile FloatBuffer displayPixmap = null;
+	/**
+	 * Statistics of the displayed frames, guarded by itself
+	 */
+	private final long[] displayStatistics = new long[7];
+	private static final int STAT_FRAMES = 0, STAT_PACKETS = 1, STAT_SUM_OLDEST_NS = 2, STAT_MAX_OLDEST_NS = 3, STAT_SUM_NEWEST_NS = 4,
+		STAT_FIRST_NS = 5, STAT_LAST_NS = 6;
+
 	public AEChipRenderer(AEChip chip) {
 		super(chip);
 		if (chip == null) {
@@ -241,6 +469,7 @@ public class AEChipRenderer extends Chip2DRenderer implements PropertyChangeList
 			return;
 		}
 		this.packet = packet;
+		final boolean newFrame = startPacket(packet);
 		int numEvents = packet.getSize();
 		int skipBy = 1;
 		if (isSubsamplingEnabled()) {
@@ -257,7 +486,7 @@ public class AEChipRenderer extends Chip2DRenderer implements PropertyChangeList
 		try {
 			if (packet.getNumCellTypes() > 2) {
 				checkTypeColors(packet.getNumCellTypes());
-				if (!accumulateEnabled && !externalRenderer) {
+				if (newFrame && !externalRenderer) {
 					resetFrame(0);
 				}
 				step = 1f / (colorScale);
@@ -298,7 +527,7 @@ public class AEChipRenderer extends Chip2DRenderer implements PropertyChangeList
 			else {
 				switch (colorMode) {
 					case GrayLevel:
-						if (!accumulateEnabled && !externalRenderer) {
+						if (newFrame && !externalRenderer) {
 							resetFrame(.5f); // also sets grayValue
 						}
 						step = 2f / (colorScale + 1);
@@ -332,7 +561,7 @@ public class AEChipRenderer extends Chip2DRenderer implements PropertyChangeList
 						}
 						break;
 					case Contrast:
-						if (!accumulateEnabled && !externalRenderer) {
+						if (newFrame && !externalRenderer) {
 							resetFrame(.5f);
 						}
 						float eventContrastRecip = 1 / eventContrast;
@@ -362,7 +591,7 @@ public class AEChipRenderer extends Chip2DRenderer implements PropertyChangeList
 						}
 						break;
 					case RedGreen:
-						if (!accumulateEnabled && !externalRenderer) {
+						if (newFrame && !externalRenderer) {
 							resetFrame(0);
 						}
 						step = 1f / (colorScale); // cs=1, step=1, cs=2, step=.5
@@ -383,7 +612,7 @@ public class AEChipRenderer extends Chip2DRenderer implements PropertyChangeList
 						}
 						break;
 					case ColorTime:
-						if (!accumulateEnabled && !externalRenderer) {
+						if (newFrame && !externalRenderer) {
 							resetFrame(0);
 						}
 						if (numEvents == 0) {
@@ -126,6 +126,54 @@ public class AEFrameChipRenderer extends AEChipRenderer {
      */
     private int dvsDownsamplingValue = 0, dvsDownsamplingCount = 0;
 
+    /**
+     * Side length in pixels of the square tiles in which changes of the DVS
+     * event maps are tracked for incremental texture updates
+     */
+    public static final int DIRTY_TILE_SIZE = 32;
+    private static final int DIRTY_TILE_SHIFT = 5;
+
+    /**
+     * incremental rendering of the DVS event maps, see
+     * {@link #setIncrementalRenderingEnabled(boolean)}
+     */
+    private boolean incrementalRenderingEnabled = prefs.getBoolean("AEFrameChipRenderer.incrementalRenderingEnabled", false);
+    /**
+     * true when the last packet was rendered by the tracking loops of this
+     * class, false if e.g. a subclass rendered it by its own render method
+     */
+    private boolean eventMapsTracked = false;
+    /**
+     * true if the event maps were changed without tracking so that they must
+     * be uploaded completely
+     */
+    private boolean eventMapsFullyChanged = true;
+    private int tilesX, tilesY;
+    /**
+     * bit set of tiles changed since the last call of
+     * takeDirtyEventMapRegions
+     */
+    private long[] dirtyTiles;
+    /**
+     * copies of the maps drawn by a decoupled display, and the regions of the
+     * event maps changed by the last copy, see copyDisplayBuffers
+     */
+    private volatile FloatBuffer displayOnMap, displayOffMap, displayAnnotateMap;
+    private int[] displayDirtyRegions = new int[0];
+    private volatile int numDisplayDirtyRegions = -1;
+    private volatile boolean displayDirtyRegionsTaken = false;
+    /**
+     * for each texture pixel the packet generation in which it was last
+     * touched; pixels with an older generation are blank in the event maps
+     */
+    private int[] pixelGeneration;
+    private int generation;
+    /**
+     * texture pixel numbers touched since the event maps were last cleared
+     */
+    private int[] touchedPixels;
+    private int numTouchedPixels = 0;
+
     public AEFrameChipRenderer(final AEChip chip) {
         super(chip);
 
@@ -222,6 +270,9 @@ public class AEFrameChipRenderer extends AEChipRenderer {
         offMap.rewind();
         onMap.limit(n);
         offMap.limit(n);
+        numTouchedPixels = 0;
+        nextGeneration();
+        eventMapsFullyChanged = true;
     }
 
     public synchronized void clearAnnotationMap() {
@@ -313,6 +364,7 @@ public class AEFrameChipRenderer extends AEChipRenderer {
 //        adaptDvsDownsampling();
 
         numEventTypes = pkt.getNumCellTypes();
+        eventMapsTracked = incrementalRenderingEnabled;
 
         if (pkt instanceof ApsDvsEventPacket) {
             renderApsDvsEvents(pkt);
@@ -326,8 +378,12 @@ public class AEFrameChipRenderer extends AEChipRenderer {
             computeHistograms = ((DavisBaseCamera) chip).isShowImageHistogram() || ((DavisChip) chip).isAutoExposureEnabled();
         }
 
-        if (!accumulateEnabled) {
-            resetMaps();
+        if (startPacket(pkt)) {
+            if (eventMapsTracked) {
+                clearTouchedPixels();
+            } else {
+                resetMaps();
+            }
 
             if (numEventTypes > 2) {
                 resetAnnotationFrame(0.0f);
@@ -386,8 +442,12 @@ public class AEFrameChipRenderer extends AEChipRenderer {
     }
 
     protected void renderDvsEvents(final EventPacket pkt) {
-        if (!accumulateEnabled) {
-            resetMaps();
+        if (startPacket(pkt)) {
+            if (eventMapsTracked) {
+                clearTouchedPixels();
+            } else {
+                resetMaps();
+            }
 
             if (numEventTypes > 2) {
                 resetAnnotationFrame(0.0f);
@@ -428,6 +488,256 @@ public class AEFrameChipRenderer extends AEChipRenderer {
         }
     }
 
+    /**
+     * Records that the event maps were changed at a pixmap index. The tile of
+     * the pixel is marked dirty, and the pixel is added to the list of pixels
+     * to clear before the next packet if it was not touched before.
+     * updateEventMaps calls this for the index of the event; subclasses that
+     * override updateEventMaps must call it for every index they write to,
+     * otherwise these pixels are not uploaded or cleared in incremental
+     * rendering.
+     *
+     * @param index the index into the maps as returned by
+     * {@link #getIndex(net.sf.jaer.event.BasicEvent)} or
+     * {@link #getPixMapIndex(int, int)}
+     */
+    protected final void touchPixMapIndex(final int index) {
+        if (!eventMapsTracked || (index < 0) || ((index >> 2) >= pixelGeneration.length)) {
+            return;
+        }
+        final int p = index >> 2, x = p % textureWidth, y = p / textureWidth;
+        final int t = ((y >> AEFrameChipRenderer.DIRTY_TILE_SHIFT) * tilesX) + (x >> AEFrameChipRenderer.DIRTY_TILE_SHIFT);
+        dirtyTiles[t >>> 6] |= 1L << t;
+        if (pixelGeneration[p] != generation) {
+            pixelGeneration[p] = generation;
+            if (numTouchedPixels == touchedPixels.length) {
+                touchedPixels = Arrays.copyOf(touchedPixels, 2 * numTouchedPixels);
+            }
+            touchedPixels[numTouchedPixels++] = p;
+        }
+    }
+
+    /**
+     * Clears the ON and OFF maps at the pixels touched by the previous packets
+     * instead of clearing the complete maps, and marks their tiles dirty so
+     * that they are uploaded again.
+     */
+    private void clearTouchedPixels() {
+        checkPixmapAllocation();
+        final float[] on = onMap.array(), off = offMap.array();
+        for (int i = 0; i < numTouchedPixels; i++) {
+            final int p = touchedPixels[i], k = p << 2;
+            on[k] = 0;
+            on[k + 1] = 0;
+            on[k + 2] = 0;
+            on[k + 3] = 0;
+            off[k] = 0;
+            off[k + 1] = 0;
+            off[k + 2] = 0;
+            off[k + 3] = 0;
+            final int t = (((p / textureWidth) >> AEFrameChipRenderer.DIRTY_TILE_SHIFT) * tilesX)
+                    + ((p % textureWidth) >> AEFrameChipRenderer.DIRTY_TILE_SHIFT);
+            dirtyTiles[t >>> 6] |= 1L << t;
+        }
+        numTouchedPixels = 0;
+        nextGeneration();
+    }
+
+    /**
+     * Starts a new generation of touched pixels, so that pixels are added to
+     * the list of touched pixels again
+     */
+    private void nextGeneration() {
+        if (++generation == 0) {
+            if (pixelGeneration != null) {
+                Arrays.fill(pixelGeneration, 0);
+            }
+            generation = 1;
+        }
+    }
+
+    /**
+     * Returns the regions of the ON and OFF event maps that changed since the
+     * last call, so that a display method can update only these parts of its
+     * textures. Dirty tiles that are adjacent in a row of tiles are merged into
+     * one region. The whole maps must be uploaded if incremental rendering is
+     * disabled, the maps were reset or reallocated, the last packet was not
+     * rendered by this class, or if more than half of the tiles changed.
+     *
+     * @param regions filled with the x, y, width and height of each region in
+     * texture pixels. Must hold 4 ints for each of
+     * {@link #getMaxDirtyEventMapRegions()} regions.
+     * @return the number of regions, or -1 if the whole maps must be uploaded
+     */
+    public synchronized int takeDirtyEventMapRegions(final int[] regions) {
+        checkPixmapAllocation();
+        int numDirty = 0;
+        for (final long w : dirtyTiles) {
+            numDirty += Long.bitCount(w);
+        }
+        final boolean full = eventMapsFullyChanged || !eventMapsTracked || !incrementalRenderingEnabled || ((2 * numDirty) > (tilesX * tilesY));
+        eventMapsFullyChanged = false;
+        if (full || (numDirty == 0)) {
+            Arrays.fill(dirtyTiles, 0);
+            return full ? -1 : 0;
+        }
+        int n = 0;
+        for (int ty = 0; ty < tilesY; ty++) {
+            int tx = 0;
+            while (tx < tilesX) {
+                int t = (ty * tilesX) + tx;
+                if ((dirtyTiles[t >>> 6] & (1L << t)) == 0) {
+                    tx++;
+                    continue;
+                }
+                final int start = tx;
+                do {
+                    dirtyTiles[t >>> 6] &= ~(1L << t);
+                    tx++;
+                    t++;
+                } while ((tx < tilesX) && ((dirtyTiles[t >>> 6] & (1L << t)) != 0));
+                final int x = start << AEFrameChipRenderer.DIRTY_TILE_SHIFT, y = ty << AEFrameChipRenderer.DIRTY_TILE_SHIFT;
+                regions[4 * n] = x;
+                regions[(4 * n) + 1] = y;
+                regions[(4 * n) + 2] = Math.min(tx << AEFrameChipRenderer.DIRTY_TILE_SHIFT, textureWidth) - x;
+                regions[(4 * n) + 3] = Math.min((ty + 1) << AEFrameChipRenderer.DIRTY_TILE_SHIFT, textureHeight) - y;
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return the largest number of regions that
+     * {@link #takeDirtyEventMapRegions(int[])} can return
+     */
+    public synchronized int getMaxDirtyEventMapRegions() {
+        checkPixmapAllocation();
+        return tilesX * tilesY;
+    }
+
+    /**
+     * Copies the frame, event and annotation maps to the display buffers. The
+     * ON and OFF maps are only copied in their dirty regions if they are
+     * rendered incrementally, which are then reported by
+     * {@link #getNumDisplayDirtyEventMapRegions()}.
+     */
+    @Override
+    protected void copyDisplayBuffers() {
+        checkPixmapAllocation();
+        super.copyDisplayBuffers();
+        displayAnnotateMap = AEChipRenderer.copyBuffer(annotateMap, displayAnnotateMap);
+        final int maxRegions = tilesX * tilesY;
+        if (displayDirtyRegions.length < (4 * maxRegions)) {
+            displayDirtyRegions = new int[4 * maxRegions];
+        }
+        int n = takeDirtyEventMapRegions(displayDirtyRegions);
+        if ((n < 0) || (displayOnMap == null) || (displayOnMap.capacity() != onMap.capacity())) {
+            displayOnMap = AEChipRenderer.copyBuffer(onMap, displayOnMap);
+            displayOffMap = AEChipRenderer.copyBuffer(offMap, displayOffMap);
+            n = -1;
+        } else {
+            final float[] on = onMap.array(), off = offMap.array(), displayOn = displayOnMap.array(), displayOff = displayOffMap.array();
+            for (int i = 0; i < n; i++) {
+                final int x = displayDirtyRegions[4 * i], y = displayDirtyRegions[(4 * i) + 1];
+                final int w = displayDirtyRegions[(4 * i) + 2], h = displayDirtyRegions[(4 * i) + 3];
+                for (int row = y; row < (y + h); row++) {
+                    final int k = 4 * ((row * textureWidth) + x);
+                    System.arraycopy(on, k, displayOn, k, 4 * w);
+                    System.arraycopy(off, k, displayOff, k, 4 * w);
+                }
+            }
+        }
+        // regions that the display did not take since the last copy are lost, so it must upload everything
+        numDisplayDirtyRegions = displayDirtyRegionsTaken ? n : -1;
+        displayDirtyRegionsTaken = false;
+    }
+
+    /**
+     * Returns the ON event map to draw: the copy of the last takeFrame with a
+     * decoupled display, otherwise getOnMap().
+     *
+     * @return the map
+     */
+    protected FloatBuffer getDisplayOnMap() {
+        final FloatBuffer b = displayOnMap;
+        return (isDisplayDecoupled() && (b != null)) ? b : getOnMap();
+    }
+
+    /**
+     * Returns the OFF event map to draw, see getDisplayOnMap().
+     *
+     * @return the map
+     */
+    protected FloatBuffer getDisplayOffMap() {
+        final FloatBuffer b = displayOffMap;
+        return (isDisplayDecoupled() && (b != null)) ? b : getOffMap();
+    }
+
+    /**
+     * Returns the annotation map to draw, see getDisplayOnMap().
+     *
+     * @return the map
+     */
+    protected FloatBuffer getDisplayAnnotateMap() {
+        final FloatBuffer b = displayAnnotateMap;
+        return (isDisplayDecoupled() && (b != null)) ? b : getAnnotateMap();
+    }
+
+    /**
+     * With a decoupled display, returns the regions of the display event maps
+     * that the last takeFrame changed, in the layout of
+     * {@link #takeDirtyEventMapRegions(int[])}. Not synchronized; for the
+     * display thread after takeFrame.
+     *
+     * @return the x, y, width and height of each region
+     * @see #getNumDisplayDirtyEventMapRegions()
+     */
+    public int[] getDisplayDirtyEventMapRegions() {
+        return displayDirtyRegions;
+    }
+
+    /**
+     * With a decoupled display, returns the number of regions of
+     * {@link #getDisplayDirtyEventMapRegions()} and marks them as taken.
+     *
+     * @return the number of regions, or -1 if the whole display maps must be
+     * uploaded
+     */
+    public int getNumDisplayDirtyEventMapRegions() {
+        displayDirtyRegionsTaken = true;
+        return displayOnMap == null ? -1 : numDisplayDirtyRegions;
+    }
+
+    /**
+     * @return true if the DVS event maps are rendered incrementally
+     * @see #setIncrementalRenderingEnabled(boolean)
+     */
+    public boolean isIncrementalRenderingEnabled() {
+        return incrementalRenderingEnabled;
+    }
+
+    /**
+     * Sets incremental rendering of the DVS event maps. Then the maps are not
+     * cleared completely for each packet; only the pixels touched by the
+     * previous packets are cleared. The pixels are tracked with a per-pixel
+     * generation stamp, and the changed tiles of
+     * {@link #DIRTY_TILE_SIZE}<sup>2</sup> pixels are reported to
+     * {@link ChipRendererDisplayMethodRGBA} by
+     * {@link #takeDirtyEventMapRegions(int[])} so that it only uploads these
+     * parts of the textures. For sparse scenes on large sensors this saves most
+     * of the rendering time. Subclasses that override {@link #render} without
+     * calling it are always uploaded completely.
+     *
+     * @param incrementalRenderingEnabled true to enable
+     */
+    public synchronized void setIncrementalRenderingEnabled(final boolean incrementalRenderingEnabled) {
+        this.incrementalRenderingEnabled = incrementalRenderingEnabled;
+        prefs.putBoolean("AEFrameChipRenderer.incrementalRenderingEnabled", incrementalRenderingEnabled);
+        eventMapsTracked = false;
+        resetMaps(); // pixels rendered before are not in the list of touched pixels
+    }
+
     private final Random random = new Random();
 
     protected void updateFrameBuffer(final ApsDvsEvent e) {
@@ -540,6 +850,7 @@ public class AEFrameChipRenderer extends AEChipRenderer {
         if ((index < 0) || (index >= map.length)) {
             return;
         }
+        touchPixMapIndex(index);
 
         if (packet.getNumCellTypes() > 2) {
             checkTypeColors(packet.getNumCellTypes());
@@ -665,6 +976,18 @@ public class AEFrameChipRenderer extends AEChipRenderer {
             offMap = FloatBuffer.allocate(n);
             annotateMap = FloatBuffer.allocate(n);
         }
+        if ((pixelGeneration == null) || (pixelGeneration.length != (textureWidth * textureHeight))) {
+            pixelGeneration = new int[textureWidth * textureHeight];
+            generation = 1;
+            tilesX = (textureWidth + AEFrameChipRenderer.DIRTY_TILE_SIZE - 1) >> AEFrameChipRenderer.DIRTY_TILE_SHIFT;
+            tilesY = (textureHeight + AEFrameChipRenderer.DIRTY_TILE_SIZE - 1) >> AEFrameChipRenderer.DIRTY_TILE_SHIFT;
+            dirtyTiles = new long[((tilesX * tilesY) + 63) >> 6];
+            if (touchedPixels == null) {
+                touchedPixels = new int[1024];
+            }
+            numTouchedPixels = 0;
+            eventMapsFullyChanged = true;
+        }
     }
 
     /**
@@ -569,6 +569,22 @@ public class AEPlayer extends AbstractAEPlayer implements AEFileInputStreamInter
         aeFileInputStream.setFractionalPosition(frac);
     }
 
+    /**
+     * Seeks to the first event at or after the unwrapped timestamp, using the
+     * timestamp index of the file if it is available.
+     *
+     * @param absoluteUs the unwrapped timestamp in us
+     * @return the new position in events, or 0 if there is no input stream
+     * @see AEFileInputStream#seekToTimestamp(long)
+     */
+    @Override
+    public long seekToTimestamp(long absoluteUs) throws IOException {
+        if (aeFileInputStream == null) {
+            return 0;
+        }
+        return aeFileInputStream.seekToTimestamp(absoluteUs);
+    }
+
     @Override
     public void setTime(int time) {
 //            System.out.println(this+".setTime("+time+")");
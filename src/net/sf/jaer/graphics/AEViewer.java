@@ -90,6 +90,7 @@ import eu.seebetter.ini.chips.davis.DAVIS240C;
 import eu.seebetter.ini.chips.davis.Davis640;
 import net.sf.jaer.JAERViewer;
 import net.sf.jaer.aemonitor.AEMonitorInterface;
+import net.sf.jaer.aemonitor.AEMonitorRingBufferInterface;
 import net.sf.jaer.aemonitor.AEPacketRaw;
 import net.sf.jaer.aesequencer.AEMonitorSequencerInterface;
 import net.sf.jaer.aesequencer.AESequencerInterface;
@@ -99,6 +100,7 @@ import net.sf.jaer.biasgen.BiasgenHardwareInterface;
 import net.sf.jaer.chip.AEChip;
 import net.sf.jaer.chip.Calibratible;
 import net.sf.jaer.chip.EventExtractor2D;
+import net.sf.jaer.event.BasicEvent;
 import net.sf.jaer.event.EventPacket;
 import net.sf.jaer.eventio.AEDataFile;
 import net.sf.jaer.eventio.AEFileInputStream;
@@ -113,6 +115,7 @@ import net.sf.jaer.eventio.AESocketDialog;
 import net.sf.jaer.eventio.AEUnicastDialog;
 import net.sf.jaer.eventio.AEUnicastInput;
 import net.sf.jaer.eventio.AEUnicastOutput;
+import net.sf.jaer.eventprocessing.AdaptivePacketScheduler;
 import net.sf.jaer.eventprocessing.EventFilter;
 import net.sf.jaer.eventprocessing.EventFilter2D;
 import net.sf.jaer.eventprocessing.FilterChain;
@@ -144,6 +147,7 @@ import net.sf.jaer.util.RemoteControl;
 import net.sf.jaer.util.RemoteControlCommand;
 import net.sf.jaer.util.RemoteControlled;
 import net.sf.jaer.util.TriangleSquareWindowsCornerIcon;
+import net.sf.jaer.util.PacketRing;
 import net.sf.jaer.util.WarningDialogWithDontShowPreference;
 import net.sf.jaer.util.filter.LowpassFilter;
 
@@ -583,6 +587,18 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
     // number of packets to skip over rendering, used to speed up real time processing
     private int skipPacketsRenderingNumberMax = prefs.getInt("AEViewer.skipPacketsRenderingNumber", 0), skipPacketsRenderingNumberCurrent = 0;
     private int skipPacketsRenderingCount = 0; // this is counter for skipping rendering cycles; set to zero to render first packet always
+    // pipelined view loop, see ViewLoop.runPipelined()
+    private volatile boolean pipelinedViewLoopEnabled = prefs.getBoolean("AEViewer.pipelinedViewLoopEnabled", false);
+    // display painted on its own thread from frames accumulated by the renderer, see setDecoupledDisplayEnabled()
+    private volatile boolean decoupledDisplayEnabled = prefs.getBoolean("AEViewer.decoupledDisplayEnabled", false);
+    private volatile DisplayThread displayThread = null;
+    // packets sized to a latency budget by an AdaptivePacketScheduler, see setAdaptivePacketSchedulingEnabled()
+    private volatile boolean adaptivePacketSchedulingEnabled = prefs.getBoolean("AEViewer.adaptivePacketSchedulingEnabled", false);
+    private final AdaptivePacketScheduler packetScheduler = new AdaptivePacketScheduler();
+    private volatile PacketRing.OverflowPolicy pipelineAcquisitionOverflowPolicy = getOverflowPolicyPreference("AEViewer.pipelineAcquisitionOverflowPolicy", PacketRing.OverflowPolicy.BLOCK);
+    private volatile PacketRing.OverflowPolicy pipelineNetworkOverflowPolicy = getOverflowPolicyPreference("AEViewer.pipelineNetworkOverflowPolicy", PacketRing.OverflowPolicy.DROP_OLDEST);
+    private int pipelineQueueLength = prefs.getInt("AEViewer.pipelineQueueLength", 8);
+    private static final int PIPELINE_POLL_MS = 20, PIPELINE_JOIN_TIMEOUT_MS = 2000, PIPELINE_INITIAL_PACKET_CAPACITY = 4096;
     private DropTarget dropTarget;
     private File draggedFile;
     private boolean loggingPlaybackImmediatelyEnabled = prefs.getBoolean("AEViewer.loggingPlaybackImmediatelyEnabled", false);
@@ -590,6 +606,10 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
     private long loggingTimeLimit = 0, loggingStartTime = System.currentTimeMillis();
     private boolean stereoModeEnabled = false;
     private boolean logFilteredEventsEnabled = prefs.getBoolean("AEViewer.logFilteredEventsEnabled", false);
+    private boolean compressedLoggingEnabled = prefs.getBoolean("AEViewer.compressedLoggingEnabled", false);
+    private boolean asyncLoggingEnabled = prefs.getBoolean("AEViewer.asyncLoggingEnabled", true);
+    private boolean asyncLoggingDropEnabled = prefs.getBoolean("AEViewer.asyncLoggingDropEnabled", false);
+    private javax.swing.Timer loggingStatusTimer = null;
     private DynamicFontSizeJLabel statisticsLabel;
     private boolean filterFrameBuilt = false; // flag to signal that the frame should be rebuilt when initially shown or when chip is changed
     private AEChip chip;
@@ -730,6 +750,9 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         }
         filtersSubMenu.getPopupMenu().setLightWeightPopupEnabled(false); // otherwise can't see on canvas
         graphicsSubMenu.getPopupMenu().setLightWeightPopupEnabled(false);
+        addPipelinedViewLoopMenu();
+        addDecoupledDisplayMenu();
+        addAdaptivePacketSchedulingMenu();
         remoteMenu.getPopupMenu().setLightWeightPopupEnabled(false); // make remote submenu heavy to show over glcanvas
 
         ToolTipManager.sharedInstance().setLightWeightPopupEnabled(false); // to show menu tips over GLCanvas
@@ -827,6 +850,9 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         pauseRenderingCheckBoxMenuItem.setSelected(false);// not isPaused because aePlayer doesn't exist yet
         viewRenderBlankFramesCheckBoxMenuItem.setSelected(isRenderBlankFramesEnabled());
         logFilteredEventsCheckBoxMenuItem.setSelected(logFilteredEventsEnabled);
+        compressedLoggingCheckBoxMenuItem.setSelected(compressedLoggingEnabled);
+        asyncLoggingCheckBoxMenuItem.setSelected(asyncLoggingEnabled);
+        asyncLoggingDropCheckBoxMenuItem.setSelected(asyncLoggingDropEnabled);
         enableFiltersOnStartupCheckBoxMenuItem.setSelected(enableFiltersOnStartup);
         setFwdRewindNCount.setText("Set forward/rewind N... (currently "+getAePlayer().getFastFowardRewindPacketCount()+")");
 
@@ -901,6 +927,7 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
      */
     private void cleanup() {
         stopLogging(true); // in case logging, make sure we give chance to save file
+        stopDisplayThread();
         if ((aemon != null) && aemon.isOpen()) {
             log.info("closing " + aemon);
             aemon.close();
@@ -1634,6 +1661,10 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
                     if (aemon instanceof HasUsbStatistics) {
                         printUSBStatisticsCBMI.setSelected(((HasUsbStatistics) aemon).isPrintUsbStatistics());
                     }
+                    ringBufferAcquisitionCBMI.setEnabled(aemon instanceof AEMonitorRingBufferInterface);
+                    if (aemon instanceof AEMonitorRingBufferInterface) {
+                        ringBufferAcquisitionCBMI.setSelected(((AEMonitorRingBufferInterface) aemon).isRingBufferAcquisitionEnabled());
+                    }
                 } else if ((chip.getHardwareInterface() != null) && (chip.getHardwareInterface() instanceof AESequencerInterface)) {
                     // the 'chip's' hardware interface is a pure sequencer
                     enableMonSeqMenu(true);
@@ -1725,6 +1756,10 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         //        volatile boolean renderImageEnabled=true;
         volatile boolean singleStepEnabled = false, doSingleStep = false;
         int numRawEvents, numFilteredEvents;
+        private final AEPacketRaw scheduledPacket = new AEPacketRaw();
+        private int scheduledEvents = 0;
+        private long scheduledStartNs = 0;
+        private PlayMode scheduledPlayMode = null;
         //                volatile boolean rerenderFlagDone=false; // used by view loop to signal to other methods that it has finished a rendering. view loop sets this true after each loop.
 
         public ViewLoop() {
@@ -1733,29 +1768,67 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         }
 
         private void renderPacket(EventPacket ae) {
-            if (aePlayer.isChoosingFile() || (ae == null) || (!isRenderBlankFramesEnabled() && (ae.getSize() == 0))) {
+            if (!accumulatePacket(ae)) {
                 return;
+            }
+            paintFrame();
+
+        } // renderEvents
+
+        /**
+         * Paints the frame already rendered into the renderer.
+         */
+        private void paintFrame() {
+            if (decoupledDisplayEnabled) {
+                requestDecoupledDisplay(); // never waits for the display
+            } else if (isActiveRenderingEnabled()) {
+                chipCanvas.paintFrame(); // actively paint frame now, either with OpenGL or Java2D, depending on switch
+            } else {
+                //                log.info("repaint by "+1000/frameRater.getDesiredFPS()+" ms");
+                chipCanvas.repaint();
+                //                chipCanvas.repaint(1000 / frameRater.getDesiredFPS()); // ask for repaint within frame time
+            }
+        }
+
+        /**
+         * Renders a packet into the renderer without painting it.
+         *
+         * @return false if the packet was not rendered because it is empty or
+         * a file is being chosen
+         */
+        private boolean accumulatePacket(EventPacket<?> ae) {
+            if (aePlayer.isChoosingFile() || (ae == null) || (!isRenderBlankFramesEnabled() && (ae.getSize() == 0))) {
+                return false;
             } // don't render while filechooser is active
 //            boolean subsamplingEnabled = getRenderer().isSubsamplingEnabled();
             //            if (isPaused()) {
             //                getRenderer().setSubsamplingEnabled(false);
             //            } // not needed and always overwrites the preference value
-            if (!(getRenderer().isAccumulateEnabled() && isPaused())) {
-                getRenderer().render(packet);
+            final AEChipRenderer renderer = getRenderer();
+            renderer.setDisplayDecoupled(decoupledDisplayEnabled);
+            if (!(renderer.isAccumulateEnabled() && isPaused())) {
+                renderer.render(ae);
             }
             //            if (isPaused()) {
             //                getRenderer().setSubsamplingEnabled(subsamplingEnabled);
             //            }
-            //            if(renderImageEnabled) {
-            if (isActiveRenderingEnabled()) {
-                chipCanvas.paintFrame(); // actively paint frame now, either with OpenGL or Java2D, depending on switch
-            } else {
-                //                log.info("repaint by "+1000/frameRater.getDesiredFPS()+" ms");
-                chipCanvas.repaint();
-                //                chipCanvas.repaint(1000 / frameRater.getDesiredFPS()); // ask for repaint within frame time
-            }
+            return true;
+        }
 
-        } // renderEvents
+        /**
+         * Asks the display thread to paint the canvas, starting it if needed.
+         */
+        private void requestDecoupledDisplay() {
+            DisplayThread t = displayThread;
+            if (t == null) {
+                t = new DisplayThread(chipCanvas, getFrameRater().getDesiredFPS());
+                displayThread = t;
+                t.start();
+                log.info("started " + t.getName());
+            }
+            t.setMaxFps(getFrameRater().getDesiredFPS());
+            t.requestDisplay();
+        }
 
         private EventPacket extractPacket(AEPacketRaw aeRaw) {
             boolean subsamplingEnabled = getRenderer().isSubsamplingEnabled();
@@ -1784,6 +1857,345 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
             stop = true;
         }
 
+        /**
+         * Runs the view loop as a staged pipeline until pipelining is
+         * disabled, the loop is stopped or the viewer is globalized.
+         * Acquisition, extraction and filtering, logging and network output
+         * each run on their own thread and are connected by PacketRing's of
+         * recycled packets, so that a slow filter chain or a blocking disk
+         * write does not immediately stall acquisition. This thread renders
+         * the most recent filtered packet at the desired frame rate, skipping
+         * packets that were processed in the meantime. Logging sees every
+         * processed packet; filtering sees every acquired packet unless the
+         * acquisition overflow policy drops packets; network output follows
+         * its own overflow policy.
+         */
+        private void runPipelined() {
+            if (chip.getFilterChain() != null) {
+                chip.getFilterChain().setTimeLimitSuspended(false); // the pipelined loop doesn't use the packet scheduler
+            }
+            final ViewLoopPipeline pipeline = new ViewLoopPipeline();
+            log.info("starting " + pipeline);
+            pipeline.start();
+            RenderSlot renderSlot = null; // the slot being rendered, held until a newer one arrives
+            try {
+                while (!stop && pipelinedViewLoopEnabled && !globalized) {
+                    getFrameRater().takeBefore();
+                    RenderSlot newSlot = pipeline.renderRing.poll();
+                    if (newSlot != null) {
+                        pipeline.renderRing.release(renderSlot);
+                        renderSlot = newSlot;
+                    }
+                    if ((renderSlot != null) && (renderSlot.packet != null)) {
+                        try {
+                            if ((newSlot == null) || decoupledDisplayEnabled) {
+                                paintFrame(); // nothing new to render, or the processing stage already rendered every packet
+                            } else {
+                                renderPacket(renderSlot.packet);
+                            }
+                        } catch (RuntimeException e) {
+                            log.warning("caught " + e.toString() + " while rendering");
+                            e.printStackTrace();
+                        }
+                        if (newSlot != null) {
+                            numFilteredEvents = renderSlot.packet.getSizeNotFilteredOut();
+                            makeStatisticsLabel(renderSlot.packet);
+                        }
+                    }
+                    getFrameRater().takeAfter();
+                    renderCount++;
+                    fpsDelay();
+                }
+            } finally {
+                pipeline.stopStages();
+                log.info("stopped " + pipeline);
+            }
+        }
+
+        /**
+         * Holds the copy of a filtered packet that is handed to rendering.
+         */
+        private class RenderSlot {
+
+            EventPacket<?> packet = null;
+
+            /**
+             * Copies a packet into this slot, replacing the slot's packet if
+             * it cannot hold the events of <code>p</code>.
+             */
+            @SuppressWarnings("unchecked")
+            void copyFrom(EventPacket<?> p) {
+                if ((packet == null) || (packet.getClass() != p.getClass()) || (packet.getEventClass() != p.getEventClass())) {
+                    packet = p.constructNewPacket();
+                }
+                ((EventPacket<BasicEvent>) packet).copyFrom(p);
+            }
+        }
+
+        /**
+         * Ring of recycled raw packets between pipeline stages.
+         */
+        private class RawPacketRing extends PacketRing<AEPacketRaw> {
+
+            RawPacketRing(int capacity, PacketRing.OverflowPolicy policy) {
+                super(capacity, policy);
+            }
+
+            @Override
+            protected AEPacketRaw createSlot() {
+                return new AEPacketRaw(PIPELINE_INITIAL_PACKET_CAPACITY);
+            }
+        }
+
+        /**
+         * The stage threads and the rings between them for the pipelined view
+         * loop.
+         */
+        private class ViewLoopPipeline {
+
+            final RawPacketRing acquisitionRing = new RawPacketRing(pipelineQueueLength, pipelineAcquisitionOverflowPolicy);
+            final RawPacketRing loggingRing = new RawPacketRing(pipelineQueueLength, PacketRing.OverflowPolicy.BLOCK); // logging must see every packet
+            final RawPacketRing networkRing = new RawPacketRing(pipelineQueueLength, pipelineNetworkOverflowPolicy);
+            final PacketRing<RenderSlot> renderRing = new PacketRing<RenderSlot>(3, PacketRing.OverflowPolicy.LATEST_ONLY) {
+                @Override
+                protected RenderSlot createSlot() {
+                    return new RenderSlot();
+                }
+            };
+            private volatile boolean running = false;
+            private final Thread[] threads = new Thread[4];
+
+            void start() {
+                running = true;
+                threads[0] = new Thread("AEViewer.ViewLoop.Acquisition") {
+                    @Override
+                    public void run() {
+                        acquire();
+                    }
+                };
+                threads[1] = new Thread("AEViewer.ViewLoop.Processing") {
+                    @Override
+                    public void run() {
+                        process();
+                    }
+                };
+                threads[2] = new Thread("AEViewer.ViewLoop.Logging") {
+                    @Override
+                    public void run() {
+                        writeLog();
+                    }
+                };
+                threads[3] = new Thread("AEViewer.ViewLoop.NetworkOutput") {
+                    @Override
+                    public void run() {
+                        writeNetwork();
+                    }
+                };
+                for (Thread t : threads) {
+                    t.setDaemon(true);
+                    t.start();
+                }
+                threads[0].setPriority(Thread.MAX_PRIORITY); // acquisition should keep draining the device
+            }
+
+            /**
+             * Stops the stages. Threads are not interrupted, since interrupting
+             * a thread that is reading a file closes the file's channel; they
+             * notice the stop within PIPELINE_POLL_MS or after their current
+             * blocking read. Queued log packets are still written.
+             */
+            void stopStages() {
+                running = false;
+                for (Thread t : threads) {
+                    if (t == null) {
+                        continue;
+                    }
+                    try {
+                        t.join(PIPELINE_JOIN_TIMEOUT_MS);
+                    } catch (InterruptedException e) {
+                    }
+                    if (t.isAlive()) {
+                        log.warning(t.getName() + " did not stop within " + PIPELINE_JOIN_TIMEOUT_MS + " ms");
+                    }
+                }
+            }
+
+            private boolean isRunning() {
+                return running && !stop;
+            }
+
+            private void acquire() {
+                while (isRunning()) {
+                    if (isPaused() && !isSingleStep()) {
+                        sleepMs(PIPELINE_POLL_MS);
+                        continue;
+                    }
+                    long startNs = System.nanoTime();
+                    if (grabInput()) {
+                        continue; // no input, grabInput already delayed
+                    }
+                    AEPacketRaw slot = claim(acquisitionRing);
+                    if (slot != null) {
+                        slot.copyFrom(aeRaw);
+                        slot.overrunOccuredFlag |= overrunOccurred;
+                        acquisitionRing.publish(slot);
+                    }
+                    singleStepDone();
+                    if (getPlayMode() == PlayMode.PLAYBACK) { // pace file playback at the frame rate, live and remote input is paced by its source
+                        long sleepMs = (1000 / getFrameRater().getDesiredFPS()) - ((System.nanoTime() - startNs) / 1000000);
+                        if (sleepMs > 0) {
+                            sleepMs(sleepMs);
+                        }
+                    }
+                }
+            }
+
+            private void process() {
+                while (isRunning()) {
+                    AEPacketRaw raw;
+                    try {
+                        raw = acquisitionRing.take(PIPELINE_POLL_MS);
+                    } catch (InterruptedException e) {
+                        continue;
+                    }
+                    if (raw == null) {
+                        continue;
+                    }
+                    try {
+                        processRawPacket(raw);
+                    } catch (RuntimeException e) {
+                        log.log(Level.WARNING, "caught exception while processing packet", e);
+                    } finally {
+                        acquisitionRing.release(raw);
+                    }
+                }
+            }
+
+            private void processRawPacket(AEPacketRaw raw) {
+                overrunOccurred = raw.overrunOccuredFlag;
+                numRawEvents = raw.getNumEvents();
+                EventPacket<?> p = extractPacket(raw);
+                if (p == null) {
+                    log.warning("packet became null after extracting events from raw input packet");
+                    return;
+                }
+                numEvents = p.getSize();
+                p = filterPacket(p);
+                if (p == null) {
+                    return;
+                }
+                packet = p;
+                chip.setLastData(p);// set the rendered data for use by various methods
+                if (decoupledDisplayEnabled) {
+                    accumulatePacket(p); // every filtered packet goes into the displayed frames
+                }
+                final boolean logging = loggingEnabled, output = isAnyOutputStreamEnabled();
+                if (logging || output) {
+                    final AEPacketRaw out = !isLogFilteredEventsEnabled() ? raw : extractor.reconstructRawPacket(p);
+                    if (logging) {
+                        handOff(loggingRing, out);
+                    }
+                    if (output) {
+                        handOff(networkRing, out);
+                    }
+                }
+                RenderSlot r = null;
+                try {
+                    r = renderRing.claim(0);
+                } catch (InterruptedException e) {
+                }
+                if (r != null) {
+                    r.copyFrom(p);
+                    renderRing.publish(r);
+                }
+                if (numEvents == 0) {
+                    noEventCounter++;
+                } else {
+                    noEventCounter = 0;
+                }
+            }
+
+            private void writeLog() {
+                while (isRunning() || (loggingRing.getQueuedCount() > 0)) {
+                    AEPacketRaw raw;
+                    try {
+                        raw = loggingRing.take(PIPELINE_POLL_MS);
+                    } catch (InterruptedException e) {
+                        continue;
+                    }
+                    if (raw == null) {
+                        continue;
+                    }
+                    try {
+                        if (loggingEnabled && (loggingOutputStream != null)) {
+                            logPacket(raw);
+                        }
+                    } finally {
+                        loggingRing.release(raw);
+                    }
+                }
+            }
+
+            private void writeNetwork() {
+                while (isRunning()) {
+                    AEPacketRaw raw;
+                    try {
+                        raw = networkRing.take(PIPELINE_POLL_MS);
+                    } catch (InterruptedException e) {
+                        continue;
+                    }
+                    if (raw == null) {
+                        continue;
+                    }
+                    try {
+                        writeOutputStreams(raw);
+                    } catch (RuntimeException e) {
+                        log.log(Level.WARNING, "caught exception while writing output streams", e);
+                    } finally {
+                        networkRing.release(raw);
+                    }
+                }
+            }
+
+            /**
+             * Claims a slot from the ring, waiting while the policy is BLOCK
+             * and the pipeline is running.
+             *
+             * @return the slot or null if the packet is dropped
+             */
+            private AEPacketRaw claim(RawPacketRing ring) {
+                AEPacketRaw slot = null;
+                try {
+                    do {
+                        slot = ring.claim(PIPELINE_POLL_MS);
+                    } while ((slot == null) && isRunning() && (ring.getOverflowPolicy() == PacketRing.OverflowPolicy.BLOCK));
+                } catch (InterruptedException e) {
+                }
+                return slot;
+            }
+
+            private void handOff(RawPacketRing ring, AEPacketRaw src) {
+                AEPacketRaw slot = claim(ring);
+                if (slot != null) {
+                    slot.copyFrom(src);
+                    ring.publish(slot);
+                }
+            }
+
+            private void sleepMs(long ms) {
+                try {
+                    Thread.sleep(ms);
+                } catch (InterruptedException e) {
+                }
+            }
+
+            @Override
+            public String toString() {
+                return "pipelined view loop: acquisition " + acquisitionRing + "; logging " + loggingRing + "; network " + networkRing
+                        + "; rendering " + renderRing;
+            }
+        }
+
         /**
          * The main loop of AEViewer - this is the 'game loop' of the program.
          */
@@ -1800,6 +2212,10 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
                 }
             }
             while (stop == false/*&& !isInterrupted()*/) { // the only way to break out of the run loop is either setting stop true or by some uncaught exception.
+                if (pipelinedViewLoopEnabled && !globalized) {
+                    runPipelined(); // returns when pipelining is disabled or the loop is stopped
+                    continue;
+                }
                 // now getString the data to be displayed
                 if (!isPaused() || (isSingleStep() && !isInterrupted())) { // we check interrupted to make sure we are not getting data after being interrupted
                     //                    if(isSingleStep()){
@@ -1812,7 +2228,7 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
                     getFrameRater().takeBefore();
 
                     // Grab input from one of various sources
-                    boolean skipTheRest = grabInput();
+                    boolean skipTheRest = adaptivePacketSchedulingEnabled ? grabScheduledInput() : grabInput();
 
                     // If there's nothing to do:
                     if (skipTheRest) {
@@ -1899,6 +2315,10 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
                     makeStatisticsLabel(packet);
                     skipPacketsRenderingCount = skipPacketsRenderingCheckBoxMenuItem.isSelected() ? skipPacketsRenderingNumberCurrent : 0;
                 }
+                if (scheduledEvents > 0) {
+                    packetScheduler.processed(scheduledEvents, System.nanoTime() - scheduledStartNs);
+                    scheduledEvents = 0;
+                }
                 getFrameRater().takeAfter();
                 renderCount++;
 
@@ -2198,6 +2618,42 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
             return false;  // false means there was no error, so go on to process the raw packet
         }
 
+        /**
+         * Grabs input like grabInput() into the backlog of the
+         * AdaptivePacketScheduler and sets aeRaw to the next packet sized to
+         * the latency budget. File playback is only read when the scheduler
+         * needs more input, while live and remote input is always read and the
+         * oldest events are dropped when processing cannot keep up.
+         *
+         * @return true if there is nothing to process in this iteration
+         */
+        private boolean grabScheduledInput() {
+            final PlayMode mode = getPlayMode();
+            if (mode != scheduledPlayMode) { // don't mix the backlog of a different source
+                packetScheduler.clear();
+                scheduledPlayMode = mode;
+            }
+            packetScheduler.setDroppingEnabled(mode != PlayMode.PLAYBACK);
+            if (chip.getFilterChain() != null) {
+                chip.getFilterChain().setTimeLimitSuspended(true); // also for the chain of a newly chosen chip
+            }
+            if ((mode != PlayMode.PLAYBACK) || packetScheduler.isInputNeeded()) {
+                if (grabInput()) {
+                    return true;
+                }
+                final int rate = ((mode == PlayMode.LIVE) && (aemon != null)) ? aemon.getEstimatedEventRate() : 0;
+                packetScheduler.offer(aeRaw, System.nanoTime(), rate);
+            }
+            aeRaw = packetScheduler.next(scheduledPacket);
+            scheduledEvents = aeRaw.getNumEvents();
+            if ((scheduledEvents == 0) && (packetScheduler.getBacklogEvents() > 0)) {
+                fpsDelay(); // held to coalesce with the next input
+                return true;
+            }
+            scheduledStartNs = System.nanoTime();
+            return false;
+        }
+
         /**
          * Filters packet through processing chain if ProcessingMode is
          * RENDERING or LIVE. If any filter throws an exception, all filters are
@@ -2206,14 +2662,27 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
          * @return true if packet is null, otherwise false.
          */
         boolean filterPacket() {
+            packet = filterPacket(packet);
+            return packet == null;
+        }
 
+        /**
+         * Filters the packet through the processing chain if ProcessingMode is
+         * RENDERING or LIVE. If any filter throws an exception, all filters are
+         * disabled.
+         *
+         * @param in the packet to filter
+         * @return the filtered packet, or null if the filter chain returned
+         * null
+         */
+        private EventPacket<?> filterPacket(EventPacket<?> in) {
             if (playerControls.isSliderBeingAdjusted()) {
-                return false; // don't run filters if user is manipulating position
+                return in; // don't run filters if user is manipulating position
             }
             // filter events, do processing on them in rendering loop here
             if ((filterChain.getProcessingMode() == FilterChain.ProcessingMode.RENDERING) || (playMode != PlayMode.LIVE)) {
                 try {
-                    packet = filterChain.filterPacket(packet);
+                    in = filterChain.filterPacket(in);
                 } catch (Exception e) {
                     log.warning("Caught " + e + ", disabling all filters. See following stack trace.");
                     e.printStackTrace();
@@ -2222,24 +2691,27 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
                         f.setFilterEnabled(false);
                     }
                 }
-                if (packet == null) {
-                    //   log.warning("null packet after filtering");
-                    return true;
-                }
+                //   if (in == null) log.warning("null packet after filtering");
             }
-            return false;
+            return in;
         }
 
         void logPacket() {
+            // log all events, or the reconstructed packet after filtering
+            logPacket(!isLogFilteredEventsEnabled() ? aeRaw : extractor.reconstructRawPacket(packet));
+        }
+
+        /**
+         * Writes a raw packet to the logging output stream and stops logging
+         * when the logging time limit is reached.
+         *
+         * @param rawToLog the raw packet, either acquired or reconstructed
+         * after filtering
+         */
+        void logPacket(AEPacketRaw rawToLog) {
             synchronized (loggingOutputStream) {
                 try {
-                    if (!isLogFilteredEventsEnabled()) {
-                        loggingOutputStream.writePacket(aeRaw); // log all events
-                    } else {
-                        // log the reconstructed packet after filtering
-                        AEPacketRaw aeRawRecon = extractor.reconstructRawPacket(packet);
-                        loggingOutputStream.writePacket(aeRawRecon);
-                    }
+                    loggingOutputStream.writePacket(rawToLog);
                 } catch (IOException e) {
                     e.printStackTrace();
                     loggingEnabled = false;
@@ -2275,30 +2747,37 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
          * @return
          */
         boolean writeOutputStreams() {
+            if (!isAnyOutputStreamEnabled()) {
+                return false;
+            }
+            // send all events, or the reconstructed packet after filtering
+            return writeOutputStreams(!isLogFilteredEventsEnabled() ? aeRaw : extractor.reconstructRawPacket(packet));
+        }
+
+        /**
+         * @return true if any network output stream needs packets
+         */
+        private boolean isAnyOutputStreamEnabled() {
+            return ((getAeServerSocket() != null) && getAeServerSocket().hasClients()) || socketOutputEnabled
+                    || (multicastOutputEnabled && (aeMulticastOutput != null)) || (unicastOutputEnabled && (unicastOutput != null));
+        }
+
+        /**
+         * Writes a raw packet to the output streams. Returns true if the run
+         * loop should break.
+         *
+         * @param out the raw packet, either acquired or reconstructed after
+         * filtering
+         * @return true to break out of the run loop
+         */
+        boolean writeOutputStreams(AEPacketRaw out) {
             // write to network socket if a client has opened a socket to us
             // we serve up events on this socket
 
-            if ((getAeServerSocket() != null) && (getAeServerSocket().getAESocket() != null)) {
-                AESocket s = getAeServerSocket().getAESocket();
-                try {
-                    if (!isLogFilteredEventsEnabled()) {
-                        s.writePacket(aeRaw);
-                    } else {
-                        // send the reconstructed packet after filtering
-                        AEPacketRaw aeRawRecon = extractor.reconstructRawPacket(packet);
-                        s.writePacket(aeRawRecon);
-                    }
-                } catch (IOException e) {
-                    //                            e.printStackTrace();
-                    log.warning("sending packet " + aeRaw + " from " + this + " to " + s + " failed, closing socket");
-                    try {
-                        s.close();
-                    } catch (IOException e2) {
-                        e2.printStackTrace();
-                    } finally {
-                        getAeServerSocket().setSocket(null);
-                    }
-                }
+            // the server only queues the packet for each client, so a slow client cannot stall this loop
+            if ((getAeServerSocket() != null) && getAeServerSocket().hasClients()) {
+                getAeServerSocket().setEventExtractor(chip.getEventExtractor());
+                getAeServerSocket().writePacket(out);
             }
 
             if (socketOutputEnabled) {
@@ -2308,13 +2787,7 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
                     socketOutputEnabled = false;
                 } else {
                     try {
-                        if (!isLogFilteredEventsEnabled()) {
-                            getAeSocketClient().writePacket(aeRaw);
-                        } else {
-                            // send the reconstructed packet after filtering
-                            AEPacketRaw aeRawRecon = extractor.reconstructRawPacket(packet);
-                            getAeSocketClient().writePacket(aeRawRecon);
-                        }
+                        getAeSocketClient().writePacket(out);
                         // reads a packet if there is data available // TODO should throw interrupted excpetion
                     } catch (IOException e) {
                         if (stop) {
@@ -2340,13 +2813,7 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
             // if we are multicasting output send it out here
             if (multicastOutputEnabled && (aeMulticastOutput != null)) {
                 try {
-                    if (!isLogFilteredEventsEnabled()) {
-                        aeMulticastOutput.writePacket(aeRaw);
-                    } else {
-                        // log the reconstructed packet after filtering
-                        AEPacketRaw aeRawRecon = extractor.reconstructRawPacket(packet);
-                        aeMulticastOutput.writePacket(aeRawRecon);
-                    }
+                    aeMulticastOutput.writePacket(out);
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
@@ -2354,15 +2821,9 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
 
             if (unicastOutputEnabled && (unicastOutput != null)) {
                 try {
-                    if (!isLogFilteredEventsEnabled()) {
-                        unicastOutput.writePacket(aeRaw);
-                    } else {
-                        // log the reconstructed packet after filtering.
-                        // TODO handle reconstructed packet with filtering that transforms events. At present the original raw addresses are sent out, so e.g. rotation will not appear
-                        // in the output.
-                        AEPacketRaw aeRawRecon = extractor.reconstructRawPacket(packet);
-                        unicastOutput.writePacket(aeRawRecon);
-                    }
+                    // TODO handle reconstructed packet with filtering that transforms events. At present the original raw addresses are sent out, so e.g. rotation will not appear
+                    // in the output.
+                    unicastOutput.writePacket(out);
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
@@ -2930,6 +3391,9 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         loggingPlaybackImmediatelyCheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
         loggingSetTimelimitMenuItem = new javax.swing.JMenuItem();
         logFilteredEventsCheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
+        compressedLoggingCheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
+        asyncLoggingCheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
+        asyncLoggingDropCheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
         networkSeparator = new javax.swing.JSeparator();
         remoteMenu = new javax.swing.JMenu();
         openSocketInputStreamMenuItem = new javax.swing.JMenuItem();
@@ -3016,6 +3480,7 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         setDefaultFirmwareMenuItem = new javax.swing.JMenuItem();
         jSeparator6 = new javax.swing.JPopupMenu.Separator();
         printUSBStatisticsCBMI = new javax.swing.JCheckBoxMenuItem();
+        ringBufferAcquisitionCBMI = new javax.swing.JCheckBoxMenuItem();
         monSeqMenu = new javax.swing.JMenu();
         sequenceMenuItem = new javax.swing.JMenuItem();
         enableMissedEventsCheckBox = new javax.swing.JCheckBoxMenuItem();
@@ -3258,6 +3723,36 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
             }
         });
         fileMenu.add(logFilteredEventsCheckBoxMenuItem);
+
+        compressedLoggingCheckBoxMenuItem.setText("Log to compressed AER-DAT2.1 files");
+        compressedLoggingCheckBoxMenuItem.setToolTipText("Logging writes compressed, chunked AER-DAT2.1 files, which are typically less than half the size of AER-DAT2.0 files but can only be played by recent jAER");
+        compressedLoggingCheckBoxMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            @Override
+			public void actionPerformed(java.awt.event.ActionEvent evt) {
+                compressedLoggingCheckBoxMenuItemActionPerformed(evt);
+            }
+        });
+        fileMenu.add(compressedLoggingCheckBoxMenuItem);
+
+        asyncLoggingCheckBoxMenuItem.setText("Write logged data in background thread");
+        asyncLoggingCheckBoxMenuItem.setToolTipText("Logging hands packets to a writer thread through a bounded queue so that slow disks don't stall acquisition and display; takes effect when logging starts");
+        asyncLoggingCheckBoxMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            @Override
+			public void actionPerformed(java.awt.event.ActionEvent evt) {
+                asyncLoggingCheckBoxMenuItemActionPerformed(evt);
+            }
+        });
+        fileMenu.add(asyncLoggingCheckBoxMenuItem);
+
+        asyncLoggingDropCheckBoxMenuItem.setText("Drop logged packets when disk is too slow");
+        asyncLoggingDropCheckBoxMenuItem.setToolTipText("When the background writer queue is full, drop and count packets instead of waiting for the disk");
+        asyncLoggingDropCheckBoxMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            @Override
+			public void actionPerformed(java.awt.event.ActionEvent evt) {
+                asyncLoggingDropCheckBoxMenuItemActionPerformed(evt);
+            }
+        });
+        fileMenu.add(asyncLoggingDropCheckBoxMenuItem);
         fileMenu.add(networkSeparator);
 
         remoteMenu.setMnemonic('r');
@@ -3990,6 +4485,16 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         });
         controlMenu.add(printUSBStatisticsCBMI);
 
+        ringBufferAcquisitionCBMI.setText("Lock-free ring buffer acquisition");
+        ringBufferAcquisitionCBMI.setToolTipText("<html>Hands events from the USB reader thread to the viewer through a lock-free ring of buffers,<br>so that the reader never waits for rendering; events that don't fit are dropped and counted");
+        ringBufferAcquisitionCBMI.addActionListener(new java.awt.event.ActionListener() {
+            @Override
+			public void actionPerformed(java.awt.event.ActionEvent evt) {
+                ringBufferAcquisitionCBMIActionPerformed(evt);
+            }
+        });
+        controlMenu.add(ringBufferAcquisitionCBMI);
+
         menuBar.add(controlMenu);
 
         monSeqMenu.setText("MonSeq");
@@ -4660,8 +5165,13 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
             setStatusMessage(null);
         } else if (evt.getSource() instanceof AEFileInputStream) {
             switch (evt.getPropertyName()) {
-                case AEInputStream.EVENT_REWIND:
+                case AEInputStream.EVENT_REWIND: // also when playback repeats
                     log.info("rewind");
+                    packetScheduler.clear(); // don't process the backlog from before the jump together with the events after it
+                    firePropertyChange(evt.getPropertyName(), evt.getOldValue(), evt.getNewValue());
+                    break;
+                case AEInputStream.EVENT_REPOSITIONED:
+                    packetScheduler.clear();
                     firePropertyChange(evt.getPropertyName(), evt.getOldValue(), evt.getNewValue());
                     break;
                 case AEInputStream.EVENT_POSITION:
@@ -4671,6 +5181,9 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
                     firePropertyChange(evt.getPropertyName(), evt.getOldValue(), evt.getNewValue());
             }
         } else if (evt.getSource() instanceof AEPlayer) {
+            if (evt.getPropertyName().equals(AEInputStream.EVENT_REPOSITIONED) || evt.getPropertyName().equals(AEPlayer.EVENT_FILEOPEN)) {
+                packetScheduler.clear();
+            }
             firePropertyChange(evt.getPropertyName(), evt.getOldValue(), evt.getNewValue());  // forward/refire events from AEFileInputStream to listeners on AEViewer
         }
     }
@@ -4881,6 +5394,13 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
             loggingFile = new File(filename);
 //			loggingOutputStream = new AEFileOutputStream(new BufferedOutputStream(new FileOutputStream(loggingFile), AEFileOutputStream.OUTPUT_BUFFER_SIZE), chip); // tobi changed to 8k buffer (from 400k) because this has measurablly better performance than super large buffer
             loggingOutputStream = new AEFileOutputStream(new FileOutputStream(loggingFile), chip, dataFileVersionNum); // tobi changed to 8k buffer (from 400k) because this has measurablly better performance than super large buffer
+            if (asyncLoggingEnabled && !loggingOutputStream.isAsyncWriterSupported()) {
+                log.info("background writing does not support this data file version, writing in the view loop");
+            } else if (asyncLoggingEnabled) {
+                loggingOutputStream.startAsyncWriter(AEFileOutputStream.DEFAULT_ASYNC_NUM_BUFFERS,
+                        asyncLoggingDropEnabled ? AEFileOutputStream.OverflowPolicy.DROP : AEFileOutputStream.OverflowPolicy.STALL);
+                startLoggingStatusTimer();
+            }
 
             if (playMode == PlayMode.PLAYBACK) { // add change listener for rewind to stop logging
                 getAePlayer().getAEInputStream().getSupport().addPropertyChangeListener(AEInputStream.EVENT_REWIND, new PropertyChangeListener() {
@@ -4924,6 +5444,33 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         return loggingFile;
     }
 
+    /**
+     * Shows the state of the background logging writer in the status bar
+     * every second while logging.
+     */
+    private void startLoggingStatusTimer() {
+        stopLoggingStatusTimer();
+        loggingStatusTimer = new javax.swing.Timer(1000, new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                AEFileOutputStream s = loggingOutputStream;
+                if (loggingEnabled && (s != null) && s.isAsync()) {
+                    setStatusMessage(s.getAsyncStatus());
+                    setStatusColor(s.getAsyncDroppedPackets() > 0 ? Color.red : Color.black);
+                }
+            }
+        });
+        loggingStatusTimer.start();
+    }
+
+    private void stopLoggingStatusTimer() {
+        if (loggingStatusTimer != null) {
+            loggingStatusTimer.stop();
+            loggingStatusTimer = null;
+        }
+    }
+
     /**
      * Starts logging data to a default data logging file.
      *
@@ -4945,7 +5492,7 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
 //        if(dataFileVersionNum == null) {
 //            return null;
 //        }
-        dataFileVersionNum = "2.0";
+        dataFileVersionNum = compressedLoggingEnabled ? AEDataFile.COMPRESSED_DATA_FILE_VERSION_NUMBER : "2.0";
 
         String dateString
                 = AEDataFile.DATE_FORMAT.format(new Date());
@@ -5017,6 +5564,7 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
             loggingMenuItem.setText("Start logging data");
             try {
                 log.info("stopped logging at " + AEDataFile.DATE_FORMAT.format(new Date()) + " to file " + loggingFile);
+                stopLoggingStatusTimer();
                 synchronized (loggingOutputStream) {
                     loggingEnabled = false;
                     loggingOutputStream.close();
@@ -5611,6 +6159,18 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
             setLogFilteredEventsEnabled(logFilteredEventsCheckBoxMenuItem.isSelected());
 	}//GEN-LAST:event_logFilteredEventsCheckBoxMenuItemActionPerformed
 
+	private void compressedLoggingCheckBoxMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_compressedLoggingCheckBoxMenuItemActionPerformed
+            setCompressedLoggingEnabled(compressedLoggingCheckBoxMenuItem.isSelected());
+	}//GEN-LAST:event_compressedLoggingCheckBoxMenuItemActionPerformed
+
+	private void asyncLoggingCheckBoxMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_asyncLoggingCheckBoxMenuItemActionPerformed
+            setAsyncLoggingEnabled(asyncLoggingCheckBoxMenuItem.isSelected());
+	}//GEN-LAST:event_asyncLoggingCheckBoxMenuItemActionPerformed
+
+	private void asyncLoggingDropCheckBoxMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_asyncLoggingDropCheckBoxMenuItemActionPerformed
+            setAsyncLoggingDropEnabled(asyncLoggingDropCheckBoxMenuItem.isSelected());
+	}//GEN-LAST:event_asyncLoggingDropCheckBoxMenuItemActionPerformed
+
 	private void loggingSetTimelimitMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_loggingSetTimelimitMenuItemActionPerformed
             String ans = JOptionPane.showInputDialog(this, "Enter logging time limit in ms (0 for no limit)", loggingTimeLimit);
             try {
@@ -5691,6 +6251,12 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         }
     }//GEN-LAST:event_printUSBStatisticsCBMIActionPerformed
 
+    private void ringBufferAcquisitionCBMIActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_ringBufferAcquisitionCBMIActionPerformed
+        if ((chip.getHardwareInterface() != null) && (chip.getHardwareInterface() instanceof AEMonitorRingBufferInterface)) {
+            ((AEMonitorRingBufferInterface) chip.getHardwareInterface()).setRingBufferAcquisitionEnabled(ringBufferAcquisitionCBMI.isSelected());
+        }
+    }//GEN-LAST:event_ringBufferAcquisitionCBMIActionPerformed
+
     private void setFrameRateMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_setFrameRateMenuItemActionPerformed
         int fpsNow = getFrameRater().getDesiredFPS();
         String fpsString = JOptionPane.showInputDialog(this, "Desired frame rate?", Integer.toString(fpsNow));
@@ -6042,6 +6608,286 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         return logFilteredEventsEnabled;
     }
 
+    /**
+     * Adds the submenu for the pipelined view loop to the graphics menu.
+     */
+    private void addPipelinedViewLoopMenu() {
+        JMenu pipelineMenu = new JMenu("Pipelined view loop");
+        pipelineMenu.setToolTipText("<html>Runs acquisition, filtering, logging, network output and rendering on separate threads connected by queues of recycled packets.<br>Rendering shows only the most recent filtered packet.</html>");
+        pipelineMenu.getPopupMenu().setLightWeightPopupEnabled(false);
+        final JCheckBoxMenuItem enableItem = new JCheckBoxMenuItem("Enable pipelined view loop", isPipelinedViewLoopEnabled());
+        enableItem.setToolTipText("<html>Decouples the slow stages of the view loop from acquisition.<br>Not used when viewers are globalized (synchronized).</html>");
+        enableItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                setPipelinedViewLoopEnabled(enableItem.isSelected());
+            }
+        });
+        pipelineMenu.add(enableItem);
+        pipelineMenu.add(new JSeparator());
+        addOverflowPolicyItems(pipelineMenu, "Acquisition overflow", true);
+        pipelineMenu.add(new JSeparator());
+        addOverflowPolicyItems(pipelineMenu, "Network output overflow", false);
+        graphicsSubMenu.add(pipelineMenu);
+    }
+
+    private void addOverflowPolicyItems(JMenu menu, String label, final boolean acquisition) {
+        JMenuItem title = new JMenuItem(label);
+        title.setEnabled(false);
+        menu.add(title);
+        ButtonGroup group = new ButtonGroup();
+        PacketRing.OverflowPolicy current = acquisition ? getPipelineAcquisitionOverflowPolicy() : getPipelineNetworkOverflowPolicy();
+        for (final PacketRing.OverflowPolicy policy : PacketRing.OverflowPolicy.values()) {
+            JRadioButtonMenuItem item = new JRadioButtonMenuItem(policy.toString(), policy == current);
+            item.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    if (acquisition) {
+                        setPipelineAcquisitionOverflowPolicy(policy);
+                    } else {
+                        setPipelineNetworkOverflowPolicy(policy);
+                    }
+                }
+            });
+            group.add(item);
+            menu.add(item);
+        }
+    }
+
+    private PacketRing.OverflowPolicy getOverflowPolicyPreference(String key, PacketRing.OverflowPolicy defaultPolicy) {
+        try {
+            return PacketRing.OverflowPolicy.valueOf(prefs.get(key, defaultPolicy.toString()));
+        } catch (IllegalArgumentException e) {
+            log.warning("bad preference " + key + ", using " + defaultPolicy);
+            return defaultPolicy;
+        }
+    }
+
+    /**
+     * Adds the items for the decoupled display to the graphics menu.
+     */
+    private void addDecoupledDisplayMenu() {
+        final JCheckBoxMenuItem enableItem = new JCheckBoxMenuItem("Decoupled display", isDecoupledDisplayEnabled());
+        enableItem.setToolTipText("<html>Paints the display on its own thread at the desired frame rate.<br>"
+                + "Events are accumulated until they are displayed, so the view loop never waits for the display<br>"
+                + "and a slow display does not drop events from the rendering.</html>");
+        enableItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                setDecoupledDisplayEnabled(enableItem.isSelected());
+            }
+        });
+        graphicsSubMenu.add(enableItem);
+        final JMenuItem statisticsItem = new JMenuItem("Log display latency statistics");
+        statisticsItem.setToolTipText("Logs the display rate and the latency from packet arrival to display since the last time, and resets the statistics");
+        statisticsItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                log.info(getRenderer().getDisplayStatistics());
+                getRenderer().resetDisplayStatistics();
+                final DisplayThread t = displayThread;
+                if (t != null) {
+                    log.info(t.toString());
+                }
+            }
+        });
+        graphicsSubMenu.add(statisticsItem);
+    }
+
+    /**
+     * @return true if the display is painted on its own thread
+     * @see #setDecoupledDisplayEnabled(boolean)
+     */
+    public boolean isDecoupledDisplayEnabled() {
+        return decoupledDisplayEnabled;
+    }
+
+    /**
+     * Enables painting the display on a DisplayThread at the desired frame
+     * rate instead of on the view loop. The renderer then accumulates all
+     * packets until the display took the frame, so that the view loop (or the
+     * processing stage of the pipelined view loop) never waits for OpenGL and
+     * a display that is slower than the packets still shows all events.
+     *
+     * @param decoupledDisplayEnabled true to decouple
+     */
+    public void setDecoupledDisplayEnabled(boolean decoupledDisplayEnabled) {
+        this.decoupledDisplayEnabled = decoupledDisplayEnabled;
+        prefs.putBoolean("AEViewer.decoupledDisplayEnabled", decoupledDisplayEnabled);
+        if (getRenderer() != null) {
+            getRenderer().setDisplayDecoupled(decoupledDisplayEnabled);
+            getRenderer().resetDisplayStatistics();
+        }
+        if (!decoupledDisplayEnabled) {
+            stopDisplayThread();
+        }
+    }
+
+    private void addAdaptivePacketSchedulingMenu() {
+        packetScheduler.setLatencyBudgetMs(prefs.getFloat("AEViewer.packetLatencyBudgetMs", AdaptivePacketScheduler.DEFAULT_LATENCY_BUDGET_MS));
+        final JCheckBoxMenuItem enableItem = new JCheckBoxMenuItem("Adaptive packet scheduling", isAdaptivePacketSchedulingEnabled());
+        enableItem.setToolTipText("<html>Sizes the packets processed by the view loop to a latency budget from the measured processing cost and event rate.<br>"
+                + "Small packets are coalesced at low rates and large ones are split at high rates; events that do not fit are deferred to the next packet<br>"
+                + "instead of being skipped by the FilterChain time limit. Not used by the pipelined view loop.</html>");
+        enableItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                setAdaptivePacketSchedulingEnabled(enableItem.isSelected());
+            }
+        });
+        graphicsSubMenu.add(enableItem);
+        final JMenuItem budgetItem = new JMenuItem("Set packet latency budget...");
+        budgetItem.setToolTipText("Sets the time from the arrival of an event to the end of the processing of its packet that adaptive packet scheduling aims for");
+        budgetItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                final String s = JOptionPane.showInputDialog(AEViewer.this, "Latency budget in ms", getPacketLatencyBudgetMs());
+                if (s == null) {
+                    return;
+                }
+                try {
+                    setPacketLatencyBudgetMs(Float.parseFloat(s));
+                } catch (NumberFormatException ex) {
+                    log.warning("bad latency budget " + s + ": " + ex.toString());
+                }
+            }
+        });
+        graphicsSubMenu.add(budgetItem);
+        final JMenuItem statisticsItem = new JMenuItem("Log packet scheduling statistics");
+        statisticsItem.setToolTipText("Logs the cost model and the events processed, deferred and dropped since the last time, and resets the statistics");
+        statisticsItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                log.info(packetScheduler.toString());
+                packetScheduler.resetStatistics();
+                if ((chip != null) && (chip.getFilterChain() != null)) {
+                    final String costs = AdaptivePacketScheduler.describeFilterCosts(chip.getFilterChain());
+                    if (!costs.isEmpty()) {
+                        log.info("filter costs: " + costs);
+                    }
+                }
+            }
+        });
+        graphicsSubMenu.add(statisticsItem);
+    }
+
+    /**
+     * @return true if packets are sized to the latency budget
+     * @see #setAdaptivePacketSchedulingEnabled(boolean)
+     */
+    public boolean isAdaptivePacketSchedulingEnabled() {
+        return adaptivePacketSchedulingEnabled;
+    }
+
+    /**
+     * Enables sizing the packets processed by the (not pipelined) view loop to
+     * the packet latency budget with an AdaptivePacketScheduler. While the view
+     * loop uses the scheduler, the time limit of the FilterChain is suspended,
+     * because events that cannot be processed in time are deferred to the next
+     * packet instead. The backlog is discarded when playback jumps, i.e. on
+     * rewind, repeat, seeking and opening a file.
+     *
+     * @param adaptivePacketSchedulingEnabled true to schedule
+     */
+    public void setAdaptivePacketSchedulingEnabled(boolean adaptivePacketSchedulingEnabled) {
+        this.adaptivePacketSchedulingEnabled = adaptivePacketSchedulingEnabled;
+        prefs.putBoolean("AEViewer.adaptivePacketSchedulingEnabled", adaptivePacketSchedulingEnabled);
+        packetScheduler.clear();
+        packetScheduler.resetStatistics();
+        if (!adaptivePacketSchedulingEnabled && (chip != null) && (chip.getFilterChain() != null)) {
+            chip.getFilterChain().setTimeLimitSuspended(false); // the view loop suspends it while it uses the scheduler
+        }
+    }
+
+    public float getPacketLatencyBudgetMs() {
+        return packetScheduler.getLatencyBudgetMs();
+    }
+
+    /**
+     * Sets the latency budget of adaptive packet scheduling.
+     *
+     * @param packetLatencyBudgetMs the budget in ms
+     */
+    public void setPacketLatencyBudgetMs(float packetLatencyBudgetMs) {
+        packetScheduler.setLatencyBudgetMs(packetLatencyBudgetMs);
+        prefs.putFloat("AEViewer.packetLatencyBudgetMs", packetScheduler.getLatencyBudgetMs());
+    }
+
+    private void stopDisplayThread() {
+        final DisplayThread t = displayThread;
+        displayThread = null;
+        if (t != null) {
+            t.stopThread();
+            log.info("stopped " + t);
+        }
+    }
+
+    /**
+     * @return true if the view loop runs as a pipeline of threads
+     */
+    public boolean isPipelinedViewLoopEnabled() {
+        return pipelinedViewLoopEnabled;
+    }
+
+    /**
+     * Enables running the view loop as a pipeline of acquisition, processing,
+     * logging, network output and rendering threads. Takes effect on the next
+     * loop iteration.
+     *
+     * @param pipelinedViewLoopEnabled true to pipeline
+     */
+    public void setPipelinedViewLoopEnabled(boolean pipelinedViewLoopEnabled) {
+        this.pipelinedViewLoopEnabled = pipelinedViewLoopEnabled;
+        prefs.putBoolean("AEViewer.pipelinedViewLoopEnabled", pipelinedViewLoopEnabled);
+    }
+
+    public PacketRing.OverflowPolicy getPipelineAcquisitionOverflowPolicy() {
+        return pipelineAcquisitionOverflowPolicy;
+    }
+
+    /**
+     * Sets what acquisition does when filtering falls behind: BLOCK applies
+     * back-pressure so every packet is filtered, the others drop packets.
+     * Takes effect when the pipeline is next started.
+     *
+     * @param policy the policy
+     */
+    public void setPipelineAcquisitionOverflowPolicy(PacketRing.OverflowPolicy policy) {
+        this.pipelineAcquisitionOverflowPolicy = policy;
+        prefs.put("AEViewer.pipelineAcquisitionOverflowPolicy", policy.toString());
+    }
+
+    public PacketRing.OverflowPolicy getPipelineNetworkOverflowPolicy() {
+        return pipelineNetworkOverflowPolicy;
+    }
+
+    /**
+     * Sets what happens to network output packets when the network cannot
+     * keep up. Takes effect when the pipeline is next started.
+     *
+     * @param policy the policy
+     */
+    public void setPipelineNetworkOverflowPolicy(PacketRing.OverflowPolicy policy) {
+        this.pipelineNetworkOverflowPolicy = policy;
+        prefs.put("AEViewer.pipelineNetworkOverflowPolicy", policy.toString());
+    }
+
+    /**
+     * @return the number of packets that can be queued between pipeline
+     * stages
+     */
+    public int getPipelineQueueLength() {
+        return pipelineQueueLength;
+    }
+
+    public void setPipelineQueueLength(int pipelineQueueLength) {
+        if (pipelineQueueLength < 3) {
+            pipelineQueueLength = 3;
+        }
+        this.pipelineQueueLength = pipelineQueueLength;
+        prefs.putInt("AEViewer.pipelineQueueLength", pipelineQueueLength);
+    }
+
     public void setLogFilteredEventsEnabled(boolean logFilteredEventsEnabled) {
         //        log.info("logFilteredEventsEnabled="+logFilteredEventsEnabled);
         this.logFilteredEventsEnabled = logFilteredEventsEnabled;
@@ -6049,6 +6895,56 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         logFilteredEventsCheckBoxMenuItem.setSelected(logFilteredEventsEnabled);
     }
 
+    public boolean isCompressedLoggingEnabled() {
+        return compressedLoggingEnabled;
+    }
+
+    /**
+     * Selects the format of logged data files.
+     *
+     * @param compressedLoggingEnabled true to log compressed AER-DAT2.1 files,
+     * false for AER-DAT2.0
+     */
+    public void setCompressedLoggingEnabled(boolean compressedLoggingEnabled) {
+        this.compressedLoggingEnabled = compressedLoggingEnabled;
+        prefs.putBoolean("AEViewer.compressedLoggingEnabled", compressedLoggingEnabled);
+        compressedLoggingCheckBoxMenuItem.setSelected(compressedLoggingEnabled);
+    }
+
+    public boolean isAsyncLoggingEnabled() {
+        return asyncLoggingEnabled;
+    }
+
+    /**
+     * Selects whether logged data is written by a background thread, see
+     * {@link AEFileOutputStream#startAsyncWriter}. Takes effect when logging
+     * starts.
+     *
+     * @param asyncLoggingEnabled true to write in the background
+     */
+    public void setAsyncLoggingEnabled(boolean asyncLoggingEnabled) {
+        this.asyncLoggingEnabled = asyncLoggingEnabled;
+        prefs.putBoolean("AEViewer.asyncLoggingEnabled", asyncLoggingEnabled);
+        asyncLoggingCheckBoxMenuItem.setSelected(asyncLoggingEnabled);
+    }
+
+    public boolean isAsyncLoggingDropEnabled() {
+        return asyncLoggingDropEnabled;
+    }
+
+    /**
+     * Selects the overflow policy of background logging. Takes effect when
+     * logging starts.
+     *
+     * @param asyncLoggingDropEnabled true to drop packets when the writer
+     * queue is full, false to wait for the disk
+     */
+    public void setAsyncLoggingDropEnabled(boolean asyncLoggingDropEnabled) {
+        this.asyncLoggingDropEnabled = asyncLoggingDropEnabled;
+        prefs.putBoolean("AEViewer.asyncLoggingDropEnabled", asyncLoggingDropEnabled);
+        asyncLoggingDropCheckBoxMenuItem.setSelected(asyncLoggingDropEnabled);
+    }
+
     /**
      * Returns the enclosing JAERViewer, which is the top level object in jAER.
      *
@@ -6330,7 +7226,10 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
     private javax.swing.JMenuItem changeAEBufferSizeMenuItem;
     private javax.swing.JCheckBoxMenuItem checkNonMonotonicTimeExceptionsEnabledCheckBoxMenuItem;
     private javax.swing.JMenuItem clearMarksMI;
+    private javax.swing.JCheckBoxMenuItem asyncLoggingCheckBoxMenuItem;
+    private javax.swing.JCheckBoxMenuItem asyncLoggingDropCheckBoxMenuItem;
     private javax.swing.JMenuItem closeMenuItem;
+    private javax.swing.JCheckBoxMenuItem compressedLoggingCheckBoxMenuItem;
     private javax.swing.JMenu controlMenu;
     private javax.swing.JMenuItem customizeDevicesMenuItem;
     private javax.swing.JMenuItem cycleColorRenderingMethodMenuItem;
@@ -6415,6 +7314,7 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
     private javax.swing.JPanel resizePanel;
     private javax.swing.JMenuItem rewindNMI;
     private javax.swing.JMenuItem rewindPlaybackMenuItem;
+    private javax.swing.JCheckBoxMenuItem ringBufferAcquisitionCBMI;
     private javax.swing.JMenuItem sequenceMenuItem;
     private javax.swing.JMenuItem serverSocketOptionsMenuItem;
     private javax.swing.JMenuItem setBorderSpaceMenuItem;
@@ -13,6 +13,7 @@ package net.sf.jaer.graphics;
 import java.awt.event.ActionEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.IOException;
 import java.util.Hashtable;
 import java.util.logging.Logger;
 import javax.swing.AbstractAction;
@@ -21,6 +22,7 @@ import javax.swing.JCheckBox;
 import javax.swing.JLabel;
 import javax.swing.JPopupMenu;
 import net.sf.jaer.eventio.AEFileInputStream;
+import net.sf.jaer.eventio.AEFileTimestampIndex;
 import net.sf.jaer.eventio.AEInputStream;
 import net.sf.jaer.graphics.AbstractAEPlayer.PlaybackMode;
 
@@ -157,7 +159,7 @@ public class AePlayerAdvancedControlsPanel extends javax.swing.JPanel implements
             log.warning("AEViewer.AEPlayer.getFractionalPosition: null fileAEInputStream, returning 0");
             return 0;
         }
-        float fracPos = aeViewer.aePlayer.getAEInputStream().getFractionalPosition();
+        float fracPos = aeViewer.aePlayer.getAEInputStream().getFractionalTimePosition();
         return fracPos;
     }
 
@@ -649,7 +651,12 @@ public class AePlayerAdvancedControlsPanel extends javax.swing.JPanel implements
         synchronized (aePlayer) {
             try {
                 int oldtime = aeViewer.aePlayer.getAEInputStream().getMostRecentTimestamp();
-                aeViewer.aePlayer.setFractionalPosition(fracPos); // sets position in events
+                AEFileTimestampIndex idx = aeViewer.aePlayer.getAEInputStream().getTimestampIndex();
+                if (idx != null) {
+                    aeViewer.aePlayer.seekToTimestamp(idx.getTimestampUsAtFraction(fracPos)); // sets position in time
+                } else {
+                    aeViewer.aePlayer.setFractionalPosition(fracPos); // sets position in events
+                }
                 int time = aeViewer.aePlayer.getAEInputStream().getMostRecentTimestamp();
                 aeViewer.aePlayer.getAEInputStream().setCurrentStartTimestamp(time);
                 String s=String.format("%8.3f s, %10d events",time*1e-6f,aeViewer.aePlayer.getAEInputStream().position());
@@ -683,6 +690,8 @@ public class AePlayerAdvancedControlsPanel extends javax.swing.JPanel implements
                 }
             } catch (IllegalArgumentException e) {
                 e.printStackTrace();
+            } catch (IOException e) {
+                log.warning("could not seek: " + e.toString());
             }
 
             aeViewer.getJaerViewer().getSyncPlayer().doSingleStep();
@@ -700,8 +709,13 @@ public class AePlayerAdvancedControlsPanel extends javax.swing.JPanel implements
             return;
         }
         try {
-            int t = Integer.parseInt(timeField.getText());
-            aePlayer.setTime(t);
+            int t = Integer.parseInt(timeField.getText()); // as shown, i.e. relative to the timestamp reset and wrapped
+            final AEFileInputStream in = aeViewer.aePlayer.getAEInputStream();
+            if (in != null && in.getTimestampIndex() != null) {
+                aeViewer.aePlayer.seekToTimestamp(in.toAbsoluteTimestamp(t));
+            } else {
+                aePlayer.setTime(t);
+            }
         } catch (Exception e) {
             log.warning(e.toString());
             timeField.selectAll();
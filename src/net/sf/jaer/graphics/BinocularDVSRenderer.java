@@ -59,6 +59,7 @@ public class BinocularDVSRenderer extends AEFrameChipRenderer{
             super.render(packet);
             return;
         }
+        final boolean newFrame = startPacket(packet); // clear unless accumulating, or the display did not take the frame yet
         int n = packet.getSize();
         int skipBy = 1;
         if ( isSubsamplingEnabled() ){
@@ -89,7 +90,7 @@ public class BinocularDVSRenderer extends AEFrameChipRenderer{
             switch ( stereoColorMode ){
                 case RedGreen:
                     // default rendering mode, rendering binocular events without disparity, right=red, left=green
-                    if ( !accumulateEnabled ){
+                    if ( newFrame ){
                         if ( !igpol ){
                             resetFrame(0.5f);
                         } else{
@@ -161,7 +162,7 @@ public class BinocularDVSRenderer extends AEFrameChipRenderer{
                     break;
                 case RedGreenBlack:
                     // disparity event rendering mode: blue is far, red is near
-                    if ( !accumulateEnabled ){
+                    if ( newFrame ){
                             resetFrame(0f);
                     }
                     for ( int i = 0 ; i < packet.getSize() ; i += skipBy ){
@@ -521,7 +521,17 @@ public class ChipCanvas implements GLEventListener, Observer {
             if (m == null) {
                 log.warning("null display method for chip " + getChip());
             } else {
-                m.display(drawable);
+                final Chip2DRenderer r = getRenderer();
+                if ((r instanceof AEChipRenderer) && ((AEChipRenderer) r).isDisplayDecoupled()) {
+                    ((AEChipRenderer) r).takeFrame(); // copies the frame under the renderer lock, the display method draws the copy without it
+                    m.display(drawable);
+                    ((AEChipRenderer) r).frameDisplayed();
+                } else {
+                    m.display(drawable);
+                    if (r instanceof AEChipRenderer) {
+                        ((AEChipRenderer) r).frameDisplayed();
+                    }
+                }
             }
             // checkGLError(gl, glu, "after " + getDisplayMethod() + ".display()");
             checkGLError(gl, glu, "after DisplayMethod.display()");
@@ -54,6 +54,15 @@ public class ChipRendererDisplayMethod extends DisplayMethod implements DisplayM
 		return gray;
 	}
 
+	private static void drawPixmap(GL2 gl, int ncol, int nrow, FloatBuffer pixmap) {
+		if (pixmap != null) {
+			pixmap.position(0);
+			// gl.glPixelTransferf(GL.GL_RED_SCALE, 2); // TODO to try out
+			// gl.glPixelTransferf(GL.GL_RED_BIAS, .3f); // TODO to try out
+			gl.glDrawPixels(ncol, nrow, GL.GL_RGB, GL.GL_FLOAT, pixmap);
+		}
+	}
+
 	private void displayPixmap(GLAutoDrawable drawable) {
 		Chip2DRenderer renderer = getChipCanvas().getRenderer();
 		GL2 gl = drawable.getGL().getGL2();
@@ -88,13 +97,12 @@ public class ChipRendererDisplayMethod extends DisplayMethod implements DisplayM
 			// chipCanvas.checkGLError(gl, glu, "after minmax");
 			{
 				try {
-					synchronized (renderer) {
-						FloatBuffer pixmap = renderer.getPixmap();
-						if (pixmap != null) {
-							pixmap.position(0);
-							// gl.glPixelTransferf(GL.GL_RED_SCALE, 2); // TODO to try out
-							// gl.glPixelTransferf(GL.GL_RED_BIAS, .3f); // TODO to try out
-							gl.glDrawPixels(ncol, nrow, GL.GL_RGB, GL.GL_FLOAT, pixmap);
+					if ((renderer instanceof AEChipRenderer) && ((AEChipRenderer) renderer).isDisplayDecoupled()) {
+						drawPixmap(gl, ncol, nrow, ((AEChipRenderer) renderer).getDisplayPixmap()); // the copy taken by the ChipCanvas
+					}
+					else {
+						synchronized (renderer) {
+							drawPixmap(gl, ncol, nrow, renderer.getPixmap());
 						}
 					}
 				}
@@ -105,7 +113,7 @@ public class ChipRendererDisplayMethod extends DisplayMethod implements DisplayM
 		}
 		else { // zoomed in, easiest to drawRect the pixels
 			// float scale = zoom.zoomFactor * chip.getCanvas().getScale();
-			float[] f = renderer.getPixmapArray();
+			float[] f = (renderer instanceof AEChipRenderer) ? ((AEChipRenderer) renderer).getDisplayPixmap().array() : renderer.getPixmapArray();
 			int sx = chip.getSizeX(), sy = chip.getSizeY();
 			float gray = renderer.getGrayValue();
 			int ind = 0;
@@ -13,6 +13,7 @@ package net.sf.jaer.graphics;
 
 import java.awt.Font;
 import java.awt.geom.Point2D;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 
 import org.bytedeco.javacpp.opencv_core.Mat;
@@ -21,6 +22,7 @@ import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.GL2ES1;
 import com.jogamp.opengl.GLAutoDrawable;
+import com.jogamp.opengl.GLContext;
 import com.jogamp.opengl.fixedfunc.GLMatrixFunc;
 import com.jogamp.opengl.util.awt.TextRenderer;
 
@@ -41,6 +43,19 @@ public class ChipRendererDisplayMethodRGBA extends DisplayMethod implements Disp
 	public final float SPECIAL_BAR_LINE_WIDTH = 8;
 	private boolean renderSpecialEvents = true;
 
+	/**
+	 * Textures of the ON and OFF maps that are kept between frames when
+	 * the AEFrameChipRenderer renders incrementally, and the GL context
+	 * they belong to
+	 */
+	private final int[] eventMapTextures = new int[2];
+	private GLContext eventMapTextureContext = null;
+	private int eventMapTextureWidth, eventMapTextureHeight;
+	private boolean eventMapTexturesStale = true;
+	private int[] dirtyRegions = new int[0];
+	private byte[] texelBytes = new byte[0];
+	private ByteBuffer texelBuffer = null;
+
 	/**
 	 * Creates a new instance of ChipRendererDisplayMethodRGBA
 	 */
@@ -72,19 +87,24 @@ public class ChipRendererDisplayMethodRGBA extends DisplayMethod implements Disp
 
 	private void displayQuad(final GLAutoDrawable drawable) {
 		final Chip2DRenderer renderer = getChipCanvas().getRenderer();
-		final FloatBuffer pixmap = renderer.getPixmap();
+		// with a decoupled display, the copies taken by the ChipCanvas, which are drawn without the lock of the renderer
+		final FloatBuffer pixmap = (renderer instanceof AEChipRenderer) ? ((AEChipRenderer) renderer).getDisplayPixmap() : renderer.getPixmap();
 		FloatBuffer onMap = null;
 		FloatBuffer offMap = null;
 		FloatBuffer annotateMap = null;
 		boolean displayEvents = false;
 		boolean displayFrames = true;
 		boolean displayAnnotation = false;
+		AEFrameChipRenderer incrementalRenderer = null;
 
 		if (renderer instanceof AEFrameChipRenderer) {
 			final AEFrameChipRenderer frameRenderer = (AEFrameChipRenderer) renderer;
-			onMap = frameRenderer.getOnMap();
-			offMap = frameRenderer.getOffMap();
-			annotateMap = frameRenderer.getAnnotateMap();
+			if (frameRenderer.isIncrementalRenderingEnabled()) {
+				incrementalRenderer = frameRenderer;
+			}
+			onMap = frameRenderer.getDisplayOnMap();
+			offMap = frameRenderer.getDisplayOffMap();
+			annotateMap = frameRenderer.getDisplayAnnotateMap();
 			displayFrames = frameRenderer.isDisplayFrames();
 			displayEvents = frameRenderer.isDisplayEvents();
 			displayAnnotation = frameRenderer.isDisplayAnnotation();
@@ -135,7 +155,21 @@ public class ChipRendererDisplayMethodRGBA extends DisplayMethod implements Disp
 			getChipCanvas().checkGLError(gl, glu, "after frames");
 		}
 
-		if ((onMap != null) && displayEvents) {
+		if ((incrementalRenderer != null) && (onMap != null) && (offMap != null) && displayEvents) {
+			updateEventMapTextures(gl, drawable.getContext(), incrementalRenderer, onMap, offMap, width, height);
+			gl.glTexEnvf(GL2ES1.GL_TEXTURE_ENV, GL2ES1.GL_TEXTURE_ENV_MODE, GL.GL_REPLACE);
+			for (final int texture : eventMapTextures) {
+				gl.glEnable(GL.GL_TEXTURE_2D);
+				gl.glBindTexture(GL.GL_TEXTURE_2D, texture);
+				drawPolygon(gl, width, height);
+				gl.glDisable(GL.GL_TEXTURE_2D);
+			}
+			getChipCanvas().checkGLError(gl, glu, "after incremental event maps");
+		} else {
+			eventMapTexturesStale = true; // the maps change while the textures are not updated
+		}
+
+		if ((incrementalRenderer == null) && (onMap != null) && displayEvents) {
 			gl.glBindTexture(GL.GL_TEXTURE_2D, 1);
 			gl.glPixelStorei(GL.GL_UNPACK_ALIGNMENT, 1);
 			gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_S, GL2.GL_CLAMP);
@@ -151,7 +185,7 @@ public class ChipRendererDisplayMethodRGBA extends DisplayMethod implements Disp
 			gl.glDisable(GL.GL_TEXTURE_2D);
 		}
 
-		if ((offMap != null) && displayEvents) {
+		if ((incrementalRenderer == null) && (offMap != null) && displayEvents) {
 			gl.glBindTexture(GL.GL_TEXTURE_2D, 1);
 			gl.glPixelStorei(GL.GL_UNPACK_ALIGNMENT, 1);
 			gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_S, GL2.GL_CLAMP);
@@ -239,6 +273,88 @@ public class ChipRendererDisplayMethodRGBA extends DisplayMethod implements Disp
 		}
 	}
 
+	/**
+	 * Updates the ON and OFF map textures with the regions that the renderer
+	 * reports as changed, or completely when the textures are new or stale.
+	 * The float maps are packed to RGBA bytes before upload, which is the
+	 * format of the textures anyhow and a quarter of the data.
+	 */
+	private void updateEventMapTextures(final GL2 gl, final GLContext context, final AEFrameChipRenderer renderer, final FloatBuffer onMap,
+		final FloatBuffer offMap, final int width, final int height) {
+		boolean full = eventMapTexturesStale;
+		if ((eventMapTextureContext != context) || (eventMapTextureWidth != width) || (eventMapTextureHeight != height)) {
+			if (eventMapTextureContext == context) {
+				gl.glDeleteTextures(2, eventMapTextures, 0);
+			}
+			gl.glBindTexture(GL.GL_TEXTURE_2D, 1); // reserves the texture name that the other maps are uploaded to
+			gl.glGenTextures(2, eventMapTextures, 0);
+			for (final int texture : eventMapTextures) {
+				gl.glBindTexture(GL.GL_TEXTURE_2D, texture);
+				gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_S, GL2.GL_CLAMP);
+				gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_T, GL2.GL_CLAMP);
+				gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MAG_FILTER, GL.GL_NEAREST);
+				gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MIN_FILTER, GL.GL_NEAREST);
+				gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, GL.GL_RGBA, width, height, 0, GL.GL_RGBA, GL.GL_UNSIGNED_BYTE, null);
+			}
+			eventMapTextureContext = context;
+			eventMapTextureWidth = width;
+			eventMapTextureHeight = height;
+			full = true;
+		}
+		eventMapTexturesStale = false;
+
+		final int n;
+		final int[] regions;
+		if (renderer.isDisplayDecoupled()) { // the regions of the copies taken by the ChipCanvas
+			regions = renderer.getDisplayDirtyEventMapRegions();
+			n = renderer.getNumDisplayDirtyEventMapRegions();
+		} else {
+			final int maxRegions = renderer.getMaxDirtyEventMapRegions();
+			if (dirtyRegions.length < (4 * maxRegions)) {
+				dirtyRegions = new int[4 * maxRegions];
+			}
+			regions = dirtyRegions;
+			n = renderer.takeDirtyEventMapRegions(dirtyRegions);
+		}
+		gl.glPixelStorei(GL.GL_UNPACK_ALIGNMENT, 1);
+		if (full || (n < 0)) {
+			uploadTexels(gl, eventMapTextures[0], onMap.array(), width, 0, 0, width, height);
+			uploadTexels(gl, eventMapTextures[1], offMap.array(), width, 0, 0, width, height);
+			return;
+		}
+		for (int i = 0; i < n; i++) {
+			final int x = regions[4 * i], y = regions[(4 * i) + 1], w = regions[(4 * i) + 2], h = regions[(4 * i) + 3];
+			uploadTexels(gl, eventMapTextures[0], onMap.array(), width, x, y, w, h);
+			uploadTexels(gl, eventMapTextures[1], offMap.array(), width, x, y, w, h);
+		}
+	}
+
+	/**
+	 * Packs a rectangle of an RGBA float map to bytes and uploads it to the
+	 * same place in a texture.
+	 */
+	private void uploadTexels(final GL2 gl, final int texture, final float[] map, final int mapWidth, final int x, final int y, final int w,
+		final int h) {
+		final int n = 4 * w * h;
+		if (texelBytes.length < n) {
+			texelBytes = new byte[n];
+			texelBuffer = ByteBuffer.allocateDirect(n);
+		}
+		int j = 0;
+		for (int row = y; row < (y + h); row++) {
+			final int k = 4 * ((row * mapWidth) + x), end = k + (4 * w);
+			for (int i = k; i < end; i++) {
+				final int v = (int) ((map[i] * 255f) + 0.5f);
+				texelBytes[j++] = (byte) (v < 0 ? 0 : (v > 255 ? 255 : v));
+			}
+		}
+		texelBuffer.clear();
+		texelBuffer.put(texelBytes, 0, n);
+		texelBuffer.flip();
+		gl.glBindTexture(GL.GL_TEXTURE_2D, texture);
+		gl.glTexSubImage2D(GL.GL_TEXTURE_2D, 0, x, y, w, h, GL.GL_RGBA, GL.GL_UNSIGNED_BYTE, texelBuffer);
+	}
+
 	private void drawPolygon(final GL2 gl, final int width, final int height) {
 		final double xRatio = (double) chip.getSizeX() / (double) width;
 		final double yRatio = (double) chip.getSizeY() / (double) height;
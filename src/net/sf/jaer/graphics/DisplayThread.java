@@ -0,0 +1,123 @@
+/*
+ * DisplayThread.java
+ *
+ * Paints a ChipCanvas on its own thread.
+ */
+package net.sf.jaer.graphics;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Paints a {@link ChipCanvas} on its own thread at a limited frame rate, so
+ * that the AEViewer.ViewLoop does not wait for OpenGL and for the buffer swap,
+ * which waits for the vertical refresh of the screen. The ViewLoop renders
+ * packets into the AEChipRenderer as usual and then calls
+ * {@link #requestDisplay()}, which never blocks. Requests that arrive while a
+ * frame is painted, or faster than the frame rate, are merged into one frame.
+ * <p>
+ * Used together with {@link AEChipRenderer#setDisplayDecoupled(boolean)}, the
+ * renderer accumulates all packets rendered until the display took the frame,
+ * so that a display that is slower than the packets arrive still shows all
+ * events, while a fast event source is never held up by the display.
+ */
+public class DisplayThread extends Thread {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer.graphics");
+    /** Time to sleep between checks for requests when there are none */
+    private static final long IDLE_PARK_NS = 100000000L;
+
+    private final ChipCanvas canvas;
+    private final AtomicBoolean displayRequested = new AtomicBoolean(false);
+    private volatile boolean running = true;
+    private volatile int maxFps;
+    private long lastDisplayNs = 0;
+    private final AtomicLong requests = new AtomicLong(); // incremented by any thread that requests a display
+    private volatile long displays = 0, paintNs = 0;
+
+    /**
+     * Constructs a new display thread; start it with start().
+     *
+     * @param canvas the canvas to paint
+     * @param maxFps the maximum frame rate
+     */
+    public DisplayThread(ChipCanvas canvas, int maxFps) {
+        super("AEViewer.DisplayThread");
+        this.canvas = canvas;
+        setMaxFps(maxFps);
+        setDaemon(true);
+    }
+
+    /**
+     * Requests painting the canvas. Returns immediately; the canvas is painted
+     * by this thread as soon as the frame rate allows.
+     */
+    public void requestDisplay() {
+        requests.incrementAndGet();
+        if (!displayRequested.getAndSet(true)) {
+            LockSupport.unpark(this);
+        }
+    }
+
+    /** Stops the thread after the frame that is being painted. */
+    public void stopThread() {
+        running = false;
+        LockSupport.unpark(this);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            if (!displayRequested.get()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NS);
+                continue;
+            }
+            final long wait = (lastDisplayNs + (1000000000L / maxFps)) - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            displayRequested.set(false);
+            lastDisplayNs = System.nanoTime();
+            try {
+                canvas.paintFrame();
+            } catch (RuntimeException e) {
+                log.warning("caught " + e.toString() + " while painting");
+            }
+            paintNs += System.nanoTime() - lastDisplayNs;
+            displays++;
+        }
+    }
+
+    public int getMaxFps() {
+        return maxFps;
+    }
+
+    /**
+     * Sets the maximum frame rate.
+     *
+     * @param maxFps the rate in Hz, at least 1
+     */
+    public void setMaxFps(int maxFps) {
+        this.maxFps = maxFps < 1 ? 1 : maxFps;
+    }
+
+    /** @return the number of requested displays */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /** @return the number of painted frames */
+    public long getDisplays() {
+        return displays;
+    }
+
+    @Override
+    public String toString() {
+        final long n = displays;
+        return String.format("%s: painted %d frames for %d requests at most %d Hz, %.2f ms per frame", getName(), n, requests.get(), maxFps,
+                n > 0 ? paintNs * 1e-6 / n : 0);
+    }
+}
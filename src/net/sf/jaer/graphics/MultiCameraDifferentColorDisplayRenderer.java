@@ -63,7 +63,7 @@ public class MultiCameraDifferentColorDisplayRenderer extends AEFrameChipRendere
         }
         
         setColors();
-        if (!accumulateEnabled) {
+        if (startPacket(packet)) { // clear unless accumulating, or the display did not take the frame yet
             Arrays.fill(onMap.array(), 0.0f);
             Arrays.fill(offMap.array(), 0.0f);
         }
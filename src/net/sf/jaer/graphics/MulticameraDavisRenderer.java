@@ -55,6 +55,7 @@ public class MulticameraDavisRenderer extends AEFrameChipRenderer{
             super.render(packet);
             return;
         }
+        final boolean newFrame = startPacket(packet); // clear unless accumulating, or the display did not take the frame yet
         int n = packet.getSize();
         int skipBy = 1;
         if ( isSubsamplingEnabled() ){
@@ -85,7 +86,7 @@ public class MulticameraDavisRenderer extends AEFrameChipRenderer{
             switch ( multiCameraColorMode ){
                 case RedGreen:
                     // default rendering mode, rendering binocular events without disparity, right=red, left=green
-                    if ( !accumulateEnabled ){
+                    if ( newFrame ){
                         if ( !igpol ){
                             resetFrame(0.5f);
                         } else{
@@ -153,7 +154,7 @@ public class MulticameraDavisRenderer extends AEFrameChipRenderer{
                     break;
                 case RedGreenBlack:
                     // disparity event rendering mode: blue is far, red is near
-                    if ( !accumulateEnabled ){
+                    if ( newFrame ){
                             resetFrame(0f);
                     }
                     for ( int i = 0 ; i < packet.getSize() ; i += skipBy ){
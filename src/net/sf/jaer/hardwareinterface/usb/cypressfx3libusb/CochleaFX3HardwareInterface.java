@@ -127,180 +127,164 @@ public class CochleaFX3HardwareInterface extends CypressFX3Biasgen {
 			}
 		}
 
-		private boolean ensureCapacity(final AEPacketRaw buffer, final int capacity) {
-			if (buffer.getCapacity() > getAEBufferSize()) {
-				if (buffer.overrunOccuredFlag || (capacity > buffer.getCapacity())) {
-					buffer.overrunOccuredFlag = true;
-					return (false);
-				}
-
-				return (true);
-			}
-
-			buffer.ensureCapacity(capacity);
-			return (true);
-		}
-
 		@Override
 		protected void translateEvents(final ByteBuffer b) {
-			synchronized (aePacketRawPool) {
-				final AEPacketRaw buffer = aePacketRawPool.writeBuffer();
-
-				// Truncate off any extra partial event.
-				if ((b.limit() & 0x01) != 0) {
-					CypressFX3.log.severe(b.limit() + " bytes received via USB, which is not a multiple of two.");
-					b.limit(b.limit() & ~0x01);
-				}
+			final AEPacketRaw buffer = getWriteBuffer();
 
-				buffer.lastCaptureIndex = eventCounter;
-
-				final ShortBuffer sBuf = b.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
-
-				for (int i = 0; i < sBuf.limit(); i++) {
-					final short event = sBuf.get(i);
+			// Truncate off any extra partial event.
+			if ((b.limit() & 0x01) != 0) {
+				CypressFX3.log.severe(b.limit() + " bytes received via USB, which is not a multiple of two.");
+				b.limit(b.limit() & ~0x01);
+			}
 
-					// General Event structure:
-					// [ t | ccc | 12 bit subcode+data ]
-					// t - type Timestamp (1) of Event (0), ccc - code of event
-					// Check if timestamp
-					if ((event & 0x8000) != 0) {
-						// Is a timestamp! Expand to 32 bits. (Tick is 1us already.)
-						lastTimestamp = currentTimestamp;
-						currentTimestamp = wrapAdd + (event & 0x7FFF);
+			buffer.lastCaptureIndex = eventCounter;
 
-						// Check monotonicity of timestamps.
-						checkMonotonicTimestamp();
-					}
-					else {
-						// Look at the code, to determine event and data
-						// type
-						final byte code = (byte) ((event & 0x7000) >>> 12);
-						final short data = (short) (event & 0x0FFF);
-
-						switch (code) {
-							// [ 0 | 000 | data ]
-							case EC_SPECIAL: // Special event
-								switch (data) {
-									case EC_SPECIAL_RESERVED: // Ignore this, but log it.
-										CypressFX3.log.severe("Caught special reserved event!");
-										break;
-
-									case EC_SPECIAL_TIMESTAMP_RESET: // Timetamp reset
-										wrapAdd = 0;
-										lastTimestamp = 0;
-										currentTimestamp = 0;
-
-										updateTimestampMasterStatus();
-
-										CypressFX3.log.info("Timestamp reset event received on " + super.toString());
-										break;
-
-									case EC_SPECIAL_ADC_START_CNV: // ADC conversion start
-									case EC_SPECIAL_ADC_START_CNV_1US: // ADC conversion start was timestamped with the
-																		// delay 1us
-																		// Check that the buffer has space for this
-																		// event. Enlarge if needed.
-										if (ensureCapacity(buffer, eventCounter + 1)) {
-											buffer.getAddresses()[eventCounter] = data | DATA_TYPE_ADC_CNV_START;
-											buffer.getTimestamps()[eventCounter++] = currentTimestamp;
-										}
-										break;
-
-									default:
-										CypressFX3.log.severe("Caught special event that can't be handled.");
-										break;
-								}
-								break;
-
-							// [ 0 | 001 | data ]
-							case 1: // AER address
-								// Check range conformity.
-								if (data >= aerMaxAddress) {
-									CypressFX3.log.severe("AER: address out of range (0-" + (aerMaxAddress - 1) + "): " + data + ".");
-									break; // Skip invalid AER address.
-								}
+			final ShortBuffer sBuf = b.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
 
-								// Check that the buffer has space for this event. Enlarge if needed.
-								if (ensureCapacity(buffer, eventCounter + 1)) {
-									buffer.getAddresses()[eventCounter] = data;
-									buffer.getTimestamps()[eventCounter++] = currentTimestamp;
-								}
-								break;
+			for (int i = 0; i < sBuf.limit(); i++) {
+				final short event = sBuf.get(i);
 
-							// [ 0 | 100 | 1 | 11 zero bits ] - start of conversion token, comes first
-							// [ 0 | 100 | 1 | 2 bit ADC-channel | 9 MSB data bits ]
-							// [ 0 | 100 | 0 | 2 bit ADC-channel | 9 LSB data bits ]
-							case 4: // ADC sample
-								// Check that the buffer has space for this event. Enlarge if needed.
-								if (ensureCapacity(buffer, eventCounter + 1)) {
-									buffer.getAddresses()[eventCounter] = data | DATA_TYPE_ADC;
-									buffer.getTimestamps()[eventCounter++] = currentTimestamp;
-								}
-								break;
-
-							// MISC10 events, carry 2 bits type and 10 bits information.
-							// Used in SampleProb chip to send info about random DAC values.
-							case 6:
-								// Get Misc10 identifier from upper 2 bits of the 12 bits data.
-								byte misc10Code = (byte) ((data >>> 10) & 0x03);
-
-								if (misc10Code == EC_MISC10_RANDOM_PART1) {
-									// Part1: contains 8 bits of data, 4 for channel address, 4 for the upper bits of
-									// the 14 bit random number.
-									randomChannel = ((data >>> 4) & 0x0F);
-									randomNumber = ((data & 0x0F) << 10);
-								}
-								else if (misc10Code == EC_MISC10_RANDOM_PART2) {
-									// Part2: contains 10 bits of data, the lower bits of the 14 bit random number.
-									randomNumber |= (data & 0x03FF);
+				// General Event structure:
+				// [ t | ccc | 12 bit subcode+data ]
+				// t - type Timestamp (1) of Event (0), ccc - code of event
+				// Check if timestamp
+				if ((event & 0x8000) != 0) {
+					// Is a timestamp! Expand to 32 bits. (Tick is 1us already.)
+					lastTimestamp = currentTimestamp;
+					currentTimestamp = wrapAdd + (event & 0x7FFF);
 
-									// Now we have all the parts and can commit the RandomDAC event.
+					// Check monotonicity of timestamps.
+					checkMonotonicTimestamp();
+				}
+				else {
+					// Look at the code, to determine event and data
+					// type
+					final byte code = (byte) ((event & 0x7000) >>> 12);
+					final short data = (short) (event & 0x0FFF);
+
+					switch (code) {
+						// [ 0 | 000 | data ]
+						case EC_SPECIAL: // Special event
+							switch (data) {
+								case EC_SPECIAL_RESERVED: // Ignore this, but log it.
+									CypressFX3.log.severe("Caught special reserved event!");
+									break;
+
+								case EC_SPECIAL_TIMESTAMP_RESET: // Timetamp reset
+									wrapAdd = 0;
+									lastTimestamp = 0;
+									currentTimestamp = 0;
+
+									updateTimestampMasterStatus();
+
+									CypressFX3.log.info("Timestamp reset event received on " + super.toString());
+									break;
+
+								case EC_SPECIAL_ADC_START_CNV: // ADC conversion start
+								case EC_SPECIAL_ADC_START_CNV_1US: // ADC conversion start was timestamped with the
+																	// delay 1us
+																	// Check that the buffer has space for this
+																	// event. Enlarge if needed.
 									if (ensureCapacity(buffer, eventCounter + 1)) {
-										buffer.getAddresses()[eventCounter] = DATA_TYPE_RANDOMDAC | (randomChannel << 14) | randomNumber;
+										buffer.getAddresses()[eventCounter] = data | DATA_TYPE_ADC_CNV_START;
 										buffer.getTimestamps()[eventCounter++] = currentTimestamp;
 									}
-								}
-								else {
-									CypressFX3.log.severe("Caught Misc10 event that can't be handled.");
-								}
-								break;
-
-							// [ 0 | 111 | 12 dummy bits ]
-							case 7: // Timestamp wrap
-								// Each wrap is 2^15 us (~32ms), and we have
-								// to multiply it with the wrap counter,
-								// which is located in the data part of this
-								// event.
-								wrapAdd += (0x8000L * data);
-
-								lastTimestamp = currentTimestamp;
-								currentTimestamp = wrapAdd;
-
-								// Check monotonicity of timestamps.
-								checkMonotonicTimestamp();
-
-								CypressFX3.log.fine(
-									String.format("Timestamp wrap event received on %s with multiplier of %d.", super.toString(), data));
-
-								// Generate event to advance clock on host side even with low event rate of Cochlea.
+									break;
+
+								default:
+									CypressFX3.log.severe("Caught special event that can't be handled.");
+									break;
+							}
+							break;
+
+						// [ 0 | 001 | data ]
+						case 1: // AER address
+							// Check range conformity.
+							if (data >= aerMaxAddress) {
+								CypressFX3.log.severe("AER: address out of range (0-" + (aerMaxAddress - 1) + "): " + data + ".");
+								break; // Skip invalid AER address.
+							}
+
+							// Check that the buffer has space for this event. Enlarge if needed.
+							if (ensureCapacity(buffer, eventCounter + 1)) {
+								buffer.getAddresses()[eventCounter] = data;
+								buffer.getTimestamps()[eventCounter++] = currentTimestamp;
+							}
+							break;
+
+						// [ 0 | 100 | 1 | 11 zero bits ] - start of conversion token, comes first
+						// [ 0 | 100 | 1 | 2 bit ADC-channel | 9 MSB data bits ]
+						// [ 0 | 100 | 0 | 2 bit ADC-channel | 9 LSB data bits ]
+						case 4: // ADC sample
+							// Check that the buffer has space for this event. Enlarge if needed.
+							if (ensureCapacity(buffer, eventCounter + 1)) {
+								buffer.getAddresses()[eventCounter] = data | DATA_TYPE_ADC;
+								buffer.getTimestamps()[eventCounter++] = currentTimestamp;
+							}
+							break;
+
+						// MISC10 events, carry 2 bits type and 10 bits information.
+						// Used in SampleProb chip to send info about random DAC values.
+						case 6:
+							// Get Misc10 identifier from upper 2 bits of the 12 bits data.
+							byte misc10Code = (byte) ((data >>> 10) & 0x03);
+
+							if (misc10Code == EC_MISC10_RANDOM_PART1) {
+								// Part1: contains 8 bits of data, 4 for channel address, 4 for the upper bits of
+								// the 14 bit random number.
+								randomChannel = ((data >>> 4) & 0x0F);
+								randomNumber = ((data & 0x0F) << 10);
+							}
+							else if (misc10Code == EC_MISC10_RANDOM_PART2) {
+								// Part2: contains 10 bits of data, the lower bits of the 14 bit random number.
+								randomNumber |= (data & 0x03FF);
+
+								// Now we have all the parts and can commit the RandomDAC event.
 								if (ensureCapacity(buffer, eventCounter + 1)) {
-									buffer.getAddresses()[eventCounter] = (data & 0xFFFF) | BasicEvent.SPECIAL_EVENT_BIT_MASK;
+									buffer.getAddresses()[eventCounter] = DATA_TYPE_RANDOMDAC | (randomChannel << 14) | randomNumber;
 									buffer.getTimestamps()[eventCounter++] = currentTimestamp;
 								}
-
-								break;
-
-							default:
-								CypressFX3.log.severe("Caught event that can't be handled.");
-								break;
-						}
+							}
+							else {
+								CypressFX3.log.severe("Caught Misc10 event that can't be handled.");
+							}
+							break;
+
+						// [ 0 | 111 | 12 dummy bits ]
+						case 7: // Timestamp wrap
+							// Each wrap is 2^15 us (~32ms), and we have
+							// to multiply it with the wrap counter,
+							// which is located in the data part of this
+							// event.
+							wrapAdd += (0x8000L * data);
+
+							lastTimestamp = currentTimestamp;
+							currentTimestamp = wrapAdd;
+
+							// Check monotonicity of timestamps.
+							checkMonotonicTimestamp();
+
+							CypressFX3.log.fine(
+								String.format("Timestamp wrap event received on %s with multiplier of %d.", super.toString(), data));
+
+							// Generate event to advance clock on host side even with low event rate of Cochlea.
+							if (ensureCapacity(buffer, eventCounter + 1)) {
+								buffer.getAddresses()[eventCounter] = (data & 0xFFFF) | BasicEvent.SPECIAL_EVENT_BIT_MASK;
+								buffer.getTimestamps()[eventCounter++] = currentTimestamp;
+							}
+
+							break;
+
+						default:
+							CypressFX3.log.severe("Caught event that can't be handled.");
+							break;
 					}
-				} // end loop over usb data buffer
+				}
+			} // end loop over usb data buffer
 
-				buffer.setNumEvents(eventCounter);
-				// write capture size
-				buffer.lastCaptureLength = eventCounter - buffer.lastCaptureIndex;
-			} // sync on aePacketRawPool
+			buffer.setNumEvents(eventCounter);
+			// write capture size
+			buffer.lastCaptureLength = eventCounter - buffer.lastCaptureIndex;
 		}
 
 		@Override
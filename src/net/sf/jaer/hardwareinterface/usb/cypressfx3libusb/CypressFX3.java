@@ -7,6 +7,8 @@ package net.sf.jaer.hardwareinterface.usb.cypressfx3libusb;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeSupport;
+import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.IntBuffer;
@@ -32,9 +34,10 @@ import li.longi.USBTransferThread.RestrictedTransfer;
 import li.longi.USBTransferThread.RestrictedTransferCallback;
 import li.longi.USBTransferThread.USBTransferThread;
 import net.sf.jaer.aemonitor.AEListener;
-import net.sf.jaer.aemonitor.AEMonitorInterface;
+import net.sf.jaer.aemonitor.AEMonitorRingBufferInterface;
 import net.sf.jaer.aemonitor.AEPacketRaw;
 import net.sf.jaer.aemonitor.AEPacketRawPool;
+import net.sf.jaer.aemonitor.AEPacketRawRing;
 import net.sf.jaer.chip.AEChip;
 import net.sf.jaer.event.EventPacket;
 import net.sf.jaer.eventprocessing.EventFilter;
@@ -75,7 +78,7 @@ import net.sf.jaer.stereopsis.StereoPairHardwareInterface;
  *
  * @author tobi delbruck/raphael berner
  */
-public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBInterface, HasUsbStatistics {
+public class CypressFX3 implements AEMonitorRingBufferInterface, ReaderBufferControl, USBInterface, HasUsbStatistics {
 
 	/** Used to store preferences, e.g. buffer sizes and number of buffers. */
 	protected static Preferences prefs = Preferences.userNodeForPackage(CypressFX3.class);
@@ -194,8 +197,25 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
 	protected AsyncStatusThread asyncStatusThread = null;
 	/** The pool of raw AE packets, used for data transfer */
 	protected AEPacketRawPool aePacketRawPool = new AEPacketRawPool(this);
+	/**
+	 * The lock-free ring of raw AE packet segments that is used instead of aePacketRawPool when ring buffer acquisition
+	 * is enabled, otherwise null.
+	 *
+	 * @see #setRingBufferAcquisitionEnabled
+	 */
+	protected volatile AEPacketRawRing aePacketRawRing = null;
+	/**
+	 * the number of segments of aePacketRawRing, which together hold twice aeBufferSize events like the two buffers of
+	 * aePacketRawPool
+	 */
+	public static final int RING_NUM_SEGMENTS = 16;
+	private boolean ringBufferAcquisitionEnabled = CypressFX3.prefs.getBoolean("CypressFX3.ringBufferAcquisitionEnabled", false);
+	/** the packet that acquireAvailableEventsFromDriver copies the published ring segments to */
+	private final AEPacketRaw ringEventsAcquired = new AEPacketRaw();
 	private String stringDescription = "CypressFX3"; // default which is
 	private USBPacketStatistics usbPacketStatistics = new USBPacketStatistics();
+	/** the file that the raw USB data is written to, or null */
+	private volatile USBDataRecording usbDataRecording = null;
 
 	// modified by opening
 
@@ -431,7 +451,8 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
 	 * This method also starts event acquisition if it is not running already.
 	 *
 	 * Not thread safe but does use the thread-safe swap() method of AEPacketRawPool to swap data with the acquisition
-	 * thread.
+	 * thread. With ring buffer acquisition, the events of all segments published by the acquisition thread are
+	 * copied without taking any lock.
 	 *
 	 * @return packet of events acquired.
 	 * @throws HardwareInterfaceException
@@ -465,11 +486,18 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
 		// synchronized(aePacketRawPool){ // synchronize on aeReader so that we
 		// don't try to access the events at the
 		// same time
-		synchronized (aePacketRawPool) {
-			aePacketRawPool.swap();
-			lastEventsAcquired = aePacketRawPool.readBuffer();
-			eventCounter = 0;
-			realTimeEventCounterStart = 0;
+		final AEPacketRawRing ring = aePacketRawRing;
+		if (ring != null) {
+			ring.drainTo(ringEventsAcquired); // eventCounter belongs to the acquisition thread in this mode
+			lastEventsAcquired = ringEventsAcquired;
+		}
+		else {
+			synchronized (aePacketRawPool) {
+				aePacketRawPool.swap();
+				lastEventsAcquired = aePacketRawPool.readBuffer();
+				eventCounter = 0;
+				realTimeEventCounterStart = 0;
+			}
 		}
 
 		nEvents = lastEventsAcquired.getNumEvents();
@@ -622,6 +650,7 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
 
 		try {
 			setEventAcquisitionEnabled(false);
+			stopUsbDataRecording();
 
 			if (asyncStatusThread != null) {
 				asyncStatusThread.stopThread();
@@ -932,6 +961,8 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
 
 		USBTransferThread usbTransfer;
 		CypressFX3 monitor;
+		/** the ring that the current transfer is translated into, or null to use aePacketRawPool */
+		private AEPacketRawRing ring = null;
 
 		public AEReader(final CypressFX3 m) throws HardwareInterfaceException {
 			monitor = m;
@@ -1003,6 +1034,106 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
 			CypressFX3.log.severe("Error: This method should never be called, it must be overridden!");
 		}
 
+		/**
+		 * Returns the packet that translateEvents writes to, starting at eventCounter. This is either the
+		 * write buffer of aePacketRawPool or the write segment of aePacketRawRing.
+		 *
+		 * @return the packet
+		 */
+		protected AEPacketRaw getWriteBuffer() {
+			return (ring != null) ? ring.writeSegment() : aePacketRawPool.writeBuffer();
+		}
+
+		/**
+		 * Makes sure that the write buffer can hold the given number of events, enlarging the pool buffer up to
+		 * aeBufferSize. Ring segments are not enlarged; events that don't fit are dropped and counted.
+		 *
+		 * @param buffer
+		 *            the buffer from {@link #getWriteBuffer()}
+		 * @param capacity
+		 *            the needed capacity in events
+		 * @return true if the events can be written, false if there is an overrun and they must be dropped
+		 */
+		protected boolean ensureCapacity(final AEPacketRaw buffer, final int capacity) {
+			if ((ring != null) || (buffer.getCapacity() > getAEBufferSize())) {
+				if (buffer.overrunOccuredFlag || (capacity > buffer.getCapacity())) {
+					buffer.overrunOccuredFlag = true;
+					if (ring != null) {
+						ring.addDroppedEvents(capacity - eventCounter);
+					}
+					return (false);
+				}
+
+				return (true);
+			}
+
+			buffer.ensureCapacity(capacity);
+			return (true);
+		}
+
+		/**
+		 * Translates one buffer of raw USB data and applies the real time filters. With ring buffer acquisition,
+		 * the events are written to the write segment of the ring without locking, and the segment is published
+		 * when the consumer is waiting for events or when it is full; otherwise they are written to the write
+		 * buffer of aePacketRawPool while holding its lock.
+		 *
+		 * @param buffer
+		 *            the raw data
+		 */
+		protected void processData(final ByteBuffer buffer) {
+			final AEPacketRawRing previousRing = ring;
+			ring = aePacketRawRing;
+			if ((previousRing != null) && (previousRing != ring)) {
+				// the buffers were reallocated; the consumer no longer reads the old ring, so drop its unpublished
+				// write segment instead of leaving it half filled
+				previousRing.writeSegment().setNumEvents(0);
+			}
+			if (ring != null) {
+				final int maxEvents = buffer.remaining() / 2; // at most one event per 16 bit word
+				ring.publish(maxEvents);
+				final AEPacketRaw segment = ring.writeSegment();
+				eventCounter = segment.getNumEvents();
+				translateEvents(buffer);
+				if (isRealTimeFilteringEnabled()) {
+					realTimeEventCounterStart = segment.lastCaptureIndex;
+					realTimeFilter(segment.getAddresses(), segment.getTimestamps());
+				}
+				ring.publish(maxEvents);
+				return;
+			}
+			synchronized (aePacketRawPool) {
+				if (previousRing != null) {
+					// eventCounter indexed the ring's write segment, start at the beginning of the pool's write buffer
+					eventCounter = 0;
+					realTimeEventCounterStart = 0;
+				}
+				translateEvents(buffer);
+
+				if (isRealTimeFilteringEnabled()) {
+					// here we do the realTimeFiltering. We finished
+					// capturing this buffer's worth of events,
+					// now process them apply realtime filters and
+					// realtime (packet level) mapping
+
+					// synchronize here so that rendering thread doesn't
+					// swap the buffer out from under us while
+					// we process these events
+					// aePacketRawPool.writeBuffer is also synchronized
+					// so we getString
+					// the same lock twice which is ok
+					final AEPacketRaw writeBuffer = aePacketRawPool.writeBuffer();
+					final int[] addresses = writeBuffer.getAddresses();
+					final int[] timestamps = writeBuffer.getTimestamps();
+					realTimeFilter(addresses, timestamps);
+				}
+			}
+		}
+
+		private boolean isRealTimeFilteringEnabled() {
+			return (chip != null) && (chip.getFilterChain() != null)
+				&& (chip.getFilterChain().getProcessingMode() == FilterChain.ProcessingMode.ACQUISITION);
+		}
+
 		class ProcessAEData implements RestrictedTransferCallback {
 			@Override
 			public void prepareTransfer(final RestrictedTransfer transfer) {
@@ -1018,34 +1149,17 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
 			 */
 			@Override
 			public void processTransfer(final RestrictedTransfer transfer) {
-				synchronized (aePacketRawPool) {
-					if (transfer.status() == LibUsb.TRANSFER_COMPLETED) {
-						usbPacketStatistics.addSample(transfer);
-						translateEvents(transfer.buffer());
-
-						if ((chip != null) && (chip.getFilterChain() != null)
-							&& (chip.getFilterChain().getProcessingMode() == FilterChain.ProcessingMode.ACQUISITION)) {
-							// here we do the realTimeFiltering. We finished
-							// capturing this buffer's worth of events,
-							// now process them apply realtime filters and
-							// realtime (packet level) mapping
-
-							// synchronize here so that rendering thread doesn't
-							// swap the buffer out from under us while
-							// we process these events
-							// aePacketRawPool.writeBuffer is also synchronized
-							// so we getString
-							// the same lock twice which is ok
-							final AEPacketRaw buffer = aePacketRawPool.writeBuffer();
-							final int[] addresses = buffer.getAddresses();
-							final int[] timestamps = buffer.getTimestamps();
-							realTimeFilter(addresses, timestamps);
-						}
-					}
-					else {
-						CypressFX3.log.warning("ProcessAEData: Bytes transferred: " + transfer.actualLength() + "  Status: "
-							+ LibUsb.errorName(transfer.status()));
+				if (transfer.status() == LibUsb.TRANSFER_COMPLETED) {
+					usbPacketStatistics.addSample(transfer);
+					final USBDataRecording recording = usbDataRecording;
+					if (recording != null) {
+						recordUsbData(recording, transfer.buffer());
 					}
+					processData(transfer.buffer());
+				}
+				else {
+					CypressFX3.log.warning("ProcessAEData: Bytes transferred: " + transfer.actualLength() + "  Status: "
+						+ LibUsb.errorName(transfer.status()));
 				}
 			}
 		}
@@ -1210,6 +1324,58 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
 		}
 	}
 
+	/**
+	 * Starts writing the raw data of every USB transfer received by the AEReader to a file, e.g. to load-test
+	 * translateEvents by playing it back with {@link DAViSFX3ReplayHardwareInterface}.
+	 *
+	 * @param file
+	 *            the file, which is overwritten
+	 * @throws IOException
+	 *             if the file cannot be created
+	 */
+	public void startUsbDataRecording(final File file) throws IOException {
+		stopUsbDataRecording();
+		usbDataRecording = new USBDataRecording(file);
+		CypressFX3.log.info(this + ": recording raw USB data to " + file);
+	}
+
+	/** Stops and closes the raw USB data recording, if any. */
+	public void stopUsbDataRecording() {
+		final USBDataRecording recording = usbDataRecording;
+		if (recording == null) {
+			return;
+		}
+		usbDataRecording = null;
+		synchronized (recording) {
+			try {
+				recording.close();
+				CypressFX3.log.info(this + ": recorded " + recording.getNumBytes() + " bytes of raw USB data");
+			}
+			catch (final IOException e) {
+				CypressFX3.log.warning("closing raw USB data recording: " + e.toString());
+			}
+		}
+	}
+
+	/** @return true if the raw USB data is being recorded */
+	public boolean isUsbDataRecording() {
+		return usbDataRecording != null;
+	}
+
+	private void recordUsbData(final USBDataRecording recording, final ByteBuffer buffer) {
+		synchronized (recording) { // against concurrent close
+			try {
+				if (usbDataRecording == recording) {
+					recording.write(buffer);
+				}
+			}
+			catch (final IOException e) {
+				CypressFX3.log.warning("stopping raw USB data recording: " + e.toString());
+				usbDataRecording = null;
+			}
+		}
+	}
+
 	private int getNumRealTimeEvents() {
 		return eventCounter - realTimeEventCounterStart;
 	}
@@ -1221,7 +1387,43 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
 	protected void allocateAEBuffers() {
 		synchronized (aePacketRawPool) {
 			aePacketRawPool.allocateMemory();
+			if (aePacketRawRing == null) {
+				// the reader writes to the pool only while holding its lock; while it uses a ring it owns the
+				// counters and resets them itself when it sees that the ring is gone
+				eventCounter = 0;
+				realTimeEventCounterStart = 0;
+			}
 		}
+		// a new ring is only seen by the reader at its next transfer, which then starts a new write segment
+		aePacketRawRing = ringBufferAcquisitionEnabled
+			? new AEPacketRawRing(CypressFX3.RING_NUM_SEGMENTS, Math.max((2 * aeBufferSize) / CypressFX3.RING_NUM_SEGMENTS, 2 * aeReaderFifoSize))
+			: null;
+	}
+
+	@Override
+	public boolean isRingBufferAcquisitionEnabled() {
+		return ringBufferAcquisitionEnabled;
+	}
+
+	/**
+	 * Selects whether the AEReader hands events to {@link #acquireAvailableEventsFromDriver} through the lock-free
+	 * aePacketRawRing or through the locked aePacketRawPool. The ring has RING_NUM_SEGMENTS segments that together
+	 * hold twice aeBufferSize events. This call discards collected events.
+	 *
+	 * @param yes
+	 *            true to use the ring
+	 */
+	@Override
+	public void setRingBufferAcquisitionEnabled(final boolean yes) {
+		ringBufferAcquisitionEnabled = yes;
+		CypressFX3.prefs.putBoolean("CypressFX3.ringBufferAcquisitionEnabled", yes);
+		allocateAEBuffers();
+		CypressFX3.log.info(this + ": ring buffer acquisition enabled=" + yes);
+	}
+
+	@Override
+	public AEPacketRawRing getAEPacketRawRing() {
+		return aePacketRawRing;
 	}
 
 	/**
@@ -0,0 +1,411 @@
+/*
+ * DAViSFX3ReplayHardwareInterface.java
+ *
+ * Software DAViS device that plays back raw USB data.
+ */
+package net.sf.jaer.hardwareinterface.usb.cypressfx3libusb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.aemonitor.AEPacketRawRing;
+import net.sf.jaer.hardwareinterface.HardwareInterfaceException;
+
+/**
+ * A software DAViS FX3 device that plays back raw USB data, either a
+ * {@link USBDataRecording} of a real device or a synthetic DVS event stream,
+ * through the translateEvents method of the DAViSFX3HardwareInterface AEReader
+ * and then through the same buffers (aePacketRawPool or aePacketRawRing) to
+ * {@link #acquireAvailableEventsFromDriver()}. The data is played back in a
+ * loop as fast as possible, so that the acquisition path can be load-tested
+ * at event rates far beyond those of a real device, and without hardware.
+ * <p>
+ * The device configuration that the AEReader reads from the FPGA (chip ID and
+ * array size) is given to the constructor; all configuration that is sent to
+ * the device is ignored.
+ * <p>
+ * Run {@link #main(java.lang.String[])} to compare the throughput and
+ * overruns of the locked double buffer and the lock-free ring.
+ */
+public class DAViSFX3ReplayHardwareInterface extends DAViSFX3HardwareInterface {
+
+	private final List<ByteBuffer> transfers;
+	private final int chipID, sizeX, sizeY;
+	private boolean replayOpened = false;
+	private ReplayThread replayThread = null;
+	private boolean loopEnabled = true;
+	private volatile long numBytesReplayed = 0, numLoops = 0;
+
+	/**
+	 * Makes a device that plays back the transfers.
+	 *
+	 * @param transfers
+	 *            the raw USB data, e.g. from {@link USBDataRecording#read(java.io.File)}
+	 * @param chipID
+	 *            the chip ID, e.g. CHIP_DAVIS240C
+	 * @param sizeX
+	 *            the DVS and APS array width
+	 * @param sizeY
+	 *            the DVS and APS array height
+	 */
+	public DAViSFX3ReplayHardwareInterface(final List<ByteBuffer> transfers, final int chipID, final int sizeX, final int sizeY) {
+		super(null);
+		this.transfers = transfers;
+		this.chipID = chipID;
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+	}
+
+	/**
+	 * Makes a device that plays back a recording.
+	 *
+	 * @param recording
+	 *            the recording made by {@link CypressFX3#startUsbDataRecording(java.io.File)}
+	 * @param chipID
+	 *            the chip ID of the recorded device
+	 * @param sizeX
+	 *            the DVS and APS array width
+	 * @param sizeY
+	 *            the DVS and APS array height
+	 * @throws IOException
+	 *             if the recording cannot be read
+	 */
+	public DAViSFX3ReplayHardwareInterface(final File recording, final int chipID, final int sizeX, final int sizeY) throws IOException {
+		this(USBDataRecording.read(recording), chipID, sizeX, sizeY);
+	}
+
+	/**
+	 * Makes the raw USB data of a stream of random DVS events, in the format
+	 * that translateEvents decodes: a timestamp word when the timestamp
+	 * changes, timestamp wrap events, and a Y address word followed by an X
+	 * address and polarity word for each event. The timestamps start at 1us.
+	 *
+	 * @param sizeX
+	 *            the array width
+	 * @param sizeY
+	 *            the array height
+	 * @param numEvents
+	 *            the number of events
+	 * @param eventsPerTimestamp
+	 *            the number of events with the same timestamp; with one
+	 *            event per us this simulates 1Meps
+	 * @param transferSize
+	 *            the size of each transfer in bytes, even
+	 * @param seed
+	 *            the random seed
+	 * @return the transfers
+	 */
+	public static List<ByteBuffer> makeSyntheticDvsTransfers(final int sizeX, final int sizeY, final int numEvents,
+		final int eventsPerTimestamp, final int transferSize, final long seed) {
+		final Random r = new Random(seed);
+		final int numWords = (3 * numEvents) + ((2 * numEvents) / Math.max(1, eventsPerTimestamp)) + 2;
+		final short[] words = new short[numWords];
+		int n = 0, ts = 0, wrap = 0;
+		for (int i = 0; i < numEvents; i++) {
+			if ((i % Math.max(1, eventsPerTimestamp)) == 0) {
+				ts++;
+				if ((ts >>> 15) != wrap) {
+					wrap = ts >>> 15;
+					words[n++] = (short) ((7 << 12) | 1); // timestamp wrap by one times 2^15 us
+				}
+				if ((ts & 0x7FFF) != 0) { // the wrap already set the timestamp
+					words[n++] = (short) (0x8000 | (ts & 0x7FFF));
+				}
+			}
+			words[n++] = (short) ((1 << 12) | r.nextInt(sizeY)); // Y address
+			words[n++] = (short) (((2 + r.nextInt(2)) << 12) | r.nextInt(sizeX)); // X address and polarity
+		}
+		final ArrayList<ByteBuffer> list = new ArrayList<ByteBuffer>();
+		final int wordsPerTransfer = Math.max(1, transferSize / 2);
+		for (int i = 0; i < n; i += wordsPerTransfer) {
+			final int m = Math.min(wordsPerTransfer, n - i);
+			final ByteBuffer b = ByteBuffer.allocate(2 * m).order(ByteOrder.LITTLE_ENDIAN);
+			b.asShortBuffer().put(words, i, m);
+			list.add(b);
+		}
+		return list;
+	}
+
+	@Override
+	synchronized public void open() throws HardwareInterfaceException {
+		replayOpened = true;
+	}
+
+	@Override
+	synchronized public boolean isOpen() {
+		return replayOpened;
+	}
+
+	@Override
+	synchronized public void close() {
+		if (!replayOpened) {
+			return;
+		}
+		try {
+			setEventAcquisitionEnabled(false);
+		}
+		catch (final HardwareInterfaceException e) {
+			e.printStackTrace();
+		}
+		replayOpened = false;
+	}
+
+	/**
+	 * Starts the AEReader and a thread that plays back the data through it
+	 * instead of a USB transfer thread.
+	 */
+	@Override
+	public void startAEReader() throws HardwareInterfaceException {
+		setAeReader(new RetinaAEReader(this));
+		allocateAEBuffers();
+		replayThread = new ReplayThread(getAeReader());
+		replayThread.start();
+		getSupport().firePropertyChange("readerStarted", false, true);
+	}
+
+	@Override
+	public void stopAEReader() {
+		if (replayThread != null) {
+			replayThread.interrupt();
+			try {
+				replayThread.join();
+			}
+			catch (final InterruptedException e) {
+				CypressFX3.log.warning("interrupted while waiting for replay thread to stop");
+			}
+			replayThread = null;
+		}
+		setAeReader(null);
+	}
+
+	@Override
+	protected synchronized void enableINEndpoint() throws HardwareInterfaceException {
+		inEndpointEnabled = true;
+	}
+
+	@Override
+	protected synchronized void disableINEndpoint() {
+		inEndpointEnabled = false;
+	}
+
+	@Override
+	synchronized public void resetTimestamps() {
+		CypressFX3.log.info(this + ".resetTimestamps(): ignored by replay device");
+	}
+
+	/** Returns the FPGA configuration of the replayed device. */
+	@Override
+	public synchronized int spiConfigReceive(final short moduleAddr, final short paramAddr) throws HardwareInterfaceException {
+		switch (moduleAddr) {
+			case FPGA_SYSINFO:
+				switch (paramAddr) {
+					case 0:
+						return REQUIRED_LOGIC_REVISION_FX3;
+					case 1:
+						return chipID;
+					case 2:
+						return 1; // timestamp master
+					case 4:
+						return 30; // ADC clock in MHz
+					default:
+						return 0;
+				}
+			case FPGA_APS:
+			case FPGA_DVS:
+				switch (paramAddr) {
+					case 0:
+						return sizeX;
+					case 1:
+						return sizeY;
+					default:
+						return 0;
+				}
+			default:
+				return 0;
+		}
+	}
+
+	/** Ignores the request, there is no device to configure. */
+	@Override
+	synchronized public void sendVendorRequest(final byte request, final short value, final short index, final ByteBuffer dataBuffer)
+		throws HardwareInterfaceException {
+	}
+
+	/** Returns zeros, there is no device to ask. */
+	@Override
+	synchronized public ByteBuffer sendVendorRequestIN(final byte request, final short value, final short index, final int dataLength)
+		throws HardwareInterfaceException {
+		return ByteBuffer.allocateDirect(dataLength);
+	}
+
+	@Override
+	public short getVID() {
+		return CypressFX3.VID;
+	}
+
+	@Override
+	public short getPID() {
+		return PID_FX3;
+	}
+
+	@Override
+	public short getDID() {
+		return (short) REQUIRED_FIRMWARE_VERSION_FX3;
+	}
+
+	@Override
+	public String getTypeName() {
+		return "DAViSFX3Replay";
+	}
+
+	@Override
+	public String toString() {
+		return "DAViSFX3Replay of " + transfers.size() + " transfers";
+	}
+
+	/** @return true if the data is played back repeatedly, which is the default */
+	public boolean isLoopEnabled() {
+		return loopEnabled;
+	}
+
+	/**
+	 * @param loopEnabled
+	 *            true to play back the data repeatedly, with a timestamp reset
+	 *            between the repetitions, false to play it back once
+	 */
+	public void setLoopEnabled(final boolean loopEnabled) {
+		this.loopEnabled = loopEnabled;
+	}
+
+	/** @return the number of bytes played back since acquisition was last enabled */
+	public long getNumBytesReplayed() {
+		return numBytesReplayed;
+	}
+
+	/** @return the number of completed repetitions since acquisition was last enabled */
+	public long getNumLoops() {
+		return numLoops;
+	}
+
+	/**
+	 * Plays back the transfers through AEReader.processData, which is what
+	 * the USB transfer thread calls for each completed transfer.
+	 */
+	private class ReplayThread extends Thread {
+
+		private final AEReader reader;
+
+		ReplayThread(final AEReader reader) {
+			super("AEReplayThread");
+			this.reader = reader;
+		}
+
+		@Override
+		public void run() {
+			numBytesReplayed = 0;
+			numLoops = 0;
+			final ByteBuffer timestampReset = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
+			timestampReset.putShort(0, (short) 1); // special event 1, timestamp reset
+			long bytes = 0;
+			while (!isInterrupted()) {
+				for (int i = 0; (i < transfers.size()) && !isInterrupted(); i++) {
+					final ByteBuffer b = transfers.get(i).duplicate(); // translateEvents changes order and limit
+					bytes += b.remaining();
+					reader.processData(b);
+					numBytesReplayed = bytes;
+				}
+				numLoops++;
+				if (!loopEnabled) {
+					break;
+				}
+				reader.processData(timestampReset.duplicate()); // so that timestamps stay monotonic
+			}
+		}
+	}
+
+	/**
+	 * Load-tests event acquisition by playing back synthetic DVS events
+	 * through both the locked double buffer and the lock-free ring, with a
+	 * consumer that acquires events at a given rate like the rendering loop
+	 * does, and prints the event rates and overruns.
+	 * <p>
+	 * Arguments, all optional: -seconds=N (default 3) test duration per mode,
+	 * -fps=N (default 30) consumer rate, 0 for as fast as possible,
+	 * -recording=file to play back a USBDataRecording of a DAVIS240C instead
+	 * of synthetic events.
+	 *
+	 * @param args
+	 *            the arguments
+	 * @throws Exception
+	 *             on error
+	 */
+	public static void main(final String[] args) throws Exception {
+		int seconds = 3, fps = 30;
+		File recording = null;
+		for (final String a : args) {
+			if (a.startsWith("-seconds=")) {
+				seconds = Integer.parseInt(a.substring(9));
+			}
+			else if (a.startsWith("-fps=")) {
+				fps = Integer.parseInt(a.substring(5));
+			}
+			else if (a.startsWith("-recording=")) {
+				recording = new File(a.substring(11));
+			}
+			else {
+				System.err.println("unknown argument " + a + ", known are -seconds=N -fps=N -recording=file");
+				return;
+			}
+		}
+		CypressFX3.log.setLevel(Level.WARNING); // timestamp resets are logged at every repetition
+		final List<ByteBuffer> transfers = (recording != null) ? USBDataRecording.read(recording)
+			: DAViSFX3ReplayHardwareInterface.makeSyntheticDvsTransfers(240, 180, 2000000, 10, 8192, 1);
+		final boolean wasRing = CypressFX3.prefs.getBoolean("CypressFX3.ringBufferAcquisitionEnabled", false);
+		try {
+			for (final boolean ring : new boolean[] { false, true }) {
+				final DAViSFX3ReplayHardwareInterface hw = new DAViSFX3ReplayHardwareInterface(transfers, CHIP_DAVIS240C, 240, 180);
+				hw.setRingBufferAcquisitionEnabled(ring);
+				hw.open();
+				long numAcquired = 0, numPackets = 0, numOverrunPackets = 0, acquireNs = 0, maxAcquireNs = 0;
+				final long start = System.nanoTime(), end = start + (seconds * 1000000000L);
+				hw.setEventAcquisitionEnabled(true);
+				while (System.nanoTime() < end) {
+					final long t0 = System.nanoTime();
+					final AEPacketRaw p = hw.acquireAvailableEventsFromDriver();
+					final long dt = System.nanoTime() - t0;
+					acquireNs += dt;
+					maxAcquireNs = Math.max(maxAcquireNs, dt);
+					numAcquired += p.getNumEvents();
+					numPackets++;
+					if (p.overrunOccuredFlag) {
+						numOverrunPackets++;
+					}
+					if (fps > 0) {
+						Thread.sleep(1000 / fps);
+					}
+				}
+				final double s = (System.nanoTime() - start) * 1e-9;
+				final long bytes = hw.getNumBytesReplayed();
+				final AEPacketRawRing r = hw.getAEPacketRawRing();
+				hw.close();
+				System.out.println(String.format(
+					"%-14s: replayed %6.1f MB/s, acquired %5.1f Meps in %d packets, %d packets with overrun, acquire took %.1f us on average and %.1f us at most",
+					ring ? "lock-free ring" : "double buffer", bytes / s / 1e6, numAcquired / s / 1e6, numPackets,
+					numOverrunPackets, (acquireNs * 1e-3) / Math.max(1, numPackets), maxAcquireNs * 1e-3));
+				if (r != null) {
+					System.out.println("                " + r);
+				}
+			}
+		}
+		finally {
+			CypressFX3.prefs.putBoolean("CypressFX3.ringBufferAcquisitionEnabled", wasRing);
+		}
+	}
+}
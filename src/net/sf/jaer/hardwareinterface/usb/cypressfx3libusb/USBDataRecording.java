@@ -0,0 +1,108 @@
+package net.sf.jaer.hardwareinterface.usb.cypressfx3libusb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * File of raw USB data as received by the AEReader of a CypressFX3 device,
+ * i.e. the bytes of each completed bulk transfer before translateEvents. Such
+ * recordings can be played back through translateEvents by
+ * {@link DAViSFX3ReplayHardwareInterface}.
+ * <p>
+ * The file starts with the int MAGIC, followed by one record per transfer that
+ * consists of the int number of bytes and the bytes, all big endian.
+ *
+ * @see CypressFX3#startUsbDataRecording(java.io.File)
+ */
+public class USBDataRecording {
+
+    /** Marks a USB data recording, "USBD" */
+    public static final int MAGIC = 0x55534244;
+
+    private final DataOutputStream out;
+    private long numBytes = 0;
+
+    /**
+     * Creates the file and writes the header.
+     *
+     * @param file the file
+     * @throws IOException if the file cannot be written
+     */
+    public USBDataRecording(File file) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        out.writeInt(MAGIC);
+    }
+
+    /**
+     * Appends the remaining bytes of a buffer. The buffer position is not
+     * changed.
+     *
+     * @param buffer the data of one transfer
+     * @throws IOException on write error
+     */
+    public void write(ByteBuffer buffer) throws IOException {
+        final int n = buffer.remaining();
+        out.writeInt(n);
+        if (buffer.hasArray()) {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), n);
+        } else {
+            final ByteBuffer b = buffer.duplicate();
+            for (int i = 0; i < n; i++) {
+                out.write(b.get());
+            }
+        }
+        numBytes += n;
+    }
+
+    /**
+     * Closes the file.
+     *
+     * @throws IOException on error
+     */
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /** @return the number of data bytes written so far */
+    public long getNumBytes() {
+        return numBytes;
+    }
+
+    /**
+     * Reads all the transfers of a recording into memory.
+     *
+     * @param file the recording
+     * @return the transfers, each a buffer with position 0
+     * @throws IOException if the file cannot be read or is not a recording
+     */
+    public static List<ByteBuffer> read(File file) throws IOException {
+        final ArrayList<ByteBuffer> transfers = new ArrayList<ByteBuffer>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a USB data recording");
+            }
+            while (true) {
+                final int n;
+                try {
+                    n = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                final byte[] b = new byte[n];
+                in.readFully(b);
+                transfers.add(ByteBuffer.wrap(b));
+            }
+        }
+        return transfers;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * LZ4BlockCodec.java
+ *
+ * Fast LZ77 compressor and decompressor using the LZ4 block format.
+ */
+package net.sf.jaer.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A small, dependency-free LZ77 codec that writes the LZ4 block format: a
+ * sequence of tokens, each with a run of literal bytes followed by a match of
+ * at least 4 bytes at an offset of up to 65535 bytes back. The compressor is a
+ * greedy single-pass matcher with a hash table of 4-byte sequences that skips
+ * ahead faster in data that doesn't compress, like the LZ4 "fast" mode, so it
+ * typically compresses several hundred MB/s and decompresses faster still.
+ * <p>
+ * An instance keeps the hash table of the compressor and is not thread safe;
+ * {@link #decompress} keeps no state.
+ */
+public class LZ4BlockCodec {
+
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_LOG = 14;
+    private static final int LAST_LITERALS = 5; // the block must end with at least this many literals
+    private static final int MF_LIMIT = 12; // the last match must start at least this many bytes before the end
+    private static final int MAX_DISTANCE = 65535;
+    private static final int SKIP_TRIGGER = 6; // step grows by one every 2^SKIP_TRIGGER failed searches
+
+    private final int[] hashTable = new int[1 << HASH_LOG];
+
+    /**
+     * Returns the largest possible compressed size, i.e. the size of the
+     * destination array needed for {@link #compress}.
+     *
+     * @param length the number of bytes to compress
+     * @return the bound in bytes
+     */
+    public static int maxCompressedLength(int length) {
+        return length + (length / 255) + 16;
+    }
+
+    /**
+     * Compresses bytes into the LZ4 block format.
+     *
+     * @param src the source array
+     * @param srcOff the start of the data in src
+     * @param srcLen the number of bytes to compress
+     * @param dst the destination array, with at least
+     * {@link #maxCompressedLength(int)} bytes after dstOff
+     * @param dstOff the start of the output in dst
+     * @return the number of bytes written to dst
+     */
+    public int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff) {
+        final int srcEnd = srcOff + srcLen;
+        final int mfLimit = srcEnd - MF_LIMIT;
+        final int matchLimit = srcEnd - LAST_LITERALS;
+        int sp = srcOff, anchor = srcOff, dp = dstOff;
+        if (srcLen > MF_LIMIT) {
+            Arrays.fill(hashTable, -1);
+            sp++;
+            int searches = 1 << SKIP_TRIGGER;
+            while (sp < mfLimit) {
+                final int seq = readInt(src, sp);
+                final int h = hash(seq);
+                int ref = hashTable[h];
+                hashTable[h] = sp;
+                if (ref < 0 || (sp - ref) > MAX_DISTANCE || readInt(src, ref) != seq) {
+                    sp += searches++ >>> SKIP_TRIGGER;
+                    continue;
+                }
+                searches = 1 << SKIP_TRIGGER;
+                while (sp > anchor && ref > srcOff && src[sp - 1] == src[ref - 1]) {
+                    sp--;
+                    ref--;
+                }
+                int len = MIN_MATCH;
+                while (sp + len < matchLimit && src[sp + len] == src[ref + len]) {
+                    len++;
+                }
+                dp = writeSequence(src, anchor, sp - anchor, sp - ref, len, dst, dp);
+                sp += len;
+                anchor = sp;
+                if (sp < mfLimit) {
+                    hashTable[hash(readInt(src, sp - 2))] = sp - 2;
+                }
+            }
+        }
+        dp = writeLiterals(src, anchor, srcEnd - anchor, dst, dp, 0);
+        return dp - dstOff;
+    }
+
+    /**
+     * Decompresses an LZ4 block.
+     *
+     * @param src the compressed block
+     * @param srcOff the start of the block in src
+     * @param srcLen the length of the block
+     * @param dst the destination array
+     * @param dstOff the start of the output in dst
+     * @param dstLen the room for output in dst
+     * @return the number of bytes written to dst
+     * @throws IOException if the block is corrupt or does not fit into dstLen
+     * bytes
+     */
+    public static int decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+        final int srcEnd = srcOff + srcLen, dstEnd = dstOff + dstLen;
+        int sp = srcOff, dp = dstOff;
+        try {
+            while (sp < srcEnd) {
+                final int token = src[sp++] & 0xFF;
+                int litLen = token >>> 4;
+                if (litLen == 15) {
+                    int b;
+                    do {
+                        b = src[sp++] & 0xFF;
+                        litLen += b;
+                    } while (b == 255);
+                }
+                if (sp + litLen > srcEnd || dp + litLen > dstEnd) {
+                    throw new IOException("literal run of " + litLen + " bytes exceeds the block");
+                }
+                System.arraycopy(src, sp, dst, dp, litLen);
+                sp += litLen;
+                dp += litLen;
+                if (sp >= srcEnd) {
+                    break; // the last sequence has only literals
+                }
+                final int offset = (src[sp] & 0xFF) | ((src[sp + 1] & 0xFF) << 8);
+                sp += 2;
+                int ref = dp - offset;
+                if (offset == 0 || ref < dstOff) {
+                    throw new IOException("match offset " + offset + " is outside of the output");
+                }
+                int matchLen = token & 0xF;
+                if (matchLen == 15) {
+                    int b;
+                    do {
+                        b = src[sp++] & 0xFF;
+                        matchLen += b;
+                    } while (b == 255);
+                }
+                matchLen += MIN_MATCH;
+                if (dp + matchLen > dstEnd) {
+                    throw new IOException("match of " + matchLen + " bytes exceeds the output");
+                }
+                if (offset >= matchLen) {
+                    System.arraycopy(dst, ref, dst, dp, matchLen);
+                    dp += matchLen;
+                } else { // overlapping match repeats the last offset bytes
+                    final int end = dp + matchLen;
+                    while (dp < end) {
+                        dst[dp++] = dst[ref++];
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("truncated LZ4 block");
+        }
+        return dp - dstOff;
+    }
+
+    private static int writeSequence(byte[] src, int litOff, int litLen, int offset, int matchLen, byte[] dst, int dp) {
+        int ml = matchLen - MIN_MATCH;
+        dp = writeLiterals(src, litOff, litLen, dst, dp, ml >= 15 ? 15 : ml);
+        dst[dp++] = (byte) offset;
+        dst[dp++] = (byte) (offset >>> 8);
+        if (ml >= 15) {
+            dp = writeLength(ml - 15, dst, dp);
+        }
+        return dp;
+    }
+
+    private static int writeLiterals(byte[] src, int litOff, int litLen, byte[] dst, int dp, int matchToken) {
+        if (litLen >= 15) {
+            dst[dp++] = (byte) (0xF0 | matchToken);
+            dp = writeLength(litLen - 15, dst, dp);
+        } else {
+            dst[dp++] = (byte) ((litLen << 4) | matchToken);
+        }
+        System.arraycopy(src, litOff, dst, dp, litLen);
+        return dp + litLen;
+    }
+
+    private static int writeLength(int len, byte[] dst, int dp) {
+        while (len >= 255) {
+            dst[dp++] = (byte) 255;
+            len -= 255;
+        }
+        dst[dp++] = (byte) len;
+        return dp;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8) | ((b[i + 2] & 0xFF) << 16) | (b[i + 3] << 24);
+    }
+
+    private static int hash(int seq) {
+        return (seq * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
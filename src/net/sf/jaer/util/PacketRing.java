@@ -0,0 +1,242 @@
+/*
+ * PacketRing.java
+ *
+ * Bounded ring of recycled packets for handing data between threads.
+ */
+package net.sf.jaer.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded ring of reusable slots (e.g. packets) that connects a producer
+ * thread to a consumer thread. The producer claims a free slot, fills it and
+ * publishes it; the consumer takes a published slot, uses it and releases it
+ * back to the free list. After the ring has created its <code>capacity</code>
+ * slots, no further objects are allocated.
+ * <p>
+ * What happens when the consumer falls behind is determined by the
+ * {@link OverflowPolicy}, which can be changed at any time.
+ * <p>
+ * Usage:
+ * <pre>
+ * PacketRing&lt;AEPacketRaw&gt; ring = new PacketRing&lt;AEPacketRaw&gt;(8, PacketRing.OverflowPolicy.BLOCK) {
+ *     protected AEPacketRaw createSlot() {
+ *         return new AEPacketRaw(1024);
+ *     }
+ * };
+ * // producer
+ * AEPacketRaw p = ring.claim(100);
+ * if (p != null) {
+ *     p.copyFrom(source);
+ *     ring.publish(p);
+ * }
+ * // consumer
+ * AEPacketRaw q = ring.take(100);
+ * if (q != null) {
+ *     use(q);
+ *     ring.release(q);
+ * }
+ * </pre>
+ *
+ * @param <T> the type of the slots
+ */
+public abstract class PacketRing<T> {
+
+    /**
+     * What the producer does when all slots are in use.
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * Wait until the consumer releases a slot (back-pressure). The consumer
+         * sees every packet.
+         */
+        BLOCK,
+        /**
+         * Drop the packet being produced, i.e. claim returns null.
+         */
+        DROP_NEWEST,
+        /**
+         * Drop the oldest packet that the consumer has not taken yet and reuse
+         * its slot.
+         */
+        DROP_OLDEST,
+        /**
+         * The consumer only ever sees the most recent packet; older waiting
+         * packets are dropped on each publish. Suitable for rendering.
+         */
+        LATEST_ONLY
+    };
+
+    private final int capacity;
+    private final ArrayBlockingQueue<T> free, full;
+    private volatile OverflowPolicy overflowPolicy;
+    private int numCreated = 0;
+    private final AtomicLong publishedCount = new AtomicLong(), droppedCount = new AtomicLong();
+
+    /**
+     * Constructs a new ring. Slots are created on demand with
+     * {@link #createSlot()}.
+     *
+     * @param capacity the total number of slots, at least 3 so that the
+     * producer and consumer can each hold one while another is queued
+     * @param overflowPolicy the initial overflow policy
+     */
+    public PacketRing(int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity < 3) {
+            capacity = 3;
+        }
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        free = new ArrayBlockingQueue<T>(capacity);
+        full = new ArrayBlockingQueue<T>(capacity);
+    }
+
+    /**
+     * Creates a new slot object. Called at most <code>capacity</code> times.
+     *
+     * @return the new slot
+     */
+    abstract protected T createSlot();
+
+    /**
+     * Claims a free slot for the producer to fill. If no slot is free, the
+     * behavior depends on the overflow policy.
+     *
+     * @param timeoutMs the maximum time to wait for a free slot with the BLOCK
+     * policy
+     * @return the slot, or null if the packet should be dropped or the wait
+     * timed out
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public T claim(long timeoutMs) throws InterruptedException {
+        T s = free.poll();
+        if (s != null) {
+            return s;
+        }
+        synchronized (this) {
+            if (numCreated < capacity) {
+                numCreated++;
+                return createSlot();
+            }
+        }
+        switch (overflowPolicy) {
+            case DROP_NEWEST:
+                droppedCount.incrementAndGet();
+                return null;
+            case DROP_OLDEST:
+            case LATEST_ONLY:
+                s = full.poll();
+                if (s != null) {
+                    droppedCount.incrementAndGet();
+                    return s;
+                }
+                // all slots held by producer and consumer, wait for one
+                return free.poll(timeoutMs, TimeUnit.MILLISECONDS);
+            case BLOCK:
+            default:
+                return free.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Publishes a filled slot to the consumer. With the LATEST_ONLY policy,
+     * packets that the consumer has not taken yet are dropped.
+     *
+     * @param slot the slot obtained from {@link #claim(long)}
+     */
+    public void publish(T slot) {
+        if (overflowPolicy == OverflowPolicy.LATEST_ONLY) {
+            T old;
+            while ((old = full.poll()) != null) {
+                free.offer(old);
+                droppedCount.incrementAndGet();
+            }
+        }
+        full.offer(slot); // never fails since there are never more than capacity slots
+        publishedCount.incrementAndGet();
+    }
+
+    /**
+     * Takes the oldest published slot.
+     *
+     * @param timeoutMs the maximum time to wait
+     * @return the slot, or null if none was published within the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public T take(long timeoutMs) throws InterruptedException {
+        return full.poll(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes the oldest published slot without waiting.
+     *
+     * @return the slot or null if none is available
+     */
+    public T poll() {
+        return full.poll();
+    }
+
+    /**
+     * Returns a slot to the free list, either after the consumer has used it
+     * or when the producer abandons a claimed slot without publishing it.
+     *
+     * @param slot the slot
+     */
+    public void release(T slot) {
+        if (slot != null) {
+            free.offer(slot);
+        }
+    }
+
+    /**
+     * Moves all published but not taken slots back to the free list.
+     */
+    public void clear() {
+        T s;
+        while ((s = full.poll()) != null) {
+            free.offer(s);
+        }
+    }
+
+    /**
+     * @return the number of published slots waiting for the consumer
+     */
+    public int getQueuedCount() {
+        return full.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * @return the total number of published packets
+     */
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    /**
+     * @return the total number of dropped packets
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "PacketRing with capacity " + capacity + ", policy " + overflowPolicy + ", " + getQueuedCount() + " queued, "
+                + getPublishedCount() + " published, " + getDroppedCount() + " dropped";
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Benchmark.java
+ *
+ * A single micro benchmark run by BenchmarkRunner.
+ */
+package net.sf.jaer.util.benchmark;
+
+/**
+ * A micro benchmark of some event processing operation, e.g. extracting or
+ * filtering one packet. BenchmarkRunner calls {@link #setup()} once, then
+ * {@link #run()} repeatedly for warmup and measurement iterations, then
+ * {@link #teardown()}.
+ * <p>
+ * Implementations should fold a value computed from their results into
+ * {@link #consume(long)} so that the JIT compiler cannot eliminate the work.
+ */
+public abstract class Benchmark {
+
+    private final String name;
+    private long sink = 0;
+
+    /**
+     * @param name the name, e.g. "BackgroundActivityFilter.filterPacket"
+     */
+    public Benchmark(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Prepares the benchmark, e.g. generates the input data. Not timed.
+     *
+     * @throws Exception if the benchmark cannot run
+     */
+    public void setup() throws Exception {
+    }
+
+    /**
+     * Runs one operation.
+     *
+     * @return the number of events processed by the operation
+     * @throws Exception on error, which aborts the benchmark
+     */
+    abstract public int run() throws Exception;
+
+    /**
+     * Releases resources. Not timed.
+     *
+     * @throws Exception on error
+     */
+    public void teardown() throws Exception {
+    }
+
+    /**
+     * Consumes a result so that the computation of it is not eliminated.
+     *
+     * @param v a value computed from the result
+     */
+    protected final void consume(long v) {
+        sink += v;
+    }
+
+    /**
+     * @return the sum of consumed values
+     */
+    public long getSink() {
+        return sink;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
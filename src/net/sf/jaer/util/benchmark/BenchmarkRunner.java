@@ -0,0 +1,227 @@
+/*
+ * BenchmarkRunner.java
+ *
+ * Runs the core event processing micro benchmarks.
+ */
+package net.sf.jaer.util.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import ml.options.Options;
+import ml.options.Options.Multiplicity;
+import ml.options.Options.Separator;
+
+/**
+ * Runs {@link Benchmark}'s with warmup and measurement iterations of fixed
+ * duration and reports, for each benchmark, the throughput in events/s (mean
+ * and standard deviation over the measurement iterations), the time per
+ * operation and the bytes allocated per operation by the benchmark thread.
+ * Allocation is measured with the HotSpot extension of ThreadMXBean and is
+ * reported as -1 on JVMs that do not support it.
+ * <p>
+ * Run from the command line, or with <code>ant jaer-benchmark</code>, with
+ * <pre>
+ * java -cp dist/jAER.jar:jars/* net.sf.jaer.util.benchmark.BenchmarkRunner [-include=regex] [-warmup=n] [-iterations=n] [-timems=ms] [-chip=classname] [-packetevents=n] [-rate=eventsPerSecond] [-noise=fraction] [-speed=pixelsPerSecond] [-framerate=Hz]
+ * </pre> The benchmarks that need an AEChip run last, since constructing a chip
+ * exits the JVM if OpenGL is not available; -chip=none skips them.
+ *
+ * @see CoreBenchmarks
+ */
+public class BenchmarkRunner {
+
+    private int warmupIterations = 3, measurementIterations = 5;
+    private long iterationTimeMs = 1000;
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    /**
+     * The measurements of one benchmark.
+     */
+    public static class Result {
+
+        public String name;
+        public double meanEventsPerSecond, stdEventsPerSecond, nsPerOp;
+        public long bytesPerOp = -1;
+
+        @Override
+        public String toString() {
+            return String.format("%-50s %12.4g +- %-10.2g events/s %12.1f ns/op %12d bytes/op", name, meanEventsPerSecond, stdEventsPerSecond, nsPerOp,
+                    bytesPerOp);
+        }
+    }
+
+    /**
+     * Runs one benchmark.
+     *
+     * @param b the benchmark
+     * @return the result
+     * @throws Exception if the benchmark fails
+     */
+    public Result run(Benchmark b) throws Exception {
+        b.setup();
+        try {
+            for (int i = 0; i < warmupIterations; i++) {
+                iterate(b, null);
+            }
+            final double[] eps = new double[measurementIterations];
+            long ops = 0, ns = 0, bytes = 0;
+            final long[] counts = new long[4];
+            for (int i = 0; i < measurementIterations; i++) {
+                iterate(b, counts);
+                eps[i] = counts[1] / (counts[2] * 1e-9);
+                ops += counts[0];
+                ns += counts[2];
+                bytes = (bytes < 0 || counts[3] < 0) ? -1 : bytes + counts[3];
+            }
+            final Result r = new Result();
+            r.name = b.getName();
+            double sum = 0, sum2 = 0;
+            for (double e : eps) {
+                sum += e;
+                sum2 += e * e;
+            }
+            r.meanEventsPerSecond = sum / measurementIterations;
+            r.stdEventsPerSecond = measurementIterations < 2 ? 0
+                    : Math.sqrt(Math.max(0, (sum2 - (sum * sum / measurementIterations)) / (measurementIterations - 1)));
+            r.nsPerOp = (double) ns / ops;
+            r.bytesPerOp = bytes < 0 ? -1 : bytes / ops;
+            return r;
+        } finally {
+            b.teardown();
+        }
+    }
+
+    /**
+     * Runs operations for iterationTimeMs.
+     *
+     * @param counts if non-null, filled with ops, events, duration ns and
+     * allocated bytes
+     */
+    private void iterate(Benchmark b, long[] counts) throws Exception {
+        final long tid = Thread.currentThread().getId();
+        final long bytesBefore = allocatedBytes(tid);
+        final long start = System.nanoTime(), end = start + (iterationTimeMs * 1000000L);
+        long ops = 0, events = 0, now;
+        do {
+            events += b.run();
+            ops++;
+            now = System.nanoTime();
+        } while (now < end);
+        final long bytesAfter = allocatedBytes(tid);
+        if (counts != null) {
+            counts[0] = ops;
+            counts[1] = events;
+            counts[2] = now - start;
+            counts[3] = (bytesBefore < 0 || bytesAfter < 0) ? -1 : bytesAfter - bytesBefore;
+        }
+    }
+
+    private long allocatedBytes(long tid) {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            try {
+                return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(tid);
+            } catch (UnsupportedOperationException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    public int getWarmupIterations() {
+        return warmupIterations;
+    }
+
+    public void setWarmupIterations(int warmupIterations) {
+        this.warmupIterations = warmupIterations;
+    }
+
+    public int getMeasurementIterations() {
+        return measurementIterations;
+    }
+
+    public void setMeasurementIterations(int measurementIterations) {
+        this.measurementIterations = Math.max(1, measurementIterations);
+    }
+
+    public long getIterationTimeMs() {
+        return iterationTimeMs;
+    }
+
+    public void setIterationTimeMs(long iterationTimeMs) {
+        this.iterationTimeMs = iterationTimeMs;
+    }
+
+    public static void main(String[] args) {
+        Options opt = new Options(args, 0, 0);
+        for (String o : new String[]{"include", "warmup", "iterations", "timems", "chip", "packetevents", "rate", "noise", "speed", "framerate"}) {
+            opt.getSet().addOption(o, Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        }
+        if (!opt.check(false, false)) { // there are no data arguments, so don't require them to be last
+            System.err.println(opt.getCheckErrors());
+            System.exit(1);
+        }
+        Logger.getLogger("").setLevel(Level.WARNING); // chip and filter construction is chatty
+        BenchmarkRunner runner = new BenchmarkRunner();
+        CoreBenchmarks.Settings settings = new CoreBenchmarks.Settings();
+        Pattern include = null;
+        try {
+            if (opt.getSet().isSet("include")) {
+                include = Pattern.compile(opt.getSet().getOption("include").getResultValue(0));
+            }
+            if (opt.getSet().isSet("warmup")) {
+                runner.setWarmupIterations(Integer.parseInt(opt.getSet().getOption("warmup").getResultValue(0)));
+            }
+            if (opt.getSet().isSet("iterations")) {
+                runner.setMeasurementIterations(Integer.parseInt(opt.getSet().getOption("iterations").getResultValue(0)));
+            }
+            if (opt.getSet().isSet("timems")) {
+                runner.setIterationTimeMs(Long.parseLong(opt.getSet().getOption("timems").getResultValue(0)));
+            }
+            if (opt.getSet().isSet("chip")) {
+                settings.chipClassName = opt.getSet().getOption("chip").getResultValue(0);
+            }
+            if (opt.getSet().isSet("packetevents")) {
+                settings.packetEvents = Integer.parseInt(opt.getSet().getOption("packetevents").getResultValue(0));
+            }
+            if (opt.getSet().isSet("rate")) {
+                settings.eventRateHz = Float.parseFloat(opt.getSet().getOption("rate").getResultValue(0));
+            }
+            if (opt.getSet().isSet("noise")) {
+                settings.noiseFraction = Float.parseFloat(opt.getSet().getOption("noise").getResultValue(0));
+            }
+            if (opt.getSet().isSet("speed")) {
+                settings.objectSpeedPps = Float.parseFloat(opt.getSet().getOption("speed").getResultValue(0));
+            }
+            if (opt.getSet().isSet("framerate")) {
+                settings.frameRateHz = Float.parseFloat(opt.getSet().getOption("framerate").getResultValue(0));
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Bad argument: " + e.toString());
+            System.exit(1);
+        }
+
+        System.out.println(settings);
+        runner.runAll(CoreBenchmarks.createBenchmarks(settings), include);
+        if (!"none".equals(settings.chipClassName)) {
+            runner.runAll(CoreBenchmarks.createChipBenchmarks(settings), include);
+        }
+        System.exit(0); // chips may have started non-daemon threads
+    }
+
+    private void runAll(List<Benchmark> benchmarks, Pattern include) {
+        for (Benchmark b : benchmarks) {
+            if ((include != null) && !include.matcher(b.getName()).find()) {
+                continue;
+            }
+            try {
+                System.out.println(run(b));
+            } catch (Throwable t) {
+                System.out.println(String.format("%-50s failed: %s", b.getName(), t.toString()));
+            }
+        }
+    }
+}
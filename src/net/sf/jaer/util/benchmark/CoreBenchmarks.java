@@ -0,0 +1,755 @@
+/*
+ * CoreBenchmarks.java
+ *
+ * The micro benchmarks of the core event processing hot paths.
+ */
+package net.sf.jaer.util.benchmark;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ch.unizh.ini.jaer.projects.rbodo.opticalflow.LocalPlanesFlow;
+import eu.seebetter.ini.chips.DavisChip;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.chip.EventExtractor2D;
+import net.sf.jaer.event.BasicEvent;
+import net.sf.jaer.event.ColumnarEventPacket;
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.event.EventPacketPool;
+import net.sf.jaer.event.OutputEventIterator;
+import net.sf.jaer.event.PolarityEvent;
+import net.sf.jaer.eventio.AEFileInputStream;
+import net.sf.jaer.eventio.AEFileTimestampIndex;
+import net.sf.jaer.eventio.AENetworkInterfaceConstants;
+import net.sf.jaer.eventio.AEUnicastInput;
+import net.sf.jaer.eventio.AEUnicastOutput;
+import net.sf.jaer.eventprocessing.EventFilter2D;
+import net.sf.jaer.eventprocessing.TileParallelExecutor;
+import net.sf.jaer.eventprocessing.filter.BackgroundActivityFilter;
+import net.sf.jaer.eventprocessing.filter.RefractoryFilter;
+import net.sf.jaer.eventprocessing.filter.SpatioTemporalCorrelationFilter;
+import net.sf.jaer.eventprocessing.filter.TimestampMap2D;
+import net.sf.jaer.eventprocessing.tracking.RectangularClusterTracker;
+import net.sf.jaer.graphics.AEFrameChipRenderer;
+
+/**
+ * Builds the benchmarks of the core hot paths: EventPacket iteration and
+ * output, ColumnarEventPacket conversion, AEFileInputStream decoding, event
+ * extraction, BackgroundActivityFilter, RectangularClusterTracker and
+ * rendering to AEFrameChipRenderer buffers. Input data comes from
+ * {@link SyntheticEventGenerator}.
+ * <p>
+ * Filter and render benchmarks cycle through a set of prepared packets with
+ * increasing timestamps; each operation first copies the prepared packet to a
+ * work packet with EventPacket.copyFrom so that the filter always sees
+ * unfiltered input, so their time includes that copy, which is measured
+ * separately by the "EventPacket.copyFrom" benchmark.
+ *
+ * @see BenchmarkRunner
+ */
+public class CoreBenchmarks {
+
+    /**
+     * Number of different packets that benchmarks cycle through
+     */
+    private static final int NUM_PACKETS = 32;
+    /**
+     * Number of events in the synthetic file for AEFileInputStream
+     */
+    private static final int FILE_EVENTS = 4000000;
+
+    /**
+     * The parameters of the generated data.
+     */
+    public static class Settings {
+
+        public String chipClassName = "eu.seebetter.ini.chips.davis.DAVIS240C";
+        public int packetEvents = 10000;
+        public int sizeX = 240, sizeY = 180;
+        public float eventRateHz = 1e6f, noiseFraction = 0.1f, objectSpeedPps = 200, frameRateHz = 30;
+
+        SyntheticEventGenerator makeGenerator() {
+            SyntheticEventGenerator g = new SyntheticEventGenerator(1);
+            g.setSizeX(sizeX);
+            g.setSizeY(sizeY);
+            g.setEventRateHz(eventRateHz);
+            g.setNoiseFraction(noiseFraction);
+            g.setObjectSpeedPps(objectSpeedPps);
+            g.setFrameRateHz(frameRateHz);
+            return g;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("chip=%s packetEvents=%d size=%dx%d rate=%.3g Hz noise=%.2f speed=%.0f pps framerate=%.1f Hz", chipClassName, packetEvents,
+                    sizeX, sizeY, eventRateHz, noiseFraction, objectSpeedPps, frameRateHz);
+        }
+    }
+
+    /**
+     * Makes the benchmarks that do not need an AEChip.
+     *
+     * @param settings the data parameters
+     * @return the benchmarks
+     */
+    public static List<Benchmark> createBenchmarks(final Settings settings) {
+        List<Benchmark> list = new ArrayList<Benchmark>();
+        list.add(new PolarityPacketBenchmark("EventPacket.inputIterator", settings) {
+            @Override
+            public int run() {
+                int n = 0;
+                long sum = 0;
+                for (BasicEvent e : next()) {
+                    sum += e.x + e.y + e.timestamp;
+                    n++;
+                }
+                consume(sum);
+                return n;
+            }
+        });
+        list.add(new PolarityPacketBenchmark("EventPacket.outputIterator", settings) {
+            final EventPacket<PolarityEvent> out = new EventPacket<PolarityEvent>(PolarityEvent.class);
+
+            @Override
+            public int run() {
+                final EventPacket<PolarityEvent> in = next();
+                final OutputEventIterator<PolarityEvent> outItr = out.outputIterator();
+                for (PolarityEvent e : in) {
+                    outItr.nextOutput().copyFrom(e);
+                }
+                consume(out.getSize());
+                return in.getSize();
+            }
+        });
+        list.add(new PolarityPacketBenchmark("EventPacket.copyFrom", settings) {
+            final EventPacket<PolarityEvent> out = new EventPacket<PolarityEvent>(PolarityEvent.class);
+
+            @Override
+            public int run() {
+                final EventPacket<PolarityEvent> in = next();
+                out.copyFrom(in);
+                consume(out.getSize());
+                return in.getSize();
+            }
+        });
+        list.add(new PolarityPacketBenchmark("EventPacketPool.obtainTemporary+copyFrom", settings) {
+            final EventPacketPool pool = new EventPacketPool();
+
+            @Override
+            public int run() {
+                final EventPacket<PolarityEvent> in = next();
+                pool.releaseTemporaries(); // as FilterChain does at the start of each pass
+                final EventPacket<PolarityEvent> out = pool.obtainTemporary(in);
+                out.copyFrom(in);
+                consume(out.getSize());
+                return in.getSize();
+            }
+        });
+        list.add(new PolarityPacketBenchmark("ColumnarEventPacket.copyFromEventPacket", settings) {
+            final ColumnarEventPacket out = new ColumnarEventPacket();
+
+            @Override
+            public int run() {
+                final EventPacket<PolarityEvent> in = next();
+                out.copyFromEventPacket(in);
+                consume(out.getSize());
+                return in.getSize();
+            }
+        });
+        list.add(new CorrelationBenchmark("3x3 correlation int[][] map", settings, null));
+        list.add(new CorrelationBenchmark("3x3 correlation TimestampMap2D", settings, Boolean.FALSE));
+        list.add(new CorrelationBenchmark("3x3 correlation TimestampMap2D compact", settings, Boolean.TRUE));
+        list.add(new FileReadBenchmark("AEFileInputStream.readPacketByNumber per-event", settings, false));
+        list.add(new FileReadBenchmark("AEFileInputStream.readPacketByNumber bulk", settings, true));
+        list.add(new UnicastLoopbackBenchmark("AEUnicastOutput->AEUnicastInput batched loopback", settings));
+        return list;
+    }
+
+    /**
+     * Makes the benchmarks that need the AEChip. Note that ChipCanvas exits
+     * the JVM if OpenGL is not available, so these should be run after the
+     * others.
+     *
+     * @param settings the data parameters
+     * @return the benchmarks, empty if the chip could not be constructed
+     */
+    public static List<Benchmark> createChipBenchmarks(final Settings settings) {
+        List<Benchmark> list = new ArrayList<Benchmark>();
+        final AEChip chip = constructChip(settings.chipClassName);
+        if (chip == null) {
+            return list;
+        }
+        list.add(new ChipBenchmark(chip.getEventExtractor().getClass().getSimpleName() + ".extractPacket", chip, settings) {
+            @Override
+            public int run() {
+                index = (index + 1) % raws.size();
+                final EventPacket<?> p = extractor.extractPacket(raws.get(index));
+                consume(p.getSize());
+                return raws.get(index).getNumEvents();
+            }
+        });
+        list.add(new FilterBenchmark("BackgroundActivityFilter.filterPacket", chip, settings) {
+            @Override
+            EventFilter2D makeFilter() {
+                return new BackgroundActivityFilter(chip);
+            }
+        });
+        list.add(new TileParallelFilterBenchmark("BackgroundActivityFilter tiles parallel", chip, settings) {
+            @Override
+            EventFilter2D makeFilter() {
+                return new BackgroundActivityFilter(chip);
+            }
+        });
+        list.add(new FilterBenchmark("SpatioTemporalCorrelationFilter.filterPacket", chip, settings) {
+            @Override
+            EventFilter2D makeFilter() {
+                return new SpatioTemporalCorrelationFilter(chip);
+            }
+        });
+        list.add(new FilterBenchmark("RefractoryFilter.filterPacket", chip, settings) {
+            @Override
+            EventFilter2D makeFilter() {
+                return new RefractoryFilter(chip);
+            }
+        });
+        list.add(new TileParallelFilterBenchmark("RefractoryFilter tiles parallel", chip, settings) {
+            @Override
+            EventFilter2D makeFilter() {
+                return new RefractoryFilter(chip);
+            }
+        });
+        list.add(new FilterBenchmark("RectangularClusterTracker.filterPacket", chip, settings) {
+            @Override
+            EventFilter2D makeFilter() {
+                return new RectangularClusterTracker(chip);
+            }
+        });
+        list.add(new FilterBenchmark("LocalPlanesFlow.filterPacket", chip, settings) {
+            @Override
+            EventFilter2D makeFilter() {
+                return new LocalPlanesFlow(chip);
+            }
+        });
+        for (int numObjects : new int[]{1, 10, 50, 100}) {
+            list.add(new ClusterScalingBenchmark(chip, settings, numObjects, true));
+            list.add(new ClusterScalingBenchmark(chip, settings, numObjects, false));
+        }
+        if (chip.getRenderer() instanceof AEFrameChipRenderer) {
+            for (final boolean incremental : new boolean[]{false, true}) {
+                list.add(new ChipBenchmark("AEFrameChipRenderer.render" + (incremental ? " incremental" : ""), chip, settings) {
+                    AEFrameChipRenderer renderer;
+                    boolean wasIncremental;
+                    int[] regions;
+
+                    @Override
+                    public void setup() throws Exception {
+                        super.setup();
+                        renderer = (AEFrameChipRenderer) chip.getRenderer();
+                        wasIncremental = renderer.isIncrementalRenderingEnabled();
+                        renderer.setIncrementalRenderingEnabled(incremental);
+                        regions = new int[4 * renderer.getMaxDirtyEventMapRegions()];
+                    }
+
+                    @Override
+                    public int run() {
+                        final EventPacket<?> p = nextWorkPacket();
+                        renderer.render(p);
+                        consume(renderer.takeDirtyEventMapRegions(regions)); // what the display method does per frame
+                        return p.getSize();
+                    }
+
+                    @Override
+                    public void teardown() throws Exception {
+                        renderer.setIncrementalRenderingEnabled(wasIncremental);
+                        super.teardown();
+                    }
+                });
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @return the chip, or null if it could not be constructed
+     */
+    static AEChip constructChip(String className) {
+        try {
+            Class<? extends AEChip> chipClass = Class.forName(className).asSubclass(AEChip.class);
+            Constructor<? extends AEChip> constructor = chipClass.getConstructor();
+            return constructor.newInstance((java.lang.Object[]) null);
+        } catch (Throwable t) { // also catch linkage errors from missing native OpenGL libraries
+            System.out.println("skipping benchmarks that need the chip, could not construct " + className + ": " + t.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Copies the events of a packet into another packet that holds the same
+     * event class.
+     *
+     * @return dst
+     */
+    @SuppressWarnings("unchecked")
+    static EventPacket<?> copyPacket(EventPacket<?> dst, EventPacket<?> src) {
+        ((EventPacket<BasicEvent>) dst).copyFrom(src);
+        return dst;
+    }
+
+    /**
+     * Reconstructs the raw events of a packet of the extractor's event class.
+     */
+    @SuppressWarnings("unchecked")
+    static <E extends BasicEvent> AEPacketRaw reconstructRawPacket(EventExtractor2D<E> extractor, EventPacket<?> packet) {
+        return extractor.reconstructRawPacket((EventPacket<E>) packet);
+    }
+
+    /**
+     * Cycles through packets of PolarityEvent without a chip.
+     */
+    private static abstract class PolarityPacketBenchmark extends Benchmark {
+
+        final Settings settings;
+        final List<EventPacket<PolarityEvent>> packets = new ArrayList<EventPacket<PolarityEvent>>();
+        int index = 0;
+
+        PolarityPacketBenchmark(String name, Settings settings) {
+            super(name);
+            this.settings = settings;
+        }
+
+        @Override
+        public void setup() {
+            SyntheticEventGenerator g = settings.makeGenerator();
+            for (int i = 0; i < NUM_PACKETS; i++) {
+                EventPacket<PolarityEvent> p = new EventPacket<PolarityEvent>(PolarityEvent.class);
+                g.fillPolarityPacket(p, settings.packetEvents);
+                packets.add(p);
+            }
+        }
+
+        EventPacket<PolarityEvent> next() {
+            index = (index + 1) % packets.size();
+            return packets.get(index);
+        }
+    }
+
+    /**
+     * Counts correlated neighbors and updates the map of past event times like
+     * SpatioTemporalCorrelationFilter, either with the jagged int[][] map the
+     * noise filters used before TimestampMap2D or with TimestampMap2D.
+     */
+    private static class CorrelationBenchmark extends PolarityPacketBenchmark {
+
+        static final int DT = 10000;
+        final Boolean compact; // null for int[][]
+        int[][] jagged;
+        TimestampMap2D map;
+
+        CorrelationBenchmark(String name, Settings settings, Boolean compact) {
+            super(name, settings);
+            this.compact = compact;
+        }
+
+        @Override
+        public void setup() {
+            super.setup();
+            if (compact == null) {
+                jagged = new int[settings.sizeX][settings.sizeY];
+                for (int[] row : jagged) {
+                    Arrays.fill(row, TimestampMap2D.EMPTY);
+                }
+            } else {
+                map = new TimestampMap2D(settings.sizeX, settings.sizeY, 0, 1, compact, 2);
+            }
+        }
+
+        @Override
+        public int run() {
+            final EventPacket<PolarityEvent> in = next();
+            final int n = in.getSize();
+            int sum = 0;
+            if (compact == null) {
+                final int sx = settings.sizeX, sy = settings.sizeY;
+                for (int k = 0; k < n; k++) {
+                    final PolarityEvent e = in.getEvent(k);
+                    final int x = e.x, y = e.y, ts = e.timestamp;
+                    for (int xx = x - 1; xx <= x + 1; xx++) {
+                        for (int yy = y - 1; yy <= y + 1; yy++) {
+                            if ((xx < 0) || (xx >= sx) || (yy < 0) || (yy >= sy)) {
+                                continue;
+                            }
+                            final int lastT = jagged[xx][yy];
+                            if (((ts - lastT) < DT) && (lastT != TimestampMap2D.EMPTY)) {
+                                sum++;
+                            }
+                        }
+                    }
+                    jagged[x][y] = ts;
+                }
+            } else {
+                final TimestampMap2D m = map;
+                for (int k = 0; k < n; k++) {
+                    final PolarityEvent e = in.getEvent(k);
+                    final int index = m.index(e.x, e.y), ts = e.timestamp;
+                    sum += m.countNeighborsWithin(index, ts, DT);
+                    m.set(index, ts);
+                }
+            }
+            consume(sum);
+            return n;
+        }
+    }
+
+    /**
+     * Reads a synthetic DAVIS data file.
+     */
+    private static class FileReadBenchmark extends Benchmark {
+
+        final Settings settings;
+        final boolean bulk;
+        File file;
+        AEFileInputStream in;
+
+        FileReadBenchmark(String name, Settings settings, boolean bulk) {
+            super(name);
+            this.settings = settings;
+            this.bulk = bulk;
+        }
+
+        @Override
+        public void setup() throws Exception {
+            file = File.createTempFile("CoreBenchmarks", ".aedat");
+            file.deleteOnExit();
+            SyntheticEventGenerator g = settings.makeGenerator();
+            g.setFrameRateHz(0); // frames would make packets have a single timestamp
+            g.writeDavisFile(file, FILE_EVENTS);
+            in = new AEFileInputStream(file, null);
+            in.setBulkDecodeEnabled(bulk);
+            in.setNonMonotonicTimeExceptionsChecked(false);
+        }
+
+        @Override
+        public int run() throws Exception {
+            if ((in.position() + settings.packetEvents) >= in.getMarkOutPosition()) {
+                in.rewind(); // stay clear of the end of the file, where reading returns null events
+            }
+            AEPacketRaw p = in.readPacketByNumber(settings.packetEvents);
+            consume(p.getNumEvents() == 0 ? 0 : p.getTimestamp(p.getNumEvents() - 1));
+            return p.getNumEvents();
+        }
+
+        @Override
+        public void teardown() throws Exception {
+            if (in != null) {
+                in.close();
+            }
+            if (file != null) {
+                file.delete();
+                AEFileTimestampIndex.indexFileFor(file).delete();
+            }
+        }
+    }
+
+    /**
+     * Streams DAVIS packets from AEUnicastOutput to AEUnicastInput over the
+     * loopback interface in batched streaming mode. Each operation sends one
+     * packet and returns the events received meanwhile, so lost datagrams
+     * lower the measured rate; the loss counters are printed at the end. The
+     * settings that are changed are stored preferences, so they are restored
+     * in teardown.
+     */
+    private static class UnicastLoopbackBenchmark extends Benchmark {
+
+        static final int PORT = AENetworkInterfaceConstants.DATAGRAM_PORT + 100;
+        static final long DRAIN_TIMEOUT_NS = 50000000;
+        final Settings settings;
+        final ArrayList<AEPacketRaw> packets = new ArrayList<AEPacketRaw>();
+        AEUnicastOutput out;
+        AEUnicastInput in;
+        int next = 0, inPort, outPort;
+        String outHost;
+        boolean inCaer, inBatched, outBatched;
+
+        UnicastLoopbackBenchmark(String name, Settings settings) {
+            super(name);
+            this.settings = settings;
+        }
+
+        @Override
+        public void setup() throws Exception {
+            SyntheticEventGenerator g = settings.makeGenerator();
+            g.setFrameRateHz(0);
+            for (int i = 0; i < NUM_PACKETS; i++) {
+                AEPacketRaw raw = new AEPacketRaw();
+                g.fillDavisRawPacket(raw, settings.packetEvents);
+                packets.add(raw);
+            }
+            in = new AEUnicastInput(null);
+            inPort = in.getPort();
+            inCaer = in.iscAERDisplayEnabled();
+            inBatched = in.isBatchedStreamingEnabled();
+            in.setPort(PORT);
+            in.setCAERDisplayEnabled(false);
+            in.setBatchedStreamingEnabled(true);
+            in.open();
+            out = new AEUnicastOutput();
+            outHost = out.getHost();
+            outPort = out.getPort();
+            outBatched = out.isBatchedStreamingEnabled();
+            out.setHost("localhost");
+            out.setPort(PORT);
+            out.setBatchedStreamingEnabled(true);
+            out.open();
+            long start = System.nanoTime(); // wait for the receiver to bind its port
+            while (in.getDatagramsReceived() == 0 && System.nanoTime() - start < 5000000000L) {
+                out.writePacket(packets.get(0));
+                in.readPacket();
+                Thread.sleep(10);
+            }
+            in.resetStatistics();
+        }
+
+        @Override
+        public int run() throws Exception {
+            final long before = in.getEventsReceived();
+            final AEPacketRaw p = packets.get(next);
+            next = (next + 1) % NUM_PACKETS;
+            out.writePacket(p);
+            final long target = before + p.getNumEvents();
+            long lastProgress = System.nanoTime();
+            long received = before;
+            while (received < target) {
+                in.readPacket();
+                if (in.getEventsReceived() != received) {
+                    received = in.getEventsReceived();
+                    lastProgress = System.nanoTime();
+                } else if (System.nanoTime() - lastProgress > DRAIN_TIMEOUT_NS) {
+                    break; // lost datagrams
+                } else {
+                    Thread.yield();
+                }
+            }
+            consume(received);
+            return (int) (received - before);
+        }
+
+        @Override
+        public void teardown() throws Exception {
+            if (out != null) {
+                out.close();
+                System.out.println("    sent " + out.getStatistics());
+                out.setHost(outHost);
+                out.setPort(outPort);
+                out.setBatchedStreamingEnabled(outBatched);
+            }
+            if (in != null) {
+                in.close();
+                System.out.println("    received " + in.getStatistics());
+                in.setPort(inPort);
+                in.setCAERDisplayEnabled(inCaer);
+                in.setBatchedStreamingEnabled(inBatched);
+            }
+        }
+    }
+
+    /**
+     * Prepares raw packets for the chip, and cooked copies of them extracted by
+     * the chip's extractor.
+     */
+    private static abstract class ChipBenchmark extends Benchmark {
+
+        final AEChip chip;
+        final Settings settings;
+        EventExtractor2D<?> extractor;
+        final List<AEPacketRaw> raws = new ArrayList<AEPacketRaw>();
+        final List<EventPacket<?>> cooked = new ArrayList<EventPacket<?>>();
+        EventPacket<?> work;
+        int index = 0;
+
+        ChipBenchmark(String name, AEChip chip, Settings settings) {
+            super(name);
+            this.chip = chip;
+            this.settings = settings;
+        }
+
+        /**
+         * @return the generator of the data, sized for the chip
+         */
+        SyntheticEventGenerator makeGenerator() {
+            SyntheticEventGenerator g = settings.makeGenerator();
+            g.setSizeX(chip.getSizeX());
+            g.setSizeY(chip.getSizeY());
+            return g;
+        }
+
+        @Override
+        public void setup() throws Exception {
+            extractor = chip.getEventExtractor();
+            SyntheticEventGenerator g = makeGenerator();
+            EventPacket<?> prototype = extractor.extractPacket(new AEPacketRaw()).constructNewPacket();
+            for (int i = 0; i < NUM_PACKETS; i++) {
+                AEPacketRaw raw = new AEPacketRaw(settings.packetEvents);
+                if (chip instanceof DavisChip) {
+                    g.fillDavisRawPacket(raw, settings.packetEvents);
+                } else { // make the chip's raw addresses from PolarityEvent's
+                    EventPacket<?> p = prototype.constructNewPacket();
+                    g.fillPolarityPacket(p, settings.packetEvents);
+                    raw.copyFrom(reconstructRawPacket(extractor, p));
+                }
+                raws.add(raw);
+                cooked.add(copyPacket(prototype.constructNewPacket(), extractor.extractPacket(raw)));
+            }
+            work = prototype.constructNewPacket();
+        }
+
+        /**
+         * @return a fresh copy of the next cooked packet
+         */
+        EventPacket<?> nextWorkPacket() {
+            index = (index + 1) % cooked.size();
+            return copyPacket(work, cooked.get(index));
+        }
+    }
+
+    /**
+     * Filters the cooked packets with a filter.
+     */
+    private static abstract class FilterBenchmark extends ChipBenchmark {
+
+        EventFilter2D filter;
+
+        FilterBenchmark(String name, AEChip chip, Settings settings) {
+            super(name, chip, settings);
+        }
+
+        abstract EventFilter2D makeFilter();
+
+        @Override
+        public void setup() throws Exception {
+            super.setup();
+            filter = makeFilter();
+            filter.setFilterEnabled(true);
+        }
+
+        @Override
+        public int run() {
+            final EventPacket<?> in = nextWorkPacket();
+            if (index == 0) {
+                filter.resetFilter(); // timestamps go back to the start
+            }
+            final EventPacket<?> out = filter.filterPacket(in);
+            consume(out.getSize());
+            return in.getSize();
+        }
+
+        @Override
+        public void teardown() {
+            if (filter != null) {
+                filter.setFilterEnabled(false);
+                filter.cleanup();
+            }
+        }
+    }
+
+    /**
+     * Tracks numObjects small blobs, each moving in its own tile of the chip,
+     * with RectangularClusterTracker using either its grid index or a search
+     * of all clusters to find the cluster of each event, to measure how the
+     * throughput scales with the number of live clusters.
+     */
+    private static class ClusterScalingBenchmark extends FilterBenchmark {
+
+        static final float OBJECT_RADIUS = 4;
+        final int numObjects;
+        final boolean grid;
+        RectangularClusterTracker tracker;
+        // the preferred values, restored on teardown
+        float oldClusterSize;
+        int oldMaxNumClusters;
+        boolean oldGrid;
+
+        ClusterScalingBenchmark(AEChip chip, Settings settings, int numObjects, boolean grid) {
+            super("RectangularClusterTracker " + numObjects + " clusters " + (grid ? "grid" : "linear"), chip, settings);
+            this.numObjects = numObjects;
+            this.grid = grid;
+        }
+
+        @Override
+        SyntheticEventGenerator makeGenerator() {
+            SyntheticEventGenerator g = super.makeGenerator();
+            g.setObjectRadiusPixels(OBJECT_RADIUS);
+            g.setNumObjects(numObjects);
+            return g;
+        }
+
+        @Override
+        EventFilter2D makeFilter() {
+            tracker = new RectangularClusterTracker(chip);
+            oldClusterSize = tracker.getClusterSize();
+            oldMaxNumClusters = tracker.getMaxNumClusters();
+            oldGrid = tracker.isFastClusterFinderEnabled();
+            tracker.setClusterSize((2 * OBJECT_RADIUS) / Math.max(chip.getSizeX(), chip.getSizeY()));
+            tracker.setMaxNumClusters(2 * numObjects);
+            tracker.setFastClusterFinderEnabled(grid);
+            return tracker;
+        }
+
+        @Override
+        public int run() {
+            final int n = super.run();
+            consume(tracker.getNumClusters());
+            return n;
+        }
+
+        @Override
+        public void teardown() {
+            super.teardown();
+            if (tracker != null) {
+                tracker.setClusterSize(oldClusterSize);
+                tracker.setMaxNumClusters(oldMaxNumClusters);
+                tracker.setFastClusterFinderEnabled(oldGrid);
+            }
+        }
+    }
+
+    /**
+     * Filters the cooked packets with a TileLocalFilter in parallel tiles.
+     */
+    private static abstract class TileParallelFilterBenchmark extends FilterBenchmark {
+
+        TileParallelExecutor executor;
+
+        TileParallelFilterBenchmark(String name, AEChip chip, Settings settings) {
+            super(name, chip, settings);
+        }
+
+        @Override
+        public void setup() throws Exception {
+            super.setup();
+            executor = new TileParallelExecutor(chip);
+        }
+
+        @Override
+        public int run() {
+            final EventPacket<?> in = nextWorkPacket();
+            if (index == 0) {
+                filter.resetFilter();
+            }
+            final EventPacket<?> out = executor.filterPacket(filter, in);
+            consume(out.getSize());
+            return in.getSize();
+        }
+
+        @Override
+        public void teardown() {
+            super.teardown();
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * SyntheticEventGenerator.java
+ *
+ * Generates synthetic DVS and APS data for benchmarks.
+ */
+package net.sf.jaer.util.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import eu.seebetter.ini.chips.DavisChip;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.event.OutputEventIterator;
+import net.sf.jaer.event.PolarityEvent;
+import net.sf.jaer.eventio.AEDataFile;
+
+/**
+ * Generates reproducible synthetic sensor data: DVS events from the edge of a
+ * disk that moves across the sensor and bounces off its borders, mixed with
+ * uniformly distributed noise events, and optionally DAVIS APS frames at a
+ * fixed frame rate. With numObjects larger than one, the sensor is divided into
+ * a grid of tiles each holding a disk that bounces within its tile, and each
+ * object event comes from a randomly chosen disk. The data can be produced as cooked PolarityEvent's, as raw
+ * DAVIS addresses, or written to an AER-DAT2.0 file.
+ * <p>
+ * Timestamps advance by 1/eventRateHz per DVS event; a frame adds its
+ * 2*sizeX*sizeY reset and signal read samples at a single timestamp.
+ */
+public class SyntheticEventGenerator {
+
+    private int sizeX = 240, sizeY = 180;
+    private float eventRateHz = 1e6f;
+    private float noiseFraction = 0.1f;
+    private float objectSpeedPps = 200;
+    private float objectRadiusPixels = 20;
+    private float frameRateHz = 0;
+    private int numObjects = 1;
+
+    private final Random random;
+    private double timeUs = 0;
+    private float[] objX, objY, velX, velY;
+    private double[] objTimeUs; // time each object was last moved to
+    private int tilesX = 1, tileWidth, tileHeight;
+    private int nextFrameTimeUs = 0;
+
+    /**
+     * Makes a new generator.
+     *
+     * @param seed the random seed; equal seeds and settings give equal data
+     */
+    public SyntheticEventGenerator(long seed) {
+        random = new Random(seed);
+        reset();
+    }
+
+    /**
+     * Restarts time at zero and puts the objects in the middle of their
+     * tiles, which for a single object is the whole sensor.
+     */
+    public final void reset() {
+        timeUs = 0;
+        nextFrameTimeUs = 0;
+        tilesX = (int) Math.ceil(Math.sqrt(numObjects));
+        final int tilesY = (numObjects + tilesX - 1) / tilesX;
+        tileWidth = Math.max(1, sizeX / tilesX);
+        tileHeight = Math.max(1, sizeY / tilesY);
+        objX = new float[numObjects];
+        objY = new float[numObjects];
+        velX = new float[numObjects];
+        velY = new float[numObjects];
+        objTimeUs = new double[numObjects];
+        for (int k = 0; k < numObjects; k++) {
+            objX[k] = ((k % tilesX) * tileWidth) + (tileWidth / 2f);
+            objY[k] = ((k / tilesX) * tileHeight) + (tileHeight / 2f);
+            final double angle = random.nextDouble() * 2 * Math.PI;
+            velX[k] = (float) (objectSpeedPps * Math.cos(angle));
+            velY[k] = (float) (objectSpeedPps * Math.sin(angle));
+        }
+    }
+
+    /**
+     * Appends numEvents PolarityEvent's to the output packet, which is
+     * cleared first.
+     *
+     * @param packet a packet of PolarityEvent or a subclass
+     * @param numEvents the number of events
+     */
+    public void fillPolarityPacket(EventPacket<?> packet, int numEvents) {
+        final OutputEventIterator<?> outItr = packet.outputIterator();
+        for (int i = 0; i < numEvents; i++) {
+            final PolarityEvent e = (PolarityEvent) outItr.nextOutput();
+            final int ts = nextDvsEvent();
+            e.timestamp = ts;
+            e.x = (short) eventX;
+            e.y = (short) eventY;
+            e.polarity = eventOn ? PolarityEvent.Polarity.On : PolarityEvent.Polarity.Off;
+            e.type = (byte) (eventOn ? 1 : 0);
+            e.address = 0;
+        }
+    }
+
+    /**
+     * Fills the raw packet with numEvents DVS events in DAVIS address format,
+     * plus APS frame samples whenever a frame is due if frameRateHz is
+     * non-zero.
+     *
+     * @param raw the packet to fill, it is cleared first
+     * @param numEvents the number of DVS events
+     */
+    public void fillDavisRawPacket(AEPacketRaw raw, int numEvents) {
+        raw.setNumEvents(0);
+        raw.ensureCapacity(numEvents);
+        int n = 0;
+        final int sx1 = sizeX - 1;
+        for (int i = 0; i < numEvents; i++) {
+            final int ts = nextDvsEvent();
+            if ((frameRateHz > 0) && (ts >= nextFrameTimeUs)) {
+                raw.setNumEvents(n);
+                n = appendDavisFrame(raw, nextFrameTimeUs);
+                nextFrameTimeUs += (int) (1e6f / frameRateHz);
+            }
+            raw.ensureCapacity(n + 1);
+            raw.addresses[n] = DavisChip.ADDRESS_TYPE_DVS | ((sx1 - eventX) << DavisChip.XSHIFT) | (eventY << DavisChip.YSHIFT)
+                    | (eventOn ? DavisChip.POLMASK : 0);
+            raw.timestamps[n] = ts;
+            n++;
+        }
+        raw.setNumEvents(n);
+    }
+
+    /**
+     * Writes an AER-DAT2.0 file holding numEvents DVS events in DAVIS address
+     * format (and frames if frameRateHz is non-zero).
+     *
+     * @param f the file
+     * @param numEvents the number of DVS events
+     * @throws IOException on write error
+     */
+    public void writeDavisFile(File f, int numEvents) throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 20));
+        try {
+            writeHeaderLine(out, AEDataFile.DATA_FILE_FORMAT_HEADER + "2.0");
+            writeHeaderLine(out, " synthetic data file written by " + getClass().getSimpleName());
+            writeHeaderLine(out, AEDataFile.END_OF_HEADER_STRING);
+            final AEPacketRaw raw = new AEPacketRaw(1 << 16);
+            final int chunk = 1 << 16;
+            for (int written = 0; written < numEvents; written += chunk) {
+                fillDavisRawPacket(raw, Math.min(chunk, numEvents - written));
+                for (int i = 0; i < raw.getNumEvents(); i++) {
+                    out.writeInt(raw.addresses[i]);
+                    out.writeInt(raw.timestamps[i]);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeHeaderLine(DataOutputStream out, String s) throws IOException {
+        out.writeByte(AEDataFile.COMMENT_CHAR);
+        out.writeBytes(s);
+        out.write(AEDataFile.EOL);
+    }
+
+    // the last generated DVS event
+    private int eventX, eventY;
+    private boolean eventOn;
+
+    /**
+     * Advances time and the object and generates the next DVS event into
+     * eventX, eventY, eventOn.
+     *
+     * @return the timestamp
+     */
+    private int nextDvsEvent() {
+        final double dtUs = 1e6 / eventRateHz;
+        timeUs += dtUs;
+        if (random.nextFloat() < noiseFraction) {
+            eventX = random.nextInt(sizeX);
+            eventY = random.nextInt(sizeY);
+            eventOn = random.nextBoolean();
+        } else {
+            final int k = numObjects == 1 ? 0 : random.nextInt(numObjects);
+            moveObject(k);
+            final double angle = random.nextDouble() * 2 * Math.PI;
+            final float nx = (float) Math.cos(angle), ny = (float) Math.sin(angle);
+            eventX = clip((int) (objX[k] + (objectRadiusPixels * nx)), sizeX);
+            eventY = clip((int) (objY[k] + (objectRadiusPixels * ny)), sizeY);
+            eventOn = ((nx * velX[k]) + (ny * velY[k])) > 0; // leading edge of a bright object makes ON events
+        }
+        return (int) timeUs;
+    }
+
+    /**
+     * Moves object k to the present time, bouncing off the borders of its
+     * tile.
+     */
+    private void moveObject(int k) {
+        final float dtS = (float) ((timeUs - objTimeUs[k]) * 1e-6);
+        objTimeUs[k] = timeUs;
+        final int x0 = numObjects == 1 ? 0 : (k % tilesX) * tileWidth, y0 = numObjects == 1 ? 0 : (k / tilesX) * tileHeight;
+        final int x1 = numObjects == 1 ? sizeX : x0 + tileWidth, y1 = numObjects == 1 ? sizeY : y0 + tileHeight;
+        objX[k] += velX[k] * dtS;
+        objY[k] += velY[k] * dtS;
+        if ((objX[k] < x0) || (objX[k] >= x1)) {
+            velX[k] = -velX[k];
+            objX[k] = Math.max(x0, Math.min(x1 - 1, objX[k]));
+        }
+        if ((objY[k] < y0) || (objY[k] >= y1)) {
+            velY[k] = -velY[k];
+            objY[k] = Math.max(y0, Math.min(y1 - 1, objY[k]));
+        }
+    }
+
+    private static int clip(int v, int size) {
+        return v < 0 ? 0 : (v >= size ? size - 1 : v);
+    }
+
+    /**
+     * Appends a DAVIS APS frame (reset read then signal read of every pixel,
+     * with a gradient image and the object drawn dark) to the raw packet.
+     *
+     * @return the new number of events
+     */
+    private int appendDavisFrame(AEPacketRaw raw, int timestamp) {
+        int n = raw.getNumEvents();
+        raw.ensureCapacity(n + (2 * sizeX * sizeY));
+        final float r2 = objectRadiusPixels * objectRadiusPixels;
+        for (int readCycle = 0; readCycle < 2; readCycle++) { // 0=reset read, 1=signal read
+            for (int x = 0; x < sizeX; x++) {
+                for (int y = 0; y < sizeY; y++) {
+                    int adc = DavisChip.MAX_ADC;
+                    if (readCycle == 1) {
+                        adc = (DavisChip.MAX_ADC * (x + y)) / (sizeX + sizeY);
+                        for (int k = 0; k < numObjects; k++) {
+                            final float dx = x - objX[k], dy = y - objY[k];
+                            if (((dx * dx) + (dy * dy)) < r2) {
+                                adc = DavisChip.MAX_ADC / 8;
+                                break;
+                            }
+                        }
+                    }
+                    raw.addresses[n] = DavisChip.ADDRESS_TYPE_APS | (x << DavisChip.XSHIFT) | (y << DavisChip.YSHIFT)
+                            | (readCycle << DavisChip.ADC_READCYCLE_SHIFT) | (adc & DavisChip.ADC_DATA_MASK);
+                    raw.timestamps[n] = timestamp;
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    public int getSizeX() {
+        return sizeX;
+    }
+
+    /**
+     * @param sizeX the sensor width in pixels
+     */
+    public void setSizeX(int sizeX) {
+        this.sizeX = sizeX;
+        reset();
+    }
+
+    public int getSizeY() {
+        return sizeY;
+    }
+
+    /**
+     * @param sizeY the sensor height in pixels
+     */
+    public void setSizeY(int sizeY) {
+        this.sizeY = sizeY;
+        reset();
+    }
+
+    public float getEventRateHz() {
+        return eventRateHz;
+    }
+
+    /**
+     * @param eventRateHz the DVS event rate, which sets the timestamp spacing
+     */
+    public void setEventRateHz(float eventRateHz) {
+        this.eventRateHz = eventRateHz;
+    }
+
+    public float getNoiseFraction() {
+        return noiseFraction;
+    }
+
+    /**
+     * @param noiseFraction the fraction of DVS events that are uniformly
+     * distributed noise, 0-1
+     */
+    public void setNoiseFraction(float noiseFraction) {
+        this.noiseFraction = noiseFraction;
+    }
+
+    public float getObjectSpeedPps() {
+        return objectSpeedPps;
+    }
+
+    /**
+     * @param objectSpeedPps the speed of the moving disk in pixels per second
+     */
+    public void setObjectSpeedPps(float objectSpeedPps) {
+        this.objectSpeedPps = objectSpeedPps;
+        reset();
+    }
+
+    public float getObjectRadiusPixels() {
+        return objectRadiusPixels;
+    }
+
+    public void setObjectRadiusPixels(float objectRadiusPixels) {
+        this.objectRadiusPixels = objectRadiusPixels;
+    }
+
+    public int getNumObjects() {
+        return numObjects;
+    }
+
+    /**
+     * @param numObjects the number of moving disks, each in its own tile of
+     * the sensor
+     */
+    public void setNumObjects(int numObjects) {
+        this.numObjects = Math.max(1, numObjects);
+        reset();
+    }
+
+    public float getFrameRateHz() {
+        return frameRateHz;
+    }
+
+    /**
+     * @param frameRateHz the APS frame rate for DAVIS raw data, or 0 for no
+     * frames
+     */
+    public void setFrameRateHz(float frameRateHz) {
+        this.frameRateHz = frameRateHz;
+    }
+}